@@ -0,0 +1,86 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
+import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+
+/**
+ * The user lookup every authorized request performs ({@link DUUIRequestHelper#authenticate(String)}).
+ * An API key is matched first, a session id only after the API key lookup missed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class AuthenticationBenchmark {
+
+    @Param({"100", "10000"})
+    public int users;
+
+    private final Random random = new Random(42);
+
+    private final List<String> keys = new ArrayList<>();
+
+    private final List<String> sessions = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        MongoStandIn.start();
+        DUUIMongoDBStorage.Users().drop();
+
+        List<Document> documents = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            String key = UUID.nameUUIDFromBytes(("key-" + i).getBytes()).toString();
+            String session = UUID.nameUUIDFromBytes(("session-" + i).getBytes()).toString();
+            keys.add(key);
+            sessions.add(session);
+
+            documents.add(new Document("email", "user-" + i + "@benchmark.org")
+                .append("role", "User")
+                .append("session", session)
+                .append("password", "hash")
+                .append("connections", new Document("key", key)
+                    .append("dropbox", new Document())
+                    .append("minio", new Document())
+                    .append("nextcloud", new Document())
+                    .append("google", new Document())));
+        }
+
+        DUUIMongoDBStorage.Users().insertMany(documents);
+    }
+
+    @Benchmark
+    public Document apiKey() {
+        return DUUIRequestHelper.authenticate(keys.get(random.nextInt(users)));
+    }
+
+    @Benchmark
+    public Document session() {
+        return DUUIRequestHelper.authenticate(sessions.get(random.nextInt(users)));
+    }
+
+    @Benchmark
+    public Document unknown() {
+        return DUUIRequestHelper.authenticate("unknown");
+    }
+}
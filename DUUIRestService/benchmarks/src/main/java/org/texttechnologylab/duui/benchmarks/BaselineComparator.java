@@ -0,0 +1,121 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bson.Document;
+
+/**
+ * Compare JMH results (-rf json) against a baseline and fail if a benchmark regressed.
+ * <p>
+ * A benchmark regresses if its score is worse than the baseline by more than the tolerance and the
+ * difference is larger than the combined error of both runs. Scores of average time benchmarks are
+ * better when lower, scores of throughput benchmarks when higher. A benchmark of the baseline that is
+ * missing from the results fails as well, so a renamed or removed benchmark can not pass the gate unnoticed.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar org.texttechnologylab.duui.benchmarks.BaselineComparator
+ * baseline.json results.json [tolerance]}
+ */
+public class BaselineComparator {
+
+    /**
+     * A benchmark result.
+     *
+     * @param mode  The JMH mode (avgt, thrpt, ...).
+     * @param score The score.
+     * @param error The error of the score (99.9% confidence interval).
+     * @param unit  The unit of the score.
+     */
+    private record Result(String mode, double score, double error, String unit) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <baseline.json> <results.json> [tolerance, default 0.1]");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = read(Path.of(args[0]));
+        Map<String, Result> results = read(Path.of(args[1]));
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+
+        int regressions = 0;
+        int missing = 0;
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result expected = baseline.get(entry.getKey());
+            Result actual = entry.getValue();
+            if (expected == null) {
+                System.out.printf("NEW        %s: %.3f %s%n", entry.getKey(), actual.score(), actual.unit());
+                continue;
+            }
+
+            boolean lowerIsBetter = !actual.mode().equals("thrpt");
+            double change = (actual.score() - expected.score()) / expected.score();
+            double worse = lowerIsBetter ? change : -change;
+            boolean significant = Math.abs(actual.score() - expected.score()) > actual.error() + expected.error();
+            boolean regressed = worse > tolerance && significant;
+
+            if (regressed) regressions++;
+            System.out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n",
+                regressed ? "REGRESSED" : "OK",
+                entry.getKey(),
+                expected.score(),
+                actual.score(),
+                actual.unit(),
+                change * 100);
+        }
+
+        for (Map.Entry<String, Result> entry : baseline.entrySet()) {
+            if (results.containsKey(entry.getKey())) continue;
+
+            missing++;
+            System.out.printf("MISSING    %s: %.3f %s%n", entry.getKey(), entry.getValue().score(), entry.getValue().unit());
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.0f%%%n", regressions, tolerance * 100);
+        }
+
+        if (missing > 0) {
+            System.out.printf("%d benchmark(s) of the baseline are missing from the results%n", missing);
+        }
+
+        if (regressions > 0 || missing > 0) System.exit(1);
+    }
+
+    /**
+     * Read a JMH result file.
+     *
+     * @param file The result file.
+     * @return the results by benchmark name and parameters.
+     */
+    private static Map<String, Result> read(Path file) throws Exception {
+        Document root = Document.parse("{\"results\": " + Files.readString(file) + "}");
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        for (Document benchmark : root.getList("results", Document.class)) {
+            Document params = benchmark.get("params", Document.class);
+            Document metric = benchmark.get("primaryMetric", Document.class);
+
+            String name = benchmark.getString("benchmark")
+                + (params == null || params.isEmpty() ? "" : params.toJson());
+
+            results.put(name, new Result(
+                benchmark.getString("mode"),
+                toDouble(metric.get("score")),
+                toDouble(metric.get("scoreError")),
+                metric.getString("scoreUnit")));
+        }
+
+        return results;
+    }
+
+    /**
+     * JMH writes NaN as string if there are too few samples to compute an error.
+     */
+    private static double toDouble(Object value) {
+        return value instanceof Number number && !Double.isNaN(number.doubleValue()) ? number.doubleValue() : 0;
+    }
+}
@@ -0,0 +1,83 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+
+/**
+ * The id conversion applied to every document of a list response
+ * ({@link DUUIMongoDBStorage#convertObjectIdToString(Document)}). The conversion modifies the documents, so
+ * every invocation needs a fresh result set. Creating one before every invocation (Level.Invocation) would
+ * dominate the timing of the small result sets, so {@link #BATCH} result sets are created before every
+ * iteration and every invocation converts the next one. The score is the time of a batch of {@link #BATCH}
+ * conversions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = ConvertObjectIdBenchmark.BATCH)
+@Measurement(iterations = 50, batchSize = ConvertObjectIdBenchmark.BATCH)
+@Fork(value = 2, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ConvertObjectIdBenchmark {
+
+    /**
+     * The number of invocations per iteration.
+     */
+    static final int BATCH = 10;
+
+    @Param({"1000", "100000"})
+    public int documents;
+
+    private List<List<Document>> batch;
+
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) batch.add(createResults());
+        next = 0;
+    }
+
+    @Benchmark
+    public List<Document> convert() {
+        List<Document> results = batch.get(next++);
+        for (Document document : results) DUUIMongoDBStorage.convertObjectIdToString(document);
+        return results;
+    }
+
+    @Benchmark
+    public List<Document> convertStream() {
+        return batch.get(next++).stream().map(DUUIMongoDBStorage::convertObjectIdToString).toList();
+    }
+
+    private List<Document> createResults() {
+        List<Document> results = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            results.add(new Document("_id", new ObjectId(String.format("%024x", i)))
+                .append("process_id", "65f1c0ffee0000000000000" + (i % 10))
+                .append("name", "document-" + i + ".txt")
+                .append("path", "/benchmark/document-" + i + ".txt")
+                .append("status", "Completed")
+                .append("progress", i % 100)
+                .append("is_finished", true));
+        }
+        return results;
+    }
+}
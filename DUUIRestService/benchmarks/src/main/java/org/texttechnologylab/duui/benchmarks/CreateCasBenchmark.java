@@ -0,0 +1,68 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.Part;
+
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.texttechnologylab.duui.api.utils.FileUploadUtils;
+
+/**
+ * The creation of a CAS from uploaded prompts and media ({@link FileUploadUtils#createCas}). Media is
+ * Base64 encoded into the CAS, so the cost grows with the size of the upload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class CreateCasBenchmark {
+
+    /**
+     * The size of every media file in megabytes.
+     */
+    @Param({"1", "16", "64"})
+    public int megabytes;
+
+    @Param({"image", "audio", "video"})
+    public String media;
+
+    private List<Part> parts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] content = new byte[megabytes * 1024 * 1024];
+        new Random(42).nextBytes(content);
+
+        Part file = switch (media) {
+            case "image" -> new MediaPart("image.png", "image/png", content);
+            case "audio" -> new MediaPart("audio.wav", "audio/wav", content);
+            default -> new MediaPart("video.mp4", "video/mp4", content);
+        };
+
+        parts = List.of(
+            new MediaPart("promt_0.txt", "text/plain", "Describe the content.".getBytes(StandardCharsets.UTF_8)),
+            file);
+    }
+
+    @Benchmark
+    public JCas createCas() throws Exception {
+        return FileUploadUtils.createCas(parts);
+    }
+}
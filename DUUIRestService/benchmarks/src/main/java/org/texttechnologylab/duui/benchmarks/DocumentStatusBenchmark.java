@@ -0,0 +1,74 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.DUUIDocument;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
+import org.texttechnologylab.duui.api.controllers.documents.DUUIDocumentController;
+
+/**
+ * The periodic status synchronization of a process ({@link DUUIDocumentController#updateMany(String, Set)})
+ * that every process handler runs every update interval.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class DocumentStatusBenchmark {
+
+    private static final String[] STATUS = {DUUIStatus.WAITING, DUUIStatus.ACTIVE, DUUIStatus.COMPLETED};
+
+    @Param({"10", "100", "1000"})
+    public int documents;
+
+    private final Random random = new Random(42);
+
+    private String processId;
+
+    private Set<DUUIDocument> set;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        MongoStandIn.start();
+
+        processId = new ObjectId().toString();
+        set = new HashSet<>();
+        for (int i = 0; i < documents; i++) {
+            set.add(new DUUIDocument("document-" + i + ".txt", "/benchmark/document-" + i + ".txt", 1024L * (i + 1)));
+        }
+
+        // The first synchronization inserts the documents, all further ones update them.
+        DUUIDocumentController.updateMany(processId, set);
+    }
+
+    @Setup(Level.Invocation)
+    public void progress() {
+        for (DUUIDocument document : set) {
+            document.setStatus(STATUS[random.nextInt(STATUS.length)]);
+        }
+    }
+
+    @Benchmark
+    public void updateMany() {
+        DUUIDocumentController.updateMany(processId, set);
+    }
+}
@@ -0,0 +1,81 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+
+import javax.servlet.http.Part;
+
+/**
+ * An in-memory multipart upload as received by the upload routes.
+ */
+public class MediaPart implements Part {
+
+    private final String fileName;
+
+    private final String contentType;
+
+    private final byte[] content;
+
+    /**
+     * @param fileName    The submitted file name.
+     * @param contentType The content type.
+     * @param content     The content of the file.
+     */
+    public MediaPart(String fileName, String contentType, byte[] content) {
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.content = content;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return "files";
+    }
+
+    @Override
+    public String getSubmittedFileName() {
+        return fileName;
+    }
+
+    @Override
+    public long getSize() {
+        return content.length;
+    }
+
+    @Override
+    public void write(String fileName) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete() {
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return name.equalsIgnoreCase("Content-Type") ? contentType : null;
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        String header = getHeader(name);
+        return header == null ? List.of() : List.of(header);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return List.of("Content-Type");
+    }
+}
@@ -0,0 +1,49 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.texttechnologylab.duui.api.Config;
+import org.texttechnologylab.duui.api.Main;
+import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * An in-process MongoDB stand-in for benchmarks. The server speaks the wire protocol, so the storage layer
+ * is exercised through the real driver (encoding, command listener, connection pool) without the latency
+ * and variance of an external database.
+ */
+public class MongoStandIn {
+
+    private static MongoServer server;
+
+    private MongoStandIn() {
+    }
+
+    /**
+     * Start the server once per JVM and point {@link DUUIMongoDBStorage} at it.
+     */
+    public static synchronized void start() throws IOException {
+        if (server != null) return;
+
+        server = new MongoServer(new MemoryBackend());
+        server.bind();
+
+        Path properties = Files.createTempFile("duui-benchmark-", ".properties");
+        try (Writer writer = Files.newBufferedWriter(properties)) {
+            writer.write("MONGO_DB_CONNECTION_STRING=" + server.getConnectionString() + "\n");
+            writer.write("MONGO_DB=duui_benchmark\n");
+            writer.write("MONGO_SLOW_COMMAND_MS=0\n");
+        }
+
+        Main.config = new Config(properties.toString());
+        DUUIMongoDBStorage.init(Main.config);
+        Files.deleteIfExists(properties);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow));
+    }
+}
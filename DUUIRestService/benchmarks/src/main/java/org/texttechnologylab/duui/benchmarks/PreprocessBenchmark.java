@@ -0,0 +1,99 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.texttechnologylab.duui.api.Main;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * The XMI to JSON conversion behind GET /files/preprocess ({@link Main#preprocessXmi}) for annotated
+ * documents of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class PreprocessBenchmark {
+
+    private static final String[] WORDS = {"the", "gateway", "processes", "documents", "with", "pipelines", "of", "components"};
+
+    /**
+     * The number of tokens. Every tenth token ends a sentence.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int tokens;
+
+    private byte[] xmi;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        JCas cas = JCasFactory.createJCas();
+
+        int sentenceBegin = 0;
+        for (int i = 0; i < tokens; i++) {
+            int begin = text.length();
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+
+            Token token = new Token(cas, begin, text.length());
+            token.setId("t" + i);
+            token.setSyntacticFunction(i % 2 == 0 ? "subj" : "obj");
+            token.addToIndexes();
+
+            if (i % 10 == 9) {
+                new Sentence(cas, sentenceBegin, text.length()).addToIndexes();
+                text.append(". ");
+                sentenceBegin = text.length();
+            } else {
+                text.append(' ');
+            }
+        }
+
+        cas.setDocumentText(text.toString());
+        cas.setDocumentLanguage("en");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XmiCasSerializer.serialize(cas.getCas(), output);
+        xmi = output.toByteArray();
+    }
+
+    /**
+     * Deserialize the document and convert it.
+     */
+    @Benchmark
+    public Document preprocess() throws Exception {
+        return Main.preprocessXmi(new ByteArrayInputStream(xmi));
+    }
+
+    /**
+     * Deserialize the document, convert it and serialize the response as done by the route.
+     */
+    @Benchmark
+    public String preprocessToJson() throws Exception {
+        return Main.preprocessXmi(new ByteArrayInputStream(xmi)).toJson();
+    }
+}
@@ -0,0 +1,93 @@
+package org.texttechnologylab.duui.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.texttechnologylab.duui.analysis.process.DUUIDocumentScheduler;
+
+/**
+ * The makespan of a process for every scheduling policy ({@link DUUIDocumentScheduler}) on a skewed corpus.
+ * Document sizes follow a Pareto distribution (most documents are a few kilobytes, a few are several
+ * megabytes) and are listed in random order. Every worker "processes" a document by parking for a time
+ * proportional to its size, so the result is the time until the last worker is done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SchedulingBenchmark {
+
+    /**
+     * The processing time per kilobyte of a document.
+     */
+    private static final long NANOS_PER_KILOBYTE = TimeUnit.MICROSECONDS.toNanos(20);
+
+    @Param({"fifo", "shortest_first", "largest_first", "work_stealing"})
+    public String policy;
+
+    @Param({"4", "16"})
+    public int workers;
+
+    @Param({"2000"})
+    public int documents;
+
+    private List<Long> sizes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        sizes = new ArrayList<>();
+
+        // Pareto distribution with a minimum of 1 KB and shape 1.2, capped at 4 MB
+        for (int i = 0; i < documents; i++) {
+            double pareto = 1024 / Math.pow(1 - random.nextDouble(), 1 / 1.2);
+            sizes.add((long) Math.min(pareto, 4 * 1024 * 1024));
+        }
+
+        Collections.shuffle(sizes, random);
+    }
+
+    @Benchmark
+    public void makespan() throws InterruptedException {
+        DUUIDocumentScheduler<Long> scheduler = new DUUIDocumentScheduler<>(
+            DUUIDocumentScheduler.Policy.fromName(policy),
+            sizes,
+            Long::longValue,
+            workers);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            int worker = i;
+            Thread thread = new Thread(() -> {
+                Long size;
+                while ((size = scheduler.next(worker)) != null) {
+                    LockSupport.parkNanos(size / 1024 * NANOS_PER_KILOBYTE);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,681 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.SofaFS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.FSArray;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.jcas.tcas.DocumentAnnotation;
+import org.apache.uima.util.CasCopier;
+import org.bson.Document;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.DUUIDocument;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.IDUUIDocumentHandler;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIEvent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
+import org.texttechnologylab.duui.analysis.document.DUUIDocumentProvider;
+import org.texttechnologylab.duui.api.controllers.components.DUUIComponentCache;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePool;
+import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+
+/**
+ * Processes many small documents in batches instead of one by one.
+ * <p>
+ * For corpora of short texts the time spent per document (serializing the CAS, one request per component,
+ * updating the status) exceeds the time the components need for the text itself. With the process setting
+ * batch_size, up to that many documents (together at most batch_max_characters long) are concatenated into
+ * a single CAS that is sent through the pipeline once. Afterwards the CAS is split up again: every document
+ * gets a CAS of its own containing its text and all annotations that lie within it, which is written to the
+ * output like any other document. References from these annotations to annotations of other documents
+ * (e.g. a coreference across the separator) are removed. The statuses of the documents are updated as if
+ * they had been processed individually. If a batch fails, its documents are processed one by one so that
+ * only the failing document is marked as failed.
+ * <p>
+ * Only plain text input (.txt) can be batched since annotations already contained in the input can not be
+ * merged reliably. Components that take the surrounding text into account (e.g. language models or
+ * coreference resolution) would see the other documents of a batch, so a pipeline is only batched if all
+ * its components allow it with the option batching.
+ * <p>
+ * The batcher also hands the documents to the workers if the scheduling policy of the process can not be
+ * implemented by the document reader of the composer (see {@link DUUIDocumentScheduler}). Without batching
+ * every document forms a batch of its own and any input can be processed. Batches that take much longer
+ * than the others can be started again on another replica if speculation is enabled for the process (see
+ * {@link DUUISpeculativeExecution}).
+ */
+public class DUUIDocumentBatcher {
+
+    /**
+     * Separates the texts of two documents in a batch so that sentences do not run into each other.
+     */
+    private static final String SEPARATOR = "\n\n";
+
+    private final DUUIComposer composer;
+
+    private final IDUUIDocumentHandler inputHandler;
+
+    private final IDUUIDocumentHandler outputHandler;
+
+    private final DUUIDocumentProvider input;
+
+    private final DUUIDocumentProvider output;
+
+    private final String language;
+
+    private final boolean ignoreErrors;
+
+    private final int batchSize;
+
+    private final long maxCharacters;
+
+    private final DUUIDocumentScheduler.Policy policy;
+
+    private final DUUIPipelinePool.Lease lease;
+
+    private final boolean speculate;
+
+    private final double speculationLimit;
+
+    /**
+     * The components of the pipeline as they have been instantiated for the process.
+     */
+    private final List<Document> components;
+
+    /**
+     * Re-executes straggling batches while the documents are processed if speculation is enabled.
+     */
+    private volatile DUUISpeculativeExecution<Result> speculation;
+
+    private final AtomicInteger progress = new AtomicInteger(0);
+
+    /**
+     * The typesystem of the leased replica or null if the typesystem on the classpath is used.
+     */
+    private volatile TypeSystem typeSystem;
+
+    /**
+     * The location of a document within the text of a batch.
+     *
+     * @param document The document.
+     * @param begin    The offset of the first character.
+     * @param end      The offset after the last character.
+     */
+    private record Slice(DUUIDocument document, int begin, int end) {
+    }
+
+    /**
+     * A processed batch.
+     *
+     * @param cas      The processed CAS.
+     * @param slices   The location of every document in the CAS.
+     * @param duration The time the pipeline took in milliseconds.
+     */
+    private record Result(JCas cas, List<Slice> slices, long duration) {
+    }
+
+    /**
+     * Create a batcher for a process.
+     *
+     * @param composer      The composer running the pipeline.
+     * @param inputHandler  The handler the documents are read with.
+     * @param outputHandler The handler the results are written with or null if they are not written.
+     * @param input         The input of the process.
+     * @param output        The output of the process.
+     * @param settings      The settings of the process.
+     * @param pipeline      The pipeline including its components.
+     * @param lease         The replica leased from the pipeline pool by the process or null if the
+     *                      pipeline has been instantiated for the process.
+     */
+    public DUUIDocumentBatcher(
+        DUUIComposer composer,
+        IDUUIDocumentHandler inputHandler,
+        IDUUIDocumentHandler outputHandler,
+        DUUIDocumentProvider input,
+        DUUIDocumentProvider output,
+        Document settings,
+        Document pipeline,
+        DUUIPipelinePool.Lease lease) {
+        this.composer = composer;
+        this.inputHandler = inputHandler;
+        this.outputHandler = outputHandler;
+        this.input = input;
+        this.output = output;
+        this.language = DUUIProcessController.getLanguageCode(settings.getString("language"));
+        this.ignoreErrors = settings.getBoolean("ignore_errors", true);
+        this.batchSize = isBatched(settings, pipeline, input) ? settings.getInteger("batch_size") : 1;
+        this.maxCharacters = Math.max(1, ((Number) settings.get("batch_max_characters", 100000)).longValue());
+        this.policy = DUUIDocumentScheduler.Policy.fromSettings(settings);
+        this.lease = lease;
+        this.speculate = settings.getBoolean("speculation", false);
+        this.speculationLimit = ((Number) settings.get("speculation_limit", 0.1)).doubleValue();
+        this.components = lease != null ? lease.getComponents() : pipeline.getList("components", Document.class);
+    }
+
+    /**
+     * @param settings The settings of the process.
+     * @param pipeline The pipeline including its components.
+     * @param input    The input of the process.
+     * @return if the documents of the process are processed by a batcher, i.e. if they are batched, if
+     * the scheduling policy must be implemented by the gateway or if stragglers are executed again.
+     */
+    public static boolean isEnabled(Document settings, Document pipeline, DUUIDocumentProvider input) {
+        return isBatched(settings, pipeline, input)
+            || DUUIDocumentScheduler.Policy.fromSettings(settings).isDispatched()
+            || settings.getBoolean("speculation", false);
+    }
+
+    /**
+     * @param settings The settings of the process.
+     * @param pipeline The pipeline including its components.
+     * @param input    The input of the process.
+     * @return if the documents of the process are processed in batches.
+     */
+    private static boolean isBatched(Document settings, Document pipeline, DUUIDocumentProvider input) {
+        return settings.getInteger("batch_size", 0) > 1
+            && ".txt".equalsIgnoreCase(input.getFileExtension())
+            && isBatchable(pipeline);
+    }
+
+    /**
+     * @param pipeline The pipeline including its components.
+     * @return if all components of the pipeline allow batching (option batching).
+     */
+    static boolean isBatchable(Document pipeline) {
+        List<Document> components = pipeline.getList("components", Document.class);
+        if (components == null || components.isEmpty()) return false;
+
+        for (Document component : components) {
+            Document options = component.get("options", Document.class);
+            if (options == null || !options.getBoolean("batching", false)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of documents that have been processed.
+     */
+    public int getProgress() {
+        return progress.get();
+    }
+
+    /**
+     * @return the number of batches that have been executed again and the number of them that finished
+     * first or null if speculation is disabled.
+     */
+    public Document getSpeculation() {
+        DUUISpeculativeExecution<Result> current = speculation;
+        return current == null ? null : current.toDocument();
+    }
+
+    /**
+     * Group documents into batches. Documents are added in ascending order of their size until either the
+     * number of documents or the summed size of a batch reaches its limit. Documents larger than the limit
+     * form a batch of their own.
+     *
+     * @param documents The documents to group.
+     * @return the batches.
+     */
+    public List<List<DUUIDocument>> pack(Collection<DUUIDocument> documents) {
+        List<DUUIDocument> sorted = new ArrayList<>(documents);
+        sorted.sort(Comparator.comparingLong(DUUIDocument::getSize));
+
+        List<List<DUUIDocument>> batches = new ArrayList<>();
+        List<DUUIDocument> batch = new ArrayList<>();
+        long characters = 0;
+
+        for (DUUIDocument document : sorted) {
+            long size = Math.max(0, document.getSize());
+            if (!batch.isEmpty() && (batch.size() >= batchSize || characters + size > maxCharacters)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                characters = 0;
+            }
+
+            batch.add(document);
+            characters += size + SEPARATOR.length();
+        }
+
+        if (!batch.isEmpty()) batches.add(batch);
+        return batches;
+    }
+
+    /**
+     * Process documents in batches using a number of worker threads. The workers take the batches in the
+     * order of the scheduling policy of the process.
+     *
+     * @param documents The documents to process.
+     * @param workers   The number of batches processed at the same time.
+     * @param name      The name of the run used to identify the batches.
+     * @throws Exception if a batch fails and errors are not ignored.
+     */
+    public void run(Collection<DUUIDocument> documents, int workers, String name) throws Exception {
+        List<List<DUUIDocument>> batches = pack(documents);
+        composer.addEvent(
+            DUUIEvent.Sender.READER,
+            String.format("Processing %d documents in %d batches (scheduling: %s)",
+                documents.size(), batches.size(), policy.getName()));
+
+        if (lease != null) {
+            try {
+                typeSystem = lease.getTypeSystem();
+            } catch (Exception exception) {
+                composer.addEvent(
+                    DUUIEvent.Sender.READER,
+                    "The typesystem of the pipeline could not be retrieved, using the default: " + exception.getMessage(),
+                    DUUIComposer.DebugLevel.WARN);
+            }
+        }
+
+        DUUIDocumentScheduler<List<DUUIDocument>> scheduler = new DUUIDocumentScheduler<>(
+            policy,
+            batches,
+            batch -> batch.stream().mapToLong(document -> Math.max(0, document.getSize())).sum(),
+            Math.max(1, workers));
+
+        if (speculate) {
+            speculation = new DUUISpeculativeExecution<>(
+                composer,
+                lease,
+                components,
+                (int) Math.ceil(Math.max(0, speculationLimit) * batches.size()),
+                Math.max(1, workers / 2));
+        }
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicInteger index = new AtomicInteger(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "duui-batch-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            AtomicInteger batchIndex = new AtomicInteger(0);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, workers); i++) {
+                int worker = i;
+                futures.add(executor.submit(() -> {
+                    List<DUUIDocument> batch;
+                    while (failure.get() == null && (batch = scheduler.next(worker)) != null) {
+                        try {
+                            process(batch, name + "_batch_" + batchIndex.getAndIncrement());
+                        } catch (InterruptedException exception) {
+                            throw exception;
+                        } catch (Exception exception) {
+                            failure.compareAndSet(null, exception);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException exception) {
+                    if (exception.getCause() instanceof InterruptedException interrupted) throw interrupted;
+                    throw exception;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (speculation != null) speculation.shutdown();
+        }
+
+        if (scheduler.getStolen() > 0) {
+            composer.addEvent(
+                DUUIEvent.Sender.READER,
+                String.format("%d batches have been stolen by idle workers", scheduler.getStolen()));
+        }
+
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * Process a batch. If it fails and contains more than one document, its documents are processed one by one.
+     *
+     * @param batch The documents of the batch.
+     * @param name  The name of the batch.
+     */
+    private void process(List<DUUIDocument> batch, String name) throws Exception {
+        batch.forEach(document -> {
+            document.setStatus(DUUIStatus.INPUT);
+            document.setStartedAt();
+        });
+
+        DUUISpeculativeExecution.Execution<Result> execution = target -> {
+            List<Slice> slices = new ArrayList<>();
+            JCas cas = pack(batch, slices, name);
+            batch.forEach(document -> document.setStatus(DUUIStatus.ACTIVE));
+
+            long startedAt = System.currentTimeMillis();
+            target.run(cas, name);
+            return new Result(cas, slices, System.currentTimeMillis() - startedAt);
+        };
+
+        Result result;
+        try {
+            result = speculation == null
+                ? execution.run(composer)
+                : speculation.execute(
+                    name,
+                    batch.stream().mapToLong(document -> Math.max(0, document.getSize())).sum(),
+                    execution);
+        } catch (InterruptedException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            if (batch.size() > 1) {
+                for (int i = 0; i < batch.size(); i++) {
+                    process(List.of(batch.get(i)), name + "_" + i);
+                }
+                return;
+            }
+
+            fail(batch.get(0), exception);
+            if (!ignoreErrors) throw exception;
+            return;
+        }
+
+        long duration = result.duration() / batch.size();
+
+        for (Slice slice : result.slices()) {
+            DUUIDocument document = slice.document();
+            try {
+                document.setStatus(DUUIStatus.OUTPUT);
+                JCas cas = batch.size() > 1 ? unpack(result.cas(), slice) : result.cas();
+                document.countAnnotations(cas);
+                write(document, cas);
+
+                document.setDurationProcess(duration);
+                document.setStatus(DUUIStatus.COMPLETED);
+                document.setFinished(true);
+                document.setFinishedAt();
+                progress.incrementAndGet();
+            } catch (Exception exception) {
+                fail(document, exception);
+                if (!ignoreErrors) throw exception;
+            }
+        }
+    }
+
+    /**
+     * Read the documents of a batch and concatenate their texts into a single CAS. A batch of a single
+     * document that is not plain text is deserialized.
+     *
+     * @param batch  The documents of the batch.
+     * @param slices Receives the location of every document in the text of the batch.
+     * @param name   The name of the batch.
+     * @return the CAS of the batch.
+     */
+    private JCas pack(List<DUUIDocument> batch, List<Slice> slices, String name) throws Exception {
+        if (batch.size() == 1) return read(batch.get(0), slices);
+
+        StringBuilder text = new StringBuilder();
+
+        for (DUUIDocument document : batch) {
+            try (InputStream stream = DUUIProcessController.downloadFile(inputHandler, document.getPath())) {
+                int[] slice = append(text, new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+                slices.add(new Slice(document, slice[0], slice[1]));
+            }
+        }
+
+        JCas cas = createJCas();
+        cas.setDocumentText(text.toString());
+
+        DocumentMetaData metaData = DocumentMetaData.create(cas);
+        metaData.setDocumentId(name);
+        metaData.setDocumentTitle(name);
+        metaData.setDocumentUri(name);
+        cas.setDocumentLanguage(language);
+        return cas;
+    }
+
+    /**
+     * Append the text of a document to the text of a batch.
+     *
+     * @param text     The text of the batch.
+     * @param document The text of the document.
+     * @return the offsets of the first character of the document and after its last character.
+     */
+    static int[] append(StringBuilder text, String document) {
+        if (!text.isEmpty()) text.append(SEPARATOR);
+
+        int begin = text.length();
+        text.append(document);
+        return new int[]{begin, text.length()};
+    }
+
+    /**
+     * Read a single document into a CAS.
+     *
+     * @param document The document.
+     * @param slices   Receives the location of the document in the CAS.
+     * @return the CAS of the document.
+     */
+    private JCas read(DUUIDocument document, List<Slice> slices) throws Exception {
+        JCas cas = createJCas();
+        String extension = input.getFileExtension().toLowerCase();
+
+        try (InputStream stream = DUUIProcessController.downloadFile(inputHandler, document.getPath())) {
+            if (extension.equals(".txt")) {
+                cas.setDocumentText(new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            } else {
+                XmiCasDeserializer.deserialize(
+                    extension.endsWith(".gz") ? new GZIPInputStream(stream) : stream,
+                    cas.getCas(),
+                    true);
+            }
+        }
+
+        if (JCasUtil.select(cas, DocumentMetaData.class).isEmpty()) {
+            DocumentMetaData metaData = DocumentMetaData.create(cas);
+            metaData.setDocumentId(document.getName());
+            metaData.setDocumentTitle(document.getName());
+            metaData.setDocumentUri(document.getPath());
+        }
+
+        if (!language.isEmpty() || cas.getDocumentLanguage() == null) cas.setDocumentLanguage(language);
+
+        slices.add(new Slice(document, 0, cas.getDocumentText() == null ? 0 : cas.getDocumentText().length()));
+        return cas;
+    }
+
+    /**
+     * Create the CAS of a single document from the processed CAS of its batch. See
+     * {@link #copySlice(JCas, JCas, int, int)}.
+     *
+     * @param batch The processed CAS of the batch.
+     * @param slice The location of the document in the batch.
+     * @return the CAS of the document.
+     */
+    private JCas unpack(JCas batch, Slice slice) throws Exception {
+        JCas cas = createJCas();
+        cas.setDocumentText(batch.getDocumentText().substring(slice.begin(), slice.end()));
+
+        DUUIDocument document = slice.document();
+        DocumentMetaData metaData = DocumentMetaData.create(cas);
+        metaData.setDocumentId(document.getName());
+        metaData.setDocumentTitle(document.getName());
+        metaData.setDocumentUri(document.getPath());
+        cas.setDocumentLanguage(batch.getDocumentLanguage());
+
+        copySlice(batch, cas, slice.begin(), slice.end());
+        return cas;
+    }
+
+    /**
+     * Copy all annotations that lie within a slice of a batch to the CAS of the document and shift them to
+     * the start of its text. Feature structures that are not annotations are only copied if an annotation
+     * references them. References to annotations outside the slice are removed, since these annotations
+     * belong to another document and their offsets would not match the text.
+     *
+     * @param batch  The processed CAS of the batch.
+     * @param target The CAS of the document containing its text.
+     * @param begin  The offset of the first character of the document in the batch.
+     * @param end    The offset after the last character of the document in the batch.
+     */
+    static void copySlice(JCas batch, JCas target, int begin, int end) {
+        CasCopier copier = new CasCopier(batch.getCas(), target.getCas());
+        List<Annotation> copies = new ArrayList<>();
+
+        for (Annotation annotation : JCasUtil.select(batch, Annotation.class)) {
+            if (annotation instanceof DocumentAnnotation) continue;
+            if (annotation.getBegin() < begin || annotation.getEnd() > end) continue;
+            copies.add(copier.copyFs(annotation));
+        }
+
+        Set<FeatureStructure> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(copies);
+
+        Set<FeatureStructure> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Annotation copy : copies) {
+            removeForeignReferences(copy, kept, visited);
+        }
+
+        for (Annotation copy : copies) {
+            copy.setBegin(copy.getBegin() - begin);
+            copy.setEnd(copy.getEnd() - begin);
+            copy.addToIndexes();
+        }
+    }
+
+    /**
+     * Remove all references from a copied feature structure (and the feature structures it references) to
+     * annotations that have been copied only because they are referenced.
+     *
+     * @param structure The feature structure.
+     * @param kept      The annotations within the slice.
+     * @param visited   The feature structures that have been visited.
+     */
+    private static void removeForeignReferences(
+        FeatureStructure structure,
+        Set<FeatureStructure> kept,
+        Set<FeatureStructure> visited) {
+        if (structure == null || structure instanceof SofaFS || !visited.add(structure)) return;
+
+        if (structure instanceof FSArray<?> array) {
+            for (int i = 0; i < array.size(); i++) {
+                if (isForeign(array.get(i), kept)) {
+                    array.set(i, null);
+                } else {
+                    removeForeignReferences(array.get(i), kept, visited);
+                }
+            }
+            return;
+        }
+
+        for (Feature feature : structure.getType().getFeatures()) {
+            if (feature.getRange().isPrimitive()) continue;
+
+            FeatureStructure value = structure.getFeatureValue(feature);
+            if (isForeign(value, kept)) {
+                structure.setFeatureValue(feature, null);
+            } else {
+                removeForeignReferences(value, kept, visited);
+            }
+        }
+    }
+
+    /**
+     * @param structure A copied feature structure.
+     * @param kept      The annotations within the slice.
+     * @return if the feature structure is an annotation outside the slice.
+     */
+    private static boolean isForeign(FeatureStructure structure, Set<FeatureStructure> kept) {
+        return structure instanceof Annotation
+            && !(structure instanceof DocumentAnnotation)
+            && !kept.contains(structure);
+    }
+
+    /**
+     * @return an empty CAS with the typesystem of the pipeline if it is known.
+     */
+    private JCas createJCas() throws UIMAException {
+        TypeSystem current = typeSystem;
+        return current == null ? DUUIComponentCache.createJCas() : DUUIComponentCache.createJCas(current);
+    }
+
+    /**
+     * Write the CAS of a document to the output. The relative path of the document below the input path is
+     * kept and its extension replaced by the output extension.
+     *
+     * @param document The document.
+     * @param cas      The CAS of the document.
+     */
+    private void write(DUUIDocument document, JCas cas) throws Exception {
+        if (outputHandler == null) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream stream = output.getFileExtension().endsWith(".gz")
+            ? new GZIPOutputStream(bytes)
+            : bytes) {
+            XmiCasSerializer.serialize(cas.getCas(), stream);
+        }
+
+        String name = getOutputName(document);
+        outputHandler.writeDocument(
+            new DUUIDocument(name, Path.of(output.getPath(), name).toString(), bytes.toByteArray()),
+            output.getPath());
+    }
+
+    /**
+     * @param document The document.
+     * @return the path of the output relative to the output path.
+     */
+    private String getOutputName(DUUIDocument document) {
+        String name = document.getName();
+        for (String root : input.getPath().split(",")) {
+            if (!root.isEmpty() && document.getPath().startsWith(root)) {
+                name = document.getPath().substring(root.length()).replaceFirst("^[/\\\\]+", "");
+                break;
+            }
+        }
+
+        int extension = name.lastIndexOf('.');
+        if (extension > name.lastIndexOf('/')) name = name.substring(0, extension);
+        return name + output.getFileExtension();
+    }
+
+    /**
+     * Mark a document as failed.
+     *
+     * @param document  The document.
+     * @param exception The reason.
+     */
+    private void fail(DUUIDocument document, Exception exception) {
+        document.setError(String.format("%s - %s", exception.getClass().getCanonicalName(), exception.getMessage()));
+        document.setStatus(DUUIStatus.FAILED);
+        document.setFinished(true);
+        document.setFinishedAt();
+        progress.incrementAndGet();
+    }
+}
@@ -0,0 +1,212 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import org.bson.Document;
+
+/**
+ * Decides in which order the workers of a process take documents.
+ * <p>
+ * The order matters when document sizes are skewed: a large document that is started last keeps a single
+ * worker busy while all others are idle. The policies are
+ * <ul>
+ *     <li>fifo: documents are taken in the order they are listed.</li>
+ *     <li>shortest_first: the smallest documents are taken first, so results are available early
+ *     (the former sort_by_size).</li>
+ *     <li>largest_first: the largest documents are taken first, so the last documents to finish are small
+ *     and the workers finish at about the same time.</li>
+ *     <li>work_stealing: documents are grouped into buckets of similar size (powers of two) and the
+ *     buckets are dealt to the workers so that each gets about the same number of bytes. A worker takes the
+ *     largest document of its own queue and, once it is empty, steals the smallest document of the worker
+ *     with the most bytes left. Workers do not contend for a single queue.</li>
+ * </ul>
+ * The size of a document is used as an estimate of the time it takes to process it.
+ *
+ * @param <T> The type of the scheduled items (documents or batches of documents).
+ */
+public class DUUIDocumentScheduler<T> {
+
+    /**
+     * The scheduling policies of a process.
+     */
+    public enum Policy {
+        FIFO("fifo"),
+        SHORTEST_FIRST("shortest_first"),
+        LARGEST_FIRST("largest_first"),
+        WORK_STEALING("work_stealing");
+
+        private final String name;
+
+        Policy(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name of the policy used in the process settings.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return if the documents must be handed to the workers by the gateway. The other policies are
+         * supported by the document reader of the composer.
+         */
+        public boolean isDispatched() {
+            return this == LARGEST_FIRST || this == WORK_STEALING;
+        }
+
+        /**
+         * @param name The name of the policy.
+         * @return the policy with the given name or {@link #FIFO} if it is unknown.
+         */
+        public static Policy fromName(String name) {
+            for (Policy policy : values()) {
+                if (policy.name.equalsIgnoreCase(name)) return policy;
+            }
+            return FIFO;
+        }
+
+        /**
+         * Read the policy from the settings of a process. Processes that only set sort_by_size are
+         * scheduled shortest first.
+         *
+         * @param settings The settings of the process.
+         * @return the policy.
+         */
+        public static Policy fromSettings(Document settings) {
+            Policy policy = fromName(settings.getString("scheduling"));
+            if (policy == FIFO && settings.getBoolean("sort_by_size", false)) return SHORTEST_FIRST;
+            return policy;
+        }
+    }
+
+    private final Policy policy;
+
+    private final ToLongFunction<T> size;
+
+    /**
+     * The queue of every worker. All workers share the first queue unless work is stolen.
+     */
+    private final List<ConcurrentLinkedDeque<T>> queues = new ArrayList<>();
+
+    /**
+     * The number of bytes left in the queue of every worker.
+     */
+    private final List<AtomicLong> remaining = new ArrayList<>();
+
+    private final AtomicInteger stolen = new AtomicInteger(0);
+
+    /**
+     * Schedule items for a number of workers.
+     *
+     * @param policy  The policy.
+     * @param items   The items to schedule.
+     * @param size    The size of an item.
+     * @param workers The number of workers.
+     */
+    public DUUIDocumentScheduler(Policy policy, Collection<T> items, ToLongFunction<T> size, int workers) {
+        this.policy = policy;
+        this.size = size;
+
+        List<T> ordered = new ArrayList<>(items);
+        switch (policy) {
+            case SHORTEST_FIRST -> ordered.sort(Comparator.comparingLong(size));
+            case LARGEST_FIRST -> ordered.sort(Comparator.comparingLong(size).reversed());
+            default -> {
+            }
+        }
+
+        if (policy != Policy.WORK_STEALING) {
+            queues.add(new ConcurrentLinkedDeque<>(ordered));
+            remaining.add(new AtomicLong(ordered.stream().mapToLong(size).sum()));
+            return;
+        }
+
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            queues.add(new ConcurrentLinkedDeque<>());
+            remaining.add(new AtomicLong(0));
+        }
+
+        Map<Integer, List<T>> buckets = new TreeMap<>(Comparator.reverseOrder());
+        for (T item : ordered) {
+            buckets.computeIfAbsent(getBucket(size.applyAsLong(item)), key -> new ArrayList<>()).add(item);
+        }
+
+        for (List<T> bucket : buckets.values()) {
+            bucket.sort(Comparator.comparingLong(size).reversed());
+            for (T item : bucket) {
+                int worker = 0;
+                for (int i = 1; i < queues.size(); i++) {
+                    if (remaining.get(i).get() < remaining.get(worker).get()) worker = i;
+                }
+
+                queues.get(worker).addLast(item);
+                remaining.get(worker).addAndGet(size.applyAsLong(item));
+            }
+        }
+    }
+
+    /**
+     * @return the policy.
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of items that have been stolen from another worker.
+     */
+    public int getStolen() {
+        return stolen.get();
+    }
+
+    /**
+     * Take the next item for a worker.
+     *
+     * @param worker The index of the worker (0 to the number of workers - 1).
+     * @return the item or null if all items have been taken.
+     */
+    public T next(int worker) {
+        if (queues.size() == 1) return take(0, true);
+
+        T item = take(worker % queues.size(), true);
+        while (item == null) {
+            int victim = -1;
+            for (int i = 0; i < queues.size(); i++) {
+                if (!queues.get(i).isEmpty() && (victim < 0 || remaining.get(i).get() > remaining.get(victim).get())) {
+                    victim = i;
+                }
+            }
+
+            if (victim < 0) return null;
+
+            item = take(victim, false);
+            if (item != null) stolen.incrementAndGet();
+        }
+        return item;
+    }
+
+    private T take(int queue, boolean first) {
+        T item = first ? queues.get(queue).pollFirst() : queues.get(queue).pollLast();
+        if (item != null) remaining.get(queue).addAndGet(-size.applyAsLong(item));
+        return item;
+    }
+
+    /**
+     * @param size The size of an item.
+     * @return the size class of the item (the position of its highest bit).
+     */
+    private static int getBucket(long size) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(1, size));
+    }
+}
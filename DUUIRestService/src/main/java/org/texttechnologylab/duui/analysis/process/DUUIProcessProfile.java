@@ -0,0 +1,394 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.DUUIDocument;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
+
+/**
+ * The performance profile of a single process.
+ * <p>
+ * For every finished document the durations reported by the composer (decode, deserialize, wait, process and
+ * the total time from start to finish) are added to streaming histograms with logarithmic buckets, so that
+ * percentiles can be computed without keeping the individual values. The composer does not report durations
+ * per component, instead the status of every component is sampled whenever the process is updated. The share
+ * of samples a component was busy in approximates its share of the processing time and points to the
+ * component limiting the throughput of the pipeline.
+ */
+public class DUUIProcessProfile {
+
+    /**
+     * The document durations that are profiled.
+     */
+    public static final List<String> STAGES = List.of("decode", "deserialize", "wait", "process", "total");
+
+    /**
+     * The counters of a profile that are summed up when profiles are merged.
+     */
+    public static final List<String> COUNTERS = List.of("documents", "failed", "bytes", "duration", "samples");
+
+    /**
+     * The component states counted as busy.
+     */
+    private static final Set<String> BUSY = Set.of(DUUIStatus.ACTIVE, DUUIStatus.DECODE, DUUIStatus.DESERIALIZE);
+
+    private final Map<String, Histogram> stages = new LinkedHashMap<>();
+
+    private final Map<String, Map<String, Long>> components = new LinkedHashMap<>();
+
+    private final Set<String> recorded = new HashSet<>();
+
+    private final long sampleInterval;
+
+    private long samples = 0;
+
+    private long documents = 0;
+
+    private long failed = 0;
+
+    private long bytes = 0;
+
+    private long firstStartedAt = Long.MAX_VALUE;
+
+    private long lastFinishedAt = 0;
+
+    private String scheduling = null;
+
+    private Document speculation = null;
+
+    /**
+     * Create an empty profile.
+     *
+     * @param sampleInterval The time between two samples of the component states in milliseconds.
+     */
+    public DUUIProcessProfile(long sampleInterval) {
+        this.sampleInterval = sampleInterval;
+        STAGES.forEach(stage -> stages.put(stage, new Histogram()));
+    }
+
+    /**
+     * Add all documents that have finished since the last call to the profile.
+     *
+     * @param documents The documents of the process.
+     */
+    public synchronized void observe(Collection<DUUIDocument> documents) {
+        for (DUUIDocument document : documents) {
+            if (!document.isFinished() || !recorded.add(document.getPath())) continue;
+
+            this.documents++;
+            if (DUUIStatus.oneOf(document.getStatus(), DUUIStatus.FAILED)) failed++;
+            bytes += Math.max(0, document.getSize());
+
+            stages.get("decode").add(document.getDurationDecode());
+            stages.get("deserialize").add(document.getDurationDeserialize());
+            stages.get("wait").add(document.getDurationWait());
+            stages.get("process").add(document.getDurationProcess());
+
+            long startedAt = document.getStartedAt();
+            long finishedAt = document.getFinishedAt();
+            if (startedAt > 0 && finishedAt >= startedAt) {
+                stages.get("total").add(finishedAt - startedAt);
+                firstStartedAt = Math.min(firstStartedAt, startedAt);
+                lastFinishedAt = Math.max(lastFinishedAt, finishedAt);
+            }
+        }
+    }
+
+    /**
+     * @return the number of finished documents.
+     */
+    public synchronized long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return the number of failed documents.
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the size of the finished documents in bytes.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Set the scheduling policy the documents are processed in (see {@link DUUIDocumentScheduler}).
+     *
+     * @param scheduling The name of the policy.
+     */
+    public synchronized void setScheduling(String scheduling) {
+        this.scheduling = scheduling;
+    }
+
+    /**
+     * Set the number of documents that have been executed again because they straggled (see
+     * {@link DUUISpeculativeExecution}).
+     *
+     * @param speculation The speculation statistics or null if speculation is disabled.
+     */
+    public synchronized void setSpeculation(Document speculation) {
+        this.speculation = speculation;
+    }
+
+    /**
+     * Count the current status of every component.
+     *
+     * @param pipelineStatus A Map from component name to status as returned by the composer.
+     */
+    public synchronized void sample(Map<String, String> pipelineStatus) {
+        if (pipelineStatus == null || pipelineStatus.isEmpty()) return;
+
+        samples++;
+        pipelineStatus.forEach((component, status) -> components
+            .computeIfAbsent(component, key -> new LinkedHashMap<>())
+            .merge(status == null ? DUUIStatus.INACTIVE : status, 1L, Long::sum));
+    }
+
+    /**
+     * Convert the profile to a BSON Document. The histogram buckets are included so that profiles of
+     * multiple processes can be merged (see {@link #merge(Document, Document)}).
+     *
+     * @return the profile as BSON Document.
+     */
+    public synchronized Document toDocument() {
+        Document stageDocuments = new Document();
+        stages.forEach((stage, histogram) -> stageDocuments.append(stage, histogram.toDocument()));
+
+        Document componentDocuments = new Document();
+        components.forEach((component, states) -> componentDocuments.append(component, new Document(states)));
+
+        long duration = lastFinishedAt > 0 ? lastFinishedAt - firstStartedAt : 0;
+
+        return summarize(new Document("documents", documents)
+            .append("failed", failed)
+            .append("bytes", bytes)
+            .append("duration", duration)
+            .append("samples", samples)
+            .append("sample_interval", sampleInterval)
+            .append("scheduling", scheduling)
+            .append("speculation", speculation)
+            .append("stages", stageDocuments)
+            .append("components", componentDocuments));
+    }
+
+    /**
+     * Add the counters and histogram buckets of a profile to another profile. Both profiles must be in
+     * the format of {@link #toDocument()}. Derived values (percentiles, throughput, ...) are not copied,
+     * use {@link #summarize(Document)} to compute them for the merged profile.
+     *
+     * @param target  The profile to add to. It is modified in place.
+     * @param profile The profile to add.
+     * @return the target.
+     */
+    public static Document merge(Document target, Document profile) {
+        if (profile == null) return target;
+
+        for (String counter : COUNTERS) {
+            target.put(counter, toLong(target.get(counter)) + toLong(profile.get(counter)));
+        }
+        target.putIfAbsent("sample_interval", profile.get("sample_interval"));
+
+        Document targetStages = target.get("stages", new Document());
+        profile.get("stages", new Document()).forEach((stage, histogram) -> targetStages.put(
+            stage,
+            Histogram.merge(targetStages.get(stage, new Document()), (Document) histogram)));
+
+        Document targetComponents = target.get("components", new Document());
+        profile.get("components", new Document()).forEach((component, states) -> {
+            Document targetStates = targetComponents.get(component, new Document());
+            ((Document) states).forEach((state, count) ->
+                targetStates.put(state, toLong(targetStates.get(state)) + toLong(count)));
+            targetComponents.put(component, targetStates);
+        });
+
+        target.put("stages", targetStages);
+        target.put("components", targetComponents);
+        return target;
+    }
+
+    /**
+     * Compute the derived values of a profile: throughput, percentiles per stage, the busy share of every
+     * component and the bottleneck (the component with the highest busy share).
+     *
+     * @param profile The profile in the format of {@link #toDocument()}.
+     * @return the profile.
+     */
+    public static Document summarize(Document profile) {
+        double seconds = toLong(profile.get("duration")) / 1000.0;
+        profile.put("documents_per_second", seconds > 0 ? toLong(profile.get("documents")) / seconds : 0.0);
+        profile.put("bytes_per_second", seconds > 0 ? toLong(profile.get("bytes")) / seconds : 0.0);
+
+        profile.get("stages", new Document()).values().forEach(histogram ->
+            Histogram.summarize((Document) histogram));
+
+        List<Document> utilization = new ArrayList<>();
+        String bottleneck = null;
+        double maximum = 0;
+        for (Map.Entry<String, Object> entry : profile.get("components", new Document()).entrySet()) {
+            long total = 0;
+            long busy = 0;
+            long waiting = 0;
+            for (Map.Entry<String, Object> state : ((Document) entry.getValue()).entrySet()) {
+                long count = toLong(state.getValue());
+                total += count;
+                if (BUSY.contains(state.getKey())) busy += count;
+                if (state.getKey().equals(DUUIStatus.WAITING)) waiting += count;
+            }
+
+            double share = total > 0 ? (double) busy / total : 0.0;
+            utilization.add(new Document("component", entry.getKey())
+                .append("busy", share)
+                .append("waiting", total > 0 ? (double) waiting / total : 0.0));
+
+            if (share > maximum) {
+                maximum = share;
+                bottleneck = entry.getKey();
+            }
+        }
+
+        profile.put("utilization", utilization);
+        profile.put("bottleneck", bottleneck);
+        return profile;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    /**
+     * A histogram with logarithmic buckets. Bucket i holds values up to GROWTH^i milliseconds which bounds
+     * the relative error of a percentile to about 19%.
+     */
+    public static class Histogram {
+
+        private static final double GROWTH = Math.pow(2, 0.25);
+
+        private static final int BUCKETS = 128;
+
+        private final long[] buckets = new long[BUCKETS];
+
+        private long count = 0;
+
+        private long sum = 0;
+
+        private long max = 0;
+
+        /**
+         * Add a value to the histogram. Negative values are ignored.
+         *
+         * @param value The value in milliseconds.
+         */
+        public void add(long value) {
+            if (value < 0) return;
+
+            buckets[bucket(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        /**
+         * @return the number of values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @param quantile The quantile between 0 and 1.
+         * @return the upper bound of the bucket containing the quantile or 0 if the histogram is empty.
+         */
+        public long getPercentile(double quantile) {
+            return percentile(buckets, count, max, quantile);
+        }
+
+        /**
+         * Convert the histogram to a BSON Document. Only buckets that are not empty are included.
+         *
+         * @return the histogram as BSON Document.
+         */
+        public Document toDocument() {
+            Document counts = new Document();
+            for (int i = 0; i < BUCKETS; i++) {
+                if (buckets[i] > 0) counts.append(String.valueOf(i), buckets[i]);
+            }
+
+            return new Document("count", count)
+                .append("sum", sum)
+                .append("max", max)
+                .append("buckets", counts);
+        }
+
+        /**
+         * Add the buckets of a histogram to another histogram.
+         *
+         * @param target    The histogram to add to. It is modified in place.
+         * @param histogram The histogram to add.
+         * @return the target.
+         */
+        static Document merge(Document target, Document histogram) {
+            target.put("count", toLong(target.get("count")) + toLong(histogram.get("count")));
+            target.put("sum", toLong(target.get("sum")) + toLong(histogram.get("sum")));
+            target.put("max", Math.max(toLong(target.get("max")), toLong(histogram.get("max"))));
+
+            Document counts = target.get("buckets", new Document());
+            histogram.get("buckets", new Document()).forEach((bucket, count) ->
+                counts.put(bucket, toLong(counts.get(bucket)) + toLong(count)));
+            target.put("buckets", counts);
+            return target;
+        }
+
+        /**
+         * Compute the mean and the 50th, 95th and 99th percentile of a histogram.
+         *
+         * @param histogram The histogram in the format of {@link #toDocument()}.
+         * @return the histogram.
+         */
+        static Document summarize(Document histogram) {
+            long count = toLong(histogram.get("count"));
+            long[] counts = new long[BUCKETS];
+            histogram.get("buckets", new Document()).forEach((bucket, value) -> {
+                int index = Integer.parseInt(bucket);
+                if (index >= 0 && index < BUCKETS) counts[index] = toLong(value);
+            });
+
+            histogram.put("mean", count > 0 ? (double) toLong(histogram.get("sum")) / count : 0.0);
+            histogram.put("p50", percentile(counts, count, toLong(histogram.get("max")), 0.50));
+            histogram.put("p95", percentile(counts, count, toLong(histogram.get("max")), 0.95));
+            histogram.put("p99", percentile(counts, count, toLong(histogram.get("max")), 0.99));
+            return histogram;
+        }
+
+        private static long percentile(long[] counts, long count, long max, double quantile) {
+            if (count == 0) return 0;
+
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(max, upperBound(i));
+            }
+            return max;
+        }
+
+        private static int bucket(long value) {
+            if (value <= 1) return 0;
+            return (int) Math.min(BUCKETS - 1, Math.ceil(Math.log(value) / Math.log(GROWTH)));
+        }
+
+        private static long upperBound(int bucket) {
+            return (long) Math.ceil(Math.pow(GROWTH, bucket));
+        }
+    }
+}
@@ -9,15 +9,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.Vector;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.bson.Document;
@@ -27,23 +27,30 @@ import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.DUUILoc
 import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.IDUUIDocumentHandler;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.IDUUIFolderPickerApi;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.DUUIDocumentReader;
-import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIEvent;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
 import org.texttechnologylab.duui.analysis.document.DUUIDocumentProvider;
 import org.texttechnologylab.duui.analysis.document.Provider;
 import org.texttechnologylab.duui.api.Main;
+import org.texttechnologylab.duui.api.controllers.components.DUUIComponentCache;
 import org.texttechnologylab.duui.api.controllers.documents.DUUIDocumentController;
 import org.texttechnologylab.duui.api.controllers.events.DUUIEventController;
 import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineController;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineInstantiation;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePool;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineStatisticsController;
 import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
 import org.texttechnologylab.duui.api.controllers.users.DUUIUserController;
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
 import org.texttechnologylab.duui.api.metrics.providers.DUUIProcessMetrics;
 
 import com.dropbox.core.DbxException;
 import com.dropbox.core.v2.files.WriteMode;
 
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
 
 /**
  * The default ProcessHandler implementing the {@link IDUUIProcessHandler} interface.
@@ -108,6 +115,11 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
      */
     private DUUIDocumentReader collectionReader;
 
+    /**
+     * Processes the documents in batches if batching is enabled for the process, otherwise null.
+     */
+    private DUUIDocumentBatcher batcher;
+
     /**
      * Flag indicating whether to delete the input directory after processing.
      */
@@ -128,6 +140,47 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
      */
     private final boolean shutdownOnExit;
 
+    /**
+     * The leased replica of a started pipeline or null if the pipeline is instantiated for this process.
+     */
+    private final DUUIPipelinePool.Lease lease;
+
+    /**
+     * The pipeline instantiated for this process or null if a replica is leased.
+     */
+    private volatile DUUIPipelineInstantiation instantiation;
+
+    /**
+     * The interval in milliseconds in which the process is updated.
+     */
+    private static final long UPDATE_INTERVAL = 2000;
+
+    /**
+     * The performance profile that is updated together with the process.
+     */
+    private final DUUIProcessProfile profile = new DUUIProcessProfile(UPDATE_INTERVAL);
+
+    /**
+     * Guards the per pipeline metrics so that no update is reported after the process has been removed.
+     */
+    private final Object metricsLock = new Object();
+
+    /**
+     * Set once the process has been removed from the per pipeline metrics.
+     */
+    private boolean metricsRemoved = false;
+
+    /**
+     * The trace context of the caller that started the process.
+     */
+    private final Context traceContext = Context.current();
+
+    /**
+     * The context of the span covering the whole process. The stages and updates of the process are
+     * recorded as its children.
+     */
+    private volatile Context processContext = traceContext;
+
     /**
      * Run a process using the specified settings and pipeline. The pipeline is instantiated specifically
      * for this process.
@@ -149,28 +202,31 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
             .withSkipVerification(true)
             .withDebugLevel(DUUIComposer.DebugLevel.DEBUG)
             .withIgnoreErrors(ignoreErrors)
+            .asService(true)
 //            TODO versions of DUUI and API are incompatible
 //            .withStorageBackend(
 //                new DUUIMongoDBStorageBackend(
 //                    DUUIMongoDBStorage.getConnectionURI()))
-            .withLuaContext(new DUUILuaContext().withJsonLibrary());
+            .withLuaContext(DUUIComponentCache.getLuaContext());
 
         updater = Executors
             .newScheduledThreadPool(1)
-            .scheduleAtFixedRate(this::update, 0, 2, TimeUnit.SECONDS);
+            .scheduleAtFixedRate(this::update, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
 
         shutdownOnExit = true;
+        lease = null;
+        setName("duui-process-" + getProcessID());
         start();
     }
 
     /**
-     * Run a process using the specified settings and pipeline. The pipeline is not instantiated but an
-     * instantiated pipeline must be passed in the constructor.
+     * Run a process using the specified settings and pipeline. The pipeline is not instantiated but a
+     * replica is leased from the {@link DUUIPipelinePool} and returned when the process exits.
      *
-     * @param process              A {@link Document} containing process relevant information.
-     * @param pipeline             A {@link Document} containing information about the pipeline to be executed by the process.
-     * @param settings             A {@link Document} containing process specific settings that alter its behavior.
-     * @param instantiatedPipeline A {@link Vector} holding the instantiated pipeline.
+     * @param process  A {@link Document} containing process relevant information.
+     * @param pipeline A {@link Document} containing information about the pipeline to be executed by the process.
+     * @param settings A {@link Document} containing process specific settings that alter its behavior.
+     * @param lease    The lease of an instantiated replica of the pipeline.
      * @throws URISyntaxException Thrown when the minimal TypeSystem can not be loaded.
      * @throws IOException        Thrown when the Lua Json Library can not be loaded.
      */
@@ -178,15 +234,16 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
         Document pipeline,
         Document process,
         Document settings,
-        Vector<DUUIComposer.PipelinePart> instantiatedPipeline) throws URISyntaxException, IOException {
+        DUUIPipelinePool.Lease lease) throws URISyntaxException, IOException {
         this.pipeline = pipeline;
+        this.lease = lease;
 
         composer = new DUUIComposer()
-            .withInstantiatedPipeline(instantiatedPipeline)
+            .withInstantiatedPipeline(lease.getInstantiatedPipeline())
             .withSkipVerification(true)
             .withDebugLevel(DUUIComposer.DebugLevel.DEBUG)
             .asService(true)
-            .withLuaContext(new DUUILuaContext().withJsonLibrary());
+            .withLuaContext(DUUIComponentCache.getLuaContext());
 
         this.process = process;
         this.settings = settings;
@@ -196,9 +253,10 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
 
         updater = Executors
             .newScheduledThreadPool(1)
-            .scheduleAtFixedRate(this::update, 0, 2, TimeUnit.SECONDS);
+            .scheduleAtFixedRate(this::update, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
 
         shutdownOnExit = false;
+        setName("duui-process-" + getProcessID());
         start();
     }
 
@@ -208,6 +266,13 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
      */
     @Override
     public void startInput() {
+        DUUITracing.run(startSpan("process.input"), this::readInput);
+    }
+
+    /**
+     * See {@link #startInput()}.
+     */
+    private void readInput() {
         DUUIProcessController.setStatus(getProcessID(), DUUIStatus.INPUT);
         status = DUUIStatus.INPUT;
 
@@ -289,6 +354,9 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
         }
 
         try {
+            DUUIDocumentScheduler.Policy scheduling = DUUIDocumentScheduler.Policy.fromSettings(settings);
+            profile.setScheduling(scheduling.getName());
+
             DUUIDocumentReader.Builder builder = new DUUIDocumentReader
                     .Builder(composer);
 
@@ -307,13 +375,25 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
                 .withAddMetadata(true)
                 .withLanguage(DUUIProcessController.getLanguageCode(settings.getString("language")))
                 .withMinimumDocumentSize(Math.max(0, Math.min(Integer.MAX_VALUE, settings.getInteger("minimum_size"))))
-                .withSortBySize(settings.getBoolean("sort_by_size", false))
+                .withSortBySize(scheduling == DUUIDocumentScheduler.Policy.SHORTEST_FIRST)
                 .withCheckTarget(settings.getBoolean("check_target", false))
                 .withRecursive(settings.getBoolean("recursive", false))
                 .build();
 
             DUUIProcessController.setDocumentPaths(getProcessID(), composer.getDocumentPaths());
 
+            if (DUUIDocumentBatcher.isEnabled(settings, pipeline, input)) {
+                batcher = new DUUIDocumentBatcher(
+                    composer,
+                    inputHandler,
+                    outputHandler,
+                    input,
+                    output,
+                    settings,
+                    pipeline,
+                    lease);
+            }
+
             if (composer.getDocuments().isEmpty()) {
                 onCompletion();
                 exit();
@@ -336,7 +416,8 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
     @Override
     public void processText() {
         try {
-            JCas cas = JCasFactory.createText(input.getContent());
+            JCas cas = DUUIComponentCache.createJCas();
+            cas.setDocumentText(input.getContent());
 
             String processIdentifier = String.format(
                 "%s_%s",
@@ -372,13 +453,24 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
      */
     @Override
     public void process() {
+        DUUITracing.run(startSpan("process.run"), this::runComposer);
+    }
+
+    /**
+     * See {@link #process()}.
+     */
+    private void runComposer() {
         String processIdentifier = String.format(
             "%s_%s",
             pipeline.getString("name"),
             process.getLong("started_at")
         );
         try {
-            composer.run(collectionReader, processIdentifier);
+            if (batcher != null) {
+                batcher.run(composer.getDocuments(), threadCount, processIdentifier);
+            } else {
+                composer.run(collectionReader, processIdentifier);
+            }
         } catch (InterruptedException ignored) {
             status = DUUIStatus.CANCELLED;
         } catch (Exception exception) {
@@ -393,14 +485,64 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
     @Override
     public void update() {
         if (composer == null) return;
+        DUUITracing.run(startSpan("process.update"), this::updateProcess);
+    }
+
+    /**
+     * See {@link #update()}.
+     */
+    private void updateProcess() {
+        Map<String, String> pipelineStatus = composer.getPipelineStatus();
+        profile.sample(pipelineStatus);
+        profile.observe(composer.getDocuments());
+        if (batcher != null) profile.setSpeculation(batcher.getSpeculation());
+        updateMetrics(pipelineStatus);
 
         DUUIProcessController.updatePipelineStatus(getProcessID(), composer.getPipelineStatus());
-        DUUIProcessController.setProgress(getProcessID(), composer.getProgress());
+        DUUIProcessController.setProgress(
+            getProcessID(),
+            batcher != null ? batcher.getProgress() : composer.getProgress());
         DUUIDocumentController.updateMany(getProcessID(), composer.getDocuments());
         DUUIEventController.insertMany(getProcessID(), composer.getEvents());
         DUUIProcessController.insertAnnotations(getProcessID(), composer.getDocuments());
     }
 
+    /**
+     * Report the throughput and the number of queued documents and busy components to the per pipeline
+     * metrics. The values are taken from the composer and the profile, not from the database.
+     *
+     * @param pipelineStatus The status of every component.
+     */
+    private void updateMetrics(Map<String, String> pipelineStatus) {
+        Map<String, Long> queued = composer
+            .getDocuments()
+            .stream()
+            .filter(document -> !document.isFinished())
+            .collect(Collectors.groupingBy(
+                document -> Objects.requireNonNullElse(document.getStatus(), DUUIStatus.INACTIVE),
+                Collectors.counting()));
+
+        Map<String, Long> components = pipelineStatus == null ? Map.of() : pipelineStatus
+            .values()
+            .stream()
+            .collect(Collectors.groupingBy(
+                status -> Objects.requireNonNullElse(status, DUUIStatus.INACTIVE),
+                Collectors.counting()));
+
+        synchronized (metricsLock) {
+            if (metricsRemoved) return;
+
+            DUUIProcessMetrics.updateProcess(
+                getProcessID(),
+                lease != null ? getPipelineID() : null,
+                profile.getDocuments(),
+                profile.getFailed(),
+                profile.getBytes(),
+                queued,
+                components);
+        }
+    }
+
     /**
      * Handles exceptions that occur during the process.
      *
@@ -408,6 +550,8 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
      */
     @Override
     public void onException(Exception exception) {
+        DUUITracing.fail(Span.fromContext(processContext), exception);
+
         DUUIProcessController.setStatus(getProcessID(), DUUIStatus.FAILED);
         DUUIProcessController.setError(
             getProcessID(),
@@ -495,6 +639,13 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
      */
     @Override
     public void exit() {
+        DUUITracing.run(startSpan("process.exit"), this::cleanUp);
+    }
+
+    /**
+     * See {@link #exit()}.
+     */
+    private void cleanUp() {
         DUUIProcessMetrics.decrementActiveProcesses();
 
         deleteTemporaryInputDirectory();
@@ -515,7 +666,8 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
             DUUIProcessMetrics.decrementThreads(threadCount);
 
             try {
-                composer.asService(!shutdownOnExit).shutdown();
+                composer.shutdown();
+                if (shutdownOnExit && instantiation != null) instantiation.shutdown();
                 update();
 
             } catch (UnknownHostException | NullPointerException ignored) {
@@ -526,6 +678,10 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
             DUUIEventController.insertMany(getProcessID(), composer.getEvents());
             DUUIProcessController.insertAnnotations(getProcessID(), composer.getDocuments());
 
+            profile.observe(composer.getDocuments());
+            updateMetrics(composer.getPipelineStatus());
+            DUUIProcessController.setProfile(getProcessID(), profile.toDocument());
+
             // TODO: Add a method to the DUUIComposer to remove the installed shutdown hook...
         }
 
@@ -533,6 +689,15 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
             updater.cancel(true);
         }
 
+        synchronized (metricsLock) {
+            metricsRemoved = true;
+            DUUIProcessMetrics.removeProcess(getProcessID());
+        }
+
+        if (lease != null) lease.release();
+
+        DUUIPipelineStatisticsController.record(getProcessID());
+
         try {
             Optional<String> emailContent = DUUIProcessController.getProcessSummaryForEmail(getProcessID());
             if (emailContent.isPresent()) {
@@ -608,12 +773,43 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
     }
 
     /**
-     * Returns the composer.
+     * Returns the performance profile of the process.
      *
-     * @return The composer.
+     * @return The profile.
+     */
+    @Override
+    public Document getProfile() {
+        if (composer != null) profile.observe(composer.getDocuments());
+        return profile.toDocument();
+    }
+
+    /**
+     * Start a span for a stage of the process as child of the process span.
+     *
+     * @param name The name of the span.
+     * @return the started span.
+     */
+    private Span startSpan(String name) {
+        return DUUITracing.startSpan(name, SpanKind.INTERNAL, processContext);
+    }
+
+    /**
+     * Runs the process in a span that continues the trace of the caller.
      */
     @Override
     public void run() {
+        Span span = DUUITracing.startSpan("process", SpanKind.INTERNAL, traceContext);
+        span.setAttribute("duui.process.id", getProcessID());
+        span.setAttribute("duui.pipeline.id", getPipelineID());
+        processContext = traceContext.with(span);
+
+        DUUITracing.run(span, this::execute);
+    }
+
+    /**
+     * See {@link #run()}.
+     */
+    private void execute() {
         DUUIProcessMetrics.incrementActiveProcesses();
 
         startInput();
@@ -622,8 +818,15 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
         if (shutdownOnExit) {
             DUUIProcessController.setStatus(getProcessID(), DUUIStatus.SETUP);
             try {
-                DUUIPipelineController.setupDrivers(composer, pipeline);
-                DUUIPipelineController.setupComponents(composer, pipeline);
+                instantiation = DUUIPipelineController.instantiatePipeline(pipeline);
+                composer.withInstantiatedPipeline(instantiation.getInstantiatedPipeline());
+                composer.addEvent(
+                    DUUIEvent.Sender.COMPOSER,
+                    String.format("Instantiated %d components in %d ms (critical path %d ms)",
+                        pipeline.getList("components", Document.class).size(),
+                        instantiation.getDuration(),
+                        instantiation.getCriticalPath()));
+                DUUIProcessController.setInstantiation(getProcessID(), instantiation.toDocument());
             } catch (Exception exception) {
                 onException(exception);
             }
@@ -655,7 +858,9 @@ public class DUUISimpleProcessHandler extends Thread implements IDUUIProcessHand
         // Start processing
         process();
 
-        DUUIProcessController.setInstantiationDuration(getProcessID(), composer.getInstantiationDuration());
+        DUUIProcessController.setInstantiationDuration(
+            getProcessID(),
+            instantiation == null ? composer.getInstantiationDuration() : instantiation.getDuration());
 
         if (status.equals(DUUIStatus.CANCELLED)) {
             exit();
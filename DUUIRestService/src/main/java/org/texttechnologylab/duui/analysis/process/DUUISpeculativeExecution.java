@@ -0,0 +1,426 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIEvent;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePool;
+
+/**
+ * Re-executes documents that take much longer than the others (stragglers) and uses whichever execution
+ * finishes first.
+ * <p>
+ * A hanging or slow component instance keeps a document active until the driver times out (an hour for
+ * Docker). While a process runs, the durations of finished executions are collected, both absolute and per
+ * kilobyte. Once enough executions have finished, an execution is considered a straggler if it has been
+ * running for more than {@link #FACTOR} times the 95th percentile of the durations, or of the expected
+ * duration for its size, and at least {@link #MIN_THRESHOLD} milliseconds. A straggler is started a second
+ * time on another replica of the pipeline if one is ready in the {@link DUUIPipelinePool} that shares no
+ * component instance with the replica of the process. Otherwise it is started on the composer of the process
+ * only if a component has more than one instance (scale), since the composer sends it to another instance of
+ * such a component while the instance processing the straggler is busy. With a single instance per component
+ * the second execution would queue behind the straggler, so it is not started. The first result is used and
+ * the other execution is interrupted.
+ * <p>
+ * The number of executions that are started again is limited per process (speculation_limit as a share of
+ * all executions) and so is the number of speculative executions running at the same time, so that a bad
+ * replica can not flood the pipeline with duplicate work.
+ *
+ * @param <R> The result of an execution.
+ */
+public class DUUISpeculativeExecution<R> {
+
+    /**
+     * How many times longer than the 95th percentile an execution must run to be a straggler.
+     */
+    private static final int FACTOR = 3;
+
+    /**
+     * The minimum time in milliseconds an execution must run to be a straggler.
+     */
+    private static final long MIN_THRESHOLD = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The number of executions that must have finished before stragglers are detected.
+     */
+    private static final int MIN_SAMPLES = 10;
+
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private final DUUIComposer composer;
+
+    private final DUUIPipelinePool.Lease lease;
+
+    private final int limit;
+
+    private final int concurrency;
+
+    private final long minThreshold;
+
+    /**
+     * Whether a component of the pipeline has more than one instance.
+     */
+    private final boolean scaled;
+
+    /**
+     * The durations of finished executions in milliseconds.
+     */
+    private final DUUIProcessProfile.Histogram durations = new DUUIProcessProfile.Histogram();
+
+    /**
+     * The durations of finished executions in microseconds per kilobyte.
+     */
+    private final DUUIProcessProfile.Histogram rates = new DUUIProcessProfile.Histogram();
+
+    private final Set<Attempt> running = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor;
+
+    private final ScheduledExecutorService monitor;
+
+    private final AtomicInteger started = new AtomicInteger(0);
+
+    private final AtomicInteger active = new AtomicInteger(0);
+
+    private final AtomicInteger won = new AtomicInteger(0);
+
+    private final AtomicInteger replicas = new AtomicInteger(0);
+
+    /**
+     * An execution of the pipeline on a composer.
+     *
+     * @param <R> The result of the execution.
+     */
+    @FunctionalInterface
+    public interface Execution<R> {
+
+        /**
+         * Run the pipeline.
+         *
+         * @param composer The composer to run the pipeline on.
+         * @return the result.
+         */
+        R run(DUUIComposer composer) throws Exception;
+    }
+
+    /**
+     * A unit of work that is executed once or, if it straggles, twice.
+     */
+    private class Attempt {
+
+        private final String name;
+
+        private final long bytes;
+
+        private final Execution<R> execution;
+
+        private final long startedAt = System.currentTimeMillis();
+
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        /**
+         * The number of executions that have not finished. Guarded by the attempt.
+         */
+        private int pending = 0;
+
+        private boolean speculated = false;
+
+        private Attempt(String name, long bytes, Execution<R> execution) {
+            this.name = name;
+            this.bytes = bytes;
+            this.execution = execution;
+        }
+
+        /**
+         * Run the execution on a composer in the background. The first successful result completes the
+         * attempt, it fails if all executions have failed.
+         *
+         * @param target      The composer.
+         * @param speculative Whether this is the speculative execution.
+         * @param onFinished  Called after the execution has finished.
+         */
+        private synchronized void submit(DUUIComposer target, boolean speculative, Runnable onFinished) {
+            if (result.isDone()) {
+                onFinished.run();
+                return;
+            }
+
+            pending++;
+            futures.add(executor.submit(() -> {
+                try {
+                    R value = execution.run(target);
+                    if (result.complete(value) && speculative) won.incrementAndGet();
+                } catch (Exception exception) {
+                    synchronized (this) {
+                        if (--pending == 0) result.completeExceptionally(exception);
+                    }
+                    return;
+                } finally {
+                    onFinished.run();
+                }
+
+                synchronized (this) {
+                    pending--;
+                }
+            }));
+        }
+
+        private synchronized void cancel() {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Create the speculative execution of a process.
+     *
+     * @param composer    The composer of the process.
+     * @param lease       The replica leased by the process if the pipeline has been started, i.e. if other
+     *                    replicas may be leased, otherwise null.
+     * @param components  The components (MongoDB {@link Document}) as they have been instantiated for the
+     *                    process.
+     * @param limit       The maximum number of executions that are started again.
+     * @param concurrency The maximum number of speculative executions running at the same time.
+     */
+    public DUUISpeculativeExecution(
+        DUUIComposer composer,
+        DUUIPipelinePool.Lease lease,
+        List<Document> components,
+        int limit,
+        int concurrency) {
+        this(composer, lease, components, limit, concurrency, MIN_THRESHOLD);
+    }
+
+    /**
+     * Create the speculative execution of a process with a different minimum time after which an execution
+     * is a straggler.
+     *
+     * @param composer     The composer of the process.
+     * @param lease        The replica leased by the process or null.
+     * @param components   The components as they have been instantiated for the process.
+     * @param limit        The maximum number of executions that are started again.
+     * @param concurrency  The maximum number of speculative executions running at the same time.
+     * @param minThreshold The minimum time in milliseconds an execution must run to be a straggler.
+     */
+    DUUISpeculativeExecution(
+        DUUIComposer composer,
+        DUUIPipelinePool.Lease lease,
+        List<Document> components,
+        int limit,
+        int concurrency,
+        long minThreshold) {
+        this.composer = composer;
+        this.lease = lease;
+        this.scaled = isScaled(components);
+        this.limit = Math.max(0, limit);
+        this.concurrency = Math.max(1, concurrency);
+        this.minThreshold = minThreshold;
+
+        AtomicInteger index = new AtomicInteger(0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "duui-execution-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "duui-speculation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitor.scheduleWithFixedDelay(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run an execution and wait for its result. If it straggles, it is started again and the first result
+     * is returned.
+     *
+     * @param name      The name of the execution used in events.
+     * @param bytes     The size of the processed documents.
+     * @param execution The execution.
+     * @return the first result.
+     * @throws Exception the exception of the last execution if all have failed.
+     */
+    public R execute(String name, long bytes, Execution<R> execution) throws Exception {
+        Attempt attempt = new Attempt(name, bytes, execution);
+        running.add(attempt);
+
+        try {
+            attempt.submit(composer, false, () -> {});
+            R value = attempt.result.get();
+            record(attempt);
+            return value;
+        } catch (ExecutionException exception) {
+            throw exception.getCause() instanceof Exception cause ? cause : exception;
+        } finally {
+            running.remove(attempt);
+            attempt.cancel();
+        }
+    }
+
+    /**
+     * @return the number of speculative executions started, the number of them started on another replica
+     * and the number of them that finished first.
+     */
+    public Document toDocument() {
+        return new Document("started", started.get())
+            .append("replicas", replicas.get())
+            .append("won", won.get())
+            .append("limit", limit);
+    }
+
+    /**
+     * Stop detecting stragglers and interrupt all executions still running.
+     */
+    public void shutdown() {
+        monitor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Add the duration of a finished attempt to the distributions.
+     *
+     * @param attempt The attempt.
+     */
+    private void record(Attempt attempt) {
+        long duration = System.currentTimeMillis() - attempt.startedAt;
+        synchronized (durations) {
+            durations.add(duration);
+            rates.add(duration * 1000 / Math.max(1, attempt.bytes / 1024));
+        }
+    }
+
+    /**
+     * Start the running stragglers again as long as the limits allow it.
+     */
+    private void check() {
+        // Without another replica or another instance of a component a straggler can not be overtaken.
+        if (lease == null && !scaled) return;
+
+        long now = System.currentTimeMillis();
+
+        for (Attempt attempt : running) {
+            if (started.get() >= limit) return;
+            if (active.get() >= concurrency) return;
+
+            long threshold = getThreshold(attempt.bytes);
+            if (threshold < 0 || now - attempt.startedAt < threshold) continue;
+
+            synchronized (attempt) {
+                if (attempt.speculated || attempt.result.isDone() || attempt.pending == 0) continue;
+            }
+
+            DUUIPipelinePool.Lease other = leaseOther();
+            DUUIComposer target = scaled ? composer : null;
+            if (other != null) {
+                try {
+                    target = other.getComposer();
+                } catch (Exception exception) {
+                    other.release();
+                    other = null;
+                }
+            }
+
+            // If no replica is free yet, the pool may have grown by the next check.
+            if (target == null) continue;
+
+            synchronized (attempt) {
+                attempt.speculated = true;
+            }
+
+            speculate(attempt, target, other, now - attempt.startedAt, threshold);
+        }
+    }
+
+    /**
+     * Lease another replica of the pipeline that shares no component instance with the replica of the
+     * process.
+     *
+     * @return the lease or null if there is none.
+     */
+    private DUUIPipelinePool.Lease leaseOther() {
+        DUUIPipelinePool.Lease other = lease == null ? null : DUUIPipelinePool.leaseOther(lease);
+        if (other == null) return null;
+
+        if (!other.sharesInstancesWith(lease)) return other;
+
+        other.release();
+        return null;
+    }
+
+    /**
+     * Start an attempt again.
+     *
+     * @param attempt   The straggling attempt.
+     * @param target    The composer of another replica or of the process.
+     * @param other     The lease of the other replica or null.
+     * @param elapsed   The time the attempt has been running for.
+     * @param threshold The time after which it has been considered a straggler.
+     */
+    private void speculate(
+        Attempt attempt,
+        DUUIComposer target,
+        DUUIPipelinePool.Lease other,
+        long elapsed,
+        long threshold) {
+        started.incrementAndGet();
+        if (other != null) replicas.incrementAndGet();
+        active.incrementAndGet();
+        composer.addEvent(
+            DUUIEvent.Sender.COMPOSER,
+            String.format("%s has been running for %d ms (threshold %d ms), starting it again%s",
+                attempt.name, elapsed, threshold, other != null ? " on another replica" : ""));
+
+        attempt.submit(target, true, () -> {
+            active.decrementAndGet();
+            if (other != null) other.release();
+        });
+    }
+
+    /**
+     * @param components The components (MongoDB {@link Document}) of the pipeline.
+     * @return if a component has more than one instance.
+     */
+    static boolean isScaled(List<Document> components) {
+        if (components == null) return false;
+
+        for (Document component : components) {
+            Document options = component.get("options", Document.class);
+            if (options == null) continue;
+
+            try {
+                if (Integer.parseInt(options.getOrDefault("scale", "1").toString()) > 1) return true;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param bytes The size of the documents of an execution.
+     * @return the time in milliseconds after which an execution is a straggler or -1 if not enough
+     * executions have finished.
+     */
+    long getThreshold(long bytes) {
+        synchronized (durations) {
+            if (durations.getCount() < MIN_SAMPLES) return -1;
+
+            long byDuration = durations.getPercentile(0.95);
+            long bySize = rates.getPercentile(0.95) * Math.max(1, bytes / 1024) / 1000;
+            return Math.max(minThreshold, FACTOR * Math.max(byDuration, bySize));
+        }
+    }
+}
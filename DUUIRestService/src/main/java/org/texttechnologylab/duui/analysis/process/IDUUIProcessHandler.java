@@ -91,4 +91,11 @@ public interface IDUUIProcessHandler extends Runnable {
      * @return one of {@link org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus}
      */
     String getStatus();
+
+    /**
+     * Retrieves the performance profile of the process.
+     *
+     * @return the profile as a {@link org.bson.Document} (see {@link DUUIProcessProfile#toDocument()}).
+     */
+    org.bson.Document getProfile();
 }
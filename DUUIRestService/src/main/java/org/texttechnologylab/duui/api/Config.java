@@ -47,6 +47,12 @@ public class Config {
         }
     }
 
+    private Integer getInteger(String sKey) {
+        String value = getValue(sKey, null);
+        if (value == null || value.isBlank()) return null;
+        return Integer.parseInt(value.trim());
+    }
+
     public String getMongoDBConnectionString() {
         return getValue("MONGO_DB_CONNECTION_STRING", null);
     }
@@ -71,6 +77,293 @@ public class Config {
         return getValue("MONGO_PASSWORD", null);
     }
 
+    public Integer getMongoMaxPoolSize() {
+        return getInteger("MONGO_MAX_POOL_SIZE");
+    }
+
+    public Integer getMongoMinPoolSize() {
+        return getInteger("MONGO_MIN_POOL_SIZE");
+    }
+
+    public Integer getMongoMaxWaitTime() {
+        return getInteger("MONGO_MAX_WAIT_TIME_MS");
+    }
+
+    public Integer getMongoMaxConnectionIdleTime() {
+        return getInteger("MONGO_MAX_CONNECTION_IDLE_TIME_MS");
+    }
+
+    /**
+     * @return a comma separated list of wire protocol compressors (zstd, snappy, zlib) or null.
+     */
+    public String getMongoCompressors() {
+        return getValue("MONGO_COMPRESSORS", null);
+    }
+
+    /**
+     * @return the read preference for all reads (e.g. primary, primaryPreferred) or null.
+     */
+    public String getMongoReadPreference() {
+        return getValue("MONGO_READ_PREFERENCE", null);
+    }
+
+    /**
+     * @return the read concern level for all reads (e.g. local, majority) or null.
+     */
+    public String getMongoReadConcern() {
+        return getValue("MONGO_READ_CONCERN", null);
+    }
+
+    /**
+     * @return the read preference for dashboard, list and statistics reads (e.g. secondaryPreferred) or null
+     * to use the read preference for all reads.
+     */
+    public String getMongoAnalyticsReadPreference() {
+        return getValue("MONGO_ANALYTICS_READ_PREFERENCE", null);
+    }
+
+    /**
+     * @return the read concern level for dashboard, list and statistics reads or null to use the read
+     * concern for all reads.
+     */
+    public String getMongoAnalyticsReadConcern() {
+        return getValue("MONGO_ANALYTICS_READ_CONCERN", null);
+    }
+
+    /**
+     * @return the duration in milliseconds after which a database command is logged as slow.
+     */
+    public int getMongoSlowCommandThreshold() {
+        return Integer.parseInt(getValue("MONGO_SLOW_COMMAND_MS", "500"));
+    }
+
+    /**
+     * @return if the size of database commands and replies should be measured. This requires encoding them
+     * a second time.
+     */
+    public boolean getMongoCommandSizeMetrics() {
+        return Boolean.parseBoolean(getValue("MONGO_COMMAND_SIZE_METRICS", "false"));
+    }
+
+    /**
+     * @return the fraction (0.0 - 1.0) of successful requests written to the access log. Failed requests
+     * (status 400 and above) are always logged.
+     */
+    public double getAccessLogSampleRate() {
+        return Double.parseDouble(getValue("ACCESS_LOG_SAMPLE_RATE", "1.0"));
+    }
+
+    /**
+     * @return the level (trace, debug, info, warn, error or off) requests are logged at by default.
+     */
+    public String getAccessLogLevel() {
+        return getValue("ACCESS_LOG_LEVEL", "info");
+    }
+
+    /**
+     * @return a semicolon separated list of path prefixes and levels overriding the default level
+     * (e.g. /alive=off;/processes=debug).
+     */
+    public String getAccessLogRoutes() {
+        return getValue("ACCESS_LOG_ROUTES", "/alive=off");
+    }
+
+    /**
+     * @return if JFR events (allocations, safepoints) should be streamed into the metrics.
+     */
+    public boolean getJfrMetrics() {
+        return Boolean.parseBoolean(getValue("JFR_METRICS", "true"));
+    }
+
+    /**
+     * @return if a continuous low overhead JFR recording should be kept for flame graphs.
+     */
+    public boolean getProfilingContinuous() {
+        return Boolean.parseBoolean(getValue("PROFILING_CONTINUOUS", "true"));
+    }
+
+    /**
+     * @return the number of minutes the continuous recording keeps.
+     */
+    public int getProfilingMaxAgeMinutes() {
+        return Integer.parseInt(getValue("PROFILING_MAX_AGE_MINUTES", "15"));
+    }
+
+    /**
+     * @return the maximum duration of an on-demand recording in minutes.
+     */
+    public int getProfilingMaxDurationMinutes() {
+        return Integer.parseInt(getValue("PROFILING_MAX_DURATION_MINUTES", "30"));
+    }
+
+    /**
+     * @return the maximum size of a recording in megabytes.
+     */
+    public int getProfilingMaxSizeMb() {
+        return Integer.parseInt(getValue("PROFILING_MAX_SIZE_MB", "256"));
+    }
+
+    /**
+     * @return the number of milliseconds a rendered scrape is reused for.
+     */
+    public long getMetricsCacheMillis() {
+        return Long.parseLong(getValue("METRICS_CACHE_MS", "1000"));
+    }
+
+    /**
+     * @return the address (host:port) of a Prometheus Pushgateway metrics are pushed to or null.
+     */
+    public String getMetricsPushGateway() {
+        return getValue("METRICS_PUSHGATEWAY", null);
+    }
+
+    /**
+     * @return the job name used when pushing metrics.
+     */
+    public String getMetricsPushJob() {
+        return getValue("METRICS_PUSH_JOB", "duui-gateway");
+    }
+
+    /**
+     * @return the number of seconds between two pushes.
+     */
+    public int getMetricsPushIntervalSeconds() {
+        return Integer.parseInt(getValue("METRICS_PUSH_INTERVAL_SECONDS", "15"));
+    }
+
+    /**
+     * @return the exporter for traces (none, logging, memory or otlp).
+     */
+    public String getTracingExporter() {
+        return getValue("TRACING_EXPORTER", "none");
+    }
+
+    /**
+     * @return the OTLP/HTTP endpoint traces are sent to if the exporter is otlp.
+     */
+    public String getTracingOtlpEndpoint() {
+        return getValue("TRACING_OTLP_ENDPOINT", "http://localhost:4318/v1/traces");
+    }
+
+    /**
+     * @return the fraction (0.0 - 1.0) of new traces that are recorded.
+     */
+    public double getTracingSampleRatio() {
+        return Double.parseDouble(getValue("TRACING_SAMPLE_RATIO", "1.0"));
+    }
+
+    /**
+     * @return the number of finished spans kept if the exporter is memory.
+     */
+    public int getTracingMemorySpans() {
+        return Integer.parseInt(getValue("TRACING_MEMORY_SPANS", "10000"));
+    }
+
+    /**
+     * @return the number of replicas kept warm for every started pipeline.
+     */
+    public int getPipelinePoolMinReplicas() {
+        return Integer.parseInt(getValue("PIPELINE_POOL_MIN_REPLICAS", "1"));
+    }
+
+    /**
+     * @return the maximum number of replicas of a started pipeline.
+     */
+    public int getPipelinePoolMaxReplicas() {
+        return Integer.parseInt(getValue("PIPELINE_POOL_MAX_REPLICAS", "2"));
+    }
+
+    /**
+     * @return the number of minutes after which an unused replica above the minimum is shut down.
+     */
+    public int getPipelinePoolIdleTimeoutMinutes() {
+        return Integer.parseInt(getValue("PIPELINE_POOL_IDLE_TIMEOUT_MINUTES", "30"));
+    }
+
+    /**
+     * @return the maximum number of component instances kept warm by the pipeline pre-warmer (0 disables it).
+     */
+    public int getPipelinePrewarmBudget() {
+        return Integer.parseInt(getValue("PIPELINE_PREWARM_BUDGET", "0"));
+    }
+
+    /**
+     * @return the expected number of process starts within the next hour above which a pipeline is pre-warmed.
+     */
+    public double getPipelinePrewarmThreshold() {
+        return Double.parseDouble(getValue("PIPELINE_PREWARM_THRESHOLD", "1.0"));
+    }
+
+    /**
+     * @return the number of minutes without a process start after which a pre-warmed pipeline is shut down.
+     */
+    public int getPipelinePrewarmIdleMinutes() {
+        return Integer.parseInt(getValue("PIPELINE_PREWARM_IDLE_MINUTES", "60"));
+    }
+
+    /**
+     * @return the number of pipeline components that are instantiated at the same time.
+     */
+    public int getPipelineInstantiationParallelism() {
+        return Integer.parseInt(getValue("PIPELINE_INSTANTIATION_PARALLELISM", "4"));
+    }
+
+    /**
+     * @return the maximum number of idle drivers kept per container runtime for reuse.
+     */
+    public int getDriverPoolSize() {
+        return Integer.parseInt(getValue("DRIVER_POOL_SIZE", "4"));
+    }
+
+    /**
+     * @return the number of seconds between two health checks of the container runtimes.
+     */
+    public int getDriverHealthIntervalSeconds() {
+        return Integer.parseInt(getValue("DRIVER_HEALTH_INTERVAL_SECONDS", "30"));
+    }
+
+    /**
+     * @return whether identical components of different pipelines share their instances.
+     */
+    public boolean isComponentSharingEnabled() {
+        return Boolean.parseBoolean(getValue("COMPONENT_SHARING", "true"));
+    }
+
+    /**
+     * @return the number of pipelines an instance of a component is shared by before another one is started.
+     */
+    public int getComponentShareLimit() {
+        return Integer.parseInt(getValue("COMPONENT_SHARE_LIMIT", "4"));
+    }
+
+    /**
+     * @return the number of seconds between two decisions of the component autoscaler (0 disables it).
+     */
+    public int getAutoscalerIntervalSeconds() {
+        return Integer.parseInt(getValue("AUTOSCALER_INTERVAL_SECONDS", "0"));
+    }
+
+    /**
+     * @return the maximum number of component instances the autoscaler adds across all pipelines.
+     */
+    public int getAutoscalerMaxInstances() {
+        return Integer.parseInt(getValue("AUTOSCALER_MAX_INSTANCES", "8"));
+    }
+
+    /**
+     * @return the maximum number of component instances the autoscaler adds to the pipelines of one user.
+     */
+    public int getAutoscalerMaxInstancesPerUser() {
+        return Integer.parseInt(getValue("AUTOSCALER_MAX_INSTANCES_PER_USER", "4"));
+    }
+
+    /**
+     * @return the mean wait for a component instance in milliseconds above which the bottleneck is scaled up.
+     */
+    public long getAutoscalerWaitThresholdMillis() {
+        return Long.parseLong(getValue("AUTOSCALER_WAIT_THRESHOLD_MS", "500"));
+    }
+
     public String getSmtpHost() {
         return getValue("SMTP_HOST", "localhost");
     }
@@ -196,6 +489,18 @@ public class Config {
         return getValue("LOCAL_DRIVE_ROOT", null);
     }
 
+    public int getEventRetentionDays() {
+        return Integer.parseInt(getValue("EVENT_RETENTION_DAYS", "0"));
+    }
+
+    public int getArchiveAfterDays() {
+        return Integer.parseInt(getValue("ARCHIVE_AFTER_DAYS", "0"));
+    }
+
+    public int getArchiveIntervalMinutes() {
+        return Integer.parseInt(getValue("ARCHIVE_INTERVAL_MINUTES", "60"));
+    }
+
     public String getFileUploadPath() {
         
         String value; 
@@ -25,7 +25,6 @@ import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.impl.XmiCasDeserializer;
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
@@ -40,13 +39,25 @@ import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.IDUUIDo
 import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.IDUUIFolderPickerApi;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
 import org.texttechnologylab.duui.analysis.process.IDUUIProcessHandler;
+import org.texttechnologylab.duui.api.controllers.components.DUUIComponentCache;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIComponentRegistry;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIDriverRegistry;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineAutoscaler;
 import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineController;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineInstantiation;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePool;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePrewarmer;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineStatisticsController;
+import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessArchiveController;
 import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
 import org.texttechnologylab.duui.api.metrics.DUUIMetricsManager;
+import org.texttechnologylab.duui.api.metrics.DUUIProfiler;
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
 import org.texttechnologylab.duui.api.metrics.providers.DUUIHTTPMetrics;
 import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
 import org.texttechnologylab.duui.api.routes.components.DUUIComponentRequestHandler;
 import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+import org.texttechnologylab.duui.api.utils.DUUIAccessLog;
 import org.texttechnologylab.duui.api.utils.FileUploadUtils;
 import org.xml.sax.SAXException;
 
@@ -119,8 +130,40 @@ public class Main {
             config = new Config();
         }
 
+        DUUITracing.init(
+            config.getTracingExporter(),
+            config.getTracingOtlpEndpoint(),
+            config.getTracingSampleRatio(),
+            config.getTracingMemorySpans());
         DUUIMongoDBStorage.init(config);
         DUUIMetricsManager.init();
+        DUUIPipelineStatisticsController.init();
+        DUUIProcessArchiveController.schedule(config.getArchiveAfterDays(), config.getArchiveIntervalMinutes());
+        DUUIAccessLog.init(
+            config.getAccessLogSampleRate(),
+            config.getAccessLogLevel(),
+            config.getAccessLogRoutes());
+        DUUIDriverRegistry.init(config.getDriverPoolSize(), config.getDriverHealthIntervalSeconds());
+        DUUIComponentRegistry.init(config.isComponentSharingEnabled(), config.getComponentShareLimit());
+        DUUIPipelineInstantiation.init(config.getPipelineInstantiationParallelism());
+        DUUIPipelinePool.init(
+            config.getPipelinePoolMinReplicas(),
+            config.getPipelinePoolMaxReplicas(),
+            config.getPipelinePoolIdleTimeoutMinutes());
+        DUUIPipelineAutoscaler.init(
+            config.getAutoscalerIntervalSeconds(),
+            config.getAutoscalerMaxInstances(),
+            config.getAutoscalerMaxInstancesPerUser(),
+            config.getAutoscalerWaitThresholdMillis());
+        DUUIPipelinePrewarmer.init(
+            config.getPipelinePrewarmBudget(),
+            config.getPipelinePrewarmThreshold(),
+            config.getPipelinePrewarmIdleMinutes());
+        DUUIProfiler.init(
+            config.getProfilingContinuous(),
+            config.getProfilingMaxAgeMinutes(),
+            config.getProfilingMaxDurationMinutes(),
+            config.getProfilingMaxSizeMb());
 
         threadPool(
         /* maxThreads */    100,
@@ -152,9 +195,8 @@ public class Main {
         Runtime.getRuntime().addShutdownHook(
             new Thread(
                 () -> {
-                    DUUIPipelineController
-                        .getReusablePipelines()
-                        .keySet()
+                    DUUIPipelinePool
+                        .getPipelineIds()
                         .forEach(DUUIPipelineController::shutdownPipeline);
 
                     DUUIProcessController
@@ -248,6 +290,44 @@ public class Main {
         return new Document("path", root.toString()).toJson();
     }
 
+    /**
+     * Deserialize a XMI file and convert its annotations into a list that is displayed in the web interface.
+     *
+     * @param file The XMI file.
+     * @return a Document containing the annotations ordered by their begin, the document text and the names
+     * of all annotation types.
+     */
+    public static Document preprocessXmi(InputStream file) throws UIMAException, IOException, SAXException {
+        JCas jcas = DUUIComponentCache.createJCas();
+        XmiCasDeserializer.deserialize(file,  jcas.getCas(), true);
+        Set<String> annotationNames = new HashSet<>();
+
+        List<Document> processed = JCasUtil.select(jcas, Annotation.class).stream()
+            .sorted(Comparator.comparingInt(Annotation::getBegin))
+            .peek(annotation -> annotationNames.add(annotation.getType().getName()))
+            .map(annotation -> new Document()
+                .append("annotationType", annotation.getType().getName())
+                .append("details", annotation.getType().getFeatures()
+                        .stream()
+                        .filter(feat -> !feat.getShortName().equals("sofa")
+                                && !feat.getShortName().equals("begin")
+                                && !feat.getShortName().equals("end")
+                                && annotation.getFeatureValueAsString(feat) != null
+                                && !annotation.getFeatureValueAsString(feat).isEmpty())
+                        .map(feat ->
+                                feat.getShortName() + ": " + annotation.getFeatureValueAsString(feat) + "\n"
+                        )
+                        .collect(Collectors.joining())
+                )
+                .append("begin", annotation.getBegin())
+                .append("end", annotation.getEnd())
+            ).toList();
+
+        return new Document("preprocessed", processed)
+                .append("text", jcas.getDocumentText())
+                .append("annotationNames", annotationNames);
+    }
+
     public static String preprocessCas(Request request, Response response) {
         String userId = DUUIRequestHelper.getUserId(request);
         String provider = request.queryParamOrDefault("provider", null);
@@ -282,38 +362,8 @@ public class Main {
                         );
             }
 
-            JCas jcas = JCasFactory.createJCas();
-            XmiCasDeserializer.deserialize(file,  jcas.getCas(), true);
-            Set<String> annotationNames = new HashSet<>();
-
-            List<Document> processed = JCasUtil.select(jcas, Annotation.class).stream()
-                .sorted(Comparator.comparingInt(Annotation::getBegin))
-                .peek(annotation -> annotationNames.add(annotation.getType().getName()))
-                .map(annotation -> new Document()
-                    .append("annotationType", annotation.getType().getName())
-                    .append("details", annotation.getType().getFeatures()
-                            .stream()
-                            .filter(feat -> !feat.getShortName().equals("sofa")
-                                    && !feat.getShortName().equals("begin")
-                                    && !feat.getShortName().equals("end")
-                                    && annotation.getFeatureValueAsString(feat) != null
-                                    && !annotation.getFeatureValueAsString(feat).isEmpty())
-                            .map(feat ->
-                                    feat.getShortName() + ": " + annotation.getFeatureValueAsString(feat) + "\n"
-                            )
-                            .collect(Collectors.joining())
-                    )
-                    .append("begin", annotation.getBegin())
-                    .append("end", annotation.getEnd())
-                ).toList();
-
-
             response.status(200);
-
-            return new Document("preprocessed", processed)
-                    .append("text", jcas.getDocumentText())
-                    .append("annotationNames", annotationNames)
-                    .toJson();
+            return preprocessXmi(file).toJson();
         } catch (DbxException | IOException | GeneralSecurityException e) {
             response.status(500);
             return "The file could not be downloaded.";
@@ -6,17 +6,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.texttechnologylab.duui.api.controllers.users.DUUIUserController;
 import org.texttechnologylab.duui.api.metrics.DUUIMetricsManager;
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
 import org.texttechnologylab.duui.api.metrics.providers.DUUIHTTPMetrics;
 import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
 import org.texttechnologylab.duui.api.routes.components.DUUIComponentRequestHandler;
 import org.texttechnologylab.duui.api.routes.pipelines.DUUIPipelineRequestHandler;
 import org.texttechnologylab.duui.api.routes.processes.DUUIProcessRequestHandler;
+import org.texttechnologylab.duui.api.routes.profiling.DUUIProfilingRequestHandler;
 import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+import org.texttechnologylab.duui.api.utils.DUUIAccessLog;
 import org.texttechnologylab.duui.api.utils.DUUIMailClient;
 
 import java.time.Duration;
 
-import static spark.Spark.after;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+import spark.Request;
+import spark.Response;
+
+import static spark.Spark.afterAfter;
 import static spark.Spark.before;
 import static spark.Spark.delete;
 import static spark.Spark.get;
@@ -36,6 +45,21 @@ public class Methods {
 
     private static final Logger log = LoggerFactory.getLogger(Methods.class);
 
+    /**
+     * The request attribute holding the time a request has been received at.
+     */
+    private static final String REQUEST_START = "duui.request.start";
+
+    /**
+     * The request attribute holding the span of a request.
+     */
+    private static final String REQUEST_SPAN = "duui.request.span";
+
+    /**
+     * The request attribute holding the scope that makes the span of a request current.
+     */
+    private static final String REQUEST_SCOPE = "duui.request.scope";
+
 
     /**
      * Initializes all endpoints including filters and options.
@@ -69,24 +93,56 @@ public class Methods {
 
         before((request, response) -> {
             if (!request.url().endsWith("metrics")) {
+                request.attribute(REQUEST_START, System.nanoTime());
                 DUUIHTTPMetrics.incrementTotalRequests();
                 DUUIHTTPMetrics.incrementActiveRequests();
-                String acceptHeader = request.headers("Accept");
-                if (acceptHeader == null || acceptHeader.isEmpty()) {
-                    acceptHeader = "*/*";
-                }
-                String originHeader = request.headers("Origin");
-                if (originHeader == null || originHeader.isEmpty()) {
-                    originHeader = request.ip();
-                }
-                log.info("{} {} – Origin: {} – Accept: {}", request.requestMethod(), request.pathInfo(), originHeader, acceptHeader);
+
+                Span span = DUUITracing.startRequestSpan(
+                    request.requestMethod(),
+                    request.pathInfo(),
+                    request::headers);
+                request.attribute(REQUEST_SPAN, span);
+                request.attribute(REQUEST_SCOPE, span.makeCurrent());
+
+                String traceId = DUUITracing.getTraceId();
+                if (traceId != null) response.header("X-Trace-Id", traceId);
             }
             response.header("Access-Control-Allow-Origin", "*");
         });
 
-        after((request, response) -> {
-            if (!request.url().endsWith("metrics")) {
-                DUUIHTTPMetrics.decrementActiveRequests();
+        // afterAfter filters also run when a filter halts or a route throws an exception.
+        afterAfter((request, response) -> {
+            Long start = request.attribute(REQUEST_START);
+            if (start == null) return;
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long requestBytes = request.raw().getContentLengthLong();
+            long responseBytes = getResponseSize(response);
+
+            DUUIHTTPMetrics.decrementActiveRequests();
+            DUUIHTTPMetrics.observeRequest(
+                request.requestMethod(),
+                request.pathInfo(),
+                response.status(),
+                seconds,
+                requestBytes,
+                responseBytes,
+                DUUIRequestHelper.getProcessId(request));
+
+            endRequestSpan(request, response.status());
+
+            if (DUUIAccessLog.isEnabled(request.pathInfo())) {
+                String accept = request.headers("Accept");
+                String origin = request.headers("Origin");
+                DUUIAccessLog.log(
+                    request.requestMethod(),
+                    request.pathInfo(),
+                    response.status(),
+                    seconds * 1000,
+                    origin == null || origin.isEmpty() ? request.ip() : origin,
+                    accept == null || accept.isEmpty() ? "*/*" : accept,
+                    requestBytes,
+                    responseBytes);
             }
         });
 
@@ -261,6 +317,7 @@ public class Methods {
                     halt(401, "Unauthorized");
                 }
             });
+            post("/statistics/rebuild", DUUIPipelineRequestHandler::rebuildStatistics);
             get("/:id", DUUIPipelineRequestHandler::findOne);
             get("", DUUIPipelineRequestHandler::findMany);
             post("", DUUIPipelineRequestHandler::insertOne);
@@ -289,14 +346,35 @@ public class Methods {
             delete("/:id", DUUIProcessRequestHandler::deleteOne);
             get("/:id/events", DUUIProcessRequestHandler::findEvents);
             get("/:id/documents", DUUIProcessRequestHandler::findDocuments);
+            get("/:id/profile", DUUIProcessRequestHandler::findProfile);
         });
 
         /* Metrics */
         get("/metrics", (request, response) -> {
-                response.type("text/plain");
-                return DUUIMetricsManager.export();
+                String contentType = DUUIMetricsManager.chooseContentType(request.headers("Accept"));
+                response.type(contentType);
+                return DUUIMetricsManager.export(contentType);
             }
         );
+
+        /* Profiling */
+        path("/profiling", () -> {
+            before("/*", (request, response) -> {
+                boolean isAuthorized = DUUIRequestHelper.isAuthorized(request);
+                if (!isAuthorized || !DUUIRequestHelper.isAdmin(request)) {
+                    halt(401, "Unauthorized");
+                }
+            });
+
+            get("/recording", DUUIProfilingRequestHandler::getRecording);
+            post("/recording", DUUIProfilingRequestHandler::startRecording);
+            delete("/recording", DUUIProfilingRequestHandler::stopRecording);
+            get("/flame", DUUIProfilingRequestHandler::flame);
+            get("/threads", DUUIProfilingRequestHandler::processThreads);
+            get("/traces/:id", DUUIProfilingRequestHandler::findTrace);
+            get("/drivers", DUUIProfilingRequestHandler::drivers);
+            get("/components", DUUIProfilingRequestHandler::components);
+        });
         path("/files", () -> {
 
             get("", Main::downloadFile);
@@ -305,6 +383,59 @@ public class Methods {
             get("/local-folder-structure/:reset", Main::getLocalFolderStructure);
             get("/filtered-folder-structure", Main::getFilteredFolderStructure);
         });
+
+        DUUIHTTPMetrics.registerRoutes();
+    }
+
+
+    /**
+     * End the span of a request and restore the context of the request thread.
+     *
+     * @param request The Spark Request object.
+     * @param status  The response status.
+     */
+    private static void endRequestSpan(Request request, int status) {
+        Span span = request.attribute(REQUEST_SPAN);
+        Scope scope = request.attribute(REQUEST_SCOPE);
+        if (span == null) return;
+
+        span.updateName(
+            request.requestMethod() + " " + DUUIHTTPMetrics.normalizeRoute(request.requestMethod(), request.pathInfo()));
+        span.setAttribute("http.response.status_code", status);
+        if (status >= 500) span.setStatus(StatusCode.ERROR);
+
+        String processId = DUUIRequestHelper.getProcessId(request);
+        if (processId != null) span.setAttribute("duui.process.id", processId);
+
+        span.end();
+        if (scope != null) scope.close();
     }
 
+    /**
+     * Estimate the size of a response body in bytes. Streamed responses have already been written to the
+     * output stream while String bodies are serialized after all filters have run.
+     *
+     * @param response The Spark Response object.
+     * @return the size of the response body in bytes.
+     */
+    private static long getResponseSize(Response response) {
+        long size = 0;
+        if (response.raw() instanceof org.eclipse.jetty.server.Response jettyResponse) {
+            size += jettyResponse.getHttpOutput().getWritten();
+        }
+
+        String body = response.body();
+        if (body == null) return size;
+
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c < 0x80) size += 1;
+            else if (c < 0x800) size += 2;
+            else if (Character.isHighSurrogate(c)) {
+                size += 4;
+                i++;
+            } else size += 3;
+        }
+        return size;
+    }
 }
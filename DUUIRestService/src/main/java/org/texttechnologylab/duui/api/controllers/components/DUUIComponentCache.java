@@ -0,0 +1,218 @@
+package org.texttechnologylab.duui.api.controllers.components;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIComponentRegistry;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePool;
+
+/**
+ * A gateway-level cache for the parts of a pipeline setup that do not change between processes.
+ * <p>
+ * The Lua context (including the JSON library) is created once and shared by all composers instead of
+ * being loaded for every process. The typesystem found on the classpath is resolved and committed once and
+ * used for all CASes the gateway creates itself. A committed {@link TypeSystem} is immutable, so CASes can
+ * be created from it by many threads at the same time.
+ * <p>
+ * The typesystem of a component (/v1/typesystem) is retrieved once per running instance and the merged
+ * typesystem of the components of a pipeline once per combination of instances. Instances are shared by
+ * pipelines and replicas (see {@link DUUIComponentRegistry}), so most processes use a cached typesystem. An
+ * instance runs a fixed image, so a re-pulled image (e.g. :latest with docker_image_fetching) is never
+ * served the typesystem of its predecessor. The entries of an instance are evicted when it is shut down.
+ * The compiled communication layers can not be handed to the DUUI drivers, which compile them while a
+ * component is instantiated; they are kept by the replicas of started pipelines (see
+ * {@link DUUIPipelinePool}). When a component is updated, the replicas of its pipeline are replaced so that
+ * no stale typesystem or communication layer is used.
+ */
+public class DUUIComponentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIComponentCache.class);
+
+    /**
+     * The properties of a component that change its instances.
+     */
+    private static final Set<String> INSTANCE_PROPERTIES = Set.of("driver", "target", "options", "parameters");
+
+    private static volatile DUUILuaContext luaContext;
+
+    private static volatile TypeSystemDescription typeSystem;
+
+    private static volatile TypeSystem committedTypeSystem;
+
+    /**
+     * The typesystems of the components by {@link #getKey(Document, DUUIComposer.PipelinePart)}.
+     */
+    private static final Map<String, TypeSystemDescription> componentTypeSystems = new ConcurrentHashMap<>();
+
+    /**
+     * The committed typesystems of pipelines by the keys of their component instances.
+     */
+    private static final Map<List<String>, TypeSystem> pipelineTypeSystems = new ConcurrentHashMap<>();
+
+    /**
+     * @return the Lua context with the JSON library shared by all composers.
+     */
+    public static DUUILuaContext getLuaContext() throws URISyntaxException, IOException {
+        DUUILuaContext context = luaContext;
+        if (context != null) return context;
+
+        synchronized (DUUIComponentCache.class) {
+            if (luaContext == null) luaContext = new DUUILuaContext().withJsonLibrary();
+            return luaContext;
+        }
+    }
+
+    /**
+     * @return the typesystem found on the classpath with all imports resolved.
+     */
+    public static TypeSystemDescription getTypeSystem() throws UIMAException {
+        TypeSystemDescription description = typeSystem;
+        if (description != null) return description;
+
+        synchronized (DUUIComponentCache.class) {
+            if (typeSystem == null) {
+                TypeSystemDescription resolved = TypeSystemDescriptionFactory.createTypeSystemDescription();
+                resolved.resolveImports();
+                typeSystem = resolved;
+            }
+            return typeSystem;
+        }
+    }
+
+    /**
+     * Create an empty CAS with the cached typesystem. Equivalent to {@link JCasFactory#createJCas()} without
+     * scanning the classpath and parsing and committing the typesystem every time.
+     *
+     * @return the new CAS.
+     */
+    public static JCas createJCas() throws UIMAException {
+        TypeSystem committed = committedTypeSystem;
+        if (committed == null) {
+            synchronized (DUUIComponentCache.class) {
+                if (committedTypeSystem == null) {
+                    committedTypeSystem = CasCreationUtils.createCas(getTypeSystem(), null, null).getTypeSystem();
+                }
+                committed = committedTypeSystem;
+            }
+        }
+        return createJCas(committed);
+    }
+
+    /**
+     * Create an empty CAS with a committed typesystem, e.g. the one of a pipeline.
+     *
+     * @param typeSystem The typesystem.
+     * @return the new CAS.
+     */
+    public static JCas createJCas(TypeSystem typeSystem) throws UIMAException {
+        return CasCreationUtils.createCas(typeSystem, null, null, null).getJCas();
+    }
+
+    /**
+     * Retrieve the typesystem of an instantiated component or take it from the cache if it has been
+     * retrieved from the same instance before.
+     *
+     * @param component The component (MongoDB {@link Document}).
+     * @param part      The instantiated component.
+     * @return the typesystem of the component.
+     */
+    public static TypeSystemDescription getTypeSystem(Document component, DUUIComposer.PipelinePart part)
+        throws Exception {
+        String key = getKey(component, part);
+        TypeSystemDescription description = componentTypeSystems.get(key);
+        if (description != null) return description;
+
+        description = part.getDriver().get_typesystem(part.getUUID());
+        synchronized (DUUIComponentCache.class) {
+            description.resolveImports();
+        }
+        componentTypeSystems.putIfAbsent(key, description);
+        return componentTypeSystems.get(key);
+    }
+
+    /**
+     * Merge the typesystems of the components of a pipeline with the typesystem found on the classpath and
+     * commit it. The result is cached for all pipelines with the same component instances.
+     *
+     * @param components The components (MongoDB {@link Document}) in the order of the pipeline.
+     * @param parts      The instantiated components in the same order.
+     * @return the typesystem of the pipeline.
+     */
+    public static TypeSystem getTypeSystem(List<Document> components, List<DUUIComposer.PipelinePart> parts)
+        throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) keys.add(getKey(components.get(i), parts.get(i)));
+
+        TypeSystem committed = pipelineTypeSystems.get(keys);
+        if (committed != null) return committed;
+
+        List<TypeSystemDescription> descriptions = new ArrayList<>();
+        descriptions.add(getTypeSystem());
+        for (int i = 0; i < components.size(); i++) {
+            descriptions.add(getTypeSystem(components.get(i), parts.get(i)));
+        }
+
+        // The descriptions are shared and only read under the class lock.
+        synchronized (DUUIComponentCache.class) {
+            TypeSystemDescription merged = CasCreationUtils.mergeTypeSystems(descriptions);
+            committed = CasCreationUtils.createCas(merged, null, null).getTypeSystem();
+        }
+        pipelineTypeSystems.putIfAbsent(keys, committed);
+        return pipelineTypeSystems.get(keys);
+    }
+
+    /**
+     * @param component The component (MongoDB {@link Document}).
+     * @param part      The instantiated component.
+     * @return the key of the typesystem of a component, its driver, target (image or URL) and instance.
+     */
+    private static String getKey(Document component, DUUIComposer.PipelinePart part) {
+        return component.getString("driver") + " " + component.getString("target") + " " + part.getUUID();
+    }
+
+    /**
+     * Remove the typesystems retrieved from an instance after it has been shut down.
+     *
+     * @param part The instantiated component.
+     */
+    public static void evict(DUUIComposer.PipelinePart part) {
+        String suffix = " " + part.getUUID();
+        componentTypeSystems.keySet().removeIf(key -> key.endsWith(suffix));
+        pipelineTypeSystems.keySet().removeIf(keys -> keys.stream().anyMatch(key -> key.endsWith(suffix)));
+    }
+
+    /**
+     * Replace the replicas of a started pipeline containing a component in the background after the
+     * component has been updated. Typesystems need not be dropped since they are cached per instance.
+     *
+     * @param component The updated component.
+     * @param updates   The updated properties.
+     */
+    public static void invalidate(Document component, Document updates) {
+        if (component == null || updates.keySet().stream().noneMatch(INSTANCE_PROPERTIES::contains)) return;
+
+        String pipelineId = component.getString("pipeline_id");
+        if (pipelineId == null || !DUUIPipelinePool.isStarted(pipelineId)) return;
+
+        log.info("Component {} of pipeline {} has been updated, replacing its replicas",
+            component.getString("oid"), pipelineId);
+        DUUIPipelinePool.restart(pipelineId);
+    }
+}
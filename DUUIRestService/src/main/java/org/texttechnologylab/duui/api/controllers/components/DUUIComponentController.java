@@ -75,6 +75,7 @@ public class DUUIComponentController {
             .append("labels", new ArrayList<>())
             .append("host", null)
             .append("ignore_200_error", true)
+            .append("batching", false)
             .append("registry_auth",
                 new Document()
                     .append("username", null)
@@ -255,7 +256,9 @@ public class DUUIComponentController {
                 Filters.eq(oid),
                 Updates.set("modified_at", Instant.now().toEpochMilli()));
 
-        return DUUIComponentController.findOneById(id);
+        Document component = DUUIComponentController.findOneById(id);
+        DUUIComponentCache.invalidate(component, updates);
+        return component;
     }
 
     /**
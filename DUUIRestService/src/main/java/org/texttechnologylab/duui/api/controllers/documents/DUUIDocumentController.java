@@ -106,14 +106,14 @@ public class DUUIDocumentController {
     }
 
     /**
-     * Retrieve one or more documents from the database given a{@link MongoDBFilters} object.
+     * Retrieve a cursor over all documents matching the {@link MongoDBFilters}. Sorting, skip and limit are
+     * applied by the database, the results are fetched in batches while the cursor is iterated.
      *
      * @param filters A {@link MongoDBFilters} object that contains filter options.
-     * @return A Document containing a list of matched documents.
+     * @return An {@link AggregateIterable} over the matched documents.
      */
-    public static Document findMany(MongoDBFilters filters) {
+    public static AggregateIterable<Document> findManyCursor(MongoDBFilters filters) {
         List<Bson> aggregationPipeline = new ArrayList<>();
-        List<Bson> documentFacet = new ArrayList<>();
 
         if (!filters.getFilters().isEmpty()) {
             aggregationPipeline.add(Aggregates.match(
@@ -133,43 +133,51 @@ public class DUUIDocumentController {
 
 
         if (filters.getSort() != null) {
-            documentFacet.add(Aggregates.sort(
+            aggregationPipeline.add(Aggregates.sort(
                 filters.getOrder() == 1
                     ? Sorts.ascending(filters.getSort())
                     : Sorts.descending(filters.getSort())));
         }
 
-        if (filters.getSkip() > 0) documentFacet.add(Aggregates.skip(filters.getSkip()));
-        if (filters.getLimit() > 0) documentFacet.add(Aggregates.limit(filters.getLimit()));
-
-        aggregationPipeline.add(Aggregates.facet(
-            new Facet("documents", documentFacet),
-            new Facet("count", Aggregates.count())
-        ));
-
-        AggregateIterable<Document> aggregated = DUUIMongoDBStorage
-            .Documents()
-            .aggregate(aggregationPipeline);
+        if (filters.getSkip() > 0) aggregationPipeline.add(Aggregates.skip(filters.getSkip()));
+        if (filters.getLimit() > 0) aggregationPipeline.add(Aggregates.limit(filters.getLimit()));
 
+        return DUUIMongoDBStorage
+            .analytics(DUUIMongoDBStorage.Documents())
+            .aggregate(aggregationPipeline)
+            .allowDiskUse(true);
+    }
 
-        List<Document> result = aggregated.into(new ArrayList<>());
-        try {
-            List<Document> documents = result.get(0).getList("documents", Document.class);
-            int count = result.get(0).getList("count", Document.class).get(0).getInteger("count");
+    /**
+     * Count the documents matching the {@link MongoDBFilters} ignoring skip and limit.
+     *
+     * @param filters A {@link MongoDBFilters} object that contains filter options.
+     * @return the number of matching documents.
+     */
+    public static long count(MongoDBFilters filters) {
+        return DUUIMongoDBStorage
+            .analytics(DUUIMongoDBStorage.Documents())
+            .countDocuments(filters.getFilters().isEmpty()
+                ? new Document()
+                : Filters.and(filters.getFilters()));
+    }
 
-            documents.forEach(document -> {
-                DUUIMongoDBStorage.convertObjectIdToString(document);
-                List<Document> events = DUUIEventController.findManyByDocument(document.getString("oid"));
-                events.forEach(DUUIMongoDBStorage::convertObjectIdToString);
-                events.forEach(event -> DUUIMongoDBStorage.convertDateToTimestamp(event, "timestamp"));
-                document.append("events", events).toJson();
-            });
+    /**
+     * Convert the id of a document and attach the events that reference it.
+     *
+     * @param document The document as stored in the database.
+     * @return the document including its events.
+     */
+    public static Document withEvents(Document document) {
+        DUUIMongoDBStorage.convertObjectIdToString(document);
 
-            return new Document("documents", documents).append("count", count);
-        } catch (IndexOutOfBoundsException exception) {
-            return new Document("documents", new ArrayList<>()).append("count", 0);
-        }
+        List<Document> events = DUUIEventController.findManyByDocument(
+            document.getString("process_id"),
+            document.getString("path"));
 
+        events.forEach(DUUIMongoDBStorage::convertObjectIdToString);
+        events.forEach(event -> DUUIMongoDBStorage.convertDateToTimestamp(event, "timestamp"));
+        return document.append("events", events);
     }
 
 
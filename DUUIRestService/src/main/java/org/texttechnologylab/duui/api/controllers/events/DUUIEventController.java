@@ -45,10 +45,21 @@ public class DUUIEventController {
         Document document = DUUIDocumentController.findOne(documentId);
         if (document == null) return new ArrayList<>();
 
-        String processId = document.getString("process_id");
-        String path = document.getString("path");
+        return findManyByDocument(document.getString("process_id"), document.getString("path"));
+    }
+
+    /**
+     * Find one or more events that reference a document by its process and path.
+     *
+     * @param processId The id of the process the document belongs to.
+     * @param path      The path of the document an event must reference.
+     * @return A List of Documents.
+     */
+    public static List<Document> findManyByDocument(String processId, String path) {
+        if (processId == null || path == null) return new ArrayList<>();
+
         AggregateIterable<Document> result = DUUIMongoDBStorage
-            .Events()
+            .analytics(DUUIMongoDBStorage.Events())
             .aggregate(
                 List.of(
                     Aggregates.match(
@@ -56,7 +67,7 @@ public class DUUIEventController {
                             Filters.eq("event.process_id", processId),
                             new Document(
                                 "event.message",
-                                Pattern.compile(path, Pattern.CASE_INSENSITIVE))
+                                Pattern.compile(Pattern.quote(path), Pattern.CASE_INSENSITIVE))
                         )
                     ),
                     Aggregates.sort(Sorts.ascending("timestamp"))
@@ -66,14 +77,17 @@ public class DUUIEventController {
         return result.into(new ArrayList<>());
     }
 
-    public static List<Document> findManyByProcess(String process_id) {
-        FindIterable<Document> timeline = DUUIMongoDBStorage
-            .Events()
-            .find(Filters.eq("process_id", process_id));
-
-        List<Document> events = timeline.into(new ArrayList<>());
-        events.forEach(DUUIMongoDBStorage::convertObjectIdToString);
-        return events;
+    /**
+     * Retrieve a cursor over all events that reference a process. The events are fetched in batches
+     * while the cursor is iterated.
+     *
+     * @param process_id The id of the process an event must reference.
+     * @return A {@link FindIterable} over the events.
+     */
+    public static FindIterable<Document> findManyByProcessCursor(String process_id) {
+        return DUUIMongoDBStorage
+            .analytics(DUUIMongoDBStorage.Events())
+            .find(Filters.eq("event.process_id", process_id));
     }
 
     /**
@@ -0,0 +1,276 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.api.controllers.components.DUUIComponentController;
+
+/**
+ * Shares running component instances between pipelines and processes.
+ * <p>
+ * Components that run in containers (Docker, Swarm, Kubernetes, Podman) and have the same name, image, the
+ * same options that affect their instances (scale, GPU, image fetching) and the same parameters are
+ * instantiated once and used by every pipeline that contains them. An instance is shared by at most
+ * COMPONENT_SHARE_LIMIT pipeline replicas. An instance is never shared by two replicas of the same pipeline
+ * (or by two identical components of one pipeline), so every replica of a pipeline keeps its own set of
+ * component instances. If all instances of a component are used that often, another
+ * instance is started and new pipelines are assigned to the least used one, so load is spread across
+ * them. An instance is shut down when the last pipeline using it is shut down. Sharing can be disabled
+ * with COMPONENT_SHARING.
+ * <p>
+ * When the replicas of a pipeline are replaced (see {@link DUUIPipelinePool#restart(String)}), a new replica
+ * takes over the instances of the replica it replaces for all components that have not changed, whether
+ * their instances are shared or not. Only changed components are instantiated again.
+ */
+public class DUUIComponentRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIComponentRegistry.class);
+
+    /**
+     * The instances of all shared components by key. Guarded by the class lock.
+     */
+    private static final Map<String, List<Shared>> components = new HashMap<>();
+
+    private static volatile boolean enabled = true;
+
+    private static volatile int shareLimit = 4;
+
+    /**
+     * An instance of a component and the number of pipelines using it.
+     */
+    static class Shared {
+
+        private final String key;
+
+        /**
+         * Identifies the component by all of its properties, see {@link #getIdentity(Document)}.
+         */
+        private final String identity;
+
+        private final CompletableFuture<DUUIPipelineInstantiation.Instance> instance = new CompletableFuture<>();
+
+        /**
+         * The number of pipelines using the instance. Guarded by the registry lock.
+         */
+        private int references = 0;
+
+        /**
+         * The ids of the pipelines using the instance, once per replica. Guarded by the registry lock.
+         */
+        private final List<String> pipelines = new ArrayList<>();
+
+        private Shared(String key, String identity) {
+            this.key = key;
+            this.identity = identity;
+        }
+
+        /**
+         * @return the instance.
+         */
+        DUUIPipelineInstantiation.Instance getInstance() {
+            return instance.join();
+        }
+    }
+
+    /**
+     * Configure the sharing of component instances.
+     *
+     * @param enabled    Whether instances are shared.
+     * @param shareLimit The number of pipelines an instance is shared by before another instance is started.
+     */
+    public static synchronized void init(boolean enabled, int shareLimit) {
+        DUUIComponentRegistry.enabled = enabled;
+        DUUIComponentRegistry.shareLimit = Math.max(1, shareLimit);
+    }
+
+    /**
+     * Acquire an instance of a component. An instance of an identical component is reused if it is shared
+     * by less than the limit and not already used by the same pipeline, otherwise a new instance is
+     * created. If the instance is still being started by another pipeline, this waits for it.
+     *
+     * @param pipelineId  The id of the pipeline the component belongs to or null if it must not be shared.
+     * @param component   The component (MongoDB {@link Document}).
+     * @param instantiate Creates a new instance.
+     * @return the acquired instance. It must be released when the pipeline is shut down.
+     */
+    static Shared acquire(
+        String pipelineId,
+        Document component,
+        Callable<DUUIPipelineInstantiation.Instance> instantiate) throws Exception {
+        return acquire(pipelineId, component, instantiate, new ArrayList<>());
+    }
+
+    /**
+     * Acquire an instance of a component and take it over from a replaced replica of the same pipeline if
+     * it contains an identical component. Otherwise, see {@link #acquire(String, Document, Callable)}.
+     *
+     * @param pipelineId  The id of the pipeline the component belongs to or null if it must not be shared.
+     * @param component   The component (MongoDB {@link Document}).
+     * @param instantiate Creates a new instance.
+     * @param reusable    The instances of the replaced replica that have not been taken over yet. A taken
+     *                    instance is removed from the list. Guarded by the registry lock.
+     * @return the acquired instance. It must be released when the pipeline is shut down.
+     */
+    static Shared acquire(
+        String pipelineId,
+        Document component,
+        Callable<DUUIPipelineInstantiation.Instance> instantiate,
+        List<Shared> reusable) throws Exception {
+        String key = pipelineId == null ? null : getKey(component);
+        String identity = getIdentity(component);
+        String owner = pipelineId == null ? UUID.randomUUID().toString() : pipelineId;
+
+        Shared shared = null;
+        boolean create = true;
+
+        synchronized (DUUIComponentRegistry.class) {
+            // An instance that is still referenced has not been shut down and stays alive while it is used.
+            Shared replaced = pipelineId == null ? null : reusable
+                .stream()
+                .filter(candidate -> candidate.references > 0 && candidate.identity.equals(identity))
+                .findFirst()
+                .orElse(null);
+
+            if (replaced != null) {
+                reusable.remove(replaced);
+                shared = replaced;
+                create = false;
+            } else if (key != null) {
+                List<Shared> instances = components.computeIfAbsent(key, k -> new ArrayList<>());
+                shared = instances
+                    .stream()
+                    .filter(candidate -> candidate.references < shareLimit)
+                    .filter(candidate -> !candidate.pipelines.contains(owner))
+                    .min(Comparator.comparingInt(candidate -> candidate.references))
+                    .orElse(null);
+
+                create = shared == null;
+                if (create) {
+                    shared = new Shared(key, identity);
+                    instances.add(shared);
+                }
+            } else {
+                shared = new Shared(null, identity);
+            }
+
+            shared.references++;
+            shared.pipelines.add(owner);
+        }
+
+        if (create) {
+            try {
+                shared.instance.complete(instantiate.call());
+            } catch (Exception exception) {
+                shared.instance.completeExceptionally(exception);
+                remove(shared);
+                throw exception;
+            }
+        }
+
+        try {
+            shared.instance.get();
+            return shared;
+        } catch (ExecutionException exception) {
+            release(shared, owner);
+            throw exception.getCause() instanceof Exception cause ? cause : exception;
+        }
+    }
+
+    /**
+     * Release an instance of a component.
+     *
+     * @param shared     The instance.
+     * @param pipelineId The id of the pipeline it has been acquired for.
+     * @return if the instance is no longer used and must be shut down.
+     */
+    static boolean release(Shared shared, String pipelineId) {
+        synchronized (DUUIComponentRegistry.class) {
+            shared.pipelines.remove(pipelineId);
+            shared.references = Math.max(0, shared.references - 1);
+            if (shared.references > 0) return false;
+        }
+
+        remove(shared);
+        return shared.instance.isDone() && !shared.instance.isCompletedExceptionally();
+    }
+
+    /**
+     * @return the number of instances and references per shared component.
+     */
+    public static synchronized List<Document> getStatus() {
+        List<Document> status = new ArrayList<>();
+        components.forEach((key, instances) -> status.add(Document.parse(key)
+            .append("instances", instances.size())
+            .append("references", instances.stream().map(instance -> instance.references).toList())));
+        return status;
+    }
+
+    private static synchronized void remove(Shared shared) {
+        if (shared.key == null) return;
+
+        List<Shared> instances = components.get(shared.key);
+        if (instances == null) return;
+
+        instances.remove(shared);
+        if (instances.isEmpty()) components.remove(shared.key);
+        else log.debug("Removed an instance of a shared component, {} left", instances.size());
+    }
+
+    /**
+     * Identify a component by everything that affects its instances.
+     *
+     * @param component The component.
+     * @return the key or null if the component can not be shared.
+     */
+    private static String getKey(Document component) {
+        if (!enabled || !DUUIDriverRegistry.isPooled(component.getString("driver"))) return null;
+
+        Document options = component.get("options", Document.class);
+        options = DUUIComponentController.mergeOptions(options == null ? null : new Document(options));
+
+        Document parameters = component.get("parameters", Document.class);
+        if (parameters == null) parameters = new Document();
+
+        return new Document("name", component.getString("name"))
+            .append("driver", component.getString("driver"))
+            .append("target", component.getString("target"))
+            .append("scale", options.get("scale"))
+            .append("use_GPU", options.get("use_GPU"))
+            .append("docker_image_fetching", options.get("docker_image_fetching"))
+            .append("parameters", new Document(new TreeMap<>(parameters)))
+            .toJson();
+    }
+
+    /**
+     * Identify a component by all properties that are passed to its driver, including the options that do
+     * not affect whether its instances can be shared.
+     *
+     * @param component The component.
+     * @return the identity.
+     */
+    private static String getIdentity(Document component) {
+        Document options = component.get("options", Document.class);
+        options = DUUIComponentController.mergeOptions(options == null ? null : new Document(options));
+
+        Document parameters = component.get("parameters", Document.class);
+        if (parameters == null) parameters = new Document();
+
+        return new Document("name", component.getString("name"))
+            .append("driver", component.getString("driver"))
+            .append("target", component.getString("target"))
+            .append("options", new Document(new TreeMap<>(options)))
+            .append("parameters", new Document(new TreeMap<>(parameters)))
+            .toJson();
+    }
+}
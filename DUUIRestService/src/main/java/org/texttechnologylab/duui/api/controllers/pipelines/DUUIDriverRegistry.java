@@ -0,0 +1,356 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIDriverInterface;
+
+/**
+ * Pools the drivers of the components of all pipelines and processes.
+ * <p>
+ * Every driver of a container runtime (Docker, Swarm, Kubernetes, Podman) opens its own client connection.
+ * The drivers keep their components in maps that are not thread-safe and are read while documents are
+ * processed, so a driver is never used by two components at the same time: every component gets a driver
+ * of its own, which only changes while the component is instantiated or destroyed, i.e. while no document
+ * is processed by it. When the component is shut down, its driver is returned to the registry and reused
+ * by the next component instead of opening a new connection. Up to DRIVER_POOL_SIZE idle drivers are kept
+ * per runtime. Other drivers (remote and UIMA) are cheap and are neither pooled nor reused.
+ * <p>
+ * The Docker and Podman daemons are pinged periodically (DRIVER_HEALTH_INTERVAL_SECONDS). If a daemon
+ * becomes unreachable, its drivers are retired: idle drivers are shut down at once, the others when their
+ * component is shut down. New components get new drivers, i.e. a new connection, once the daemon is
+ * reachable again.
+ */
+public class DUUIDriverRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIDriverRegistry.class);
+
+    /**
+     * The drivers that connect to a container runtime and are pooled.
+     */
+    private static final Set<String> POOLED = Set.of(
+        "DUUIDockerDriver",
+        "DUUISwarmDriver",
+        "DUUIKubernetesDriver",
+        "DUUIPodmanDriver"
+    );
+
+    private static final long PING_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The idle drivers by driver name. Guarded by the class lock.
+     */
+    private static final Map<String, Deque<PooledDriver>> idle = new HashMap<>();
+
+    /**
+     * The drivers used by a component by driver name. Guarded by the class lock.
+     */
+    private static final Map<String, Set<PooledDriver>> used = new HashMap<>();
+
+    /**
+     * The names of the drivers whose runtime could not be reached at the last health check.
+     */
+    private static final Set<String> unhealthy = ConcurrentHashMap.newKeySet();
+
+    private static int poolSize = 4;
+
+    private static boolean scheduled = false;
+
+    /**
+     * A driver used by a single component.
+     */
+    public static class PooledDriver {
+
+        private final String name;
+
+        private final IDUUIDriverInterface driver;
+
+        private final boolean pooled;
+
+        /**
+         * Set if the runtime of the driver has become unreachable. Guarded by the registry lock.
+         */
+        private boolean retired = false;
+
+        private PooledDriver(String name, IDUUIDriverInterface driver, boolean pooled) {
+            this.name = name;
+            this.driver = driver;
+            this.pooled = pooled;
+        }
+
+        /**
+         * @return the driver.
+         */
+        public IDUUIDriverInterface getDriver() {
+            return driver;
+        }
+    }
+
+    /**
+     * Configure the number of idle drivers per runtime and start the health checks.
+     *
+     * @param poolSize              The maximum number of idle drivers of a runtime.
+     * @param healthIntervalSeconds The number of seconds between two health checks.
+     */
+    public static synchronized void init(int poolSize, int healthIntervalSeconds) {
+        DUUIDriverRegistry.poolSize = Math.max(0, poolSize);
+
+        if (scheduled) return;
+        scheduled = true;
+
+        Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "duui-driver-health");
+                thread.setDaemon(true);
+                return thread;
+            })
+            .scheduleWithFixedDelay(
+                DUUIDriverRegistry::checkHealth,
+                healthIntervalSeconds,
+                Math.max(1, healthIntervalSeconds),
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Acquire a driver for a component. The driver is used by no other component until it is released,
+     * which the component must do when it is shut down.
+     *
+     * @param name The name of the driver (e.g. DUUIDockerDriver).
+     * @return the driver.
+     * @throws IllegalStateException if the driver is unknown or its runtime can not be reached.
+     */
+    public static PooledDriver acquire(String name) throws Exception {
+        return acquire(name, () -> DUUIPipelineController.getDriverFromString(name));
+    }
+
+    /**
+     * Acquire a driver for a component that is created by the given function if no idle driver exists.
+     *
+     * @param name   The name of the driver (e.g. DUUIDockerDriver).
+     * @param create Creates a new driver.
+     * @return the driver.
+     * @throws IllegalStateException if no driver was created or its runtime can not be reached.
+     */
+    static PooledDriver acquire(String name, Callable<IDUUIDriverInterface> create) throws Exception {
+        if (!isPooled(name)) {
+            IDUUIDriverInterface driver = create.call();
+            if (driver == null) throw new IllegalStateException("Driver cannot be empty.");
+            return new PooledDriver(name, driver, false);
+        }
+
+        if (unhealthy.contains(name)) {
+            if (!isHealthy(name)) throw new IllegalStateException("The runtime of " + name + " can not be reached.");
+            unhealthy.remove(name);
+        }
+
+        synchronized (DUUIDriverRegistry.class) {
+            PooledDriver instance = idle.getOrDefault(name, new ArrayDeque<>()).pollFirst();
+            if (instance != null) {
+                used.computeIfAbsent(name, key -> new HashSet<>()).add(instance);
+                return instance;
+            }
+        }
+
+        // Connecting to the runtime can take a while, so the driver is created outside the lock.
+        IDUUIDriverInterface driver = create.call();
+        if (driver == null) throw new IllegalStateException("Driver cannot be empty.");
+
+        PooledDriver instance = new PooledDriver(name, driver, true);
+        synchronized (DUUIDriverRegistry.class) {
+            used.computeIfAbsent(name, key -> new HashSet<>()).add(instance);
+            log.debug("Created a {} instance, {} in use", name, used.get(name).size());
+        }
+        return instance;
+    }
+
+    /**
+     * @param name The name of the driver.
+     * @return if drivers of this kind are pooled, i.e. if it connects to a container runtime.
+     */
+    static boolean isPooled(String name) {
+        return name != null && POOLED.contains(name);
+    }
+
+    /**
+     * Release a driver after the component using it has been shut down. The driver is kept for the next
+     * component if it is pooled, healthy and the pool is not full, otherwise it is shut down.
+     *
+     * @param instance The driver.
+     */
+    public static void release(PooledDriver instance) {
+        boolean keep = false;
+
+        if (instance.pooled) {
+            synchronized (DUUIDriverRegistry.class) {
+                Set<PooledDriver> instances = used.get(instance.name);
+                if (instances != null && instances.remove(instance)) {
+                    Deque<PooledDriver> pool = idle.computeIfAbsent(instance.name, key -> new ArrayDeque<>());
+                    keep = !instance.retired && !unhealthy.contains(instance.name) && pool.size() < poolSize;
+                    if (keep) pool.addFirst(instance);
+                }
+            }
+        }
+
+        if (!keep) shutdown(instance);
+    }
+
+    /**
+     * @return the number of idle and used drivers per runtime and whether the runtime is reachable.
+     */
+    public static synchronized Document getStatus() {
+        Set<String> names = new HashSet<>(idle.keySet());
+        names.addAll(used.keySet());
+
+        Document status = new Document();
+        for (String name : names) {
+            status.append(name, new Document("idle", idle.getOrDefault(name, new ArrayDeque<>()).size())
+                .append("used", used.getOrDefault(name, Set.of()).size())
+                .append("healthy", !unhealthy.contains(name)));
+        }
+        return status;
+    }
+
+    /**
+     * Ping the runtimes of all drivers in use and retire the drivers of unreachable runtimes.
+     */
+    private static void checkHealth() {
+        Set<String> names;
+        synchronized (DUUIDriverRegistry.class) {
+            names = new HashSet<>(idle.keySet());
+            names.addAll(used.keySet());
+        }
+
+        for (String name : names) {
+            if (isHealthy(name)) {
+                if (unhealthy.remove(name)) log.info("The runtime of {} is reachable again", name);
+                continue;
+            }
+
+            if (unhealthy.add(name)) log.warn("The runtime of {} can not be reached, retiring its drivers", name);
+
+            List<PooledDriver> unused;
+            synchronized (DUUIDriverRegistry.class) {
+                used.getOrDefault(name, Set.of()).forEach(instance -> instance.retired = true);
+                Deque<PooledDriver> pool = idle.remove(name);
+                unused = pool == null ? List.of() : new ArrayList<>(pool);
+            }
+
+            unused.forEach(DUUIDriverRegistry::shutdown);
+        }
+    }
+
+    /**
+     * Check if the runtime of a driver can be reached. Docker and Swarm ping the Docker daemon (DOCKER_HOST),
+     * Podman pings the Podman service (CONTAINER_HOST). Other runtimes are assumed to be reachable.
+     *
+     * @param name The name of the driver.
+     * @return if the runtime answered the ping.
+     */
+    private static boolean isHealthy(String name) {
+        String host = switch (name) {
+            case "DUUIDockerDriver", "DUUISwarmDriver" ->
+                System.getenv().getOrDefault("DOCKER_HOST", "unix:///var/run/docker.sock");
+            case "DUUIPodmanDriver" -> System.getenv().getOrDefault("CONTAINER_HOST", getPodmanSocket());
+            default -> null;
+        };
+
+        if (host == null || System.getenv("DOCKER_TLS_VERIFY") != null) return true;
+
+        try {
+            return host.startsWith("unix://") ? pingSocket(Path.of(host.substring(7))) : pingHttp(host);
+        } catch (IOException exception) {
+            return false;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String getPodmanSocket() {
+        String runtime = System.getenv("XDG_RUNTIME_DIR");
+        if (runtime != null && Files.exists(Path.of(runtime, "podman", "podman.sock"))) {
+            return "unix://" + Path.of(runtime, "podman", "podman.sock");
+        }
+        return "unix:///run/podman/podman.sock";
+    }
+
+    /**
+     * Send GET /_ping to a daemon listening on a unix socket.
+     *
+     * @param socket The path of the socket.
+     * @return if the daemon answered with 200.
+     */
+    private static boolean pingSocket(Path socket) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             Selector selector = Selector.open()) {
+            channel.write(ByteBuffer.wrap(
+                "GET /_ping HTTP/1.0\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            if (selector.select(PING_TIMEOUT) == 0) return false;
+
+            ByteBuffer response = ByteBuffer.allocate(64);
+            channel.read(response);
+            String status = new String(response.array(), 0, response.position(), StandardCharsets.US_ASCII);
+            return status.startsWith("HTTP/1.") && status.substring(8).trim().startsWith("200");
+        }
+    }
+
+    /**
+     * Send GET /_ping to a daemon listening on a TCP port.
+     *
+     * @param host The address of the daemon (tcp://host:port or http://host:port).
+     * @return if the daemon answered with 200.
+     */
+    private static boolean pingHttp(String host) throws IOException, InterruptedException {
+        String address = host.replaceFirst("^tcp://", "http://");
+        HttpRequest request = HttpRequest
+            .newBuilder(URI.create(address + "/_ping"))
+            .timeout(Duration.ofMillis(PING_TIMEOUT))
+            .GET()
+            .build();
+
+        return HttpClient
+            .newBuilder()
+            .connectTimeout(Duration.ofMillis(PING_TIMEOUT))
+            .build()
+            .send(request, HttpResponse.BodyHandlers.discarding())
+            .statusCode() == 200;
+    }
+
+    private static void shutdown(PooledDriver instance) {
+        try {
+            instance.driver.shutdown();
+        } catch (Exception exception) {
+            log.warn("Shutting down {} failed: {}", instance.name, exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
+import org.texttechnologylab.duui.analysis.process.IDUUIProcessHandler;
+import org.texttechnologylab.duui.api.controllers.components.DUUIComponentController;
+import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
+
+/**
+ * Scales the components of started pipelines based on how busy they are.
+ * <p>
+ * Every interval (AUTOSCALER_INTERVAL_SECONDS) the profiles of the active processes of every started
+ * pipeline are compared with the previous interval. This gives the share of samples every component was
+ * busy in and the mean time documents waited for a free component instance. If documents waited longer
+ * than AUTOSCALER_WAIT_THRESHOLD_MS and the busiest component (the bottleneck) was busy most of the time,
+ * the scale of that component is increased by one. The scale of a component that was rarely busy is
+ * decreased again, but never below the scale stored in its options. Only one component per pipeline is
+ * changed at a time and the replicas of the pipeline are replaced with the new scale (see
+ * {@link DUUIPipelinePool#restart(String)}), the other components are reused through the
+ * {@link DUUIComponentRegistry}. The instances added by the autoscaler are limited globally
+ * (AUTOSCALER_MAX_INSTANCES) and per user (AUTOSCALER_MAX_INSTANCES_PER_USER). The autoscaler is disabled
+ * if the interval is 0.
+ */
+public class DUUIPipelineAutoscaler {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIPipelineAutoscaler.class);
+
+    /**
+     * The busy share above which the bottleneck is scaled up.
+     */
+    private static final double SCALE_UP_UTILIZATION = 0.8;
+
+    /**
+     * The busy share below which a scaled up component is scaled down.
+     */
+    private static final double SCALE_DOWN_UTILIZATION = 0.3;
+
+    /**
+     * The number of intervals a pipeline is left alone after its scale has been changed.
+     */
+    private static final int COOLDOWN_INTERVALS = 3;
+
+    private static final Set<String> BUSY = Set.of(DUUIStatus.ACTIVE, DUUIStatus.DECODE, DUUIStatus.DESERIALIZE);
+
+    /**
+     * The scale of every scaled component by pipeline id and component id.
+     */
+    private static final Map<String, Map<String, Integer>> scales = new ConcurrentHashMap<>();
+
+    /**
+     * The profile of every active process at the last interval.
+     */
+    private static final Map<String, Document> profiles = new HashMap<>();
+
+    /**
+     * The interval at which the scale of a pipeline has last been changed.
+     */
+    private static final Map<String, Long> changedAt = new HashMap<>();
+
+    private static long interval = 0;
+
+    private static int maxInstances = 8;
+
+    private static int maxInstancesPerUser = 4;
+
+    private static long waitThreshold = 500;
+
+    /**
+     * The busy share and the number of samples of a component within an interval.
+     *
+     * @param busy    The share of samples the component was busy in.
+     * @param samples The number of samples.
+     */
+    private record Utilization(double busy, long samples) {
+    }
+
+    /**
+     * Configure and start the autoscaler.
+     *
+     * @param intervalSeconds     The number of seconds between two decisions. 0 disables the autoscaler.
+     * @param maxInstances        The maximum number of instances added across all pipelines.
+     * @param maxInstancesPerUser The maximum number of instances added to the pipelines of a user.
+     * @param waitThreshold       The mean time in milliseconds documents must wait for a component instance
+     *                            before the bottleneck is scaled up.
+     */
+    public static synchronized void init(int intervalSeconds, int maxInstances, int maxInstancesPerUser, long waitThreshold) {
+        DUUIPipelineAutoscaler.maxInstances = Math.max(0, maxInstances);
+        DUUIPipelineAutoscaler.maxInstancesPerUser = Math.max(0, maxInstancesPerUser);
+        DUUIPipelineAutoscaler.waitThreshold = Math.max(0, waitThreshold);
+
+        if (intervalSeconds <= 0 || interval > 0) return;
+        interval = intervalSeconds;
+
+        Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "duui-pipeline-autoscaler");
+                thread.setDaemon(true);
+                return thread;
+            })
+            .scheduleWithFixedDelay(() -> {
+                try {
+                    scale();
+                } catch (Exception exception) {
+                    log.warn("Autoscaling pipelines failed: {}", exception.getMessage());
+                }
+            }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Apply the scale chosen by the autoscaler to a component of a pipeline.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @param component  The component (MongoDB {@link Document}).
+     * @return a copy of the component with the scale in its options or the component itself if it has not
+     * been scaled.
+     */
+    public static Document apply(String pipelineId, Document component) {
+        Map<String, Integer> pipelineScales = pipelineId == null ? null : scales.get(pipelineId);
+        Integer scale = pipelineScales == null ? null : pipelineScales.get(component.getString("oid"));
+        if (scale == null) return component;
+
+        Document options = component.get("options", Document.class);
+        Document scaled = new Document(component);
+        scaled.put("options", new Document(options == null ? new Document() : options).append("scale", scale));
+        return scaled;
+    }
+
+    /**
+     * @param pipelineId The id of the pipeline.
+     * @return the scale of every component of a pipeline that has been changed by the autoscaler.
+     */
+    public static Map<String, Integer> getScales(String pipelineId) {
+        return Map.copyOf(scales.getOrDefault(pipelineId, Map.of()));
+    }
+
+    /**
+     * Decide on the scale of the components of all started pipelines.
+     */
+    private static synchronized void scale() {
+        long now = System.currentTimeMillis() / TimeUnit.SECONDS.toMillis(interval);
+
+        scales.keySet().removeIf(pipelineId -> !DUUIPipelinePool.isStarted(pipelineId));
+        changedAt.keySet().removeIf(pipelineId -> !DUUIPipelinePool.isStarted(pipelineId));
+
+        Set<String> active = new HashSet<>();
+        for (String pipelineId : DUUIPipelinePool.getPipelineIds()) {
+            List<IDUUIProcessHandler> handlers = DUUIProcessController.getActiveProcesses(pipelineId);
+            if (handlers.isEmpty()) continue;
+
+            Map<String, long[]> states = new HashMap<>();
+            long[] wait = new long[2];
+            for (IDUUIProcessHandler handler : handlers) {
+                active.add(handler.getProcessID());
+                Document current = handler.getProfile();
+                Document previous = profiles.put(handler.getProcessID(), current);
+                addDelta(states, wait, current, previous);
+            }
+
+            Long changed = changedAt.get(pipelineId);
+            if (changed != null && now - changed < COOLDOWN_INTERVALS) continue;
+
+            Map<String, Utilization> utilization = new HashMap<>();
+            states.forEach((component, counts) -> utilization.put(
+                component,
+                new Utilization(counts[1] > 0 ? (double) counts[0] / counts[1] : 0, counts[1])));
+
+            double meanWait = wait[1] > 0 ? (double) wait[0] / wait[1] : 0;
+            if (decide(pipelineId, utilization, meanWait)) changedAt.put(pipelineId, now);
+        }
+
+        profiles.keySet().retainAll(active);
+    }
+
+    /**
+     * Add the component states and the wait time of a process since its previous profile.
+     *
+     * @param states   The busy and total samples per component.
+     * @param wait     The summed wait time and the number of documents.
+     * @param current  The current profile of the process.
+     * @param previous The profile of the process at the previous interval or null.
+     */
+    private static void addDelta(Map<String, long[]> states, long[] wait, Document current, Document previous) {
+        Document currentComponents = current.get("components", new Document());
+        Document previousComponents = previous == null ? new Document() : previous.get("components", new Document());
+
+        currentComponents.forEach((component, value) -> {
+            Document counts = (Document) value;
+            Document before = previousComponents.get(component, new Document());
+            long[] sums = states.computeIfAbsent(component, key -> new long[2]);
+
+            counts.forEach((state, count) -> {
+                long delta = Math.max(0, toLong(count) - toLong(before.get(state)));
+                if (BUSY.contains(state)) sums[0] += delta;
+                sums[1] += delta;
+            });
+        });
+
+        Document currentWait = current.get("stages", new Document()).get("wait", new Document());
+        Document previousWait = previous == null
+            ? new Document()
+            : previous.get("stages", new Document()).get("wait", new Document());
+
+        wait[0] += Math.max(0, toLong(currentWait.get("sum")) - toLong(previousWait.get("sum")));
+        wait[1] += Math.max(0, toLong(currentWait.get("count")) - toLong(previousWait.get("count")));
+    }
+
+    /**
+     * Scale up the bottleneck of a pipeline or scale down a component that is no longer busy.
+     *
+     * @param pipelineId  The id of the pipeline.
+     * @param utilization The utilization of every component by name within the last interval.
+     * @param meanWait    The mean time documents waited for a component instance within the last interval.
+     * @return if the scale of a component has been changed.
+     */
+    private static boolean decide(String pipelineId, Map<String, Utilization> utilization, double meanWait) {
+        Document pipeline = DUUIPipelineController.findOneById(pipelineId);
+        if (pipeline == null) return false;
+
+        Map<String, Integer> pipelineScales = scales.computeIfAbsent(pipelineId, key -> new ConcurrentHashMap<>());
+        String bottleneck = utilization
+            .entrySet()
+            .stream()
+            .filter(entry -> entry.getValue().samples() > 0)
+            .max(Map.Entry.comparingByValue((a, b) -> Double.compare(a.busy(), b.busy())))
+            .map(Map.Entry::getKey)
+            .orElse(null);
+
+        for (Document component : pipeline.getList("components", Document.class)) {
+            String componentId = component.getString("oid");
+            String name = component.getString("name");
+            Utilization usage = utilization.get(name);
+            if (componentId == null || usage == null) continue;
+
+            int base = getBaseScale(component);
+            int scale = pipelineScales.getOrDefault(componentId, base);
+
+            if (name.equals(bottleneck) && usage.busy() >= SCALE_UP_UTILIZATION && meanWait >= waitThreshold) {
+                if (!hasCapacity(pipeline.getString("user_id"))) return false;
+
+                pipelineScales.put(componentId, scale + 1);
+                log.info("Scaling up component {} of pipeline {} to {} (busy {}%, mean wait {} ms)",
+                    name, pipelineId, scale + 1, Math.round(usage.busy() * 100), Math.round(meanWait));
+                DUUIPipelinePool.restart(pipelineId);
+                return true;
+            }
+
+            if (scale > base && usage.busy() < SCALE_DOWN_UTILIZATION) {
+                if (scale - 1 == base) pipelineScales.remove(componentId);
+                else pipelineScales.put(componentId, scale - 1);
+
+                log.info("Scaling down component {} of pipeline {} to {} (busy {}%)",
+                    name, pipelineId, scale - 1, Math.round(usage.busy() * 100));
+                DUUIPipelinePool.restart(pipelineId);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if another instance may be added for a user.
+     *
+     * @param userId The id of the owner of the pipeline.
+     * @return if neither the global nor the user's limit has been reached.
+     */
+    private static boolean hasCapacity(String userId) {
+        int total = 0;
+        int user = 0;
+
+        for (Map.Entry<String, Map<String, Integer>> entry : scales.entrySet()) {
+            Document pipeline = DUUIPipelineController.findOneById(entry.getKey());
+            if (pipeline == null) continue;
+
+            int added = 0;
+            for (Document component : pipeline.getList("components", Document.class)) {
+                Integer scale = entry.getValue().get(component.getString("oid"));
+                if (scale != null) added += Math.max(0, scale - getBaseScale(component));
+            }
+
+            total += added;
+            if (userId != null && userId.equals(pipeline.getString("user_id"))) user += added;
+        }
+
+        return total < maxInstances && user < maxInstancesPerUser;
+    }
+
+    private static int getBaseScale(Document component) {
+        Document options = component.get("options", Document.class);
+        options = DUUIComponentController.mergeOptions(options == null ? null : new Document(options));
+        return Math.max(1, Integer.parseInt(options.getOrDefault("scale", "1").toString()));
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+}
@@ -3,28 +3,20 @@ package org.texttechnologylab.duui.api.controllers.pipelines;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.net.UnknownHostException;
-import java.security.InvalidParameterException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.uima.UIMAException;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.util.InvalidXMLException;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
-import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.*;
-import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
-import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIEvent;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
 import org.texttechnologylab.duui.analysis.process.IDUUIProcessHandler;
 import org.texttechnologylab.duui.api.controllers.components.DUUIComponentController;
@@ -36,7 +28,6 @@ import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
 import org.texttechnologylab.duui.api.storage.MongoDBFilters;
 import org.xml.sax.SAXException;
 
-import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Facet;
 import com.mongodb.client.model.Field;
@@ -51,7 +42,6 @@ import com.mongodb.client.model.Updates;
  * @author Cedric Borkowski
  */
 public class DUUIPipelineController {
-    private static final Map<String, DUUIComposer> reusablePipelines = new HashMap<>();
 
     private static final Set<String> UPDATABLE_FIELDS = Set.of(
         "name",
@@ -182,7 +172,7 @@ public class DUUIPipelineController {
         ));
 
         List<Document> documents = DUUIMongoDBStorage
-            .Pipelines()
+            .analytics(DUUIMongoDBStorage.Pipelines())
             .aggregate(aggregationPipeline)
             .into(new ArrayList<>());
 
@@ -241,8 +231,8 @@ public class DUUIPipelineController {
     }
 
     /**
-     * Instantiate a pipeline and store it as a reusable one. This pipeline can be passed
-     * to a composer to skip the instantiation for every process.
+     * Start a warm pool of instantiated replicas for a pipeline. The replicas are leased by processes
+     * to skip the instantiation for every process. See {@link DUUIPipelinePool}.
      *
      * @param id The id of the pipeline to instantiate.
      * @return if the instantiation was successfull.
@@ -253,32 +243,29 @@ public class DUUIPipelineController {
 
         if (pipeline == null) return false;
 
-        try {
-            DUUIComposer composer = instantiatePipeline(pipeline);
-            reusablePipelines.put(id, composer);
+        if (DUUIPipelinePool.start(pipeline)) {
             setStatus(id, DUUIStatus.IDLE);
             return true;
-        } catch (Exception exception) {
+        } else {
             setStatus(id, DUUIStatus.INACTIVE);
             return false;
         }
     }
 
     /**
-     * Shut down a pipeline and remove it from the map of reusable pipelines.
+     * Shut down the replicas of a pipeline and remove it from the pool.
      *
      * @param id The id of the pipeline to shut down.
      * @return if the shut-down was successfull
      */
     public static boolean shutdown(String id) {
-        DUUIComposer composer = reusablePipelines.get(id);
-        if (composer == null) return true;
+        if (!DUUIPipelinePool.isStarted(id)) return true;
 
         setStatus(id, DUUIStatus.SHUTDOWN);
 
         try {
             shutdownPipeline(id);
-            reusablePipelines.remove(id);
+            DUUIPipelinePrewarmer.release(id);
             setStatus(id, DUUIStatus.INACTIVE);
             return true;
         } catch (Exception e) {
@@ -288,33 +275,29 @@ public class DUUIPipelineController {
     }
 
     /**
-     * Increment the times_used property of a pipeline and update the last_used time.
+     * Increment the times_used property of a pipeline and update the last_used time. The start is also
+     * recorded in the usage history of the {@link DUUIPipelinePrewarmer}.
      *
      * @param id The pipeline id.
      */
     public static void updateTimesUsed(String id) {
+        long now = Instant.now().toEpochMilli();
+
         DUUIMongoDBStorage
             .Pipelines()
             .updateOne(
                 Filters.eq(new ObjectId(id)),
                 Updates.combine(
-                    Updates.set("last_used", Instant.now().toEpochMilli()),
+                    Updates.set("last_used", now),
                     Updates.inc("times_used", 1))
             );
-    }
 
-    /**
-     * Get the map of reusable/instantiated pipelines.
-     *
-     * @return the map of pipelines that are reusable.
-     */
-    public static Map<String, DUUIComposer> getReusablePipelines() {
-        return reusablePipelines;
+        DUUIPipelinePrewarmer.record(id, now);
     }
 
     /**
      * Delete one pipeline and return if the deletion succeeded. Also delete all components and processes
-     * referencing the pipeline.
+     * referencing the pipeline. Processes, their documents and events are deleted in the background.
      *
      * @param id The id of the pipeline to delete
      * @return if the number of deleted pipelines is greater than 0.
@@ -326,7 +309,9 @@ public class DUUIPipelineController {
 
         if (deleted) {
             DUUIComponentController.deleteMany(Filters.eq("pipeline_id", id));
-            DUUIProcessController.deleteMany(Filters.eq("pipeline_id", id));
+            DUUIProcessController.deleteManyInBackground(Filters.eq("pipeline_id", id));
+            DUUIPipelineStatisticsController.deleteOne(id);
+            DUUIPipelinePrewarmer.forget(id);
         }
 
         return deleted;
@@ -339,11 +324,11 @@ public class DUUIPipelineController {
      * @param id The id of the pipeline.
      */
     public static void interruptIfRunning(String id) {
-        if (reusablePipelines.containsKey(id)) {
+        if (DUUIPipelinePool.isStarted(id)) {
             for (IDUUIProcessHandler handler : DUUIProcessController.getActiveProcesses(id)) {
                 handler.cancel();
             }
-            reusablePipelines.remove(id);
+            DUUIPipelinePool.shutdown(id);
         }
     }
 
@@ -353,15 +338,11 @@ public class DUUIPipelineController {
      * @param pipelineId The id of the pipeline to shut down.
      */
     public static void shutdownPipeline(String pipelineId) {
-        if (reusablePipelines.containsKey(pipelineId)) {
+        if (DUUIPipelinePool.isStarted(pipelineId)) {
             for (IDUUIProcessHandler handler : DUUIProcessController.getActiveProcesses(pipelineId)) {
                 handler.cancel();
             }
-            try {
-                reusablePipelines.get(pipelineId).asService(false).shutdown();
-                reusablePipelines.remove(pipelineId);
-            } catch (UnknownHostException | InvalidParameterException ignored) {
-            }
+            DUUIPipelinePool.shutdown(pipelineId);
         }
     }
 
@@ -376,110 +357,39 @@ public class DUUIPipelineController {
     }
 
     /**
-     * This function performs a set of Aggregations to generate statistics for the usage of a pipeline.
-     * These Aggregations include
-     * - a grouping by status (Completed, Failed, etc.)
-     * - a grouping by errors
-     * - a grouping by input provider
-     * - a grouping by output provider
-     * - a grouping by usage per month
-     * - a sum of the total number documents procesed.
+     * Retrieve the usage statistics of a pipeline. The statistics are maintained incrementally when
+     * processes finish. See {@link DUUIPipelineStatisticsController}.
      *
      * @param pipelineId The identifier for the pipeline
-     * @return A BSON Document with the aggregation result.
+     * @return A BSON Document with the statistics.
      */
     public static Document getPipelineStatistics(String pipelineId) {
-        List<Document> facets = DUUIMongoDBStorage
-            .Processses()
-            .aggregate(
-                List.of(
-                    Aggregates.match(Filters.eq("pipeline_id", pipelineId)),
-                    Aggregates.facet(
-                        new Facet("status", Aggregates.group("$status", Accumulators.sum("count", 1))),
-                        new Facet("errors", Aggregates.match(Filters.ne("error", null)),
-                            Aggregates.addFields(new Field<>("errorName", new Document("$arrayElemAt", Arrays.asList(new Document("$split", Arrays.asList("$error", " - ")), 0)))),
-                            Aggregates.project(Projections.include("errorName")),
-                            Aggregates.group("$errorName", Accumulators.sum("count", 1))
-                        ),
-                        new Facet("usage",
-                            Aggregates.project(Projections.computed("convertedDate", new Document("$toDate", "$started_at"))),
-                            new Document("$group", new Document("_id",
-                                new Document("year", new Document("$year", "$convertedDate"))
-                                    .append("month", new Document("$month", "$convertedDate")))
-                                .append("count", new Document("$sum", 1)))
-                        ),
-                        new Facet("input", Aggregates.group("$input.provider", Accumulators.sum("count", 1))),
-                        new Facet("output", Aggregates.group("$output.provider", Accumulators.sum("count", 1))),
-                        new Facet("size", new Document("$group", new Document("_id", null).append("count", new Document("$sum", new Document("$size", "$document_names")))))
-                    )
-                )
-            ).into(new ArrayList<>());
-
-        Document result = new Document();
-        if (isNullOrEmpty(facets)) return result;
-        result = facets.get(0);
-
-        return result;
+        return DUUIPipelineStatisticsController.findOne(pipelineId);
     }
 
     /**
-     * Instantiate a pipeline from a {@link Document}. This function is used to instantiate a pipeline and
-     * return its composer for future use.
+     * Instantiate a pipeline from a {@link Document}. This function is used to instantiate a pipeline for
+     * future use. The components are instantiated concurrently, see {@link DUUIPipelineInstantiation}.
      *
      * @param pipeline The pipeline to instantiate (MongoDB {@link Document}).
-     * @return the composer containing the instantiated pipeline.
-     */
-    public static DUUIComposer instantiatePipeline(Document pipeline) throws Exception {
-        DUUIComposer composer = new DUUIComposer()
-            .withSkipVerification(true)
-            .withDebugLevel(DUUIComposer.DebugLevel.DEBUG)
-            .withLuaContext(new DUUILuaContext().withJsonLibrary());
-
-        setupDrivers(composer, pipeline);
-        setupComponents(composer, pipeline);
-        composer.instantiate_pipeline();
-        return composer;
-    }
-
-    /**
-     * Set up the components for a pipeline in a composer.
-     *
-     * @param composer The composer to add components to.
-     * @param pipeline A {@link Document} containing all component settings.
+     * @return the instantiated pipeline.
      */
-    public static void setupComponents(DUUIComposer composer, Document pipeline)
-        throws IOException, UIMAException, SAXException, URISyntaxException, CompressorException {
-        for (Document component : pipeline.getList("components", Document.class)) {
-            composer.add(getComponent(component));
-        }
+    public static DUUIPipelineInstantiation instantiatePipeline(Document pipeline) throws Exception {
+        return DUUIPipelineInstantiation.instantiate(pipeline);
     }
 
     /**
-     * Loops over all components in the pipeline and add their respective driver to the composer.
+     * Instantiate a pipeline that replaces an instantiation of the same pipeline. The instances of
+     * components that have not changed are taken over instead of being instantiated again.
      *
-     * @param composer The composer that is being setup.
-     * @param pipeline The pipeline (MongoDB {@link Document}) containing all relevant components.
+     * @param pipeline The pipeline to instantiate (MongoDB {@link Document}).
+     * @param replaced The instantiation that is replaced or null.
+     * @return the instantiated pipeline.
      */
-    public static void setupDrivers(DUUIComposer composer, Document pipeline) {
-        List<String> addedDrivers = new ArrayList<>();
-        for (Document component : pipeline.getList("components", Document.class)) {
-            try {
-                IDUUIDriverInterface driver = getDriverFromString(component.getString("driver"));
-
-                if (driver == null) {
-                    throw new IllegalStateException("Driver cannot be empty.");
-                }
-
-                String name = driver.getClass().getSimpleName();
-                if (addedDrivers.contains(name)) {
-                    continue;
-                }
-                composer.addDriver(driver);
-                addedDrivers.add(name);
-            } catch (Exception | LinkageError e) {
-                composer.addEvent(DUUIEvent.Sender.COMPOSER, e.getMessage(), DUUIComposer.DebugLevel.ERROR);
-            }
-        }
+    public static DUUIPipelineInstantiation instantiatePipeline(
+        Document pipeline,
+        DUUIPipelineInstantiation replaced) throws Exception {
+        return DUUIPipelineInstantiation.instantiate(pipeline, replaced);
     }
 
     /**
@@ -0,0 +1,373 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.cas.TypeSystem;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIDriverInterface;
+import org.texttechnologylab.duui.api.controllers.components.DUUIComponentCache;
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+
+/**
+ * An instantiated pipeline whose components have been instantiated concurrently.
+ * <p>
+ * A {@link DUUIComposer} instantiates its components one after another, so image pulls, readiness checks
+ * and the retrieval of typesystems and communication layers add up. Instead, every component is
+ * instantiated directly on its driver on a shared executor with a bounded parallelism
+ * (PIPELINE_INSTANTIATION_PARALLELISM) and the instantiated parts are combined in the order of the
+ * components. No composer is created per component since every composer installs a shutdown hook that
+ * can not be removed and would keep it alive until the gateway exits. The drivers are taken from the pool
+ * of the {@link DUUIDriverRegistry} and identical components are shared through the
+ * {@link DUUIComponentRegistry}. The instantiation time of every component is recorded, for shared
+ * components it is the time spent waiting for the instance. The critical path is the longest
+ * instantiation of a single component and the lower bound for the instantiation of the pipeline.
+ */
+public class DUUIPipelineInstantiation {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIPipelineInstantiation.class);
+
+    private static final AtomicInteger threads = new AtomicInteger();
+
+    private static volatile ExecutorService executor = createExecutor(4);
+
+    /**
+     * The id of the pipeline the components belong to.
+     */
+    private final String pipelineId;
+
+    /**
+     * The components (MongoDB {@link Document}) as they have been instantiated.
+     */
+    private final List<Document> components;
+
+    /**
+     * The instantiated components in the order of the components.
+     */
+    private final List<DUUIComponentRegistry.Shared> instances;
+
+    /**
+     * The name, driver and instantiation time of every component.
+     */
+    private final List<Document> timings;
+
+    private final long duration;
+
+    private final long criticalPath;
+
+    private final AtomicBoolean shutdown = new AtomicBoolean(false);
+
+    /**
+     * The merged typesystem of the components, retrieved when it is first needed.
+     */
+    private volatile TypeSystem typeSystem;
+
+    /**
+     * The composer running the instantiated components outside of a process, created when it is first needed.
+     */
+    private volatile DUUIComposer composer;
+
+    /**
+     * A component instantiated on a driver acquired from the registry.
+     *
+     * @param part   The instantiated component.
+     * @param driver The driver the component has been instantiated on. It is used by no other component.
+     */
+    record Instance(DUUIComposer.PipelinePart part, DUUIDriverRegistry.PooledDriver driver) {
+    }
+
+    DUUIPipelineInstantiation(
+        String pipelineId,
+        List<Document> components,
+        List<DUUIComponentRegistry.Shared> instances,
+        List<Document> timings,
+        long duration,
+        long criticalPath) {
+        this.pipelineId = pipelineId;
+        this.components = components;
+        this.instances = instances;
+        this.timings = timings;
+        this.duration = duration;
+        this.criticalPath = criticalPath;
+    }
+
+    /**
+     * Set the number of components that are instantiated at the same time.
+     *
+     * @param parallelism The number of components instantiated concurrently across all pipelines.
+     */
+    public static synchronized void init(int parallelism) {
+        ExecutorService previous = executor;
+        executor = createExecutor(Math.max(1, parallelism));
+        previous.shutdown();
+    }
+
+    /**
+     * Instantiate the components of a pipeline concurrently. If a component can not be instantiated, the
+     * components that have been instantiated are shut down and the first error is thrown.
+     *
+     * @param pipeline The pipeline (MongoDB {@link Document}) including its components.
+     * @return the instantiated pipeline.
+     */
+    public static DUUIPipelineInstantiation instantiate(Document pipeline) throws Exception {
+        return instantiate(pipeline, null);
+    }
+
+    /**
+     * Instantiate the components of a pipeline concurrently and take over the instances of unchanged
+     * components from a replica that is being replaced, see {@link DUUIComponentRegistry}.
+     *
+     * @param pipeline The pipeline (MongoDB {@link Document}) including its components.
+     * @param replaced The instantiation of the replaced replica or null.
+     * @return the instantiated pipeline.
+     */
+    public static DUUIPipelineInstantiation instantiate(Document pipeline, DUUIPipelineInstantiation replaced)
+        throws Exception {
+        Span span = DUUITracing.startSpan("pipeline.instantiate");
+        span.setAttribute("duui.pipeline.id", pipeline.getString("oid"));
+
+        return DUUITracing.inSpan(span, () -> {
+            Context parent = Context.current();
+            String pipelineId = pipeline.getString("oid");
+            List<Document> components = pipeline.getList("components", Document.class);
+            long start = System.nanoTime();
+            List<DUUIComponentRegistry.Shared> reusable = replaced == null
+                ? new ArrayList<>()
+                : new ArrayList<>(replaced.instances);
+
+            List<Future<DUUIComponentRegistry.Shared>> futures = new ArrayList<>();
+            List<Document> applied = new ArrayList<>();
+            List<Document> timings = new ArrayList<>();
+            for (Document stored : components) {
+                Document component = DUUIPipelineAutoscaler.apply(pipelineId, stored);
+                applied.add(component);
+                Document timing = new Document("name", component.getString("name"))
+                    .append("driver", component.getString("driver"))
+                    .append("duration", 0L)
+                    .append("shared", true);
+                timings.add(timing);
+                futures.add(executor.submit(() -> {
+                    long begin = System.nanoTime();
+                    DUUIComponentRegistry.Shared shared = DUUIComponentRegistry.acquire(
+                        pipelineId,
+                        component,
+                        () -> instantiateComponent(component, timing, parent),
+                        reusable);
+
+                    if (timing.getBoolean("shared")) timing.put("duration", (System.nanoTime() - begin) / 1_000_000);
+                    return shared;
+                }));
+            }
+
+            List<DUUIComponentRegistry.Shared> instances = new ArrayList<>();
+            Exception error = null;
+            for (Future<DUUIComponentRegistry.Shared> future : futures) {
+                try {
+                    instances.add(future.get());
+                } catch (ExecutionException exception) {
+                    if (error == null) error = exception.getCause() instanceof Exception cause
+                        ? cause
+                        : exception;
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    if (error == null) error = exception;
+                }
+            }
+
+            if (error != null) {
+                instances.forEach(shared -> shutdown(shared, pipelineId));
+                throw error;
+            }
+
+            long duration = (System.nanoTime() - start) / 1_000_000;
+            long criticalPath = timings
+                .stream()
+                .mapToLong(timing -> timing.getLong("duration"))
+                .max()
+                .orElse(0);
+
+            span.setAttribute("duui.instantiation.critical_path", criticalPath);
+            return new DUUIPipelineInstantiation(pipelineId, applied, instances, timings, duration, criticalPath);
+        });
+    }
+
+    /**
+     * Instantiate a single component on a pooled driver the way {@link DUUIComposer} does.
+     *
+     * @param component The component (MongoDB {@link Document}).
+     * @param timing    The document the instantiation time is written to.
+     * @param parent    The trace context of the pipeline instantiation.
+     * @return the instantiated component.
+     */
+    private static Instance instantiateComponent(Document component, Document timing, Context parent)
+        throws Exception {
+        Span span = DUUITracing.startSpan("component.instantiate", SpanKind.INTERNAL, parent);
+        span.setAttribute("duui.component.name", String.valueOf(component.getString("name")));
+        span.setAttribute("duui.component.driver", String.valueOf(component.getString("driver")));
+
+        return DUUITracing.inSpan(span, () -> {
+            long start = System.nanoTime();
+            timing.put("shared", false);
+
+            DUUIDriverRegistry.PooledDriver driver = DUUIDriverRegistry.acquire(component.getString("driver"));
+            IDUUIDriverInterface target = driver.getDriver();
+
+            try {
+                target.setLuaContext(DUUIComponentCache.getLuaContext());
+                String uuid = target.instantiate(
+                    DUUIPipelineController.getComponent(component),
+                    DUUIComponentCache.createJCas(),
+                    true,
+                    new AtomicBoolean(false));
+
+                return new Instance(new DUUIComposer.PipelinePart(target, uuid), driver);
+            } catch (Exception exception) {
+                DUUIDriverRegistry.release(driver);
+                throw exception;
+            } finally {
+                timing.put("duration", (System.nanoTime() - start) / 1_000_000);
+            }
+        });
+    }
+
+    /**
+     * @return the instantiated parts of all components in the order of the components.
+     */
+    public Vector<DUUIComposer.PipelinePart> getInstantiatedPipeline() {
+        Vector<DUUIComposer.PipelinePart> parts = new Vector<>();
+        for (DUUIComponentRegistry.Shared shared : instances) {
+            parts.add(shared.getInstance().part());
+        }
+        return parts;
+    }
+
+    /**
+     * @return the components (MongoDB {@link Document}) as they have been instantiated, including the scales
+     * set by the {@link DUUIPipelineAutoscaler}.
+     */
+    public List<Document> getComponents() {
+        return components;
+    }
+
+    /**
+     * Retrieve a composer running the instantiated components, e.g. to execute a document again on this
+     * replica. The composer is created once per instantiation since every composer installs a shutdown hook
+     * that can not be removed. It must not be shut down, the components are shut down with the
+     * instantiation.
+     *
+     * @return the composer.
+     * @throws URISyntaxException if the Lua context can not be loaded.
+     * @throws IOException        if the Lua context can not be loaded.
+     */
+    public DUUIComposer getComposer() throws URISyntaxException, IOException {
+        DUUIComposer current = composer;
+        if (current != null) return current;
+
+        synchronized (this) {
+            if (composer == null) {
+                composer = new DUUIComposer()
+                    .withInstantiatedPipeline(getInstantiatedPipeline())
+                    .withSkipVerification(true)
+                    .withDebugLevel(DUUIComposer.DebugLevel.DEBUG)
+                    .asService(true)
+                    .withLuaContext(DUUIComponentCache.getLuaContext());
+            }
+            return composer;
+        }
+    }
+
+    /**
+     * @return the typesystem of the pipeline, i.e. the typesystem on the classpath merged with the
+     * typesystems of all components. See {@link DUUIComponentCache#getTypeSystem(List, List)}.
+     */
+    public TypeSystem getTypeSystem() throws Exception {
+        TypeSystem committed = typeSystem;
+        if (committed == null) {
+            committed = DUUIComponentCache.getTypeSystem(components, getInstantiatedPipeline());
+            typeSystem = committed;
+        }
+        return committed;
+    }
+
+    /**
+     * @return the time in milliseconds it took to instantiate all components.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the longest instantiation time of a single component in milliseconds.
+     */
+    public long getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * @return the instantiation times of all components, the total duration and the critical path.
+     */
+    public Document toDocument() {
+        return new Document("components", timings)
+            .append("duration", duration)
+            .append("critical_path", criticalPath);
+    }
+
+    /**
+     * Shut down all components that are not used by other pipelines. Shutting down an instantiation more
+     * than once has no effect, so the shared components are released only once.
+     */
+    public void shutdown() {
+        if (shutdown.compareAndSet(false, true)) instances.forEach(shared -> shutdown(shared, pipelineId));
+    }
+
+    /**
+     * Release a shared component and shut it down if no other pipeline uses it.
+     *
+     * @param shared     The component.
+     * @param pipelineId The id of the pipeline the component has been acquired for.
+     */
+    private static void shutdown(DUUIComponentRegistry.Shared shared, String pipelineId) {
+        if (DUUIComponentRegistry.release(shared, pipelineId)) shutdown(shared.getInstance());
+    }
+
+    /**
+     * Destroy a component and return its driver to the pool.
+     *
+     * @param instance The component.
+     */
+    private static void shutdown(Instance instance) {
+        DUUIComposer.PipelinePart part = instance.part();
+        try {
+            part.getDriver().destroy(part.getUUID());
+        } catch (Exception exception) {
+            log.warn("Shutting down a component failed: {}", exception.getMessage());
+        }
+
+        DUUIComponentCache.evict(part);
+        DUUIDriverRegistry.release(instance.driver());
+    }
+
+    private static ExecutorService createExecutor(int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "duui-instantiation-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,553 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.cas.TypeSystem;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.duui.api.metrics.providers.DUUIProcessMetrics;
+
+/**
+ * A pool of instantiated pipelines (replicas) that processes lease and return.
+ * <p>
+ * Every replica is a separately instantiated pipeline with its own set of component instances. A started
+ * pipeline keeps at least its minimum number of replicas warm. A process leases an unused replica if there
+ * is one. Otherwise another replica is instantiated in the background (up to the maximum) and the process
+ * shares the least used replica in the meantime, so no process waits for a cold start while the pipeline
+ * is running. Replicas above the minimum that have not been leased for the idle timeout are shut down.
+ * <p>
+ * The minimum and maximum are configured globally (PIPELINE_POOL_MIN_REPLICAS, PIPELINE_POOL_MAX_REPLICAS)
+ * and can be overridden per pipeline with the settings min_replicas and max_replicas.
+ */
+public class DUUIPipelinePool {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIPipelinePool.class);
+
+    /**
+     * The pools of all started pipelines by pipeline id.
+     */
+    private static final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger threads = new AtomicInteger();
+
+    /**
+     * Instantiates and shuts down replicas.
+     */
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "duui-pipeline-pool-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static int defaultMinReplicas = 1;
+
+    private static int defaultMaxReplicas = 2;
+
+    private static long idleTimeout = TimeUnit.MINUTES.toMillis(30);
+
+    private static boolean scheduled = false;
+
+    /**
+     * An instantiated pipeline.
+     */
+    private static class Replica {
+
+        private final DUUIPipelineInstantiation instantiation;
+
+        /**
+         * The number of processes currently using the replica.
+         */
+        private int leases = 0;
+
+        /**
+         * The time the replica has last been returned at.
+         */
+        private long idleSince = System.currentTimeMillis();
+
+        private Replica(DUUIPipelineInstantiation instantiation) {
+            this.instantiation = instantiation;
+        }
+    }
+
+    /**
+     * A replica leased by a process. The lease must be released when the process exits.
+     */
+    public static class Lease {
+
+        private final Pool pool;
+
+        private final Replica replica;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(Pool pool, Replica replica) {
+            this.pool = pool;
+            this.replica = replica;
+        }
+
+        /**
+         * @return the instantiated pipeline of the leased replica.
+         */
+        public Vector<DUUIComposer.PipelinePart> getInstantiatedPipeline() {
+            return replica.instantiation.getInstantiatedPipeline();
+        }
+
+        /**
+         * @return the typesystem of the leased replica including the types of all its components.
+         */
+        public TypeSystem getTypeSystem() throws Exception {
+            return replica.instantiation.getTypeSystem();
+        }
+
+        /**
+         * @return the components (MongoDB {@link Document}) of the leased replica as they have been
+         * instantiated.
+         */
+        public List<Document> getComponents() {
+            return replica.instantiation.getComponents();
+        }
+
+        /**
+         * @return the composer running the leased replica outside of the process, see
+         * {@link DUUIPipelineInstantiation#getComposer()}.
+         */
+        public DUUIComposer getComposer() throws URISyntaxException, IOException {
+            return replica.instantiation.getComposer();
+        }
+
+        /**
+         * @param other Another lease.
+         * @return if both leases use at least one component instance in common, e.g. because they lease
+         * the same replica.
+         */
+        public boolean sharesInstancesWith(Lease other) {
+            if (replica == other.replica) return true;
+
+            Set<String> instances = new HashSet<>();
+            for (DUUIComposer.PipelinePart part : getInstantiatedPipeline()) instances.add(part.getUUID());
+            for (DUUIComposer.PipelinePart part : other.getInstantiatedPipeline()) {
+                if (instances.contains(part.getUUID())) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Return the replica to the pool. Releasing a lease more than once has no effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) pool.release(replica);
+        }
+    }
+
+    /**
+     * The replicas of a pipeline.
+     */
+    private static class Pool {
+
+        private final String pipelineId;
+
+        private final Document pipeline;
+
+        private final int minReplicas;
+
+        private final int maxReplicas;
+
+        private final Callable<DUUIPipelineInstantiation> instantiate;
+
+        private final List<Replica> replicas = new ArrayList<>();
+
+        /**
+         * The number of replicas currently being instantiated.
+         */
+        private int instantiating = 0;
+
+        private boolean closed = false;
+
+        private Pool(
+            Document pipeline,
+            int minReplicas,
+            int maxReplicas,
+            Callable<DUUIPipelineInstantiation> instantiate) {
+            this.pipelineId = pipeline.getString("oid");
+            this.pipeline = pipeline;
+            this.minReplicas = minReplicas;
+            this.maxReplicas = Math.max(minReplicas, maxReplicas);
+            this.instantiate = instantiate;
+        }
+
+        private int size() {
+            return replicas.size() + instantiating;
+        }
+
+        /**
+         * Lease the most recently used unused replica, so that the other replicas stay idle and can be
+         * scaled down. If all replicas are in use, the pool grows and the least used replica is shared.
+         *
+         * @param excluded A replica that must not be leased or null.
+         * @return the lease or null if no replica is ready.
+         */
+        private synchronized Lease lease(Replica excluded) {
+            if (closed) return null;
+
+            Replica replica = replicas
+                .stream()
+                .filter(candidate -> candidate != excluded && candidate.leases == 0)
+                .max(Comparator.comparingLong(candidate -> candidate.idleSince))
+                .orElse(null);
+
+            if (replica == null) {
+                if (size() < maxReplicas) grow();
+
+                replica = replicas
+                    .stream()
+                    .filter(candidate -> candidate != excluded)
+                    .min(Comparator.comparingInt(candidate -> candidate.leases))
+                    .orElse(null);
+            }
+
+            if (replica == null) return null;
+
+            replica.leases++;
+            return new Lease(this, replica);
+        }
+
+        private synchronized void release(Replica replica) {
+            replica.leases = Math.max(0, replica.leases - 1);
+            if (replica.leases > 0) return;
+
+            replica.idleSince = System.currentTimeMillis();
+            if (closed) {
+                replicas.remove(replica);
+                executor.submit(() -> shutdownReplica(pipelineId, replica));
+            }
+        }
+
+        /**
+         * Instantiate another replica in the background. Must be called while holding the lock.
+         *
+         * @return the future of the instantiation.
+         */
+        private Future<?> grow() {
+            instantiating++;
+
+            return executor.submit(() -> {
+                Replica replica = null;
+                try {
+                    replica = new Replica(instantiate.call());
+                } catch (Exception exception) {
+                    log.warn("Instantiating a replica of pipeline {} failed: {}", pipelineId, exception.getMessage());
+                }
+
+                boolean discard;
+                synchronized (this) {
+                    instantiating--;
+                    if (replica == null) return;
+
+                    discard = closed;
+                    if (!discard) replicas.add(replica);
+                }
+
+                if (discard) shutdownReplica(pipelineId, replica);
+            });
+        }
+
+        /**
+         * Remove replicas above the minimum that have been idle for longer than the timeout.
+         *
+         * @return the removed replicas.
+         */
+        private synchronized List<Replica> scaleDown(long now) {
+            List<Replica> removed = new ArrayList<>();
+
+            for (Replica replica : new ArrayList<>(replicas)) {
+                if (size() <= minReplicas) break;
+                if (replica.leases > 0 || now - replica.idleSince < idleTimeout) continue;
+
+                replicas.remove(replica);
+                removed.add(replica);
+            }
+
+            return removed;
+        }
+
+        /**
+         * Close the pool. Unused replicas are returned for shutdown, leased ones are shut down when released.
+         *
+         * @return the unused replicas.
+         */
+        private synchronized List<Replica> close() {
+            closed = true;
+
+            List<Replica> unused = replicas.stream().filter(replica -> replica.leases == 0).toList();
+            replicas.removeAll(unused);
+            return unused;
+        }
+
+        /**
+         * @return the instantiations of all replicas, unused ones first.
+         */
+        private synchronized List<DUUIPipelineInstantiation> getInstantiations() {
+            return replicas
+                .stream()
+                .sorted(Comparator.comparingInt(replica -> replica.leases))
+                .map(replica -> replica.instantiation)
+                .toList();
+        }
+
+        private synchronized Document toDocument() {
+            return new Document("replicas", replicas.size())
+                .append("leased", replicas.stream().filter(replica -> replica.leases > 0).count())
+                .append("leases", replicas.stream().mapToInt(replica -> replica.leases).sum())
+                .append("instantiating", instantiating)
+                .append("min_replicas", minReplicas)
+                .append("max_replicas", maxReplicas)
+                .append("scales", DUUIPipelineAutoscaler.getScales(pipelineId));
+        }
+    }
+
+    /**
+     * Configure the default pool sizes and start scaling down idle replicas.
+     *
+     * @param minReplicas        The number of replicas kept warm per started pipeline.
+     * @param maxReplicas        The maximum number of replicas per pipeline.
+     * @param idleTimeoutMinutes The number of minutes after which an unused replica above the minimum is
+     *                           shut down.
+     */
+    public static synchronized void init(int minReplicas, int maxReplicas, int idleTimeoutMinutes) {
+        defaultMinReplicas = Math.max(1, minReplicas);
+        defaultMaxReplicas = Math.max(defaultMinReplicas, maxReplicas);
+        idleTimeout = TimeUnit.MINUTES.toMillis(Math.max(1, idleTimeoutMinutes));
+
+        if (scheduled) return;
+        scheduled = true;
+
+        Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "duui-pipeline-pool-scaler");
+                thread.setDaemon(true);
+                return thread;
+            })
+            .scheduleWithFixedDelay(DUUIPipelinePool::scaleDown, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Start the pool of a pipeline and wait until its minimum number of replicas has been instantiated.
+     * Starting a pipeline that is already started has no effect.
+     *
+     * @param pipeline The pipeline to start.
+     * @return if at least one replica could be instantiated.
+     */
+    public static boolean start(Document pipeline) {
+        return start(pipeline, () -> DUUIPipelineController.instantiatePipeline(pipeline));
+    }
+
+    /**
+     * Start the pool of a pipeline whose replicas are instantiated by the given function.
+     *
+     * @param pipeline    The pipeline to start.
+     * @param instantiate Instantiates a replica of the pipeline.
+     * @return if at least one replica could be instantiated.
+     */
+    static boolean start(Document pipeline, Callable<DUUIPipelineInstantiation> instantiate) {
+        String pipelineId = pipeline.getString("oid");
+
+        Pool pool = createPool(pipeline, instantiate);
+        if (pools.putIfAbsent(pipelineId, pool) != null) return true;
+
+        if (fill(pool)) return true;
+
+        pools.remove(pipelineId, pool);
+        pool.close();
+        return false;
+    }
+
+    /**
+     * Replace the replicas of a started pipeline in the background, e.g. because one of its components has
+     * been updated. The new replicas are instantiated before the old ones are removed and take over the
+     * instances of all components that have not changed, so only the changed components are instantiated
+     * again (see {@link DUUIComponentRegistry}). Old replicas that are still leased are shut down when their
+     * processes return them.
+     *
+     * @param pipelineId The id of the pipeline.
+     */
+    public static void restart(String pipelineId) {
+        if (!isStarted(pipelineId)) return;
+
+        executor.submit(() -> {
+            Document pipeline = DUUIPipelineController.findOneById(pipelineId);
+            Pool previous = pools.get(pipelineId);
+            if (pipeline == null || previous == null) return;
+
+            // Every new replica replaces an old one and takes over the instances of its unchanged components.
+            Queue<DUUIPipelineInstantiation> replaced = new ConcurrentLinkedQueue<>(previous.getInstantiations());
+            Pool pool = createPool(
+                pipeline,
+                () -> DUUIPipelineController.instantiatePipeline(pipeline, replaced.poll()));
+            if (!fill(pool) || !pools.replace(pipelineId, previous, pool)) {
+                for (Replica replica : pool.close()) shutdownReplica(pipelineId, replica);
+                return;
+            }
+
+            log.info("Restarted the replicas of pipeline {}", pipelineId);
+            for (Replica replica : previous.close()) shutdownReplica(pipelineId, replica);
+        });
+    }
+
+    private static Pool createPool(Document pipeline, Callable<DUUIPipelineInstantiation> instantiate) {
+        Document settings = pipeline.get("settings", Document.class);
+        return new Pool(
+            pipeline,
+            getMinReplicas(pipeline),
+            getSetting(settings, "max_replicas", defaultMaxReplicas),
+            instantiate);
+    }
+
+    /**
+     * Instantiate the minimum number of replicas of a pool and wait for them.
+     *
+     * @param pool The pool.
+     * @return if at least one replica could be instantiated.
+     */
+    private static boolean fill(Pool pool) {
+        List<Future<?>> instantiations = new ArrayList<>();
+        synchronized (pool) {
+            for (int i = 0; i < pool.minReplicas; i++) instantiations.add(pool.grow());
+        }
+
+        for (Future<?> instantiation : instantiations) {
+            try {
+                instantiation.get();
+            } catch (Exception exception) {
+                log.warn("Waiting for a replica of pipeline {} failed: {}", pool.pipelineId, exception.getMessage());
+            }
+        }
+
+        synchronized (pool) {
+            return !pool.replicas.isEmpty();
+        }
+    }
+
+    /**
+     * @param pipeline The pipeline.
+     * @return the number of replicas that are kept warm when the pipeline is started.
+     */
+    public static int getMinReplicas(Document pipeline) {
+        return Math.max(1, getSetting(pipeline.get("settings", Document.class), "min_replicas", defaultMinReplicas));
+    }
+
+    /**
+     * Lease a replica of a started pipeline.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @return the lease or null if the pipeline has not been started or no replica is ready.
+     */
+    public static Lease lease(String pipelineId) {
+        Pool pool = pools.get(pipelineId);
+        return pool == null ? null : pool.lease(null);
+    }
+
+    /**
+     * Lease another replica of the pipeline of a lease, e.g. to execute a document again that is stuck on
+     * the replica of the lease. If the pipeline has only one replica, another one is instantiated in the
+     * background (up to the maximum) for subsequent calls.
+     *
+     * @param lease The lease whose replica must not be leased.
+     * @return the lease of a different replica or null if there is none or the pipeline has been restarted.
+     */
+    public static Lease leaseOther(Lease lease) {
+        return pools.containsValue(lease.pool) ? lease.pool.lease(lease.replica) : null;
+    }
+
+    /**
+     * Remove the pool of a pipeline and shut down its replicas. Replicas that are still leased are shut
+     * down when their processes return them.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @return if the pipeline had been started.
+     */
+    public static boolean shutdown(String pipelineId) {
+        Pool pool = pools.remove(pipelineId);
+        if (pool == null) return false;
+
+        for (Replica replica : pool.close()) shutdownReplica(pipelineId, replica);
+        DUUIProcessMetrics.removePipeline(pipelineId);
+        return true;
+    }
+
+    /**
+     * @param pipelineId The id of the pipeline.
+     * @return if the pipeline has been started.
+     */
+    public static boolean isStarted(String pipelineId) {
+        return pools.containsKey(pipelineId);
+    }
+
+    /**
+     * @return the ids of all started pipelines.
+     */
+    public static Set<String> getPipelineIds() {
+        return Set.copyOf(pools.keySet());
+    }
+
+    /**
+     * @param pipelineId The id of the pipeline.
+     * @return the number of replicas, leases and the pool size of a pipeline or null if it has not been started.
+     */
+    public static Document getStatus(String pipelineId) {
+        Pool pool = pools.get(pipelineId);
+        return pool == null ? null : pool.toDocument();
+    }
+
+    /**
+     * Shut down replicas that have been idle for longer than the idle timeout.
+     */
+    private static void scaleDown() {
+        scaleDown(System.currentTimeMillis());
+    }
+
+    /**
+     * Shut down replicas that have been idle for longer than the idle timeout at the given time.
+     *
+     * @param now The current time in milliseconds.
+     */
+    static void scaleDown(long now) {
+        pools.forEach((pipelineId, pool) -> {
+            for (Replica replica : pool.scaleDown(now)) {
+                log.info("Shutting down an idle replica of pipeline {}", pipelineId);
+                shutdownReplica(pipelineId, replica);
+            }
+        });
+    }
+
+    private static void shutdownReplica(String pipelineId, Replica replica) {
+        log.debug("Shutting down a replica of pipeline {}", pipelineId);
+        replica.instantiation.shutdown();
+    }
+
+    private static int getSetting(Document settings, String key, int defaultValue) {
+        if (settings == null) return defaultValue;
+
+        Object value = settings.get(key);
+        return value instanceof Number number ? number.intValue() : defaultValue;
+    }
+}
@@ -0,0 +1,318 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
+import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * Starts popular pipelines before processes are started for them and shuts them down once they are no
+ * longer in demand.
+ * <p>
+ * For every pipeline the pre-warmer keeps a moving average of process starts per hour and a time-of-day
+ * profile (decayed start counts per hour of the day). Both are seeded from the processes of the last
+ * two weeks and updated whenever a process is started. Every minute the expected number of starts within
+ * the next hour is estimated as the larger of the moving average and the profile for the current and next
+ * hour. Pipelines whose demand exceeds the threshold (PIPELINE_PREWARM_THRESHOLD) are started in order of
+ * demand as long as the budget (PIPELINE_PREWARM_BUDGET) allows. The budget limits the number of warm
+ * component instances, i.e. the number of components times the minimum number of replicas. Pipelines
+ * started by the pre-warmer are shut down when their demand dropped and no process has been started for
+ * PIPELINE_PREWARM_IDLE_MINUTES. Pipelines started by users are never shut down, even if the pre-warmer
+ * has started them before: starting a pipeline through the API claims it (see {@link #claim(String)}) until
+ * it is shut down. Pre-warming is disabled if the budget is 0.
+ */
+public class DUUIPipelinePrewarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIPipelinePrewarmer.class);
+
+    /**
+     * The time constant of the moving average of starts.
+     */
+    private static final long RATE_WINDOW = TimeUnit.HOURS.toMillis(2);
+
+    /**
+     * The time constant of the time-of-day profile.
+     */
+    private static final long PROFILE_WINDOW = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * The age of the oldest processes used to seed the usage history.
+     */
+    private static final long HISTORY = TimeUnit.DAYS.toMillis(14);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The usage history of all pipelines by pipeline id.
+     */
+    private static final Map<String, Usage> usages = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of pipelines started by the pre-warmer.
+     */
+    private static final Set<String> prewarmed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The ids of pipelines started by users. They are neither pre-warmed nor shut down by the pre-warmer.
+     */
+    private static final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    private static volatile int budget = 0;
+
+    private static double threshold = 1.0;
+
+    private static long idleTimeout = TimeUnit.MINUTES.toMillis(60);
+
+    /**
+     * The usage history of a pipeline.
+     */
+    private static class Usage {
+
+        /**
+         * The exponentially weighted moving average of starts per hour at the time of the last start.
+         */
+        private double rate = 0;
+
+        /**
+         * The decayed number of starts per hour of the day at the time of the last start.
+         */
+        private final double[] profile = new double[24];
+
+        private long lastStart = 0;
+
+        /**
+         * Add a start to the moving average and the time-of-day profile.
+         *
+         * @param time The time of the start in milliseconds.
+         */
+        private synchronized void record(long time) {
+            if (lastStart > 0 && time > lastStart) {
+                long elapsed = time - lastStart;
+                rate *= Math.exp(-(double) elapsed / RATE_WINDOW);
+
+                double decay = Math.exp(-(double) elapsed / PROFILE_WINDOW);
+                for (int hour = 0; hour < profile.length; hour++) profile[hour] *= decay;
+            }
+
+            rate += (double) HOUR / RATE_WINDOW;
+            profile[hourOfDay(time)]++;
+            lastStart = Math.max(lastStart, time);
+        }
+
+        /**
+         * Estimate the number of starts within the next hour.
+         *
+         * @param now The current time in milliseconds.
+         * @return the larger of the moving average and the time-of-day profile for the current and next hour.
+         */
+        private synchronized double demand(long now) {
+            long elapsed = Math.max(0, now - lastStart);
+            double currentRate = rate * Math.exp(-(double) elapsed / RATE_WINDOW);
+
+            // A profile value of p corresponds to p * (1 - e^(-1 day / window)) starts per day in that hour.
+            double scale = Math.exp(-(double) elapsed / PROFILE_WINDOW)
+                * (1 - Math.exp(-(double) DAY / PROFILE_WINDOW));
+            int hour = hourOfDay(now);
+            double expected = Math.max(profile[hour], profile[(hour + 1) % 24]) * scale;
+
+            return Math.max(currentRate, expected);
+        }
+
+        private synchronized long getLastStart() {
+            return lastStart;
+        }
+    }
+
+    /**
+     * Configure the pre-warmer, load the usage history and start checking the demand every minute.
+     *
+     * @param budget      The maximum number of component instances kept warm by the pre-warmer. 0 disables
+     *                    pre-warming.
+     * @param threshold   The expected number of starts within the next hour above which a pipeline is started.
+     * @param idleMinutes The number of minutes without a start after which a pre-warmed pipeline is shut down.
+     */
+    public static synchronized void init(int budget, double threshold, int idleMinutes) {
+        DUUIPipelinePrewarmer.budget = Math.max(0, budget);
+        DUUIPipelinePrewarmer.threshold = threshold;
+        DUUIPipelinePrewarmer.idleTimeout = TimeUnit.MINUTES.toMillis(Math.max(1, idleMinutes));
+
+        if (DUUIPipelinePrewarmer.budget == 0) return;
+
+        loadHistory();
+
+        Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "duui-pipeline-prewarmer");
+                thread.setDaemon(true);
+                return thread;
+            })
+            .scheduleWithFixedDelay(() -> {
+                try {
+                    prewarm(System.currentTimeMillis());
+                } catch (Exception exception) {
+                    log.warn("Pre-warming pipelines failed: {}", exception.getMessage());
+                }
+            }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Record the start of a process.
+     *
+     * @param pipelineId The id of the pipeline used by the process.
+     * @param time       The time of the start in milliseconds.
+     */
+    public static void record(String pipelineId, long time) {
+        if (budget == 0) return;
+        usages.computeIfAbsent(pipelineId, id -> new Usage()).record(time);
+    }
+
+    /**
+     * Take over a pipeline that is started by a user, so that the pre-warmer does not shut it down. If the
+     * pre-warmer is shutting the pipeline down at the moment, this waits until it is done, so the pipeline
+     * can be started again afterwards.
+     *
+     * @param pipelineId The id of the pipeline.
+     */
+    public static synchronized void claim(String pipelineId) {
+        claimed.add(pipelineId);
+        prewarmed.remove(pipelineId);
+    }
+
+    /**
+     * Give up the claim of a user on a pipeline after it has been shut down or could not be started.
+     *
+     * @param pipelineId The id of the pipeline.
+     */
+    public static synchronized void release(String pipelineId) {
+        claimed.remove(pipelineId);
+    }
+
+    /**
+     * Remove the usage history of a deleted pipeline.
+     *
+     * @param pipelineId The id of the pipeline.
+     */
+    public static synchronized void forget(String pipelineId) {
+        usages.remove(pipelineId);
+        prewarmed.remove(pipelineId);
+        claimed.remove(pipelineId);
+    }
+
+    /**
+     * Seed the usage history from the processes started within the last two weeks.
+     */
+    private static void loadHistory() {
+        long now = System.currentTimeMillis();
+
+        DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.gte("started_at", now - HISTORY))
+            .projection(Projections.include("pipeline_id", "started_at"))
+            .sort(Sorts.ascending("started_at"))
+            .forEach(process -> {
+                String pipelineId = process.getString("pipeline_id");
+                Number startedAt = process.get("started_at", Number.class);
+                if (pipelineId != null && startedAt != null) record(pipelineId, startedAt.longValue());
+            });
+
+        log.info("Loaded the usage history of {} pipelines", usages.size());
+    }
+
+    /**
+     * Shut down pre-warmed pipelines that are no longer in demand and start the pipelines with the highest
+     * demand that fit into the remaining budget.
+     *
+     * @param now The current time in milliseconds.
+     */
+    private static void prewarm(long now) {
+        prewarmed.removeIf(pipelineId -> !DUUIPipelinePool.isStarted(pipelineId));
+
+        for (String pipelineId : List.copyOf(prewarmed)) {
+            Usage usage = usages.get(pipelineId);
+            boolean idle = usage == null || now - usage.getLastStart() >= idleTimeout;
+
+            if (usage != null && usage.demand(now) >= threshold) continue;
+            if (!idle || !DUUIProcessController.getActiveProcesses(pipelineId).isEmpty()) continue;
+
+            // A user may have claimed the pipeline in the meantime.
+            synchronized (DUUIPipelinePrewarmer.class) {
+                if (!prewarmed.remove(pipelineId)) continue;
+
+                log.info("Shutting down pre-warmed pipeline {}", pipelineId);
+                DUUIPipelineController.shutdown(pipelineId);
+            }
+        }
+
+        List<Map.Entry<String, Double>> candidates = new ArrayList<>();
+        usages.forEach((pipelineId, usage) -> {
+            double demand = usage.demand(now);
+            if (demand >= threshold && !claimed.contains(pipelineId) && !DUUIPipelinePool.isStarted(pipelineId)) {
+                candidates.add(Map.entry(pipelineId, demand));
+            }
+        });
+        if (candidates.isEmpty()) return;
+
+        candidates.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()));
+
+        int used = 0;
+        for (String pipelineId : prewarmed) {
+            Document pipeline = DUUIPipelineController.findOneById(pipelineId);
+            if (pipeline != null) used += getCost(pipeline);
+        }
+
+        for (Map.Entry<String, Double> candidate : candidates) {
+            String pipelineId = candidate.getKey();
+            Document pipeline = DUUIPipelineController.findOneById(pipelineId);
+
+            if (pipeline == null) {
+                forget(pipelineId);
+                continue;
+            }
+
+            int cost = getCost(pipeline);
+            if (used + cost > budget) continue;
+
+            log.info("Pre-warming pipeline {} (expected starts within the next hour: {})",
+                pipelineId, String.format("%.2f", candidate.getValue()));
+
+            if (DUUIPipelineController.instantiate(pipelineId)) {
+                synchronized (DUUIPipelinePrewarmer.class) {
+                    if (!claimed.contains(pipelineId)) prewarmed.add(pipelineId);
+                }
+                used += cost;
+            }
+        }
+    }
+
+    /**
+     * @param pipeline The pipeline including its components.
+     * @return the number of component instances that are kept warm for the pipeline.
+     */
+    private static int getCost(Document pipeline) {
+        List<Document> components = pipeline.getList("components", Document.class);
+        int size = components == null ? 0 : components.size();
+        return Math.max(1, size) * DUUIPipelinePool.getMinReplicas(pipeline);
+    }
+
+    private static int hourOfDay(long time) {
+        return Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).getHour();
+    }
+}
@@ -0,0 +1,623 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.analysis.process.DUUIProcessProfile;
+import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Facet;
+import com.mongodb.client.model.Field;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
+
+/**
+ * A Controller for the materialized pipeline statistics stored in the pipeline_statistics collection.
+ * <p>
+ * Every pipeline has at most one statistics document that is incremented when one of its processes has
+ * finished and decremented when a recorded process is deleted. Processes that have been counted are marked
+ * with the generation of the statistics document they have been counted in (statistics_recorded) so that a
+ * process is never counted twice. Reading statistics is therefore a single lookup by id instead of an
+ * aggregation over all processes of the pipeline.
+ * <p>
+ * A rebuild claims all finished processes for a new generation, aggregates them and replaces the statistics
+ * document with one of the new generation. Increments only apply to the generation the process has been
+ * claimed for, so a process that is recorded while a rebuild runs is counted either by the rebuild or by
+ * the increment, never by both or neither. Statistics are never rebuilt on read. Pipelines without
+ * statistics (e.g. after upgrading from the per-request aggregation) are rebuilt once in the background at
+ * startup, or when one of their processes is recorded first.
+ * <p>
+ * Counters are stored as maps (e.g. status.Completed: 3) and converted to the format of the former
+ * $facet aggregation ([{_id, count}]) when read. The performance profiles of the processes are merged
+ * into a single profile (histogram buckets and component samples) in the same way.
+ */
+public class DUUIPipelineStatisticsController {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIPipelineStatisticsController.class);
+
+    /**
+     * The field set on a process once it has been counted. It holds the generation of the statistics it has
+     * been counted in.
+     */
+    public static final String RECORDED = "statistics_recorded";
+
+    /**
+     * The map key used for null values (e.g. a process without output provider).
+     */
+    private static final String NULL_KEY = "%null";
+
+    private static final String GENERATION = "generation";
+
+    private static final List<String> COUNTERS = List.of("status", "errors", "input", "output");
+
+    /**
+     * Count a finished process in the statistics of its pipeline. Calling this method more than once for the
+     * same process has no effect.
+     *
+     * @param processId The id of the process.
+     */
+    public static void record(String processId) {
+        Document process = DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.eq(new ObjectId(processId)))
+            .projection(Projections.include("pipeline_id"))
+            .first();
+
+        if (process == null) return;
+
+        String pipelineId = process.getString("pipeline_id");
+        Bson unclaimed = Filters.exists(RECORDED, false);
+
+        while (true) {
+            ObjectId generation = generation(pipelineId);
+
+            process = DUUIMongoDBStorage
+                .Processses()
+                .findOneAndUpdate(
+                    Filters.and(
+                        Filters.eq(new ObjectId(processId)),
+                        Filters.eq("is_finished", true),
+                        unclaimed),
+                    Updates.set(RECORDED, generation),
+                    new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+
+            if (process == null) return;
+
+            UpdateResult result = DUUIMongoDBStorage
+                .PipelineStatistics()
+                .updateOne(
+                    Filters.and(
+                        Filters.eq(pipelineId),
+                        Filters.eq(GENERATION, generation)),
+                    increments(process, 1));
+
+            if (result.getMatchedCount() > 0) return;
+
+            // The statistics have been rebuilt in the meantime. Unless the rebuild has claimed the process,
+            // it is counted in the new generation.
+            unclaimed = Filters.eq(RECORDED, process.get(RECORDED));
+        }
+    }
+
+    /**
+     * Retrieve the generation of the statistics of a pipeline. If the pipeline has no statistics yet, they
+     * are rebuilt from all of its finished processes instead of starting with empty statistics.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @return the generation.
+     */
+    private static ObjectId generation(String pipelineId) {
+        Document statistics = findGeneration(pipelineId);
+        if (statistics != null) return statistics.getObjectId(GENERATION);
+
+        rebuildIfMissing(pipelineId);
+        return findGeneration(pipelineId).getObjectId(GENERATION);
+    }
+
+    private static Document findGeneration(String pipelineId) {
+        return DUUIMongoDBStorage
+            .PipelineStatistics()
+            .find(Filters.eq(pipelineId))
+            .projection(Projections.include(GENERATION))
+            .first();
+    }
+
+    /**
+     * Remove a process from the statistics of its pipeline if it has been counted before. This method must be
+     * called before the process is deleted.
+     *
+     * @param process The process (MongoDB {@link Document}) that is about to be deleted.
+     */
+    public static void forget(Document process) {
+        if (process == null) return;
+
+        if (!(process.get(RECORDED) instanceof ObjectId generation)) return;
+
+        DUUIMongoDBStorage
+            .PipelineStatistics()
+            .updateOne(
+                Filters.and(
+                    Filters.eq(process.getString("pipeline_id")),
+                    Filters.eq(GENERATION, generation)),
+                increments(process, -1));
+    }
+
+    /**
+     * Delete the statistics of a pipeline.
+     *
+     * @param pipelineId The id of the pipeline.
+     */
+    public static void deleteOne(String pipelineId) {
+        DUUIMongoDBStorage
+            .PipelineStatistics()
+            .deleteOne(Filters.eq(pipelineId));
+    }
+
+    /**
+     * Retrieve the statistics of a pipeline. A pipeline without statistics has no recorded processes.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @return A BSON Document in the format of {@link #aggregate(String, ObjectId)}.
+     */
+    public static Document findOne(String pipelineId) {
+        Document statistics = DUUIMongoDBStorage
+            .analytics(DUUIMongoDBStorage.PipelineStatistics())
+            .find(Filters.eq(pipelineId))
+            .first();
+
+        return toResponse(statistics == null ? new Document() : statistics);
+    }
+
+    /**
+     * Retrieve the statistics of multiple pipelines with a single query. Pipelines without statistics have
+     * no recorded processes.
+     *
+     * @param pipelineIds The ids of the pipelines.
+     * @return A Map from pipeline id to statistics.
+     */
+    public static Map<String, Document> findMany(Collection<String> pipelineIds) {
+        Map<String, Document> result = new HashMap<>();
+
+        DUUIMongoDBStorage
+            .analytics(DUUIMongoDBStorage.PipelineStatistics())
+            .find(Filters.in("_id", pipelineIds))
+            .forEach(statistics -> result.put(statistics.getString("_id"), toResponse(statistics)));
+
+        for (String pipelineId : pipelineIds) {
+            result.putIfAbsent(pipelineId, toResponse(new Document()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Rebuild the statistics of a pipeline from all finished processes and replace the stored document.
+     * The finished processes are claimed for a new generation and only processes of that generation are
+     * aggregated. Rebuilds are serialized so that an older generation never replaces a newer one.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @return The stored statistics document.
+     */
+    public static synchronized Document rebuild(String pipelineId) {
+        ObjectId generation = new ObjectId();
+
+        DUUIMongoDBStorage
+            .Processses()
+            .updateMany(
+                Filters.and(
+                    Filters.eq("pipeline_id", pipelineId),
+                    Filters.eq("is_finished", true)),
+                Updates.set(RECORDED, generation));
+
+        Document statistics = fromAggregation(pipelineId, aggregate(pipelineId, generation))
+            .append(GENERATION, generation)
+            .append("profile", aggregateProfile(pipelineId, generation));
+
+        DUUIMongoDBStorage
+            .PipelineStatistics()
+            .replaceOne(Filters.eq(pipelineId), statistics, new ReplaceOptions().upsert(true));
+
+        return statistics;
+    }
+
+    /**
+     * Rebuild the statistics of all pipelines that have none in the background, e.g. after upgrading from
+     * a version that aggregated the statistics on every request.
+     */
+    public static void init() {
+        Thread thread = new Thread(() -> {
+            try {
+                int rebuilt = rebuildMissing();
+                if (rebuilt > 0) log.info("Rebuilt the missing statistics of {} pipelines", rebuilt);
+            } catch (Exception exception) {
+                log.error("Rebuilding missing pipeline statistics failed", exception);
+            }
+        }, "duui-statistics-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rebuild the statistics of all pipelines that have none.
+     *
+     * @return the number of pipelines whose statistics have been rebuilt.
+     */
+    public static int rebuildMissing() {
+        Set<String> existing = DUUIMongoDBStorage
+            .PipelineStatistics()
+            .find()
+            .projection(Projections.include("_id"))
+            .map(statistics -> statistics.getString("_id"))
+            .into(new HashSet<>());
+
+        List<String> pipelineIds = DUUIMongoDBStorage
+            .Pipelines()
+            .find()
+            .projection(Projections.include("_id"))
+            .map(pipeline -> pipeline.getObjectId("_id").toString())
+            .into(new ArrayList<>());
+
+        int rebuilt = 0;
+        for (String pipelineId : pipelineIds) {
+            if (!existing.contains(pipelineId) && rebuildIfMissing(pipelineId)) rebuilt++;
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Rebuild the statistics of a pipeline unless they exist.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @return if the statistics have been rebuilt.
+     */
+    private static synchronized boolean rebuildIfMissing(String pipelineId) {
+        if (findGeneration(pipelineId) != null) return false;
+
+        rebuild(pipelineId);
+        return true;
+    }
+
+    /**
+     * Rebuild the statistics of all pipelines.
+     *
+     * @return the number of pipelines whose statistics have been rebuilt.
+     */
+    public static int rebuildAll() {
+        List<String> pipelineIds = DUUIMongoDBStorage
+            .Pipelines()
+            .find()
+            .projection(Projections.include("_id"))
+            .map(pipeline -> pipeline.getObjectId("_id").toString())
+            .into(new ArrayList<>());
+
+        DUUIMongoDBStorage
+            .PipelineStatistics()
+            .deleteMany(Filters.nin("_id", pipelineIds));
+
+        pipelineIds.forEach(DUUIPipelineStatisticsController::rebuild);
+        return pipelineIds.size();
+    }
+
+    /**
+     * Aggregate the statistics of a pipeline over the processes recorded in a generation. The result contains
+     * - a count per status,
+     * - a count per error type,
+     * - a count per month,
+     * - a count per input and output provider and
+     * - a sum of the total number documents procesed.
+     *
+     * @param pipelineId The identifier for the pipeline
+     * @param generation The generation the processes have been claimed for.
+     * @return A BSON Document with the aggregation result.
+     */
+    private static Document aggregate(String pipelineId, ObjectId generation) {
+        List<Document> facets = DUUIMongoDBStorage
+            .Processses()
+            .aggregate(
+                List.of(
+                    Aggregates.match(Filters.and(
+                        Filters.eq("pipeline_id", pipelineId),
+                        Filters.eq(RECORDED, generation))),
+                    Aggregates.facet(
+                        new Facet("status", Aggregates.group("$status", Accumulators.sum("count", 1))),
+                        new Facet("errors", Aggregates.match(Filters.ne("error", null)),
+                            Aggregates.addFields(new Field<>("errorName", new Document("$arrayElemAt", Arrays.asList(new Document("$split", Arrays.asList("$error", " - ")), 0)))),
+                            Aggregates.project(Projections.include("errorName")),
+                            Aggregates.group("$errorName", Accumulators.sum("count", 1))
+                        ),
+                        new Facet("usage",
+                            Aggregates.project(Projections.computed("convertedDate", new Document("$toDate", "$started_at"))),
+                            new Document("$group", new Document("_id",
+                                new Document("year", new Document("$year", "$convertedDate"))
+                                    .append("month", new Document("$month", "$convertedDate")))
+                                .append("count", new Document("$sum", 1)))
+                        ),
+                        new Facet("input", Aggregates.group("$input.provider", Accumulators.sum("count", 1))),
+                        new Facet("output", Aggregates.group("$output.provider", Accumulators.sum("count", 1))),
+                        new Facet("size", new Document("$group", new Document("_id", null).append("count", new Document("$sum", new Document("$size", "$document_names")))))
+                    )
+                )
+            ).into(new ArrayList<>());
+
+        if (facets.isEmpty()) return new Document();
+        return facets.get(0);
+    }
+
+    /**
+     * Build the update that adds (sign = 1) or removes (sign = -1) a process from the statistics.
+     *
+     * @param process The process (MongoDB {@link Document}).
+     * @param sign    1 to add the process, -1 to remove it.
+     * @return the update.
+     */
+    private static Bson increments(Document process, int sign) {
+        List<Bson> updates = new ArrayList<>();
+        updates.add(Updates.inc("processes", sign));
+        updates.add(Updates.inc("status." + escape(process.getString("status")), sign));
+
+        String error = process.getString("error");
+        if (error != null) {
+            updates.add(Updates.inc("errors." + escape(error.split(" - ")[0]), sign));
+        }
+
+        Long startedAt = process.getLong("started_at");
+        if (startedAt != null) {
+            updates.add(Updates.inc("usage." + month(startedAt), sign));
+        }
+
+        Document input = process.get("input", Document.class);
+        Document output = process.get("output", Document.class);
+        updates.add(Updates.inc("input." + escape(input == null ? null : input.getString("provider")), sign));
+        updates.add(Updates.inc("output." + escape(output == null ? null : output.getString("provider")), sign));
+
+        List<?> documentNames = process.getList("document_names", Object.class);
+        updates.add(Updates.inc("size", sign * (long) (documentNames == null ? 0 : documentNames.size())));
+
+        Document profile = process.get("profile", Document.class);
+        if (profile != null) updates.addAll(profileIncrements(profile, sign));
+
+        return Updates.combine(updates);
+    }
+
+    /**
+     * Build the updates that add (sign = 1) or remove (sign = -1) the profile of a process from the
+     * aggregated profile of its pipeline. The maximum of a histogram can only grow.
+     *
+     * @param profile The profile of the process (see {@link DUUIProcessProfile#toDocument()}).
+     * @param sign    1 to add the profile, -1 to remove it.
+     * @return the updates.
+     */
+    private static List<Bson> profileIncrements(Document profile, int sign) {
+        List<Bson> updates = new ArrayList<>();
+
+        for (String counter : DUUIProcessProfile.COUNTERS) {
+            updates.add(Updates.inc("profile." + counter, sign * toLong(profile.get(counter))));
+        }
+
+        profile.get("stages", new Document()).forEach((stage, value) -> {
+            Document histogram = (Document) value;
+            String prefix = "profile.stages." + escape(stage) + ".";
+
+            updates.add(Updates.inc(prefix + "count", sign * toLong(histogram.get("count"))));
+            updates.add(Updates.inc(prefix + "sum", sign * toLong(histogram.get("sum"))));
+            if (sign > 0) updates.add(Updates.max(prefix + "max", toLong(histogram.get("max"))));
+
+            histogram.get("buckets", new Document()).forEach((bucket, count) ->
+                updates.add(Updates.inc(prefix + "buckets." + bucket, sign * toLong(count))));
+        });
+
+        profile.get("components", new Document()).forEach((component, states) ->
+            ((Document) states).forEach((state, count) -> updates.add(Updates.inc(
+                "profile.components." + escape(component) + "." + escape(state),
+                sign * toLong(count)))));
+
+        if (sign > 0 && profile.get("sample_interval") != null) {
+            updates.add(Updates.set("profile.sample_interval", profile.get("sample_interval")));
+        }
+
+        return updates;
+    }
+
+    /**
+     * Merge the profiles of the processes of a pipeline recorded in a generation. The processes are read
+     * from the primary since a secondary may not have seen the claims of the generation yet.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @param generation The generation the processes have been claimed for.
+     * @return the merged profile with escaped component names.
+     */
+    private static Document aggregateProfile(String pipelineId, ObjectId generation) {
+        Document profile = new Document();
+
+        DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.and(
+                Filters.eq("pipeline_id", pipelineId),
+                Filters.eq(RECORDED, generation),
+                Filters.exists("profile", true)))
+            .projection(Projections.include("profile"))
+            .forEach(process -> DUUIProcessProfile.merge(profile, process.get("profile", Document.class)));
+
+        Document components = new Document();
+        profile.get("components", new Document()).forEach((component, states) -> {
+            Document escaped = new Document();
+            ((Document) states).forEach((state, count) -> escaped.append(escape(state), count));
+            components.append(escape(component), escaped);
+        });
+
+        return profile.append("components", components);
+    }
+
+    /**
+     * Convert a stored profile to the format returned to clients by unescaping component names and
+     * computing percentiles, throughput and component utilization.
+     *
+     * @param profile The stored profile.
+     * @return the profile in response format.
+     */
+    private static Document profileResponse(Document profile) {
+        Document components = new Document();
+        profile.get("components", new Document()).forEach((component, states) -> {
+            Document unescaped = new Document();
+            ((Document) states).forEach((state, count) -> unescaped.append(unescape(state), count));
+            components.append(unescape(component), unescaped);
+        });
+
+        return DUUIProcessProfile.summarize(new Document(profile).append("components", components));
+    }
+
+    /**
+     * Convert the result of {@link #aggregate(String, ObjectId)} to a statistics document.
+     *
+     * @param pipelineId The id of the pipeline.
+     * @param facets     The aggregation result.
+     * @return the statistics document.
+     */
+    private static Document fromAggregation(String pipelineId, Document facets) {
+        Document statistics = new Document("_id", pipelineId);
+        long processes = 0;
+
+        for (String counter : COUNTERS) {
+            Document counts = new Document();
+            for (Document entry : facets.getList(counter, Document.class, List.of())) {
+                Object key = entry.get("_id");
+                counts.append(escape(key == null ? null : key.toString()), toLong(entry.get("count")));
+            }
+            statistics.append(counter, counts);
+        }
+
+        for (Object count : statistics.get("status", Document.class).values()) {
+            processes += (long) count;
+        }
+
+        Document usage = new Document();
+        for (Document entry : facets.getList("usage", Document.class, List.of())) {
+            Document date = entry.get("_id", Document.class);
+            if (date == null || date.get("year") == null) continue;
+
+            usage.append(
+                String.format("%04d-%02d", date.getInteger("year"), date.getInteger("month")),
+                toLong(entry.get("count")));
+        }
+
+        long size = 0;
+        for (Document entry : facets.getList("size", Document.class, List.of())) {
+            size += toLong(entry.get("count"));
+        }
+
+        return statistics
+            .append("processes", processes)
+            .append("usage", usage)
+            .append("size", size);
+    }
+
+    /**
+     * Convert a stored statistics document to the format expected by clients
+     * (see {@link #aggregate(String, ObjectId)}). Counters that dropped to zero are omitted.
+     *
+     * @param statistics The stored statistics document.
+     * @return the statistics in response format.
+     */
+    private static Document toResponse(Document statistics) {
+        Document result = new Document();
+
+        for (String counter : COUNTERS) {
+            List<Document> entries = new ArrayList<>();
+            Document counts = statistics.get(counter, new Document());
+            counts.forEach((key, count) -> {
+                if (toLong(count) > 0) {
+                    entries.add(new Document("_id", unescape(key)).append("count", toLong(count)));
+                }
+            });
+            result.append(counter, entries);
+        }
+
+        List<Document> usage = new ArrayList<>();
+        statistics.get("usage", new Document()).forEach((key, count) -> {
+            if (toLong(count) <= 0) return;
+
+            String[] date = key.split("-");
+            usage.add(
+                new Document("_id",
+                    new Document("year", Integer.parseInt(date[0]))
+                        .append("month", Integer.parseInt(date[1])))
+                    .append("count", toLong(count)));
+        });
+        result.append("usage", usage);
+
+        result.append("size", toLong(statistics.get("processes")) > 0
+            ? List.of(new Document("_id", null).append("count", toLong(statistics.get("size"))))
+            : List.of());
+
+        Document profile = statistics.get("profile", Document.class);
+        if (profile != null) result.append("profile", profileResponse(profile));
+
+        return result;
+    }
+
+    /**
+     * Format a timestamp as year and month (UTC) which is used as key in the usage map.
+     *
+     * @param timestamp The timestamp in milliseconds.
+     * @return the key in the form yyyy-MM.
+     */
+    private static String month(long timestamp) {
+        ZonedDateTime date = Instant.ofEpochMilli(timestamp).atZone(ZoneOffset.UTC);
+        return String.format("%04d-%02d", date.getYear(), date.getMonthValue());
+    }
+
+    /**
+     * Escape a value so it can be used as a field name. Field names must not contain dots or start with $.
+     *
+     * @param key The value to escape.
+     * @return the escaped value.
+     */
+    static String escape(String key) {
+        if (key == null) return NULL_KEY;
+
+        return key
+            .replace("%", "%25")
+            .replace(".", "%2E")
+            .replace("$", "%24");
+    }
+
+    /**
+     * Reverse {@link #escape(String)}.
+     *
+     * @param key The escaped value.
+     * @return the original value.
+     */
+    static String unescape(String key) {
+        if (key.equals(NULL_KEY)) return null;
+
+        return key
+            .replace("%24", "$")
+            .replace("%2E", ".")
+            .replace("%25", "%");
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+}
@@ -0,0 +1,484 @@
+package org.texttechnologylab.duui.api.controllers.processes;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.api.Main;
+import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Updates;
+
+/**
+ * A Controller that moves the documents and events of old, finished processes out of the working collections.
+ * <p>
+ * Archiving a process writes all of its documents and events as a zstd compressed stream of BSON documents
+ * into GridFS (bucket archives) and deletes them from the documents and events collections. zstd compresses
+ * the repetitive BSON about as well as gzip at a fraction of the CPU time, and zstd-jni is already used for
+ * the MongoDB wire protocol. The process itself stays in place and holds a summary of the archive
+ * (archive.documents, archive.events, ...). When the documents or events of an archived process are
+ * requested, the archive is restored transparently. Concurrent requests for the same process wait for a
+ * single restore.
+ * <p>
+ * Restored events keep their timestamp and are therefore still subject to the event retention period
+ * (EVENT_RETENTION_DAYS). Events past the retention period are neither archived nor restored, since the
+ * TTL index would remove them right after the restore.
+ */
+public class DUUIProcessArchiveController {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIProcessArchiveController.class);
+
+    /**
+     * The archive is being written. Documents and events are still in their collections.
+     */
+    public static final String ARCHIVING = "Archiving";
+
+    /**
+     * The archive has been written and documents and events have been removed from their collections.
+     */
+    public static final String ARCHIVED = "Archived";
+
+    private static final String DOCUMENTS = "documents";
+
+    private static final String EVENTS = "events";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String ZSTD = "zstd";
+
+    private static final int ZSTD_LEVEL = 3;
+
+    /**
+     * The restores in progress by process id.
+     */
+    private static final Map<String, CompletableFuture<Boolean>> restoring = new ConcurrentHashMap<>();
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final Codec<Document> CODEC = MongoClientSettings
+        .getDefaultCodecRegistry()
+        .get(Document.class);
+
+    /**
+     * Periodically archive processes that have finished more than archiveAfterDays days ago.
+     * Does nothing if archiveAfterDays is not positive.
+     *
+     * @param archiveAfterDays The number of days after which a finished process is archived.
+     * @param intervalMinutes  The number of minutes between two runs.
+     */
+    public static void schedule(int archiveAfterDays, int intervalMinutes) {
+        if (archiveAfterDays <= 0) return;
+
+        Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "duui-archiver");
+                thread.setDaemon(true);
+                return thread;
+            })
+            .scheduleWithFixedDelay(() -> {
+                try {
+                    int archived = archiveFinished(archiveAfterDays);
+                    if (archived > 0) log.info("Archived {} processes", archived);
+                } catch (Exception exception) {
+                    log.error("Archiving processes failed", exception);
+                }
+            }, 1, Math.max(1, intervalMinutes), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Archive all processes that have finished (or have been restored) more than days days ago.
+     *
+     * @param days The minimum age of a process in days.
+     * @return the number of archived processes.
+     */
+    public static int archiveFinished(int days) {
+        recoverInterrupted();
+
+        long cutoff = Instant.now().toEpochMilli() - days * DAY;
+        List<String> processIds = DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.and(
+                Filters.eq("is_finished", true),
+                Filters.lt("finished_at", cutoff),
+                Filters.exists("archive", false),
+                Filters.or(
+                    Filters.exists("restored_at", false),
+                    Filters.lt("restored_at", cutoff))))
+            .projection(Projections.include("_id"))
+            .map(process -> process.getObjectId("_id").toString())
+            .into(new ArrayList<>());
+
+        int archived = 0;
+        for (String processId : processIds) {
+            try {
+                if (archive(processId)) archived++;
+            } catch (IOException | RuntimeException exception) {
+                log.error("Archiving process {} failed", processId, exception);
+            }
+        }
+
+        return archived;
+    }
+
+    /**
+     * Archive the documents and events of a finished process.
+     *
+     * @param processId The id of the process.
+     * @return if the process has been archived.
+     * @throws IOException if the archive could not be written.
+     */
+    public static boolean archive(String processId) throws IOException {
+        Document process = DUUIMongoDBStorage
+            .Processses()
+            .findOneAndUpdate(
+                Filters.and(
+                    Filters.eq(new ObjectId(processId)),
+                    Filters.eq("is_finished", true),
+                    Filters.exists("archive", false)),
+                Updates.set("archive", new Document("state", ARCHIVING)));
+
+        if (process == null) return false;
+
+        GridFSUploadStream upload = DUUIMongoDBStorage
+            .Archives()
+            .openUploadStream(
+                fileName(processId),
+                new GridFSUploadOptions().metadata(new Document("process_id", processId)));
+
+        long documents;
+        long events;
+        try {
+            // Closing the zstd stream also closes the upload which completes the GridFS file.
+            OutputStream output = new ZstdOutputStream(upload, ZSTD_LEVEL);
+            documents = write(output, DOCUMENTS, DUUIMongoDBStorage.Documents(), Filters.eq("process_id", processId));
+            events = write(output, EVENTS, DUUIMongoDBStorage.Events(), retained(processId));
+            output.close();
+        } catch (IOException | RuntimeException exception) {
+            upload.abort();
+            DUUIMongoDBStorage
+                .Processses()
+                .updateOne(Filters.eq(new ObjectId(processId)), Updates.unset("archive"));
+            throw exception;
+        }
+
+        DUUIMongoDBStorage
+            .Processses()
+            .updateOne(
+                Filters.eq(new ObjectId(processId)),
+                Updates.set("archive", new Document("state", ARCHIVED)
+                    .append("file_id", upload.getObjectId())
+                    .append("compression", ZSTD)
+                    .append("archived_at", Instant.now().toEpochMilli())
+                    .append("documents", documents)
+                    .append("events", events)));
+
+        DUUIMongoDBStorage.Documents().deleteMany(Filters.eq("process_id", processId));
+        DUUIMongoDBStorage.Events().deleteMany(Filters.eq("event.process_id", processId));
+        return true;
+    }
+
+    /**
+     * Restore the documents and events of a process if it has been archived. Restored processes are archived
+     * again once they have not been restored for the configured number of days. If the process is being
+     * restored by another request, this waits for that restore instead of starting another one.
+     *
+     * @param processId The id of the process.
+     * @return if the process has been restored.
+     * @throws IOException if the archive could not be read.
+     */
+    public static boolean restoreIfArchived(String processId) throws IOException {
+        if (!ObjectId.isValid(processId)) return false;
+
+        CompletableFuture<Boolean> restore = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = restoring.putIfAbsent(processId, restore);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException exception) {
+                if (exception.getCause() instanceof IOException cause) throw cause;
+                throw exception;
+            }
+        }
+
+        try {
+            boolean restored = restore(processId);
+            restore.complete(restored);
+            return restored;
+        } catch (IOException | RuntimeException exception) {
+            restore.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            restoring.remove(processId, restore);
+        }
+    }
+
+    /**
+     * Restore the documents and events of a process if it has been archived.
+     *
+     * @param processId The id of the process.
+     * @return if the process has been restored.
+     * @throws IOException if the archive could not be read.
+     */
+    private static boolean restore(String processId) throws IOException {
+        Document process = DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.and(
+                Filters.eq(new ObjectId(processId)),
+                Filters.eq("archive.state", ARCHIVED)))
+            .projection(Projections.include("archive"))
+            .first();
+
+        if (process == null) return false;
+
+        Document archive = process.get("archive", Document.class);
+        ObjectId fileId = archive.getObjectId("file_id");
+
+        // Documents and events may still exist if archiving was interrupted before they were deleted.
+        DUUIMongoDBStorage.Documents().deleteMany(Filters.eq("process_id", processId));
+        DUUIMongoDBStorage.Events().deleteMany(Filters.eq("event.process_id", processId));
+
+        List<Document> documents = new ArrayList<>(BATCH_SIZE);
+        List<Document> events = new ArrayList<>(BATCH_SIZE);
+
+        try (InputStream download = DUUIMongoDBStorage.Archives().openDownloadStream(fileId)) {
+            read(
+                download,
+                retentionCutoff(),
+                document -> {
+                    documents.add(document);
+                    if (documents.size() == BATCH_SIZE) flush(DUUIMongoDBStorage.Documents(), documents);
+                },
+                event -> {
+                    events.add(event);
+                    if (events.size() == BATCH_SIZE) flush(DUUIMongoDBStorage.Events(), events);
+                });
+        }
+
+        flush(DUUIMongoDBStorage.Documents(), documents);
+        flush(DUUIMongoDBStorage.Events(), events);
+
+        DUUIMongoDBStorage
+            .Processses()
+            .updateOne(
+                Filters.eq(new ObjectId(processId)),
+                Updates.combine(
+                    Updates.unset("archive"),
+                    Updates.set("restored_at", Instant.now().toEpochMilli())));
+
+        DUUIMongoDBStorage.Archives().delete(fileId);
+        return true;
+    }
+
+    /**
+     * Delete the archives of one or more processes.
+     *
+     * @param processIds The ids of the processes.
+     */
+    public static void deleteMany(List<String> processIds) {
+        List<ObjectId> fileIds = DUUIMongoDBStorage
+            .Archives()
+            .find(Filters.in("metadata.process_id", processIds))
+            .map(GridFSFile::getObjectId)
+            .into(new ArrayList<>());
+
+        fileIds.forEach(DUUIMongoDBStorage.Archives()::delete);
+    }
+
+    /**
+     * Reset processes whose archiving has been interrupted (e.g. by a restart) and remove partial archives.
+     */
+    private static void recoverInterrupted() {
+        List<String> processIds = DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.eq("archive.state", ARCHIVING))
+            .projection(Projections.include("_id"))
+            .map(process -> process.getObjectId("_id").toString())
+            .into(new ArrayList<>());
+
+        if (processIds.isEmpty()) return;
+
+        deleteMany(processIds);
+        DUUIMongoDBStorage
+            .Processses()
+            .updateMany(Filters.eq("archive.state", ARCHIVING), Updates.unset("archive"));
+    }
+
+    /**
+     * Write all documents matching the filter as BSON to the output stream.
+     *
+     * @param output     The stream to write to.
+     * @param collection The name of the collection the documents are read from.
+     * @param source     The collection the documents are read from.
+     * @param filter     The filter selecting the documents.
+     * @return the number of written documents.
+     * @throws IOException if writing fails.
+     */
+    private static long write(
+        OutputStream output,
+        String collection,
+        MongoCollection<Document> source,
+        Bson filter) throws IOException {
+        long count = 0;
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+
+        for (Document document : source.find(filter).batchSize(BATCH_SIZE)) {
+            write(output, buffer, collection, document);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Write a single document as BSON record to the output stream.
+     *
+     * @param output     The stream to write to.
+     * @param buffer     The buffer used to encode the record.
+     * @param collection The name of the collection the document belongs to.
+     * @param document   The document to write.
+     * @throws IOException if writing fails.
+     */
+    static void write(
+        OutputStream output,
+        BasicOutputBuffer buffer,
+        String collection,
+        Document document) throws IOException {
+        buffer.truncateToPosition(0);
+        CODEC.encode(
+            new BsonBinaryWriter(buffer),
+            new Document("collection", collection).append("document", document),
+            EncoderContext.builder().build());
+        buffer.pipe(output);
+    }
+
+    /**
+     * Read a zstd compressed archive and pass every document and every event that has not expired
+     * to the respective consumer.
+     *
+     * @param archive   The compressed archive.
+     * @param cutoff    The time in milliseconds before which events have expired or 0 to keep all events.
+     * @param documents The consumer receiving the documents.
+     * @param events    The consumer receiving the events.
+     * @throws IOException if reading fails.
+     */
+    static void read(
+        InputStream archive,
+        long cutoff,
+        Consumer<Document> documents,
+        Consumer<Document> events) throws IOException {
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new ZstdInputStream(archive)))) {
+            Document record;
+            while ((record = read(input)) != null) {
+                Document document = record.get("document", Document.class);
+
+                if (record.getString("collection").equals(DOCUMENTS)) {
+                    documents.accept(document);
+                } else if (!isExpired(document, cutoff)) {
+                    events.accept(document);
+                }
+            }
+        }
+    }
+
+    /**
+     * The time before which events are removed by the retention TTL index.
+     *
+     * @return the cutoff in milliseconds or 0 if events are kept forever.
+     */
+    private static long retentionCutoff() {
+        int days = Main.config.getEventRetentionDays();
+        return days > 0 ? Instant.now().toEpochMilli() - days * DAY : 0;
+    }
+
+    /**
+     * A filter selecting the events of a process that have not expired yet.
+     *
+     * @param processId The id of the process.
+     * @return the filter.
+     */
+    private static Bson retained(String processId) {
+        long cutoff = retentionCutoff();
+        if (cutoff <= 0) return Filters.eq("event.process_id", processId);
+
+        return Filters.and(
+            Filters.eq("event.process_id", processId),
+            Filters.gte("timestamp", new Date(cutoff)));
+    }
+
+    private static boolean isExpired(Document event, long cutoff) {
+        Date timestamp = event.getDate("timestamp");
+        return timestamp != null && timestamp.getTime() < cutoff;
+    }
+
+    /**
+     * Read the next BSON document from the input stream.
+     *
+     * @param input The stream to read from.
+     * @return the document or null if the end of the stream has been reached.
+     * @throws IOException if reading fails.
+     */
+    private static Document read(DataInputStream input) throws IOException {
+        byte[] length = new byte[4];
+        try {
+            input.readFully(length);
+        } catch (EOFException exception) {
+            return null;
+        }
+
+        int size = ByteBuffer.wrap(length).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        byte[] bytes = new byte[size];
+        System.arraycopy(length, 0, bytes, 0, 4);
+        input.readFully(bytes, 4, size - 4);
+
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+            return CODEC.decode(reader, DecoderContext.builder().build());
+        }
+    }
+
+    private static void flush(MongoCollection<Document> collection, List<Document> batch) {
+        if (batch.isEmpty()) return;
+        collection.insertMany(batch);
+        batch.clear();
+    }
+
+    private static String fileName(String processId) {
+        return String.format("process-%s.bson.zst", processId);
+    }
+}
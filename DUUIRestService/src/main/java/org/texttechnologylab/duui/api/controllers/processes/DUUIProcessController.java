@@ -7,29 +7,38 @@ import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
-import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.*;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
 import org.texttechnologylab.duui.analysis.document.DUUIDocumentProvider;
 import org.texttechnologylab.duui.analysis.document.Provider;
+import org.texttechnologylab.duui.analysis.process.DUUIProcessProfile;
 import org.texttechnologylab.duui.analysis.process.DUUISimpleProcessHandler;
 import org.texttechnologylab.duui.analysis.process.IDUUIProcessHandler;
 import org.texttechnologylab.duui.api.Main;
 import org.texttechnologylab.duui.api.controllers.documents.DUUIDocumentController;
 import org.texttechnologylab.duui.api.controllers.events.DUUIEventController;
 import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineController;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineInstantiation;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePool;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineStatisticsController;
 import org.texttechnologylab.duui.api.controllers.users.DUUIUserController;
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
 import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
 import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
 import org.texttechnologylab.duui.api.storage.MongoDBFilters;
@@ -40,8 +49,8 @@ import com.dropbox.core.DbxRequestConfig;
 import com.dropbox.core.oauth.DbxCredential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Aggregates;
-import com.mongodb.client.model.Facet;
 import com.mongodb.client.model.Field;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
@@ -49,6 +58,9 @@ import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.UpdateResult;
 
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Scope;
+
 /**
  * A Controller for database operations related to the processes collection.
  *
@@ -56,7 +68,23 @@ import com.mongodb.client.result.UpdateResult;
  */
 public class DUUIProcessController {
 
-    private static final Map<String, IDUUIProcessHandler> activeProcesses = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(DUUIProcessController.class);
+
+    private static final Map<String, IDUUIProcessHandler> activeProcesses = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of processes deleted with a single query.
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * Runs cascading deletes (e.g. after a pipeline has been deleted) outside of request threads.
+     */
+    private static final ExecutorService cascadeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "duui-cascade-delete");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Constructs default settings for a process.
@@ -70,7 +98,12 @@ public class DUUIProcessController {
             .append("recursive", true)
             .append("overwrite", false)
             .append("sort_by_size", false)
+            .append("scheduling", "fifo")
             .append("minimum_size", 0)
+            .append("batch_size", 0)
+            .append("batch_max_characters", 100000)
+            .append("speculation", false)
+            .append("speculation_limit", 0.1)
             .append("worker_count", 1)
             .append("ignore_errors", true)
             .append("language", "");
@@ -122,11 +155,33 @@ public class DUUIProcessController {
         Document process = DUUIMongoDBStorage
             .Processses()
             .find(Filters.eq(new ObjectId(id)))
+            .projection(Projections.exclude("profile"))
             .first();
 
         if (process == null) return null;
 
-        return DUUIMongoDBStorage.convertObjectIdToString(process.append("count", documentCount(id)));
+        Document archive = process.get("archive", Document.class);
+        long count = archive != null && DUUIProcessArchiveController.ARCHIVED.equals(archive.getString("state"))
+            ? archive.get("documents", Number.class).longValue()
+            : documentCount(id);
+
+        return DUUIMongoDBStorage.convertObjectIdToString(process.append("count", count));
+    }
+
+    /**
+     * Retrieve the id of the process that has been started in the given trace.
+     *
+     * @param traceId The id of the trace.
+     * @return the id of the process or null if no process has been started in the trace.
+     */
+    public static String findIdByTraceId(String traceId) {
+        Document process = DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.eq("trace_id", traceId))
+            .projection(Projections.include("_id"))
+            .first();
+
+        return process == null ? null : process.getObjectId("_id").toString();
     }
 
     /**
@@ -142,16 +197,22 @@ public class DUUIProcessController {
     }
 
     /**
-     * Retrieve one or more processes from the database given a userId and {@link MongoDBFilters} to sort
-     * and filter the results.
+     * Retrieve a cursor over all processes matching the {@link MongoDBFilters}. Sorting, skip and limit are
+     * applied by the database, the results are fetched in batches while the cursor is iterated.
      *
      * @param filters A {@link MongoDBFilters} object that contains filter options.
-     * @return A Document containing a list of matched processes.
+     * @return An {@link AggregateIterable} over the matched processes.
      */
-    public static Document findMany(MongoDBFilters filters) {
+    public static AggregateIterable<Document> findManyCursor(MongoDBFilters filters) {
         List<Bson> aggregationPipeline = new ArrayList<>();
-        List<Bson> processFacet = new ArrayList<>();
 
+        // Apply filters to the collection first, so that indexes can be used.
+        if (!filters.getFilters().isEmpty()) {
+            aggregationPipeline.add(Aggregates.match(Filters.and(filters.getFilters())));
+        }
+
+        // Profiles are only returned by findProfile.
+        aggregationPipeline.add(Aggregates.project(Projections.exclude("profile")));
 
         /*
           Add a count and duration field to the matching entries.
@@ -167,44 +228,34 @@ public class DUUIProcessController {
                 new Document("$subtract", List.of("$finished_at", "$started_at")))
         ));
 
-
-        // Apply filters to the collection, reducing the number of returned entries.
-        if (!filters.getFilters().isEmpty()) {
-            aggregationPipeline.add(Aggregates.match(Filters.and(filters.getFilters())));
-        }
-
-
         if (filters.getSort() != null) {
-            processFacet.add(Aggregates.sort(
+            aggregationPipeline.add(Aggregates.sort(
                 filters.getOrder() == 1
                     ? Sorts.ascending(filters.getSort())
                     : Sorts.descending(filters.getSort())));
         }
 
-        if (filters.getSkip() > 0) processFacet.add(Aggregates.skip(filters.getSkip()));
-        if (filters.getLimit() > 0) processFacet.add(Aggregates.limit(filters.getLimit()));
-
-        aggregationPipeline.add(Aggregates.facet(
-            new Facet("processes", processFacet),
-            new Facet("count", Aggregates.count())
-        ));
+        if (filters.getSkip() > 0) aggregationPipeline.add(Aggregates.skip(filters.getSkip()));
+        if (filters.getLimit() > 0) aggregationPipeline.add(Aggregates.limit(filters.getLimit()));
 
+        return DUUIMongoDBStorage
+            .analytics(DUUIMongoDBStorage.Processses())
+            .aggregate(aggregationPipeline)
+            .allowDiskUse(true);
+    }
 
-        AggregateIterable<Document> documents = DUUIMongoDBStorage
-            .Processses()
-            .aggregate(aggregationPipeline);
-
-        Document result = documents.into(new ArrayList<>()).get(0);
-        List<Document> findings = result.getList("processes", Document.class);
-        findings.forEach(DUUIMongoDBStorage::convertObjectIdToString);
-        int count;
-        try {
-            count = result.getList("count", Document.class).get(0).getInteger("count");
-        } catch (IndexOutOfBoundsException exception) {
-            count = 0;
-        }
-
-        return new Document("processes", findings).append("count", count);
+    /**
+     * Count the processes matching the {@link MongoDBFilters} ignoring skip and limit.
+     *
+     * @param filters A {@link MongoDBFilters} object that contains filter options.
+     * @return the number of matching processes.
+     */
+    public static long count(MongoDBFilters filters) {
+        return DUUIMongoDBStorage
+            .analytics(DUUIMongoDBStorage.Processses())
+            .countDocuments(filters.getFilters().isEmpty()
+                ? new Document()
+                : Filters.and(filters.getFilters()));
     }
 
     /**
@@ -236,11 +287,14 @@ public class DUUIProcessController {
     public static boolean deleteOne(String id) {
         DUUIDocumentController.deleteMany(Filters.eq("process_id", id));
         DUUIEventController.deleteMany(Filters.eq("event.process_id", id));
+        DUUIProcessArchiveController.deleteMany(List.of(id));
 
-        return DUUIMongoDBStorage
+        Document process = DUUIMongoDBStorage
             .Processses()
-            .deleteOne(Filters.eq(new ObjectId(id)))
-            .getDeletedCount() > 0;
+            .findOneAndDelete(Filters.eq(new ObjectId(id)));
+
+        DUUIPipelineStatisticsController.forget(process);
+        return process != null;
     }
 
     /**
@@ -256,6 +310,31 @@ public class DUUIProcessController {
         DUUIDocumentProvider input,
         DUUIDocumentProvider output
     ) throws URISyntaxException, IOException, InsufficientWorkersException, InvalidIOException {
+        Span span = DUUITracing.startSpan("process.start");
+        span.setAttribute("duui.pipeline.id", pipeline.getString("oid"));
+
+        try (Scope ignored = span.makeCurrent()) {
+            Document process = startProcess(pipeline, settings, input, output);
+            span.setAttribute("duui.process.id", process.getString("oid"));
+            return process;
+        } catch (Exception exception) {
+            DUUITracing.fail(span, exception);
+            throw exception;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Insert a new process and start its handler. The handler continues the trace of the caller.
+     * See {@link #start(Document, Document, DUUIDocumentProvider, DUUIDocumentProvider)}.
+     */
+    private static Document startProcess(
+        Document pipeline,
+        Document settings,
+        DUUIDocumentProvider input,
+        DUUIDocumentProvider output
+    ) throws URISyntaxException, IOException, InsufficientWorkersException, InvalidIOException {
 
         String error = DUUIDocumentController.validateDocumentProviders(input, output);
         if (!error.isEmpty()) throw new InvalidIOException(error);
@@ -286,6 +365,10 @@ public class DUUIProcessController {
             .append("pipeline_status", null)
             .append("is_finished", false);
 
+        // Processes outside a recorded trace have no trace_id so that the sparse index skips them.
+        String traceId = DUUITracing.getTraceId();
+        if (traceId != null) process.append("trace_id", traceId);
+
         DUUIMongoDBStorage
             .Processses()
             .insertOne(process);
@@ -293,18 +376,17 @@ public class DUUIProcessController {
         DUUIMongoDBStorage.convertObjectIdToString(process);
         String processId = process.getString("oid");
 
-        Map<String, DUUIComposer> reusablePipelines = DUUIPipelineController.getReusablePipelines();
+        DUUIPipelinePool.Lease lease = DUUIPipelinePool.lease(pipelineId);
 
         IDUUIProcessHandler handler;
 
-        if (reusablePipelines.containsKey(pipelineId)) {
-            handler = new DUUISimpleProcessHandler(
-                pipeline,
-                process,
-                settings,
-                reusablePipelines
-                    .get(pipelineId)
-                    .getInstantiatedPipeline());
+        if (lease != null) {
+            try {
+                handler = new DUUISimpleProcessHandler(pipeline, process, settings, lease);
+            } catch (URISyntaxException | IOException | RuntimeException exception) {
+                lease.release();
+                throw exception;
+            }
         } else {
             handler = new DUUISimpleProcessHandler(process, pipeline, settings);
         }
@@ -336,6 +418,7 @@ public class DUUIProcessController {
         if (processHandler == null) {
             DUUIProcessController.setStatus(id, DUUIStatus.CANCELLED);
             DUUIProcessController.setFinished(id, true);
+            DUUIPipelineStatisticsController.record(id);
             return null;
         }
 
@@ -449,31 +532,116 @@ public class DUUIProcessController {
         updateOne(id, "duration_instantiation", instantiationDuration);
     }
 
+    /**
+     * Store the instantiation times of the components of the pipeline executed by a process.
+     *
+     * @param id            The id of the process.
+     * @param instantiation The instantiation (see {@link DUUIPipelineInstantiation#toDocument()}).
+     */
+    public static void setInstantiation(String id, Document instantiation) {
+        updateOne(id, "instantiation", instantiation);
+    }
+
+    /**
+     * Store the performance profile of a process.
+     *
+     * @param id      The id of the process.
+     * @param profile The profile (see {@link DUUIProcessProfile#toDocument()}).
+     */
+    public static void setProfile(String id, Document profile) {
+        DUUIMongoDBStorage
+            .Processses()
+            .updateOne(Filters.eq(new ObjectId(id)), Updates.set("profile", profile));
+    }
+
+    /**
+     * Retrieve the performance profile of a process. The profile of an active process is computed from the
+     * current state of its composer, the profile of a finished process is read from the database.
+     *
+     * @param id The id of the process.
+     * @return the profile or null if the process does not exist or has not been profiled.
+     */
+    public static Document findProfile(String id) {
+        IDUUIProcessHandler handler = activeProcesses.get(id);
+        if (handler != null) return handler.getProfile();
+
+        Document process = DUUIMongoDBStorage
+            .Processses()
+            .find(Filters.eq(new ObjectId(id)))
+            .projection(Projections.include("profile"))
+            .first();
+
+        return process == null ? null : process.get("profile", Document.class);
+    }
+
     /**
      * Delete all processes matching a given filter. Also deletes all documents and events
-     * that reference this process.
+     * that reference these processes. Processes are deleted in batches of {@link #DELETE_BATCH_SIZE}
+     * using one $in query per collection and batch instead of one query per process.
+     * The statistics of the affected pipelines are not updated (see {@link #deleteOne(String)}).
      *
      * @param filter A {@link Bson} filter to delete only selected processes
+     * @return the number of deleted processes.
      */
-    public static void deleteMany(Bson filter) {
-        List<Document> effected = DUUIMongoDBStorage
+    public static long deleteMany(Bson filter) {
+        long deleted = 0;
+        List<ObjectId> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+
+        try (MongoCursor<ObjectId> ids = DUUIMongoDBStorage
             .Processses()
             .find(filter)
             .projection(Projections.include("_id"))
-            .into(new ArrayList<>());
+            .batchSize(DELETE_BATCH_SIZE)
+            .map(process -> process.getObjectId("_id"))
+            .iterator()) {
+
+            while (ids.hasNext()) {
+                batch.add(ids.next());
+                if (batch.size() == DELETE_BATCH_SIZE) {
+                    deleted += deleteBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
 
+        if (!batch.isEmpty()) deleted += deleteBatch(batch);
+        return deleted;
+    }
 
-        DUUIMongoDBStorage
-            .Processses()
-            .deleteMany(filter);
+    /**
+     * Delete all processes matching a given filter on a background thread.
+     * See {@link #deleteMany(Bson)}.
+     *
+     * @param filter A {@link Bson} filter to delete only selected processes
+     * @return a {@link Future} that completes with the number of deleted processes.
+     */
+    public static Future<Long> deleteManyInBackground(Bson filter) {
+        return cascadeExecutor.submit(() -> {
+            long start = System.currentTimeMillis();
+            long deleted = deleteMany(filter);
+            log.info("Deleted {} processes matching {} in {}ms", deleted, filter, System.currentTimeMillis() - start);
+            return deleted;
+        });
+    }
 
-        effected.forEach(
-            document -> DUUIDocumentController.deleteMany(
-                Filters.eq(document.getObjectId("_id").toString())));
+    /**
+     * Delete a batch of processes together with their documents and events. Documents and events are
+     * deleted first so that an interrupted deletion does not leave references to missing processes.
+     *
+     * @param batch The ids of the processes to delete.
+     * @return the number of deleted processes.
+     */
+    private static long deleteBatch(List<ObjectId> batch) {
+        List<String> ids = batch.stream().map(ObjectId::toString).toList();
+
+        DUUIDocumentController.deleteMany(Filters.in("process_id", ids));
+        DUUIEventController.deleteMany(Filters.in("event.process_id", ids));
+        DUUIProcessArchiveController.deleteMany(ids);
 
-        effected.forEach(
-            document -> DUUIEventController.deleteMany(
-                Filters.eq("event.process_id", document.getObjectId("_id").toString())));
+        return DUUIMongoDBStorage
+            .Processses()
+            .deleteMany(Filters.in("_id", batch))
+            .getDeletedCount();
     }
 
 
@@ -532,9 +700,26 @@ public class DUUIProcessController {
      * @throws DbxException if incorrect credentials for Dropbox are provided.
      */
     public static IDUUIDocumentHandler getHandler(String provider, String providerId, String userId) throws DbxException, GeneralSecurityException, IOException {
+        Span span = DUUITracing.startSpan("document_handler.connect");
+        span.setAttribute("duui.provider", provider);
+
+        try (Scope ignored = span.makeCurrent()) {
+            return createHandler(provider, providerId, userId);
+        } catch (Exception exception) {
+            DUUITracing.fail(span, exception);
+            throw exception;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * See {@link #getHandler(String, String, String)}.
+     */
+    private static IDUUIDocumentHandler createHandler(String provider, String providerId, String userId) throws DbxException, GeneralSecurityException, IOException {
         Document user = DUUIUserController.getUserById(userId);
 
-        System.out.println("Getting Handler with Provider: " + provider + " and ProviderId: " + providerId);
+        log.debug("Getting handler for provider {} ({})", provider, providerId);
 
         if (provider.equalsIgnoreCase(Provider.DROPBOX)) {
             Document credentials = DUUIUserController.getDropboxCredentials(user, providerId);
@@ -560,8 +745,7 @@ public class DUUIProcessController {
             return new DUUILocalDocumentHandler();
         } else if (provider.equalsIgnoreCase(Provider.NEXTCLOUD)) {
             Document credentials = DUUIUserController.getNextCloudCredentials(user, providerId);
-            System.out.println("Nextcloud Credentials: " + credentials.toJson());
-            
+
             return new DUUINextcloudDocumentHandler(
                         credentials.getString("uri"),
                         credentials.getString("username"),
@@ -609,8 +793,10 @@ public class DUUIProcessController {
      * @throws IOException when the file is not found or an error occurs while reading.
      */
     public static InputStream downloadFile(IDUUIDocumentHandler handler, String path) throws IOException {
-        DUUIDocument document = handler.readDocument(path);
-        return document.toInputStream();
+        Span span = DUUITracing.startSpan("document_handler.read");
+        span.setAttribute("duui.document.path", path);
+
+        return DUUITracing.inSpan(span, () -> handler.readDocument(path).toInputStream());
     }
 
     /**
@@ -359,7 +359,7 @@ public class DUUIUserController {
             return new Document("error", "Failed to insert group").toJson();
         }
 
-        System.out.println("Upserted group: " + groupId + " with data: " + body.toJson());
+        log.debug("Upserted group {}", groupId);
 
         response.status(200);
         return new Document("message", "Successfully updated.").toJson();
@@ -388,7 +388,7 @@ public class DUUIUserController {
 
         response.status(204);
 
-        System.out.println("Deleted group: " + groupId);
+        log.debug("Deleted group {}", groupId);
 
         return "Successfully deleted group: " + groupId;
     }
@@ -449,7 +449,7 @@ public class DUUIUserController {
             DUUIMongoDBStorage.Globals().updateOne(filter, Updates.combine(updateOps));
         }
 
-        System.out.println("Fetched groups: " + groups.toJson());
+        log.debug("Fetched groups");
 
         response.status(200);
         return groups.toJson();
@@ -546,7 +546,7 @@ public class DUUIUserController {
         }
 
         response.status(204);
-        System.out.println("Deleted registry endpoint: " + id);
+        log.debug("Deleted registry endpoint {}", id);
 
         return "Successfully deleted registry endpoint: " + id;
     }
@@ -572,7 +572,7 @@ public class DUUIUserController {
             return new Document("error", "Failed to insert label").toJson();
         }
 
-        System.out.println("Inserted label: " + labelId + " with data: " + body.toJson());
+        log.debug("Inserted label {}", labelId);
 
         response.status(201);
         return new Document("message", "Successfully updated.").toJson();
@@ -592,7 +592,7 @@ public class DUUIUserController {
             return new Document("error", "Label not found").toJson();
         }
 
-        System.out.println("Deleted label: " + labelId);
+        log.debug("Deleted label {}", labelId);
 
         response.status(200);
         return new Document("message", "Successfully deleted.").toJson();
@@ -619,7 +619,7 @@ public class DUUIUserController {
 
         Document labels = labelsDoc.get("labels", Document.class);
 
-        System.out.println("Fetched labels: " + labels.toJson());
+        log.debug("Fetched labels");
 
         response.status(200);
         return labels.toJson();
@@ -740,7 +740,7 @@ public class DUUIUserController {
             .map(l -> ((Document) l.getValue()).getString("label"))
             .toList();
 
-        System.out.println("Filtered labels: " + filteredLabels);
+        log.debug("Filtered labels: {}", filteredLabels);
 
         return filteredLabels;
     }
@@ -852,7 +852,7 @@ public class DUUIUserController {
                 
                 """, passwordResetToken);
 
-        System.out.printf("Sending email to %s with token %s%n", email, passwordResetToken);
+        log.debug("Sending password reset email to {}", email);
 
         throw new UnsupportedOperationException("Not implemented yet");
     }
@@ -985,8 +985,7 @@ public class DUUIUserController {
 
         Document body = Document.parse(request.body());
 
-        System.out.println("User Update: \n\t" + (body.toJson() == null ? "null" : 
-            body.toJson().substring(0, Math.min(100, body.toJson().length()))));
+        log.debug("User update with fields {}", body.keySet());
 
         String id = request.params(":id");
 
@@ -1053,7 +1052,7 @@ public class DUUIUserController {
                 .append("message", "Connection details are missing.").toJson();
         }
 
-        System.out.println(provider + " Connection details: " + connectionDetails.toJson());
+        log.debug("Updated {} connection", provider);
 
         if (provider.equalsIgnoreCase(Provider.MINIO)) {
             try {
@@ -1169,7 +1168,7 @@ public class DUUIUserController {
      * @return a list of users.
      */
     public static String fetchUsers(Request request, Response response) {
-        System.out.println("Fetching users");
+        log.debug("Fetching users");
         // if (invalidRequestOrigin(request.ip())) {
         //     response.status(401);
         //     return "Unauthorized";
@@ -1253,7 +1252,7 @@ public class DUUIUserController {
             String accessToken = finish.getAccessToken();
             String refreshToken = finish.getRefreshToken();
 
-            System.out.println("Dropbox: \nAccess-Token: " + accessToken.length() + " \nRefresh-Token: " + refreshToken.length());
+            log.debug("Received Dropbox tokens");
             
             UpdateResult result = DUUIMongoDBStorage
                 .Users()
@@ -1355,7 +1354,7 @@ public class DUUIUserController {
                 .append("url", Main.config.getGoogleRedirectUri())
                 .toJson();
 
-        System.out.println("Google settings: " + settings);
+        log.debug("Loaded Google settings");
 
         return settings;
     }
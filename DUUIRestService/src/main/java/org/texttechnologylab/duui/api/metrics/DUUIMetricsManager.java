@@ -1,20 +1,54 @@
 package org.texttechnologylab.duui.api.metrics;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.api.Main;
 import org.texttechnologylab.duui.api.metrics.providers.*;
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.PushGateway;
 import io.prometheus.client.exporter.common.TextFormat;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * A class that groups different providers for metrics and exports them.
+ * <p>
+ * Rendered scrapes are cached per format for a configurable time (METRICS_CACHE_MS) so that concurrent
+ * or frequent scrapes (e.g. several Prometheus replicas) do not walk all collectors every time. Metrics can
+ * be exported in the Prometheus text format and in OpenMetrics (which includes exemplars) and optionally be
+ * pushed to a Pushgateway.
  *
  * @author Cedric Borkowski
  */
 public class DUUIMetricsManager {
 
+    private static final Logger log = LoggerFactory.getLogger(DUUIMetricsManager.class);
+
+    /**
+     * A rendered scrape.
+     *
+     * @param body       The metrics in the requested format.
+     * @param renderedAt The time the scrape has been rendered at in milliseconds.
+     */
+    private record Scrape(String body, long renderedAt) {
+    }
+
+    /**
+     * The last scrape per content type.
+     */
+    private static final Map<String, Scrape> scrapes = new ConcurrentHashMap<>();
+
+    /**
+     * The number of milliseconds a scrape is reused for.
+     */
+    private static volatile long staleness = 1000;
+
     /**
      * Register metric providers here so that they are found by the Prometheus exporter.
      */
@@ -23,6 +57,24 @@ public class DUUIMetricsManager {
         DUUIProcessMetrics.register();
         DUUISystemMetrics.register();
         DUUIStorageMetrics.register();
+
+        if (Main.config == null) return;
+
+        staleness = Math.max(0, Main.config.getMetricsCacheMillis());
+        schedulePush(
+            Main.config.getMetricsPushGateway(),
+            Main.config.getMetricsPushJob(),
+            Main.config.getMetricsPushIntervalSeconds());
+    }
+
+    /**
+     * Select the export format from the Accept header of a scrape.
+     *
+     * @param accept The Accept header.
+     * @return the content type of either the Prometheus text format or OpenMetrics.
+     */
+    public static String chooseContentType(String accept) {
+        return TextFormat.chooseContentType(accept);
     }
 
     /**
@@ -31,10 +83,65 @@ public class DUUIMetricsManager {
      * @return the metrics as a String
      */
     public static String export() throws IOException {
-        StringWriter writer = new StringWriter();
-        CollectorRegistry registry = CollectorRegistry.defaultRegistry;
+        return export(TextFormat.CONTENT_TYPE_004);
+    }
+
+    /**
+     * Export metrics in the given format. A scrape that is younger than the configured staleness is
+     * returned as is. Only one scrape is rendered at a time, concurrent requests wait for it and reuse it.
+     *
+     * @param contentType The content type (see {@link #chooseContentType(String)}).
+     * @return the metrics as a String
+     */
+    public static String export(String contentType) throws IOException {
+        Scrape scrape = scrapes.get(contentType);
+        if (isFresh(scrape)) return scrape.body();
+
+        synchronized (DUUIMetricsManager.class) {
+            scrape = scrapes.get(contentType);
+            if (isFresh(scrape)) return scrape.body();
+
+            StringWriter writer = new StringWriter(scrape == null ? 16 * 1024 : scrape.body().length() + 1024);
+            TextFormat.writeFormat(contentType, writer, CollectorRegistry.defaultRegistry.metricFamilySamples());
+
+            scrape = new Scrape(writer.toString(), System.currentTimeMillis());
+            scrapes.put(contentType, scrape);
+            return scrape.body();
+        }
+    }
+
+    /**
+     * Periodically push all metrics to a Pushgateway and once more when the JVM shuts down, so that the
+     * metrics of short-lived runs are not lost. Does nothing if no address is configured.
+     *
+     * @param address         The address (host:port) of the Pushgateway.
+     * @param job             The job name.
+     * @param intervalSeconds The number of seconds between two pushes.
+     */
+    private static void schedulePush(String address, String job, int intervalSeconds) {
+        if (address == null || address.isBlank()) return;
+
+        PushGateway gateway = new PushGateway(address);
+        Runnable push = () -> {
+            try {
+                gateway.pushAdd(CollectorRegistry.defaultRegistry, job);
+            } catch (IOException exception) {
+                log.warn("Pushing metrics to {} failed: {}", address, exception.getMessage());
+            }
+        };
+
+        Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "duui-metrics-push");
+                thread.setDaemon(true);
+                return thread;
+            })
+            .scheduleWithFixedDelay(push, intervalSeconds, Math.max(1, intervalSeconds), TimeUnit.SECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(push, "duui-metrics-push-final"));
+    }
 
-        TextFormat.write004(writer, registry.metricFamilySamples());
-        return writer.toString();
+    private static boolean isFresh(Scrape scrape) {
+        return scrape != null && System.currentTimeMillis() - scrape.renderedAt() < staleness;
     }
 }
@@ -0,0 +1,264 @@
+package org.texttechnologylab.duui.api.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.analysis.process.IDUUIProcessHandler;
+import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * A class to profile the gateway at runtime with the JDK Flight Recorder.
+ * <p>
+ * A continuous recording with a low overhead (execution and allocation samples) is kept for a limited time
+ * and can be converted to folded stacks for flame graphs. In addition, a single bounded on-demand recording
+ * with the JDK's profile settings can be started and downloaded.
+ */
+public class DUUIProfiler {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUIProfiler.class);
+
+    /**
+     * The JFR event used for cpu flame graphs.
+     */
+    public static final String CPU = "cpu";
+
+    /**
+     * The JFR event used for allocation flame graphs.
+     */
+    public static final String ALLOCATION = "allocation";
+
+    private static final Map<String, String> EVENTS = Map.of(
+        CPU, "jdk.ExecutionSample",
+        ALLOCATION, "jdk.ObjectAllocationSample");
+
+    private static Recording continuous;
+
+    private static Recording recording;
+
+    private static Path recordingFile;
+
+    private static Duration maxDuration = Duration.ofMinutes(30);
+
+    private static long maxSize = 256L * 1024 * 1024;
+
+    /**
+     * Configure the profiler and start the continuous recording.
+     *
+     * @param enableContinuous   If the continuous recording should be started.
+     * @param maxAgeMinutes      The number of minutes the continuous recording keeps.
+     * @param maxDurationMinutes The maximum duration of an on-demand recording.
+     * @param maxSizeMb          The maximum size of a recording in megabytes.
+     */
+    public static synchronized void init(
+        boolean enableContinuous,
+        int maxAgeMinutes,
+        int maxDurationMinutes,
+        int maxSizeMb) {
+        maxDuration = Duration.ofMinutes(Math.max(1, maxDurationMinutes));
+        maxSize = Math.max(1, maxSizeMb) * 1024L * 1024L;
+
+        if (!enableContinuous || continuous != null) return;
+
+        try {
+            continuous = new Recording();
+            continuous.setName("duui-continuous");
+            continuous.enable(EVENTS.get(CPU)).withPeriod(Duration.ofMillis(20));
+            continuous.enable(EVENTS.get(ALLOCATION)).with("throttle", "150/s");
+            continuous.setMaxAge(Duration.ofMinutes(Math.max(1, maxAgeMinutes)));
+            continuous.setMaxSize(maxSize);
+            continuous.setToDisk(true);
+            continuous.start();
+        } catch (RuntimeException exception) {
+            log.warn("Continuous profiling is not available: {}", exception.getMessage());
+            continuous = null;
+        }
+    }
+
+    /**
+     * Start an on-demand recording with the JDK's profile settings. The recording stops after the given
+     * duration (at most the configured maximum) or when {@link #stop()} is called.
+     *
+     * @param duration The duration of the recording.
+     * @return the status of the recording or null if a recording is already running.
+     * @throws IOException    if the recording file could not be created.
+     * @throws ParseException if the JDK's profile settings could not be read.
+     */
+    public static synchronized Document start(Duration duration) throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) return null;
+        discard();
+
+        recordingFile = Files.createTempFile("duui-recording-", ".jfr");
+        recording = new Recording(Configuration.getConfiguration("profile"));
+        recording.setName("duui-on-demand");
+        recording.setDuration(duration.compareTo(maxDuration) > 0 ? maxDuration : duration);
+        recording.setMaxSize(maxSize);
+        recording.setToDisk(true);
+        recording.setDestination(recordingFile);
+        recording.start();
+
+        return status();
+    }
+
+    /**
+     * @return the status of the on-demand recording.
+     */
+    public static synchronized Document status() {
+        if (recording == null) return new Document("state", RecordingState.CLOSED.name());
+
+        return new Document("state", recording.getState().name())
+            .append("started_at", recording.getStartTime() == null ? null : recording.getStartTime().toEpochMilli())
+            .append("duration", recording.getDuration() == null ? null : recording.getDuration().toMillis())
+            .append("max_size", recording.getMaxSize())
+            .append("continuous", continuous != null);
+    }
+
+    /**
+     * Stop the on-demand recording (if it has not stopped already) and return the recorded file.
+     * The caller is responsible for deleting the file.
+     *
+     * @return the path of the recording or null if no recording has been started.
+     */
+    public static synchronized Path stop() {
+        if (recording == null) return null;
+
+        if (recording.getState() == RecordingState.RUNNING) recording.stop();
+        recording.close();
+
+        Path file = recordingFile;
+        recording = null;
+        recordingFile = null;
+        return file;
+    }
+
+    /**
+     * Convert the samples of the continuous recording of the last minutes to folded stacks
+     * (one line per stack: frame;frame;frame count) as used by flame graph tools.
+     * Cpu samples are counted, allocation samples are weighted by the number of allocated bytes.
+     *
+     * @param type    The type of samples ({@link #CPU} or {@link #ALLOCATION}).
+     * @param minutes The number of minutes to include.
+     * @return the folded stacks ordered by weight.
+     * @throws IOException           if the recording could not be read.
+     * @throws IllegalStateException if continuous profiling is disabled.
+     */
+    public static String flame(String type, int minutes) throws IOException {
+        String eventName = EVENTS.get(type);
+        if (eventName == null) throw new IllegalArgumentException("Unknown type " + type);
+
+        Path dump = Files.createTempFile("duui-continuous-", ".jfr");
+        try {
+            synchronized (DUUIProfiler.class) {
+                if (continuous == null) throw new IllegalStateException("Continuous profiling is disabled.");
+                continuous.dump(dump);
+            }
+
+            Instant since = Instant.now().minus(Duration.ofMinutes(Math.max(1, minutes)));
+            Map<String, Long> stacks = new HashMap<>();
+
+            try (RecordingFile file = new RecordingFile(dump)) {
+                while (file.hasMoreEvents()) {
+                    RecordedEvent event = file.readEvent();
+                    if (!event.getEventType().getName().equals(eventName)) continue;
+                    if (event.getStartTime().isBefore(since)) continue;
+
+                    RecordedStackTrace stackTrace = event.getStackTrace();
+                    if (stackTrace == null) continue;
+
+                    long weight = type.equals(ALLOCATION) ? event.getLong("weight") : 1;
+                    stacks.merge(fold(stackTrace), weight, Long::sum);
+                }
+            }
+
+            return stacks
+                .entrySet()
+                .stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(entry -> entry.getKey() + " " + entry.getValue())
+                .collect(Collectors.joining("\n"));
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    /**
+     * Capture the current stack of every active process thread.
+     *
+     * @return a list containing the process id, pipeline id, thread and stack of every active process.
+     */
+    public static List<Document> processThreads() {
+        List<Document> threads = new ArrayList<>();
+
+        for (IDUUIProcessHandler handler : DUUIProcessController.getActiveProcesses()) {
+            Document entry = new Document("process_id", handler.getProcessID())
+                .append("pipeline_id", handler.getPipelineID())
+                .append("status", handler.getStatus());
+
+            if (handler instanceof Thread thread) {
+                entry
+                    .append("thread", thread.getName())
+                    .append("state", thread.getState().name())
+                    .append("stack", Arrays
+                        .stream(thread.getStackTrace())
+                        .map(StackTraceElement::toString)
+                        .toList());
+            }
+
+            threads.add(entry);
+        }
+
+        return threads;
+    }
+
+    /**
+     * Close a finished on-demand recording that has not been downloaded.
+     */
+    private static void discard() throws IOException {
+        Path file = stop();
+        if (file != null) Files.deleteIfExists(file);
+    }
+
+    /**
+     * Fold a stack trace into a single line from the outermost to the innermost frame.
+     *
+     * @param stackTrace The stack trace of a sample.
+     * @return the folded stack.
+     */
+    private static String fold(RecordedStackTrace stackTrace) {
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        StringBuilder folded = new StringBuilder();
+
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            RecordedFrame frame = frames.get(i);
+            if (frame.getMethod() == null) continue;
+
+            if (!folded.isEmpty()) folded.append(';');
+            folded
+                .append(frame.getMethod().getType().getName())
+                .append('.')
+                .append(frame.getMethod().getName());
+        }
+
+        return folded.toString().replace(' ', '_');
+    }
+}
@@ -0,0 +1,343 @@
+package org.texttechnologylab.duui.api.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+
+/**
+ * A class to trace requests through the gateway with OpenTelemetry.
+ * <p>
+ * Spans are created for every request, the start of a process, the stages of a process handler, document
+ * handler calls and MongoDB commands. Incoming W3C traceparent headers are continued. Finished spans are
+ * exported via OTLP (otlp), written to the log (logging) or kept in memory (memory) so that they can be
+ * inspected without a collector, e.g. in tests or through the /profiling/traces endpoint. Tracing is
+ * disabled (none) by default, in which case all spans are no-ops.
+ */
+public class DUUITracing {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUITracing.class);
+
+    public static final String NONE = "none";
+
+    public static final String LOGGING = "logging";
+
+    public static final String MEMORY = "memory";
+
+    public static final String OTLP = "otlp";
+
+    private static final String INSTRUMENTATION = "org.texttechnologylab.duui";
+
+    /**
+     * Reads the trace context headers from a header lookup function.
+     */
+    private static final TextMapGetter<Function<String, String>> HEADERS = new TextMapGetter<>() {
+        @Override
+        public Iterable<String> keys(Function<String, String> headers) {
+            return W3CTraceContextPropagator.getInstance().fields();
+        }
+
+        @Override
+        public String get(Function<String, String> headers, String key) {
+            return headers == null ? null : headers.apply(key);
+        }
+    };
+
+    private static OpenTelemetry openTelemetry = OpenTelemetry.noop();
+
+    private static Tracer tracer = openTelemetry.getTracer(INSTRUMENTATION);
+
+    private static MemoryExporter memory;
+
+    /**
+     * A call that is executed inside a span.
+     *
+     * @param <T> The result type.
+     * @param <E> The exception type.
+     */
+    @FunctionalInterface
+    public interface TracedCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Keeps the last finished spans in memory.
+     */
+    private static class MemoryExporter implements SpanExporter {
+
+        private final Deque<SpanData> spans = new ConcurrentLinkedDeque<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final int capacity;
+
+        private MemoryExporter(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> finished) {
+            for (SpanData span : finished) {
+                spans.addLast(span);
+                if (size.incrementAndGet() > capacity && spans.pollFirst() != null) size.decrementAndGet();
+            }
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            spans.clear();
+            size.set(0);
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+
+    /**
+     * Configure the tracer provider and the exporter.
+     *
+     * @param exporter    The exporter (none, logging, memory or otlp).
+     * @param endpoint    The OTLP/HTTP endpoint spans are sent to if the exporter is otlp.
+     * @param sampleRatio The fraction (0.0 - 1.0) of traces that are recorded. Continued traces follow the
+     *                    decision of their parent.
+     * @param memorySpans The number of spans kept if the exporter is memory.
+     */
+    public static synchronized void init(String exporter, String endpoint, double sampleRatio, int memorySpans) {
+        String name = exporter == null ? NONE : exporter.trim().toLowerCase();
+
+        SpanProcessor processor;
+        switch (name) {
+            case LOGGING -> processor = SimpleSpanProcessor.create(LoggingSpanExporter.create());
+            case MEMORY -> {
+                memory = new MemoryExporter(memorySpans);
+                processor = SimpleSpanProcessor.create(memory);
+            }
+            case OTLP -> processor = BatchSpanProcessor
+                .builder(OtlpHttpSpanExporter.builder().setEndpoint(endpoint).build())
+                .build();
+            case NONE -> {
+                return;
+            }
+            default -> {
+                log.warn("Unknown tracing exporter {}, tracing is disabled.", exporter);
+                return;
+            }
+        }
+
+        SdkTracerProvider provider = SdkTracerProvider
+            .builder()
+            .setResource(Resource
+                .getDefault()
+                .merge(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "duui-gateway"))))
+            .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(Math.max(0, Math.min(1, sampleRatio)))))
+            .addSpanProcessor(processor)
+            .build();
+
+        openTelemetry = OpenTelemetrySdk
+            .builder()
+            .setTracerProvider(provider)
+            .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+            .build();
+        tracer = openTelemetry.getTracer(INSTRUMENTATION);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(provider::close, "duui-tracing-shutdown"));
+        log.info("Tracing enabled with the {} exporter", name);
+    }
+
+    /**
+     * Start a server span for an incoming request. A trace context sent by the client (traceparent) is
+     * continued, otherwise a new trace is started.
+     *
+     * @param method  The request method.
+     * @param path    The request path.
+     * @param headers A function returning the value of a request header.
+     * @return the started span. The caller must make it current and end it.
+     */
+    public static Span startRequestSpan(String method, String path, Function<String, String> headers) {
+        Context parent = openTelemetry
+            .getPropagators()
+            .getTextMapPropagator()
+            .extract(Context.root(), headers, HEADERS);
+
+        return tracer
+            .spanBuilder(method + " " + path)
+            .setParent(parent)
+            .setSpanKind(SpanKind.SERVER)
+            .setAttribute("http.request.method", method)
+            .setAttribute("url.path", path)
+            .startSpan();
+    }
+
+    /**
+     * Start an internal span as child of the current span.
+     *
+     * @param name The name of the span.
+     * @return the started span.
+     */
+    public static Span startSpan(String name) {
+        return startSpan(name, SpanKind.INTERNAL, Context.current());
+    }
+
+    /**
+     * Start a span with an explicit parent, e.g. for work that continues on another thread.
+     *
+     * @param name   The name of the span.
+     * @param kind   The kind of the span.
+     * @param parent The parent context.
+     * @return the started span.
+     */
+    public static Span startSpan(String name, SpanKind kind, Context parent) {
+        return tracer
+            .spanBuilder(name)
+            .setSpanKind(kind)
+            .setParent(parent == null ? Context.current() : parent)
+            .startSpan();
+    }
+
+    /**
+     * Execute a call in a new child span of the current span. Exceptions are recorded and rethrown.
+     *
+     * @param name The name of the span.
+     * @param call The call to execute.
+     * @return the result of the call.
+     */
+    public static <T, E extends Exception> T inSpan(String name, TracedCall<T, E> call) throws E {
+        return inSpan(startSpan(name), call);
+    }
+
+    /**
+     * Execute a call in a started span and end the span afterwards. Exceptions are recorded and rethrown.
+     *
+     * @param span The span.
+     * @param call The call to execute.
+     * @return the result of the call.
+     */
+    public static <T, E extends Exception> T inSpan(Span span, TracedCall<T, E> call) throws E {
+        try (Scope ignored = span.makeCurrent()) {
+            return call.call();
+        } catch (Exception exception) {
+            fail(span, exception);
+            throw exception;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Execute a task in a started span and end the span afterwards. Runtime exceptions are recorded and rethrown.
+     *
+     * @param span The span.
+     * @param task The task to execute.
+     */
+    public static void run(Span span, Runnable task) {
+        inSpan(span, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Mark a span as failed.
+     *
+     * @param span      The span.
+     * @param exception The cause.
+     */
+    public static void fail(Span span, Throwable exception) {
+        span.recordException(exception);
+        span.setStatus(StatusCode.ERROR, exception.getMessage() == null ? "" : exception.getMessage());
+    }
+
+    /**
+     * @return if the current span is recorded. Used to avoid creating root spans for background work.
+     */
+    public static boolean isRecording() {
+        return Span.current().isRecording();
+    }
+
+    /**
+     * @return the trace id of the current span or null if there is none.
+     */
+    public static String getTraceId() {
+        SpanContext context = Span.current().getSpanContext();
+        return context.isValid() ? context.getTraceId() : null;
+    }
+
+    /**
+     * @return the span id of the current span or null if there is none.
+     */
+    public static String getSpanId() {
+        SpanContext context = Span.current().getSpanContext();
+        return context.isValid() ? context.getSpanId() : null;
+    }
+
+    /**
+     * Retrieve the spans of a trace from the memory exporter.
+     *
+     * @param traceId The id of the trace.
+     * @return the spans ordered by start time or null if the memory exporter is not used.
+     */
+    public static List<Document> getSpans(String traceId) {
+        if (memory == null) return null;
+
+        List<Document> spans = new ArrayList<>();
+        memory.spans
+            .stream()
+            .filter(span -> span.getTraceId().equals(traceId))
+            .sorted((a, b) -> Long.compare(a.getStartEpochNanos(), b.getStartEpochNanos()))
+            .forEach(span -> {
+                Document attributes = new Document();
+                span.getAttributes().forEach((key, value) -> attributes.append(key.getKey(), value));
+
+                spans.add(new Document("name", span.getName())
+                    .append("span_id", span.getSpanId())
+                    .append("parent_span_id", span.getParentSpanContext().isValid()
+                        ? span.getParentSpanId()
+                        : null)
+                    .append("kind", span.getKind().name())
+                    .append("started_at", TimeUnit.NANOSECONDS.toMillis(span.getStartEpochNanos()))
+                    .append("duration", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1e6)
+                    .append("status", span.getStatus().getStatusCode().name())
+                    .append("attributes", attributes));
+            });
+
+        return spans;
+    }
+}
@@ -1,7 +1,18 @@
 package org.texttechnologylab.duui.api.metrics.providers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
+
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import spark.Spark;
+import spark.route.HttpMethod;
+import spark.routematch.RouteMatch;
+import spark.utils.SparkUtils;
 
 
 /**
@@ -63,12 +74,106 @@ public class DUUIHTTPMetrics {
      */
     private static final Counter requestsUsers = makeRouteCounter("users");
 
+    /**
+     * The latency of requests per method and route.
+     */
+    private static final Histogram requestDuration = Histogram.build()
+        .name("duui_request_duration_seconds")
+        .help("The latency of requests per method and route")
+        .labelNames("method", "route")
+        .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30)
+        .register();
+
+    /**
+     * The number of responses per method, route and status code.
+     */
+    private static final Counter responses = Counter.build()
+        .name("duui_responses_total")
+        .help("The number of responses per method, route and status code")
+        .labelNames("method", "route", "status")
+        .register();
+
+    /**
+     * The size of request bodies per method and route.
+     */
+    private static final Counter requestBytes = Counter.build()
+        .name("duui_request_bytes_total")
+        .help("The size of request bodies in bytes")
+        .labelNames("method", "route")
+        .register();
+
+    /**
+     * The size of response bodies per method and route.
+     */
+    private static final Counter responseBytes = Counter.build()
+        .name("duui_response_bytes_total")
+        .help("The size of response bodies in bytes")
+        .labelNames("method", "route")
+        .register();
+
+    /**
+     * The label of requests that do not match any route, e.g. probes that are answered with 404.
+     */
+    public static final String UNMATCHED = "unmatched";
+
+    /**
+     * The HTTP methods of the routes (filters are not labelled).
+     */
+    private static final Set<HttpMethod> ENDPOINTS = Set.of(
+        HttpMethod.get,
+        HttpMethod.post,
+        HttpMethod.put,
+        HttpMethod.patch,
+        HttpMethod.delete,
+        HttpMethod.options);
+
+    /**
+     * A route of the API.
+     *
+     * @param method   The HTTP method.
+     * @param template The path of the route as defined in Spark (e.g. /processes/:id/documents).
+     * @param segments The segments of the path.
+     */
+    private record Route(HttpMethod method, String template, List<String> segments) {
+    }
+
+    /**
+     * The routes of the API in the order Spark matches them. Set by {@link #registerRoutes()}.
+     */
+    private static volatile List<Route> routes = List.of();
+
     /**
      * Register metrics. (Currently empty!)
      */
     public static void register() {
     }
 
+    /**
+     * Read the routes defined in Spark. Requests are labelled with the route they match, so this must be
+     * called after all routes have been defined.
+     */
+    public static void registerRoutes() {
+        registerRoutes(Spark.routes());
+    }
+
+    /**
+     * Label requests with the given routes.
+     *
+     * @param matches The routes in the order Spark matches them.
+     */
+    static void registerRoutes(List<RouteMatch> matches) {
+        List<Route> registered = new ArrayList<>();
+        for (RouteMatch match : matches) {
+            if (!ENDPOINTS.contains(match.getHttpMethod())) continue;
+
+            registered.add(new Route(
+                match.getHttpMethod(),
+                match.getMatchUri(),
+                SparkUtils.convertRouteToList(match.getMatchUri())));
+        }
+        routes = List.copyOf(registered);
+    }
+
     /**
      * Increment the total number of requests.
      */
@@ -136,6 +241,87 @@ public class DUUIHTTPMetrics {
         totalBytesUploaded.inc(amount);
     }
 
+    /**
+     * Record a completed request.
+     *
+     * @param method        The HTTP method.
+     * @param path          The request path. See {@link #normalizeRoute(String, String)}.
+     * @param status        The status code of the response.
+     * @param seconds       The time it took to handle the request.
+     * @param requestBytes  The size of the request body or a negative value if unknown.
+     * @param responseBytes The size of the response body.
+     * @param processId     The id of the process the request refers to or null. It is attached to the
+     *                      duration as exemplar (OpenMetrics only) together with the current trace.
+     */
+    public static void observeRequest(
+        String method,
+        String path,
+        int status,
+        double seconds,
+        long requestBytes,
+        long responseBytes,
+        String processId) {
+        String route = normalizeRoute(method, path);
+
+        List<String> exemplar = new ArrayList<>(6);
+        if (processId != null) exemplar.addAll(List.of("process_id", processId));
+
+        String traceId = DUUITracing.getTraceId();
+        if (traceId != null) exemplar.addAll(List.of("trace_id", traceId, "span_id", DUUITracing.getSpanId()));
+
+        if (exemplar.isEmpty()) {
+            requestDuration.labels(method, route).observe(seconds);
+        } else {
+            requestDuration.labels(method, route).observeWithExemplar(seconds, exemplar.toArray(String[]::new));
+        }
+        responses.labels(method, route, String.valueOf(status)).inc();
+        if (requestBytes > 0) DUUIHTTPMetrics.requestBytes.labels(method, route).inc(requestBytes);
+        if (responseBytes > 0) DUUIHTTPMetrics.responseBytes.labels(method, route).inc(responseBytes);
+    }
+
+    /**
+     * Map a request to the template of the route it matches (e.g. /processes/:id/documents), so that ids,
+     * emails or names in the path never become label values. The status does not matter, so a 404 for an
+     * unknown process is still labelled with its route. Only requests that match no route are labelled
+     * {@link #UNMATCHED}. The number of distinct labels is therefore bounded by the number of routes.
+     *
+     * @param method The HTTP method.
+     * @param path   The request path.
+     * @return the route template.
+     */
+    public static String normalizeRoute(String method, String path) {
+        if (method == null || path == null) return UNMATCHED;
+
+        HttpMethod httpMethod = HttpMethod.get(method.toLowerCase());
+        if (httpMethod == HttpMethod.head) httpMethod = HttpMethod.get;
+
+        List<String> segments = SparkUtils.convertRouteToList(path);
+        for (Route route : routes) {
+            if (route.method() == httpMethod && matches(route.segments(), segments)) return route.template();
+        }
+        return UNMATCHED;
+    }
+
+    /**
+     * Match the segments of a path against those of a route the way Spark does: parameters (:name) and
+     * splats (*) match any segment and a trailing splat matches the rest of the path.
+     *
+     * @param route The segments of the route.
+     * @param path  The segments of the path.
+     * @return if the path matches the route.
+     */
+    private static boolean matches(List<String> route, List<String> path) {
+        for (int i = 0; i < route.size(); i++) {
+            String segment = route.get(i);
+            if (SparkUtils.isSplat(segment) && i == route.size() - 1) return path.size() >= route.size();
+            if (i >= path.size()) return false;
+            if (!SparkUtils.isParam(segment) && !SparkUtils.isSplat(segment) && !segment.equals(path.get(i))) {
+                return false;
+            }
+        }
+        return route.size() == path.size();
+    }
+
     /**
      * Create a counter for a specific route.
      *
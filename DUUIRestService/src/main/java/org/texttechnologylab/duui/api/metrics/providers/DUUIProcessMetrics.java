@@ -1,7 +1,15 @@
 package org.texttechnologylab.duui.api.metrics.providers;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.prometheus.client.Collector;
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.GaugeMetricFamily;
 
 /**
  * A class containing process related metrics and means to update them.
@@ -58,12 +66,193 @@ public class DUUIProcessMetrics {
         .help("The toal number of errors during processing")
         .register();
 
+    /**
+     * The number of documents processed per pipeline.
+     */
+    private static final Counter pipelineDocuments = Counter.build()
+        .name("duui_pipeline_documents_total")
+        .help("The number of documents processed by a pipeline")
+        .labelNames("pipeline")
+        .register();
+
+    /**
+     * The number of documents that failed per pipeline.
+     */
+    private static final Counter pipelineDocumentErrors = Counter.build()
+        .name("duui_pipeline_document_errors_total")
+        .help("The number of documents a pipeline failed to process")
+        .labelNames("pipeline")
+        .register();
+
+    /**
+     * The number of bytes processed per pipeline.
+     */
+    private static final Counter pipelineBytes = Counter.build()
+        .name("duui_pipeline_bytes_total")
+        .help("The size of the documents processed by a pipeline in bytes")
+        .labelNames("pipeline")
+        .register();
+
+    /**
+     * The label of processes whose pipeline has not been started.
+     */
+    public static final String OTHER_PIPELINES = "other";
+
+    /**
+     * The last state reported by every active process.
+     */
+    private static final Map<String, ProcessState> processes = new ConcurrentHashMap<>();
+
+    /**
+     * The state of an active process as reported by its handler.
+     *
+     * @param pipeline   The pipeline label.
+     * @param documents  The number of finished documents.
+     * @param failed     The number of failed documents.
+     * @param bytes      The size of the finished documents.
+     * @param queued     The number of unfinished documents per status.
+     * @param components The number of components per status.
+     */
+    private record ProcessState(
+        String pipeline,
+        long documents,
+        long failed,
+        long bytes,
+        Map<String, Long> queued,
+        Map<String, Long> components) {
+    }
+
+    /**
+     * Computes the per pipeline gauges from the state of the active processes when metrics are scraped,
+     * so that pipelines without active processes do not leave stale time series behind.
+     */
+    private static class PipelineCollector extends Collector {
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            Map<List<String>, Double> queued = new HashMap<>();
+            Map<List<String>, Double> components = new HashMap<>();
+            Map<String, Double> active = new HashMap<>();
+
+            for (ProcessState state : processes.values()) {
+                active.merge(state.pipeline(), 1.0, Double::sum);
+                state.queued().forEach((status, count) ->
+                    queued.merge(List.of(state.pipeline(), status), (double) count, Double::sum));
+                state.components().forEach((status, count) ->
+                    components.merge(List.of(state.pipeline(), status), (double) count, Double::sum));
+            }
+
+            GaugeMetricFamily activeFamily = new GaugeMetricFamily(
+                "duui_pipeline_processes_active",
+                "The number of active processes of a pipeline",
+                List.of("pipeline"));
+            active.forEach((pipeline, count) -> activeFamily.addMetric(List.of(pipeline), count));
+
+            GaugeMetricFamily queuedFamily = new GaugeMetricFamily(
+                "duui_pipeline_documents_queued",
+                "The number of unfinished documents of a pipeline per document status",
+                List.of("pipeline", "status"));
+            queued.forEach(queuedFamily::addMetric);
+
+            GaugeMetricFamily componentFamily = new GaugeMetricFamily(
+                "duui_pipeline_components",
+                "The number of components of a pipeline's active processes per component status",
+                List.of("pipeline", "status"));
+            components.forEach(componentFamily::addMetric);
+
+            List<MetricFamilySamples> families = new ArrayList<>();
+            families.add(activeFamily);
+            families.add(queuedFamily);
+            families.add(componentFamily);
+            return families;
+        }
+    }
+
+    static {
+        new PipelineCollector().register();
+    }
+
     /**
      * Register the metrics with the default registry.
      */
     public static void register() {
     }
 
+    /**
+     * Update the per pipeline metrics from the in-memory state of a process. The counters are incremented
+     * by the difference to the previous update of the same process.
+     *
+     * @param processId  The id of the process.
+     * @param pipelineId The id of the pipeline executed by the process if the pipeline has been started,
+     *                   otherwise null. See {@link #pipelineLabel(String)}.
+     * @param documents  The number of finished documents.
+     * @param failed     The number of failed documents.
+     * @param bytes      The size of the finished documents in bytes.
+     * @param queued     The number of unfinished documents per status.
+     * @param components The number of components per status.
+     */
+    public static void updateProcess(
+        String processId,
+        String pipelineId,
+        long documents,
+        long failed,
+        long bytes,
+        Map<String, Long> queued,
+        Map<String, Long> components) {
+        String pipeline = pipelineLabel(pipelineId);
+
+        processes.compute(processId, (id, previous) -> {
+            long previousDocuments = previous == null ? 0 : previous.documents();
+            long previousFailed = previous == null ? 0 : previous.failed();
+            long previousBytes = previous == null ? 0 : previous.bytes();
+
+            if (documents > previousDocuments) pipelineDocuments.labels(pipeline).inc(documents - previousDocuments);
+            if (failed > previousFailed) pipelineDocumentErrors.labels(pipeline).inc(failed - previousFailed);
+            if (bytes > previousBytes) pipelineBytes.labels(pipeline).inc(bytes - previousBytes);
+
+            return new ProcessState(
+                pipeline,
+                Math.max(documents, previousDocuments),
+                Math.max(failed, previousFailed),
+                Math.max(bytes, previousBytes),
+                Map.copyOf(queued),
+                Map.copyOf(components));
+        });
+    }
+
+    /**
+     * Remove a process from the per pipeline gauges once it has finished.
+     *
+     * @param processId The id of the process.
+     */
+    public static void removeProcess(String processId) {
+        processes.remove(processId);
+    }
+
+    /**
+     * Remove the per pipeline counters of a pipeline once it has been shut down, so that the number of
+     * time series is bounded by the number of started pipelines.
+     *
+     * @param pipelineId The id of the pipeline.
+     */
+    public static void removePipeline(String pipelineId) {
+        pipelineDocuments.remove(pipelineId);
+        pipelineDocumentErrors.remove(pipelineId);
+        pipelineBytes.remove(pipelineId);
+    }
+
+    /**
+     * Map a pipeline id to a label value. Only started pipelines, which are kept instantiated on purpose,
+     * are labelled with their id. The processes of all other pipelines share the label
+     * {@link #OTHER_PIPELINES}, so the labels do not depend on which pipelines happened to run first.
+     *
+     * @param pipelineId The id of the pipeline if it has been started, otherwise null.
+     * @return the label value.
+     */
+    private static String pipelineLabel(String pipelineId) {
+        return pipelineId == null ? OTHER_PIPELINES : pipelineId;
+    }
+
 
     /**
         * Increment the number of active processes.
@@ -1,6 +1,13 @@
 package org.texttechnologylab.duui.api.metrics.providers;
 
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 
 /**
  * A class containing database related metrics and means to update them.
@@ -10,34 +17,112 @@ import io.prometheus.client.Counter;
 public class DUUIStorageMetrics {
 
     /**
-     * The number of CRUD operations on the pipelines collection.
+     * The number of CRUD operations per collection. Only collections used by the application are tracked.
+     */
+    private static final Map<String, Counter> collectionCounters = Stream
+        .of("pipelines", "components", "processes", "documents", "events", "users")
+        .collect(Collectors.toUnmodifiableMap(Function.identity(), DUUIStorageMetrics::makeCollectionCounter));
+
+    /**
+     * The latency of database commands per collection and command.
+     */
+    private static final Histogram commandDuration = Histogram.build()
+        .name("duui_mongodb_command_duration_seconds")
+        .help("The latency of MongoDB commands")
+        .labelNames("collection", "command", "status")
+        .buckets(0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
+        .register();
+
+    /**
+     * The number of documents returned by database commands.
+     */
+    private static final Counter commandDocumentsReturned = Counter.build()
+        .name("duui_mongodb_command_documents_returned_total")
+        .help("The number of documents returned by MongoDB commands")
+        .labelNames("collection", "command")
+        .register();
+
+    /**
+     * The number of bytes sent to the database.
+     */
+    private static final Counter commandBytesSent = Counter.build()
+        .name("duui_mongodb_command_sent_bytes_total")
+        .help("The size of the MongoDB commands sent to the server in bytes")
+        .labelNames("collection", "command")
+        .register();
+
+    /**
+     * The number of bytes received from the database.
+     */
+    private static final Counter commandBytesReceived = Counter.build()
+        .name("duui_mongodb_command_received_bytes_total")
+        .help("The size of the MongoDB replies received from the server in bytes")
+        .labelNames("collection", "command")
+        .register();
+
+    /**
+     * The number of commands slower than the configured threshold.
      */
-    private static final Counter collectionPipelines = makeCollectionCounter("pipelines");
+    private static final Counter slowCommands = Counter.build()
+        .name("duui_mongodb_slow_commands_total")
+        .help("The number of MongoDB commands slower than MONGO_SLOW_COMMAND_MS")
+        .labelNames("collection", "command")
+        .register();
 
     /**
-     * The number of CRUD operations on the components collection.
+     * The number of open connections per server.
      */
-    private static final Counter collectionComponents = makeCollectionCounter("components");
+    private static final Gauge poolConnections = Gauge.build()
+        .name("duui_mongodb_pool_connections")
+        .help("The number of open connections in the MongoDB connection pool")
+        .labelNames("server")
+        .register();
 
     /**
-     * The number of CRUD operations on the processes collection.
+     * The number of connections currently in use per server.
      */
-    private static final Counter collectionProcesses = makeCollectionCounter("processes");
+    private static final Gauge poolCheckedOut = Gauge.build()
+        .name("duui_mongodb_pool_checked_out_connections")
+        .help("The number of connections checked out of the MongoDB connection pool")
+        .labelNames("server")
+        .register();
 
     /**
-     * The number of CRUD operations on the documents collection.
+     * The number of threads waiting for a connection per server.
      */
-    private static final Counter collectionDocuments = makeCollectionCounter("documents");
+    private static final Gauge poolWaitQueue = Gauge.build()
+        .name("duui_mongodb_pool_wait_queue_size")
+        .help("The number of threads waiting for a connection from the MongoDB connection pool")
+        .labelNames("server")
+        .register();
 
     /**
-     * The number of CRUD operations on the events collection.
+     * The maximum size of the pool per server.
      */
-    private static final Counter collectionEvents = makeCollectionCounter("events");
+    private static final Gauge poolMaxSize = Gauge.build()
+        .name("duui_mongodb_pool_max_connections")
+        .help("The maximum number of connections in the MongoDB connection pool")
+        .labelNames("server")
+        .register();
 
     /**
-     * The number of CRUD operations on the users collection.
+     * The time it takes to check out a connection.
      */
-    private static final Counter collectionUsers = makeCollectionCounter("users");
+    private static final Histogram poolCheckOutDuration = Histogram.build()
+        .name("duui_mongodb_pool_checkout_seconds")
+        .help("The time spent waiting for a connection from the MongoDB connection pool")
+        .labelNames("server")
+        .buckets(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 30, 120)
+        .register();
+
+    /**
+     * The number of failed check outs per server and reason.
+     */
+    private static final Counter poolCheckOutFailures = Counter.build()
+        .name("duui_mongodb_pool_checkout_failures_total")
+        .help("The number of failed attempts to check out a connection from the MongoDB connection pool")
+        .labelNames("server", "reason")
+        .register();
 
     /**
      * Create a counter for a collection.
@@ -59,44 +144,119 @@ public class DUUIStorageMetrics {
     }
 
     /**
-    * Increment the counter for the number of pipelines.
-    */
-    public static void incrementPipelinesCounter() {
-        collectionPipelines.inc();
+     * Increment the counter for the number of CRUD operations on a collection.
+     *
+     * @param collection The name of the collection.
+     */
+    public static void incrementCrudCounter(String collection) {
+        Counter counter = collectionCounters.get(collection);
+        if (counter != null) counter.inc();
     }
 
     /**
-     * Increment the counter for the number of components.
+     * Record the outcome of a database command.
+     *
+     * @param collection The name of the collection or none for database commands.
+     * @param command    The name of the command (find, insert, ...).
+     * @param succeeded  If the command succeeded.
+     * @param seconds    The duration of the command.
      */
-    public static void incrementComponentsCounter() {
-        collectionComponents.inc();
+    public static void observeCommand(String collection, String command, boolean succeeded, double seconds) {
+        commandDuration.labels(collection, command, succeeded ? "success" : "failure").observe(seconds);
     }
 
     /**
-     * Increment the counter for the number of processes.
+     * Increment the number of documents returned by a command.
+     *
+     * @param collection The name of the collection.
+     * @param command    The name of the command.
+     * @param documents  The number of documents returned.
      */
-    public static void incrementProcesssesCounter() {
-        collectionProcesses.inc();
+    public static void incrementDocumentsReturned(String collection, String command, int documents) {
+        commandDocumentsReturned.labels(collection, command).inc(documents);
     }
 
     /**
-    * Increment the counter for the number of documents.
+     * Increment the number of bytes sent to and received from the database.
+     *
+     * @param collection The name of the collection.
+     * @param command    The name of the command.
+     * @param sent       The size of the command in bytes.
+     * @param received   The size of the reply in bytes.
      */
-    public static void incrementDocumentsCounter() {
-        collectionDocuments.inc();
+    public static void incrementCommandBytes(String collection, String command, long sent, long received) {
+        commandBytesSent.labels(collection, command).inc(sent);
+        commandBytesReceived.labels(collection, command).inc(received);
     }
 
     /**
-     * Increment the counter for the number of events.
+     * Increment the number of slow commands.
+     *
+     * @param collection The name of the collection.
+     * @param command    The name of the command.
+     */
+    public static void incrementSlowCommands(String collection, String command) {
+        slowCommands.labels(collection, command).inc();
+    }
+
+    /**
+     * Set the maximum size of the connection pool for a server.
+     *
+     * @param server  The address of the server.
+     * @param maxSize The maximum number of connections.
+     */
+    public static void setPoolMaxSize(String server, int maxSize) {
+        poolMaxSize.labels(server).set(maxSize);
+    }
+
+    /**
+     * Update the number of open connections for a server.
+     *
+     * @param server The address of the server.
+     * @param delta  1 if a connection has been created, -1 if it has been closed.
      */
-    public static void incrementEventsCounter() {
-        collectionEvents.inc();
+    public static void updatePoolConnections(String server, int delta) {
+        poolConnections.labels(server).inc(delta);
     }
 
     /**
-     * Increment the counter for the number of users.
+     * Record that a thread started waiting for a connection.
+     *
+     * @param server The address of the server.
+     */
+    public static void startPoolCheckOut(String server) {
+        poolWaitQueue.labels(server).inc();
+    }
+
+    /**
+     * Record that a thread received a connection.
+     *
+     * @param server  The address of the server.
+     * @param seconds The time spent waiting for the connection or a negative value if unknown.
+     */
+    public static void completePoolCheckOut(String server, double seconds) {
+        poolWaitQueue.labels(server).dec();
+        poolCheckedOut.labels(server).inc();
+        if (seconds >= 0) poolCheckOutDuration.labels(server).observe(seconds);
+    }
+
+    /**
+     * Record that a thread failed to receive a connection.
+     *
+     * @param server The address of the server.
+     * @param reason The reason for the failure (e.g. TIMEOUT).
+     */
+    public static void failPoolCheckOut(String server, String reason) {
+        poolWaitQueue.labels(server).dec();
+        poolCheckOutFailures.labels(server, reason).inc();
+    }
+
+    /**
+     * Record that a connection has been returned to the pool.
+     *
+     * @param server The address of the server.
      */
-    public static void incrementUsersCounter() {
-        collectionUsers.inc();
+    public static void checkInPoolConnection(String server) {
+        poolCheckedOut.labels(server).dec();
     }
 }
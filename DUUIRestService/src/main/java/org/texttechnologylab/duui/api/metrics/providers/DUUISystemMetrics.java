@@ -1,81 +1,189 @@
 package org.texttechnologylab.duui.api.metrics.providers;
 
+import com.sun.management.GarbageCollectionNotificationInfo;
 import com.sun.management.OperatingSystemMXBean;
-import io.prometheus.client.Gauge;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.hotspot.DefaultExports;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.api.Main;
 
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 
 /**
- * A class containing system metrics and means to update them.
+ * A class containing system and JVM runtime metrics and means to update them.
+ * <p>
+ * Gauges are computed when metrics are scraped instead of being polled. The standard JVM metrics (memory
+ * pools, buffer pools, threads, class loading, ...) are exported with the Prometheus hotspot collectors.
+ * GC pauses are observed through GC notifications, allocations and safepoints through a JFR event stream.
  *
  * @author Cedric Borkowski.
  */
 public class DUUISystemMetrics {
 
+    private static final Logger log = LoggerFactory.getLogger(DUUISystemMetrics.class);
+
     /**
-     * The current cpu load.
+     * The duration of garbage collections.
      */
-    private static final Gauge cpuLoad = Gauge.build()
-        .name("duui_cpu_load")
-        .help("The current cpu load")
+    private static final Histogram gcPause = Histogram.build()
+        .name("duui_jvm_gc_pause_seconds")
+        .help("The duration of garbage collections")
+        .labelNames("gc", "action")
+        .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
         .register();
 
     /**
-     * The current free memory.
+     * The duration of safepoints (JFR).
      */
-    private static final Gauge memoryFree = Gauge.build()
-        .name("duui_memory_free")
-        .help("The current cpu load")
+    private static final Histogram safepoints = Histogram.build()
+        .name("duui_jvm_safepoint_seconds")
+        .help("The duration of safepoints")
+        .buckets(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1)
         .register();
 
     /**
-     * The total memory.
+     * The sampled number of allocated bytes per thread group (JFR).
      */
-    private static final Gauge memoryTotal = Gauge.build()
-        .name("duui_memory_total")
-        .help("The current cpu load")
+    private static final Counter allocatedBytes = Counter.build()
+        .name("duui_jvm_allocated_bytes_total")
+        .help("The estimated number of bytes allocated by a group of threads")
+        .labelNames("threads")
         .register();
 
     /**
-    * The current virtual memory comitted.
+     * The thread groups used as label by the prefix of the thread names, checked in order. Threads that
+     * match no prefix are labelled as other.
      */
-    private static final Gauge memoryVirtualComitted = Gauge.build()
-        .name("duui_memory_virtual_comitted")
-        .help("The current cpu load")
-        .register();
+    private static final List<Map.Entry<String, String>> THREAD_GROUPS = List.of(
+        Map.entry("duui-process-", "process"),
+        Map.entry("duui-batch-", "batch"),
+        Map.entry("duui-execution-", "execution"),
+        Map.entry("duui-instantiation-", "instantiation"),
+        Map.entry("duui-pipeline-", "pipeline"),
+        Map.entry("duui-recording", "recording"),
+        Map.entry("duui-", "gateway"),
+        Map.entry("qtp", "http"),
+        Map.entry("cluster-", "mongodb"),
+        Map.entry("ForkJoinPool", "fork-join"),
+        Map.entry("pool-", "executor"),
+        Map.entry("main", "main"));
+
+    /**
+     * The JFR event stream or null if it is disabled.
+     */
+    private static RecordingStream stream;
+
+    private static boolean registered = false;
+
+    /**
+     * Computes the system gauges when metrics are scraped.
+     */
+    private static class SystemCollector extends Collector {
+
+        private final OperatingSystemMXBean monitor =
+            ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            return List.of(
+                new GaugeMetricFamily("duui_cpu_load", "The current cpu load of the system", monitor.getCpuLoad()),
+                new GaugeMetricFamily("duui_process_cpu_load", "The current cpu load of the JVM", monitor.getProcessCpuLoad()),
+                new GaugeMetricFamily("duui_memory_free", "The free physical memory in bytes", monitor.getFreeMemorySize()),
+                new GaugeMetricFamily("duui_memory_total", "The total physical memory in bytes", monitor.getTotalMemorySize()),
+                new GaugeMetricFamily(
+                    "duui_memory_virtual_comitted",
+                    "The virtual memory committed to the JVM in bytes",
+                    monitor.getCommittedVirtualMemorySize()));
+        }
+    }
 
     /**
-     * The system monitor.
+     * Register the metrics, the GC listeners and start the JFR event stream.
      */
-    private static OperatingSystemMXBean monitor;
+    public static synchronized void register() {
+        if (registered) return;
+        registered = true;
+
+        new SystemCollector().register();
+        DefaultExports.initialize();
+        registerGcListeners();
+
+        if (Main.config == null || Main.config.getJfrMetrics()) {
+            startEventStream();
+        }
+    }
+
+    /**
+     * Observe the duration of every garbage collection.
+     */
+    private static void registerGcListeners() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(collector instanceof NotificationEmitter emitter)) continue;
+
+            emitter.addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    return;
+                }
+
+                GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                gcPause
+                    .labels(info.getGcName(), info.getGcAction())
+                    .observe(info.getGcInfo().getDuration() / 1000.0);
+            }, null, null);
+        }
+    }
 
     /**
-     * Register the metrics and start the update service.
+     * Stream allocation samples and safepoints from JFR into the metrics.
      */
-    public static void register() {
-        monitor = ManagementFactory.getPlatformMXBean(com.sun.management.OperatingSystemMXBean.class);
-        ScheduledFuture<?> service = Executors
-            .newScheduledThreadPool(1)
-            .scheduleAtFixedRate(
-                DUUISystemMetrics::updateSystemMetrics,
-                0,
-                5,
-                TimeUnit.SECONDS
-            );
-
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> service.cancel(true)));
+    private static void startEventStream() {
+        try {
+            stream = new RecordingStream();
+            stream.enable("jdk.ObjectAllocationSample").with("throttle", "150/s");
+            stream.enable("jdk.SafepointBegin");
+            stream.setMaxAge(Duration.ofSeconds(10));
+
+            stream.onEvent("jdk.ObjectAllocationSample", event ->
+                allocatedBytes.labels(threadGroup(event)).inc(event.getLong("weight")));
+            stream.onEvent("jdk.SafepointBegin", event ->
+                safepoints.observe(event.getDuration().toNanos() / 1e9));
+
+            stream.startAsync();
+            Runtime.getRuntime().addShutdownHook(new Thread(stream::close));
+        } catch (RuntimeException exception) {
+            log.warn("JFR metrics are not available: {}", exception.getMessage());
+            stream = null;
+        }
     }
 
     /**
-     * Update the system metrics.
+     * Map the thread of an event to one of the fixed {@link #THREAD_GROUPS} by the prefix of its name.
+     *
+     * @param event The JFR event.
+     * @return the label value.
      */
-    private static void updateSystemMetrics() {
-        cpuLoad.set(monitor.getCpuLoad());
-        memoryFree.set(monitor.getFreeMemorySize());
-        memoryTotal.set(monitor.getTotalMemorySize());
-        memoryVirtualComitted.set(monitor.getCommittedVirtualMemorySize());
+    private static String threadGroup(RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        String name = thread == null ? null : thread.getJavaName();
+        if (name == null || name.isEmpty()) return "native";
+
+        for (Map.Entry<String, String> group : THREAD_GROUPS) {
+            if (name.startsWith(group.getKey())) return group.getValue();
+        }
+        return "other";
     }
 }
@@ -0,0 +1,170 @@
+package org.texttechnologylab.duui.api.routes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.UnaryOperator;
+
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+
+import spark.Request;
+import spark.Response;
+
+/**
+ * A utility class to stream the results of a MongoDB cursor directly into the servlet output stream.
+ * Documents are encoded one at a time so that large list responses do not have to be materialized in memory.
+ * Two formats are supported: a JSON object of the form {"field": [...], "count": n} (default) and
+ * newline delimited JSON (NDJSON) with one document per line.
+ */
+public class DUUIJsonStreamer {
+
+    /**
+     * The content type used for newline delimited JSON responses.
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * The number of documents fetched from the database per round trip.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The size of the character buffer between the JSON writer and the output stream.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Codec<Document> CODEC = MongoClientSettings
+        .getDefaultCodecRegistry()
+        .get(Document.class);
+
+    private static final JsonWriterSettings SETTINGS = JsonWriterSettings
+        .builder()
+        .outputMode(JsonMode.RELAXED)
+        .build();
+
+    private DUUIJsonStreamer() {
+    }
+
+    /**
+     * Check if the client requested newline delimited JSON either through the format query parameter
+     * (?format=ndjson) or the Accept header.
+     *
+     * @param request The Spark Request object.
+     * @return if the response should be written as NDJSON.
+     */
+    public static boolean isNdjson(Request request) {
+        String format = request.queryParamOrDefault("format", "");
+        if (format.equalsIgnoreCase("ndjson")) return true;
+
+        String accept = request.headers("Accept");
+        return accept != null && accept.contains(NDJSON);
+    }
+
+    /**
+     * Stream all documents of a cursor into the response. The total count is added to the JSON object
+     * and sent as X-Total-Count header if it is not negative.
+     *
+     * @param request  The Spark Request object.
+     * @param response The Spark Response object.
+     * @param field    The name of the list field in the JSON object (e.g. processes).
+     * @param count    The total number of matching documents or -1 to omit it.
+     * @param cursor   The iterable to read the documents from.
+     * @param mapper   A function applied to every document before it is written.
+     * @return an empty String since the body has already been written.
+     * @throws IOException if writing to the client fails.
+     */
+    public static String stream(
+        Request request,
+        Response response,
+        String field,
+        long count,
+        MongoIterable<Document> cursor,
+        UnaryOperator<Document> mapper) throws IOException {
+
+        boolean ndjson = isNdjson(request);
+
+        response.status(200);
+        response.type(ndjson ? NDJSON : "application/json");
+        if (count >= 0) response.header("X-Total-Count", String.valueOf(count));
+
+        Writer writer = new BufferedWriter(
+            new OutputStreamWriter(response.raw().getOutputStream(), StandardCharsets.UTF_8),
+            BUFFER_SIZE);
+
+        try (MongoCursor<Document> iterator = cursor.batchSize(BATCH_SIZE).iterator()) {
+            write(writer, ndjson, field, count, iterator, mapper);
+        }
+
+        // The stream is closed by Spark after the (empty) body has been serialized.
+        writer.flush();
+        return "";
+    }
+
+    /**
+     * Write documents either as a JSON object of the form {"field": [...], "count": n} or as NDJSON.
+     *
+     * @param writer    The writer to append the documents to.
+     * @param ndjson    Whether to write one document per line.
+     * @param field     The name of the list field in the JSON object.
+     * @param count     The total number of matching documents or -1 to omit it.
+     * @param documents The documents to write.
+     * @param mapper    A function applied to every document before it is written.
+     * @throws IOException if writing fails.
+     */
+    static void write(
+        Writer writer,
+        boolean ndjson,
+        String field,
+        long count,
+        Iterator<Document> documents,
+        UnaryOperator<Document> mapper) throws IOException {
+
+        if (ndjson) {
+            while (documents.hasNext()) {
+                write(writer, mapper.apply(documents.next()));
+                writer.write('\n');
+            }
+            return;
+        }
+
+        writer.write("{\"");
+        writer.write(field);
+        writer.write("\": [");
+
+        boolean first = true;
+        while (documents.hasNext()) {
+            if (!first) writer.write(", ");
+            write(writer, mapper.apply(documents.next()));
+            first = false;
+        }
+
+        writer.write("]");
+        if (count >= 0) {
+            writer.write(", \"count\": ");
+            writer.write(String.valueOf(count));
+        }
+        writer.write("}");
+    }
+
+    /**
+     * Encode a single document as JSON without creating an intermediate String.
+     *
+     * @param writer   The writer to append the document to.
+     * @param document The document to encode.
+     */
+    private static void write(Writer writer, Document document) {
+        CODEC.encode(new JsonWriter(writer, SETTINGS), document, EncoderContext.builder().build());
+    }
+}
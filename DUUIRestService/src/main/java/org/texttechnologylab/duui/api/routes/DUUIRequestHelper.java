@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.texttechnologylab.duui.api.controllers.users.DUUIUserController;
 import org.texttechnologylab.duui.api.controllers.users.Role;
 import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
@@ -20,6 +21,29 @@ import spark.Response;
  */
 public class DUUIRequestHelper {
 
+    /**
+     * The request attribute holding the id of the process a request refers to.
+     */
+    public static final String PROCESS_ID = "duui.process.id";
+
+    /**
+     * Get the id of the process a request refers to. This is either set as request attribute by the route
+     * (e.g. when a process is started) or taken from the path (/processes/:id/...).
+     *
+     * @param request The Spark Request object.
+     * @return The process id or null.
+     */
+    public static String getProcessId(Request request) {
+        String processId = request.attribute(PROCESS_ID);
+        if (processId != null) return processId;
+
+        String path = request.pathInfo();
+        if (path == null || !path.startsWith("/processes/")) return null;
+
+        String[] segments = path.split("/");
+        return segments.length > 2 && ObjectId.isValid(segments[2]) ? segments[2] : null;
+    }
+
     /**
      * At this stage user should never be null. Get the user's ID by authentication.
      *
@@ -2,12 +2,16 @@ package org.texttechnologylab.duui.api.routes.pipelines;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.bson.Document;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
 import org.texttechnologylab.duui.api.controllers.components.DUUIComponentController;
 import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineController;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePool;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelinePrewarmer;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineStatisticsController;
 import org.texttechnologylab.duui.api.controllers.users.Role;
 import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
 import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
@@ -104,11 +108,13 @@ public class DUUIPipelineRequestHandler {
         }
 
         if (request.queryParamOrDefault("statistics", "false").equals("true")) {
-            result
-                .getList("pipelines", Document.class)
-                .forEach(pipeline -> pipeline.append(
-                    "statistics",
-                    DUUIPipelineController.getPipelineStatistics(pipeline.getString("oid"))));
+            List<Document> pipelines = result.getList("pipelines", Document.class);
+            Map<String, Document> statistics = DUUIPipelineStatisticsController.findMany(
+                pipelines.stream().map(pipeline -> pipeline.getString("oid")).toList());
+
+            pipelines.forEach(pipeline -> pipeline.append(
+                "statistics",
+                statistics.get(pipeline.getString("oid"))));
         }
 
         response.status(200);
@@ -272,22 +278,26 @@ public class DUUIPipelineRequestHandler {
     }
 
     /**
-     * Instantiate a pipeline for future use.
-     * See {@link DUUIPipelineController#instantiate(String)}
+     * Instantiate a pipeline for future use. The pipeline is claimed from the pre-warmer so that it is kept
+     * until the user shuts it down. See {@link DUUIPipelineController#instantiate(String)}
      *
      * @return the status of the pipeline.
      */
     public static String start(Request request, Response response) {
         String pipeline_id = request.params(":id");
 
+        DUUIPipelinePrewarmer.claim(pipeline_id);
         boolean success = DUUIPipelineController.instantiate(pipeline_id);
         if (!success) {
+            DUUIPipelinePrewarmer.release(pipeline_id);
             response.status(500);
             return new Document("status", DUUIStatus.INACTIVE).toJson();
         }
 
         response.status(200);
-        return new Document("status", DUUIStatus.IDLE).toJson();
+        return new Document("status", DUUIStatus.IDLE)
+            .append("pool", DUUIPipelinePool.getStatus(pipeline_id))
+            .toJson();
     }
 
     /**
@@ -308,4 +318,32 @@ public class DUUIPipelineRequestHandler {
         response.status(200);
         return new Document("status", DUUIStatus.INACTIVE).toJson();
     }
+
+    /**
+     * Rebuild the materialized statistics of one pipeline (?pipeline_id=) or of all pipelines from the
+     * processes in the database. Only available to administrators.
+     * See {@link DUUIPipelineStatisticsController#rebuild(String)}.
+     *
+     * @return the number of pipelines whose statistics have been rebuilt.
+     */
+    public static String rebuildStatistics(Request request, Response response) {
+        if (!DUUIRequestHelper.isAdmin(request)) return DUUIRequestHelper.unauthorized(response);
+
+        String pipelineId = request.queryParamOrDefault("pipeline_id", null);
+        int rebuilt;
+
+        if (DUUIRequestHelper.isNullOrEmpty(pipelineId)) {
+            rebuilt = DUUIPipelineStatisticsController.rebuildAll();
+        } else {
+            if (DUUIPipelineController.findOneById(pipelineId, false) == null) {
+                return DUUIRequestHelper.notFound(response);
+            }
+
+            DUUIPipelineStatisticsController.rebuild(pipelineId);
+            rebuilt = 1;
+        }
+
+        response.status(200);
+        return new Document("rebuilt", rebuilt).toJson();
+    }
 }
@@ -13,9 +13,11 @@ import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
 import org.texttechnologylab.duui.api.controllers.documents.DUUIDocumentController;
 import org.texttechnologylab.duui.api.controllers.events.DUUIEventController;
 import org.texttechnologylab.duui.api.controllers.pipelines.DUUIPipelineController;
+import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessArchiveController;
 import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
 import org.texttechnologylab.duui.api.controllers.processes.InsufficientWorkersException;
 import org.texttechnologylab.duui.api.controllers.processes.InvalidIOException;
+import org.texttechnologylab.duui.api.routes.DUUIJsonStreamer;
 import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
 import org.texttechnologylab.duui.api.storage.DUUIMongoDBStorage;
 import org.texttechnologylab.duui.api.storage.MongoDBFilters;
@@ -123,12 +125,13 @@ public class DUUIProcessRequestHandler {
     }
 
     /**
-     * Retrieve a process given its id.
-     * See {@link DUUIProcessController#findMany(MongoDBFilters)}
+     * Retrieve one or more processes of a pipeline. The processes are streamed from the database
+     * as JSON or, if requested, as NDJSON (?format=ndjson).
+     * See {@link DUUIProcessController#findManyCursor(MongoDBFilters)}
      *
      * @return A response containing the processes or a default not found (404).
      */
-    public static String findMany(Request request, Response response) {
+    public static String findMany(Request request, Response response) throws IOException {
         String pipelineId = request.queryParamOrDefault("pipeline_id", null);
 
         if (DUUIRequestHelper.isNullOrEmpty(pipelineId))
@@ -163,10 +166,13 @@ public class DUUIProcessRequestHandler {
                     Filters.exists("output.provider"))
             ));
 
-        Document result = DUUIProcessController.findMany(filters);
-
-        if (result == null) return DUUIRequestHelper.notFound(response);
-        return result.toJson();
+        return DUUIJsonStreamer.stream(
+            request,
+            response,
+            "processes",
+            DUUIProcessController.count(filters),
+            DUUIProcessController.findManyCursor(filters),
+            DUUIMongoDBStorage::convertObjectIdToString);
     }
 
     /**
@@ -217,6 +223,7 @@ public class DUUIProcessRequestHandler {
                 output
             );
 
+            request.attribute(DUUIRequestHelper.PROCESS_ID, process.getString("oid"));
             return process.toJson();
         } catch (URISyntaxException | IOException exception) {
             response.status(500);
@@ -246,13 +253,14 @@ public class DUUIProcessRequestHandler {
     }
 
     /**
-     * Retrieve a limited number of documents from the database.
-     * See {@link DUUIDocumentController#findMany(MongoDBFilters)}.
+     * Retrieve a limited number of documents from the database. The documents are streamed
+     * as JSON or, if requested, as NDJSON (?format=ndjson). Archived processes are restored first.
+     * See {@link DUUIDocumentController#findManyCursor(MongoDBFilters)}.
      *
      * @return A JSON Document containing {@link DUUIDocument}s
      * and the total count.
      */
-    public static String findDocuments(Request request, Response response) {
+    public static String findDocuments(Request request, Response response) throws IOException {
         String processId = request.params(":id");
         String userID = DUUIRequestHelper.getUserId(request);
 
@@ -264,6 +272,8 @@ public class DUUIProcessRequestHandler {
 
         if (!pipeline.getString("user_id").equals(userID)) return DUUIRequestHelper.notFound(response);
 
+        DUUIProcessArchiveController.restoreIfArchived(processId);
+
         String statusNames = request.queryParamOrDefault("status", "Any");
         if (DUUIRequestHelper.isNullOrEmpty(statusNames)) statusNames = "Any";
 
@@ -285,16 +295,24 @@ public class DUUIProcessRequestHandler {
                 Filters.in("status", statusFilter)
         ));
 
-        return DUUIDocumentController.findMany(filters).toJson();
+        return DUUIJsonStreamer.stream(
+            request,
+            response,
+            "documents",
+            DUUIDocumentController.count(filters),
+            DUUIDocumentController.findManyCursor(filters),
+            DUUIDocumentController::withEvents);
     }
 
     /**
      * Retrieve events associated with the process.
-     * See {@link DUUIEventController#findManyByProcess(String)}
+     * The events are streamed as JSON or, if requested, as NDJSON (?format=ndjson).
+     * Archived processes are restored first.
+     * See {@link DUUIEventController#findManyByProcessCursor(String)}
      *
      * @return a timeline ({@link List}) of events.
      */
-    public static String findEvents(Request request, Response response) {
+    public static String findEvents(Request request, Response response) throws IOException {
         String authorization = request.headers("Authorization");
         DUUIRequestHelper.authenticate(authorization);
 
@@ -302,9 +320,42 @@ public class DUUIProcessRequestHandler {
         if (DUUIRequestHelper.isNullOrEmpty(user)) return DUUIRequestHelper.unauthorized(response);
 
         String id = request.params(":id");
-        response.status(200);
-        return new Document("timeline", DUUIEventController.findManyByProcess(id)).toJson();
+        DUUIProcessArchiveController.restoreIfArchived(id);
+
+        return DUUIJsonStreamer.stream(
+            request,
+            response,
+            "timeline",
+            -1,
+            DUUIEventController.findManyByProcessCursor(id),
+            DUUIMongoDBStorage::convertObjectIdToString);
     }
 
+    /**
+     * Retrieve the performance profile of a process: percentiles of the document durations per stage,
+     * throughput and the utilization of every component. Only the owner of the pipeline can retrieve it.
+     * See {@link DUUIProcessController#findProfile(String)}
+     *
+     * @return the profile or a default not found (404).
+     */
+    public static String findProfile(Request request, Response response) {
+        String id = request.params(":id");
+        if (!ObjectId.isValid(id)) return DUUIRequestHelper.notFound(response);
+
+        String userID = DUUIRequestHelper.getUserId(request);
+
+        Document process = findOneById(id);
+        if (DUUIRequestHelper.isNullOrEmpty(process)) return DUUIRequestHelper.notFound(response);
+
+        Document pipeline = DUUIPipelineController.findOneById(process.getString("pipeline_id"));
+        if (DUUIRequestHelper.isNullOrEmpty(pipeline)) return DUUIRequestHelper.notFound(response);
 
+        if (!pipeline.getString("user_id").equals(userID)) return DUUIRequestHelper.notFound(response);
+
+        Document profile = DUUIProcessController.findProfile(id);
+        if (profile == null) return DUUIRequestHelper.notFound(response);
+
+        response.status(200);
+        return profile.toJson();
+    }
 }
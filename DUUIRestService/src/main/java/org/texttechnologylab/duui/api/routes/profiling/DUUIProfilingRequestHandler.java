@@ -0,0 +1,176 @@
+package org.texttechnologylab.duui.api.routes.profiling;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+
+import org.bson.Document;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIComponentRegistry;
+import org.texttechnologylab.duui.api.controllers.pipelines.DUUIDriverRegistry;
+import org.texttechnologylab.duui.api.controllers.processes.DUUIProcessController;
+import org.texttechnologylab.duui.api.metrics.DUUIProfiler;
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
+import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
+
+import spark.Request;
+import spark.Response;
+
+/**
+ * A class that is responsible for handling incoming requests to the /profiling path group.
+ * All endpoints are only available to administrators.
+ */
+public class DUUIProfilingRequestHandler {
+
+    /**
+     * Start an on-demand JFR recording (?duration= in seconds, default 60).
+     * See {@link DUUIProfiler#start(Duration)}.
+     *
+     * @return the status of the recording or 409 if a recording is already running.
+     */
+    public static String startRecording(Request request, Response response) throws IOException, ParseException {
+        long seconds;
+        try {
+            seconds = Long.parseLong(request.queryParamOrDefault("duration", "60"));
+        } catch (NumberFormatException exception) {
+            return DUUIRequestHelper.badRequest(response, "The duration must be a number of seconds.");
+        }
+
+        if (seconds <= 0) return DUUIRequestHelper.badRequest(response, "The duration must be positive.");
+
+        Document status = DUUIProfiler.start(Duration.ofSeconds(seconds));
+        if (status == null) {
+            response.status(409);
+            return "A recording is already running.";
+        }
+
+        response.status(201);
+        return status.toJson();
+    }
+
+    /**
+     * Retrieve the status of the on-demand recording.
+     *
+     * @return the status of the recording.
+     */
+    public static String getRecording(Request request, Response response) {
+        response.status(200);
+        return DUUIProfiler.status().toJson();
+    }
+
+    /**
+     * Stop the on-demand recording and download it as .jfr file.
+     * See {@link DUUIProfiler#stop()}.
+     *
+     * @return a response containing the recording or a default not found (404).
+     */
+    public static String stopRecording(Request request, Response response) throws IOException {
+        Path file = DUUIProfiler.stop();
+        if (file == null || !Files.exists(file)) return DUUIRequestHelper.notFound(response);
+
+        try {
+            response.status(200);
+            response.type("application/octet-stream");
+            response.header("Content-Disposition", "attachment; filename=\"duui-recording.jfr\"");
+
+            OutputStream output = response.raw().getOutputStream();
+            Files.copy(file, output);
+            output.flush();
+            return "";
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Retrieve folded stacks of the last minutes for flame graphs (?type=cpu|allocation, ?minutes=, default 5).
+     * See {@link DUUIProfiler#flame(String, int)}.
+     *
+     * @return the folded stacks as plain text.
+     */
+    public static String flame(Request request, Response response) throws IOException {
+        String type = request.queryParamOrDefault("type", DUUIProfiler.CPU);
+        if (!List.of(DUUIProfiler.CPU, DUUIProfiler.ALLOCATION).contains(type))
+            return DUUIRequestHelper.badRequest(response, "The type must be cpu or allocation.");
+
+        int minutes;
+        try {
+            minutes = Integer.parseInt(request.queryParamOrDefault("minutes", "5"));
+        } catch (NumberFormatException exception) {
+            return DUUIRequestHelper.badRequest(response, "The minutes must be a number.");
+        }
+
+        try {
+            String stacks = DUUIProfiler.flame(type, minutes);
+            response.status(200);
+            response.type("text/plain");
+            return stacks;
+        } catch (IllegalStateException exception) {
+            response.status(503);
+            return exception.getMessage();
+        }
+    }
+
+    /**
+     * Retrieve the current stacks of all active process threads.
+     * See {@link DUUIProfiler#processThreads()}.
+     *
+     * @return the threads as JSON.
+     */
+    public static String processThreads(Request request, Response response) {
+        List<Document> threads = DUUIProfiler.processThreads();
+
+        response.status(200);
+        return new Document("threads", threads).append("count", threads.size()).toJson();
+    }
+
+    /**
+     * Retrieve the spans of a trace kept by the memory exporter. The trace id of a process is stored
+     * as trace_id in the process. See {@link DUUITracing#getSpans(String)}.
+     *
+     * @return the spans and the id of the process started in the trace as JSON, 503 if the memory exporter is not used or a default not found (404).
+     */
+    public static String findTrace(Request request, Response response) {
+        String traceId = request.params(":id");
+        List<Document> spans = DUUITracing.getSpans(traceId);
+        if (spans == null) {
+            response.status(503);
+            return "Traces are only kept with the memory exporter.";
+        }
+
+        if (spans.isEmpty()) return DUUIRequestHelper.notFound(response);
+
+        response.status(200);
+        return new Document("spans", spans)
+            .append("count", spans.size())
+            .append("process_id", DUUIProcessController.findIdByTraceId(traceId))
+            .toJson();
+    }
+
+    /**
+     * Retrieve the number of idle and used driver instances per container runtime.
+     * See {@link DUUIDriverRegistry#getStatus()}.
+     *
+     * @return the drivers as JSON.
+     */
+    public static String drivers(Request request, Response response) {
+        response.status(200);
+        return new Document("drivers", DUUIDriverRegistry.getStatus()).toJson();
+    }
+
+    /**
+     * Retrieve the component instances shared between pipelines and the number of pipelines using them.
+     * See {@link DUUIComponentRegistry#getStatus()}.
+     *
+     * @return the components as JSON.
+     */
+    public static String components(Request request, Response response) {
+        List<Document> components = DUUIComponentRegistry.getStatus();
+
+        response.status(200);
+        return new Document("components", components).append("count", components.size()).toJson();
+    }
+}
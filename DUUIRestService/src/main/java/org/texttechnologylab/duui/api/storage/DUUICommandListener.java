@@ -0,0 +1,240 @@
+package org.texttechnologylab.duui.api.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.texttechnologylab.duui.api.metrics.DUUITracing;
+import org.texttechnologylab.duui.api.metrics.providers.DUUIStorageMetrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+
+/**
+ * A {@link CommandListener} that records the latency, the number of returned documents and optionally the size
+ * of every MongoDB command per collection and command through {@link DUUIStorageMetrics}. Commands slower than
+ * the configured threshold are logged with their request id. The command document is only valid while the
+ * started event is handled, so it is not kept until the command has finished. Instead, the (truncated) command
+ * documents of all commands are logged with their request id at debug level. Commands issued inside a recorded
+ * trace are traced as client spans (see {@link DUUITracing}).
+ */
+public class DUUICommandListener implements CommandListener {
+
+    private static final Logger log = LoggerFactory.getLogger(DUUICommandListener.class);
+
+    /**
+     * Commands that read or modify documents and count as CRUD operations on a collection. getMore is not
+     * counted since it continues the cursor of a find or aggregate that has already been counted.
+     */
+    private static final Set<String> CRUD_COMMANDS = Set.of(
+        "find", "aggregate", "count", "distinct",
+        "insert", "update", "delete", "findAndModify");
+
+    /**
+     * The maximum number of characters of a command document written to the debug log.
+     */
+    private static final int MAX_LOGGED_COMMAND_LENGTH = 1000;
+
+    /**
+     * The keys of a command document written to the debug log.
+     */
+    private static final List<String> LOGGED_KEYS = List.of("filter", "sort", "skip", "limit", "pipeline", "query");
+
+    private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+
+    /**
+     * Started commands by request id. The collection is only part of the command document of the started event.
+     */
+    private final Map<Integer, Started> started = new ConcurrentHashMap<>();
+
+    private final long slowCommandNanos;
+
+    private final boolean measureSize;
+
+    /**
+     * @param slowCommandMillis Commands slower than this are logged. A value less than 1 disables the log.
+     * @param measureSize       If the size of commands and replies should be measured.
+     */
+    public DUUICommandListener(int slowCommandMillis, boolean measureSize) {
+        this.slowCommandNanos = slowCommandMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowCommandMillis) : Long.MAX_VALUE;
+        this.measureSize = measureSize;
+    }
+
+    private record Started(int requestId, String collection, String command, long size, Span span) {
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        BsonDocument command = event.getCommand();
+        String commandName = event.getCommandName();
+
+        String collection = getCollection(commandName, command);
+        long size = measureSize ? size(command) : 0;
+
+        if (log.isDebugEnabled()) {
+            log.debug("MongoDB command {} ({}): {}", commandName, event.getRequestId(), summarize(command));
+        }
+
+        started.put(
+            event.getRequestId(),
+            new Started(event.getRequestId(), collection, commandName, size, startSpan(event, collection)));
+
+        if (CRUD_COMMANDS.contains(commandName)) DUUIStorageMetrics.incrementCrudCounter(collection);
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Started command = started.remove(event.getRequestId());
+        if (command == null) return;
+
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        DUUIStorageMetrics.observeCommand(command.collection(), command.command(), true, nanos / 1e9);
+
+        int documents = countDocuments(event.getResponse());
+        if (documents > 0) {
+            DUUIStorageMetrics.incrementDocumentsReturned(command.collection(), command.command(), documents);
+        }
+
+        if (measureSize) {
+            DUUIStorageMetrics.incrementCommandBytes(
+                command.collection(), command.command(), command.size(), size(event.getResponse()));
+        }
+
+        logIfSlow(command, nanos, null);
+        command.span().end();
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        Started command = started.remove(event.getRequestId());
+        if (command == null) return;
+
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        DUUIStorageMetrics.observeCommand(command.collection(), command.command(), false, nanos / 1e9);
+        logIfSlow(command, nanos, event.getThrowable());
+
+        DUUITracing.fail(command.span(), event.getThrowable());
+        command.span().end();
+    }
+
+    /**
+     * Start a client span for a command. The synchronous driver notifies listeners on the calling thread,
+     * so the span becomes a child of the current span. Commands outside a recorded trace (e.g. background
+     * jobs) are not traced.
+     *
+     * @param event      The started event.
+     * @param collection The name of the collection.
+     * @return the started span or an invalid span.
+     */
+    private static Span startSpan(CommandStartedEvent event, String collection) {
+        if (!DUUITracing.isRecording()) return Span.getInvalid();
+
+        Span span = DUUITracing.startSpan(
+            "mongodb." + event.getCommandName(),
+            SpanKind.CLIENT,
+            Context.current());
+        span.setAttribute("db.system", "mongodb");
+        span.setAttribute("db.name", event.getDatabaseName());
+        span.setAttribute("db.operation", event.getCommandName());
+        span.setAttribute("db.mongodb.collection", collection);
+        return span;
+    }
+
+    /**
+     * Count and log a command if it has been slower than the threshold. The command document is logged at
+     * debug level with the same request id when the command is started.
+     *
+     * @param command   The started command.
+     * @param nanos     The time the command took.
+     * @param throwable The error if the command failed, otherwise null.
+     */
+    private void logIfSlow(Started command, long nanos, Throwable throwable) {
+        if (nanos < slowCommandNanos) return;
+
+        DUUIStorageMetrics.incrementSlowCommands(command.collection(), command.command());
+        log.warn("Slow MongoDB command {} ({}) on {} took {}ms{}",
+            command.command(),
+            command.requestId(),
+            command.collection(),
+            TimeUnit.NANOSECONDS.toMillis(nanos),
+            throwable == null ? "" : " and failed (" + throwable.getMessage() + ")");
+    }
+
+    /**
+     * Retrieve the name of the collection a command operates on. The collection is the value of the command
+     * name key for most commands and stored in the collection key for getMore.
+     *
+     * @param commandName The name of the command.
+     * @param command     The command document.
+     * @return the name of the collection or none if the command does not target a collection.
+     */
+    private static String getCollection(String commandName, BsonDocument command) {
+        BsonValue value = commandName.equals("getMore")
+            ? command.get("collection")
+            : command.get(commandName);
+
+        return value != null && value.isString() ? value.asString().getValue() : "none";
+    }
+
+    /**
+     * Count the documents in a reply. Cursor replies contain a batch of documents, write replies the number of
+     * affected documents.
+     *
+     * @param response The reply of the server.
+     * @return the number of documents.
+     */
+    private static int countDocuments(BsonDocument response) {
+        BsonDocument cursor = response.getDocument("cursor", null);
+        if (cursor != null) {
+            BsonArray batch = cursor.containsKey("firstBatch")
+                ? cursor.getArray("firstBatch")
+                : cursor.getArray("nextBatch", null);
+            return batch == null ? 0 : batch.size();
+        }
+
+        BsonValue n = response.get("n");
+        return n != null && n.isNumber() ? n.asNumber().intValue() : 0;
+    }
+
+    private static long size(BsonDocument document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        CODEC.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.getPosition();
+    }
+
+    /**
+     * Keep only the parts of a command that describe the query. Inserted and updated documents are omitted.
+     *
+     * @param command The command document.
+     * @return the query as JSON.
+     */
+    private static String summarize(BsonDocument command) {
+        BsonDocument summary = new BsonDocument();
+        for (String key : LOGGED_KEYS) {
+            BsonValue value = command.get(key);
+            if (value != null) summary.put(key, value);
+        }
+
+        String json = summary.toJson();
+        return json.length() > MAX_LOGGED_COMMAND_LENGTH
+            ? json.substring(0, MAX_LOGGED_COMMAND_LENGTH) + "..."
+            : json;
+    }
+}
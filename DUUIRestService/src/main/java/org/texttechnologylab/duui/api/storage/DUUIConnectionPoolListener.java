@@ -0,0 +1,71 @@
+package org.texttechnologylab.duui.api.storage;
+
+import org.texttechnologylab.duui.api.metrics.providers.DUUIStorageMetrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+/**
+ * A {@link ConnectionPoolListener} that exports the state of the MongoDB connection pool through
+ * {@link DUUIStorageMetrics}.
+ */
+public class DUUIConnectionPoolListener implements ConnectionPoolListener {
+
+    /**
+     * The start of the current check out. The synchronous driver checks out connections on the calling thread.
+     */
+    private final ThreadLocal<Long> checkOutStart = new ThreadLocal<>();
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        DUUIStorageMetrics.setPoolMaxSize(server(event.getServerId().getAddress()), event.getSettings().getMaxSize());
+    }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        DUUIStorageMetrics.updatePoolConnections(server(event.getConnectionId().getServerId().getAddress()), 1);
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        DUUIStorageMetrics.updatePoolConnections(server(event.getConnectionId().getServerId().getAddress()), -1);
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        checkOutStart.set(System.nanoTime());
+        DUUIStorageMetrics.startPoolCheckOut(server(event.getServerId().getAddress()));
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        Long start = checkOutStart.get();
+        checkOutStart.remove();
+
+        DUUIStorageMetrics.completePoolCheckOut(
+            server(event.getConnectionId().getServerId().getAddress()),
+            start == null ? -1 : (System.nanoTime() - start) / 1e9);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkOutStart.remove();
+        DUUIStorageMetrics.failPoolCheckOut(server(event.getServerId().getAddress()), event.getReason().name());
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        DUUIStorageMetrics.checkInPoolConnection(server(event.getConnectionId().getServerId().getAddress()));
+    }
+
+    private static String server(ServerAddress address) {
+        return address.getHost() + ":" + address.getPort();
+    }
+}
@@ -9,6 +9,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
@@ -17,15 +18,24 @@ import org.bson.conversions.Bson;
 import org.bson.json.JsonWriterSettings;
 import org.texttechnologylab.duui.api.Config;
 import org.texttechnologylab.duui.api.Main;
-import org.texttechnologylab.duui.api.metrics.providers.DUUIStorageMetrics;
 import org.texttechnologylab.duui.api.routes.DUUIRequestHelper;
 import static org.texttechnologylab.duui.api.routes.DUUIRequestHelper.isNullOrEmpty;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
@@ -51,6 +61,11 @@ public class DUUIMongoDBStorage {
      */
     private static Config config;
 
+    /**
+     * The name of the TTL index on the events collection.
+     */
+    private static final String EVENT_RETENTION_INDEX = "timestamp_retention";
+
     /**
      * Replaces the ObjectID object by a plain text representation of the id called
      * oid.
@@ -119,6 +134,7 @@ public class DUUIMongoDBStorage {
 
                 System.out.println("Init MongoConnection");
                 //mongodb://[username:password@]host1[:port1][,...hostN[:portN]][/[defaultauthdb][?options]]
+                String connectionString;
                 if (getConnectionURI() == null) {
                     System.out.println("Using Connection-Config");
                     StringBuilder sb = new StringBuilder();
@@ -131,16 +147,103 @@ public class DUUIMongoDBStorage {
                     sb.append(":").append(config.getMongoPort());
                     sb.append("/?authSource=").append(config.getMongoDatabase());
 
-                    mongoClient = MongoClients.create(sb.toString());
+                    connectionString = sb.toString();
                 } else {
                     System.out.println("Using Connection-URI");
-                    mongoClient = MongoClients.create(getConnectionURI());
+                    connectionString = getConnectionURI();
                 }
 
+                mongoClient = MongoClients.create(getClientSettings(new ConnectionString(connectionString)));
         }
         return mongoClient;
     }
 
+    /**
+     * Build the settings for the {@link MongoClient}. Options from the connection string are applied first
+     * and overridden by the values in the {@link Config} if present.
+     *
+     * @param connectionString The connection string.
+     * @return the settings for the client.
+     */
+    private static MongoClientSettings getClientSettings(ConnectionString connectionString) {
+        MongoClientSettings.Builder builder = MongoClientSettings
+            .builder()
+            .applyConnectionString(connectionString)
+            .addCommandListener(new DUUICommandListener(
+                config.getMongoSlowCommandThreshold(),
+                config.getMongoCommandSizeMetrics()))
+            .applyToConnectionPoolSettings(pool -> {
+                pool.addConnectionPoolListener(new DUUIConnectionPoolListener());
+
+                if (config.getMongoMaxPoolSize() != null) pool.maxSize(config.getMongoMaxPoolSize());
+                if (config.getMongoMinPoolSize() != null) pool.minSize(config.getMongoMinPoolSize());
+                if (config.getMongoMaxWaitTime() != null) {
+                    pool.maxWaitTime(config.getMongoMaxWaitTime(), TimeUnit.MILLISECONDS);
+                }
+                if (config.getMongoMaxConnectionIdleTime() != null) {
+                    pool.maxConnectionIdleTime(config.getMongoMaxConnectionIdleTime(), TimeUnit.MILLISECONDS);
+                }
+            });
+
+        if (!isNullOrEmpty(config.getMongoCompressors())) {
+            builder.compressorList(
+                Stream.of(config.getMongoCompressors().split(","))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .map(DUUIMongoDBStorage::getCompressor)
+                    .toList());
+        }
+
+        if (!isNullOrEmpty(config.getMongoReadPreference())) {
+            builder.readPreference(ReadPreference.valueOf(config.getMongoReadPreference()));
+        }
+
+        if (!isNullOrEmpty(config.getMongoReadConcern())) {
+            builder.readConcern(new ReadConcern(ReadConcernLevel.fromString(config.getMongoReadConcern())));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Map the name of a compressor to a {@link MongoCompressor}. zstd and snappy require zstd-jni and
+     * snappy-java on the classpath.
+     *
+     * @param name The name of the compressor (zstd, snappy or zlib).
+     * @return the compressor.
+     */
+    private static MongoCompressor getCompressor(String name) {
+        return switch (name.toLowerCase()) {
+            case "zstd" -> MongoCompressor.createZstdCompressor();
+            case "snappy" -> MongoCompressor.createSnappyCompressor();
+            case "zlib" -> MongoCompressor.createZlibCompressor();
+            default -> throw new IllegalArgumentException("Unknown MongoDB compressor: " + name);
+        };
+    }
+
+    /**
+     * Route reads on a collection according to the analytics read preference and read concern
+     * (MONGO_ANALYTICS_READ_PREFERENCE, MONGO_ANALYTICS_READ_CONCERN). This is used for dashboard, list and
+     * statistics queries. Both are unset by default, so these reads go to the primary like all others and
+     * users see their own writes. Routing them to secondaries is opt-in since a secondary may lag behind.
+     * Writes and reads that must observe the latest process state should use the collection directly.
+     *
+     * @param collection The collection to read from.
+     * @return the collection with the analytics read preference and read concern if configured.
+     */
+    public static <T> MongoCollection<T> analytics(MongoCollection<T> collection) {
+        if (!isNullOrEmpty(config.getMongoAnalyticsReadPreference())) {
+            collection = collection.withReadPreference(ReadPreference.valueOf(config.getMongoAnalyticsReadPreference()));
+        }
+
+        if (!isNullOrEmpty(config.getMongoAnalyticsReadConcern())) {
+            collection = collection.withReadConcern(
+                new ReadConcern(ReadConcernLevel.fromString(config.getMongoAnalyticsReadConcern())));
+        }
+
+        return collection;
+    }
+
 
 
     /**
@@ -151,9 +254,49 @@ public class DUUIMongoDBStorage {
     public static void init(Config config) {
         DUUIMongoDBStorage.config = config;
         getClient();
+        createIndexes();
+        createRetentionIndex();
         refactorAllConnections();
     }
 
+    /**
+     * Create the indexes used to look up processes, documents and events by their parent. Creating an
+     * index that already exists has no effect.
+     */
+    public static void createIndexes() {
+        Processses().createIndex(Indexes.ascending("pipeline_id"));
+        Processses().createIndex(Indexes.ascending("trace_id"), new IndexOptions().sparse(true));
+        Documents().createIndex(Indexes.ascending("process_id"));
+        Events().createIndex(Indexes.compoundIndex(
+            Indexes.ascending("event.process_id"),
+            Indexes.ascending("timestamp")));
+    }
+
+    /**
+     * Create, update or drop the TTL index on the timestamp of events depending on the configured
+     * retention period (EVENT_RETENTION_DAYS). Events older than the retention period are removed by MongoDB.
+     */
+    public static void createRetentionIndex() {
+        long expireAfterSeconds = TimeUnit.DAYS.toSeconds(config.getEventRetentionDays());
+
+        for (Document index : Events().listIndexes()) {
+            if (!index.getString("name").equals(EVENT_RETENTION_INDEX)) continue;
+
+            Number current = index.get("expireAfterSeconds", Number.class);
+            if (current != null && current.longValue() == expireAfterSeconds) return;
+
+            Events().dropIndex(EVENT_RETENTION_INDEX);
+        }
+
+        if (expireAfterSeconds <= 0) return;
+
+        Events().createIndex(
+            Indexes.ascending("timestamp"),
+            new IndexOptions()
+                .name(EVENT_RETENTION_INDEX)
+                .expireAfter(expireAfterSeconds, TimeUnit.SECONDS));
+    }
+
     /**
      * Refactor all connections in the database to the new structure.
      */
@@ -257,7 +400,6 @@ public class DUUIMongoDBStorage {
      * @return A MongoCollection object.
      */
     public static MongoCollection<Document> Pipelines() {
-        DUUIStorageMetrics.incrementPipelinesCounter();
         return getClient().getDatabase(config.getMongoDatabase()).getCollection("pipelines");
     }
 
@@ -267,7 +409,6 @@ public class DUUIMongoDBStorage {
      * @return A MongoCollection object.
      */
     public static MongoCollection<Document> Components() {
-        DUUIStorageMetrics.incrementComponentsCounter();
         return getClient().getDatabase(config.getMongoDatabase()).getCollection("components");
     }
 
@@ -359,12 +500,10 @@ public class DUUIMongoDBStorage {
      * @return A MongoCollection object.
      */
     public static MongoCollection<Document> Users() {
-        DUUIStorageMetrics.incrementUsersCounter();
         return getClient().getDatabase(config.getMongoDatabase()).getCollection("users");
     }
 
     public static MongoCollection<DataModel.MongoUser> TypedUsers() {
-        DUUIStorageMetrics.incrementUsersCounter();
         return getClient().getDatabase(config.getMongoDatabase()).getCollection("users", DataModel.MongoUser.class);
     }
 
@@ -374,7 +513,6 @@ public class DUUIMongoDBStorage {
      * @return A MongoCollection object.
      */
     public static MongoCollection<Document> Documents() {
-        DUUIStorageMetrics.incrementDocumentsCounter();
         return getClient().getDatabase(config.getMongoDatabase()).getCollection("documents");
     }
 
@@ -384,7 +522,6 @@ public class DUUIMongoDBStorage {
      * @return A MongoCollection object.
      */
     public static MongoCollection<Document> Processses() {
-        DUUIStorageMetrics.incrementProcesssesCounter();
         return getClient().getDatabase(config.getMongoDatabase()).getCollection("processes");
     }
 
@@ -394,10 +531,27 @@ public class DUUIMongoDBStorage {
      * @return A MongoCollection object.
      */
     public static MongoCollection<Document> Events() {
-        DUUIStorageMetrics.incrementEventsCounter();
         return getClient().getDatabase(config.getMongoDatabase()).getCollection("events");
     }
 
+    /**
+     * Utility functions for fast access to the GridFS bucket holding archived processes.
+     *
+     * @return A GridFSBucket object.
+     */
+    public static GridFSBucket Archives() {
+        return GridFSBuckets.create(getClient().getDatabase(config.getMongoDatabase()), "archives");
+    }
+
+    /**
+     * Utility functions for fast access to collections in the database.
+     *
+     * @return A MongoCollection object.
+     */
+    public static MongoCollection<Document> PipelineStatistics() {
+        return getClient().getDatabase(config.getMongoDatabase()).getCollection("pipeline_statistics");
+    }
+
     /**
      * Utility functions for fast access to collections in the database.
      *
@@ -92,8 +92,13 @@ public class DataModel {
             Boolean recursive,
             Boolean overwrite,
             Boolean sort_by_size,
+            String scheduling,
             Boolean ignore_errors,
             Long minimum_size,
+            Integer batch_size,
+            Long batch_max_characters,
+            Boolean speculation,
+            Double speculation_limit,
             Integer worker_count
     ) {}
 
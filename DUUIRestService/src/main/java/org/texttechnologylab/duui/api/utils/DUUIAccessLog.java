@@ -0,0 +1,148 @@
+package org.texttechnologylab.duui.api.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+/**
+ * A structured access log written through the duui.access logger.
+ * <p>
+ * Request threads decide whether a request is logged (level and sampling) before any formatting happens.
+ * Writing is left to the appenders configured in logback.xml, where ASYNC_CONSOLE already keeps the
+ * output off the request threads.
+ */
+public class DUUIAccessLog {
+
+    private static final Logger log = LoggerFactory.getLogger("duui.access");
+
+    private static volatile double sampleRate = 1.0;
+
+    private static volatile Level defaultLevel = Level.INFO;
+
+    private static volatile List<Route> routes = List.of();
+
+    /**
+     * A path prefix and the level requests matching it are logged at. A null level disables logging.
+     */
+    private record Route(String prefix, Level level) {
+    }
+
+    /**
+     * Configure the access log.
+     *
+     * @param rate        The fraction of successful requests that are logged.
+     * @param level       The default level (trace, debug, info, warn, error or off).
+     * @param routeLevels Semicolon separated path prefixes and levels, e.g. /alive=off;/processes=debug.
+     */
+    public static void init(double rate, String level, String routeLevels) {
+        sampleRate = Math.max(0.0, Math.min(1.0, rate));
+        defaultLevel = parseLevel(level);
+        routes = parseRoutes(routeLevels);
+    }
+
+    /**
+     * Record a finished request. Does nothing if the route is disabled, the request has not been sampled
+     * or the level is not enabled for the access logger.
+     *
+     * @param method        The HTTP method.
+     * @param path          The request path.
+     * @param status        The response status.
+     * @param millis        The time it took to handle the request in milliseconds.
+     * @param origin        The Origin header or the client address.
+     * @param accept        The Accept header.
+     * @param requestBytes  The size of the request body or -1 if unknown.
+     * @param responseBytes The size of the response body.
+     */
+    public static void log(
+        String method,
+        String path,
+        int status,
+        double millis,
+        String origin,
+        String accept,
+        long requestBytes,
+        long responseBytes) {
+
+        Level level = levelOf(path);
+        if (level == null || !log.isEnabledForLevel(level)) return;
+        if (status < 400 && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) return;
+
+        log.atLevel(level)
+            .addKeyValue("method", method)
+            .addKeyValue("path", path)
+            .addKeyValue("status", status)
+            .addKeyValue("duration_ms", millis)
+            .addKeyValue("request_bytes", requestBytes)
+            .addKeyValue("response_bytes", responseBytes)
+            .addKeyValue("origin", origin)
+            .addKeyValue("accept", accept)
+            .log("{} {} {} {}ms – Origin: {} – Accept: {}",
+                method,
+                path,
+                status,
+                String.format(Locale.ROOT, "%.1f", millis),
+                origin,
+                accept);
+    }
+
+    /**
+     * Check if requests to a path are written to the access log at all. Allows callers to skip collecting
+     * details for disabled routes.
+     *
+     * @param path The request path.
+     * @return if requests to the path may be logged.
+     */
+    public static boolean isEnabled(String path) {
+        Level level = levelOf(path);
+        return level != null && log.isEnabledForLevel(level);
+    }
+
+    /**
+     * Determine the level for a path. The longest matching prefix wins.
+     *
+     * @param path The request path.
+     * @return the level or null if logging is disabled for the path.
+     */
+    private static Level levelOf(String path) {
+        for (Route route : routes) {
+            if (path.startsWith(route.prefix())) return route.level();
+        }
+        return defaultLevel;
+    }
+
+    private static List<Route> parseRoutes(String routeLevels) {
+        List<Route> parsed = new ArrayList<>();
+        if (routeLevels == null || routeLevels.isBlank()) return parsed;
+
+        for (String route : routeLevels.split(";")) {
+            String[] parts = route.split("=", 2);
+            if (parts.length != 2 || parts[0].isBlank()) continue;
+            parsed.add(new Route(parts[0].trim(), parseLevel(parts[1])));
+        }
+
+        parsed.sort(Comparator.comparingInt((Route route) -> route.prefix().length()).reversed());
+        return List.copyOf(parsed);
+    }
+
+    /**
+     * @return the level or null for off.
+     */
+    private static Level parseLevel(String level) {
+        if (level == null || level.isBlank()) return Level.INFO;
+
+        String name = level.trim().toUpperCase(Locale.ROOT);
+        if (name.equals("OFF")) return null;
+
+        try {
+            return Level.valueOf(name);
+        } catch (IllegalArgumentException exception) {
+            return Level.INFO;
+        }
+    }
+}
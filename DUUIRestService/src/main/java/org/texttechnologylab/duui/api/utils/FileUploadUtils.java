@@ -2,7 +2,6 @@ package org.texttechnologylab.duui.api.utils;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.UIMAException;
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.FSArray;
 import org.xml.sax.SAXException;
@@ -18,6 +17,7 @@ import javax.imageio.ImageIO;
 import javax.servlet.http.Part;
 import java.awt.image.BufferedImage;
 
+import org.texttechnologylab.duui.api.controllers.components.DUUIComponentCache;
 import org.texttechnologylab.annotation.type.Image;
 import org.texttechnologylab.annotation.type.Video;
 import org.texttechnologylab.annotation.type.Audio;
@@ -199,7 +199,7 @@ public final class FileUploadUtils {
             }
         }
 
-        JCas cas = JCasFactory.createJCas();
+        JCas cas = DUUIComponentCache.createJCas();
         FileUploadUtils.addPrompts(cas, language, texts);
         FileUploadUtils.addImages(cas, imagesB64);
         FileUploadUtils.addAudios(cas, audiosB64);
@@ -0,0 +1,112 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Packs documents into a batch, annotates the batch and unpacks it again.
+ */
+public class DUUIDocumentBatcherTest {
+
+    private static final String FIRST = "Alice met Bob.";
+
+    private static final String SECOND = "He left.";
+
+    @Test
+    public void unpacksAnnotationsWithTheirOffsetsInTheDocument() throws Exception {
+        StringBuilder text = new StringBuilder();
+        int[] first = DUUIDocumentBatcher.append(text, FIRST);
+        int[] second = DUUIDocumentBatcher.append(text, SECOND);
+
+        JCas batch = JCasFactory.createJCas();
+        batch.setDocumentText(text.toString());
+        addToken(batch, first[0], first[0] + 5, "Alice");
+        addToken(batch, second[0], second[0] + 2, "he");
+        addToken(batch, second[0] + 3, second[0] + 7, "leave");
+
+        JCas document = unpack(batch, second);
+
+        assertEquals(SECOND, document.getDocumentText());
+
+        List<Token> tokens = List.copyOf(JCasUtil.select(document, Token.class));
+        assertEquals(2, tokens.size());
+        assertEquals("He", tokens.get(0).getCoveredText());
+        assertEquals("left", tokens.get(1).getCoveredText());
+
+        Lemma lemma = tokens.get(1).getLemma();
+        assertNotNull(lemma);
+        assertEquals("left", lemma.getCoveredText());
+        assertEquals("leave", lemma.getValue());
+    }
+
+    @Test
+    public void removesReferencesToOtherDocuments() throws Exception {
+        StringBuilder text = new StringBuilder();
+        int[] first = DUUIDocumentBatcher.append(text, FIRST);
+        int[] second = DUUIDocumentBatcher.append(text, SECOND);
+
+        JCas batch = JCasFactory.createJCas();
+        batch.setDocumentText(text.toString());
+        Token bob = addToken(batch, first[0] + 10, first[0] + 13, "Bob");
+        Token he = addToken(batch, second[0], second[0] + 2, "he");
+
+        // A component linking across the separator, e.g. "He" refers to the lemma of "Bob".
+        he.setLemma(bob.getLemma());
+
+        JCas document = unpack(batch, second);
+
+        Token copy = JCasUtil.selectSingle(document, Token.class);
+        assertEquals("He", copy.getCoveredText());
+        assertNull(copy.getLemma());
+
+        Lemma lemma = JCasUtil.selectSingle(document, Lemma.class);
+        assertEquals("he", lemma.getValue());
+        assertEquals(0, lemma.getBegin());
+    }
+
+    @Test
+    public void batchesOnlyIfAllComponentsAllowIt() {
+        Document batchable = new Document("options", new Document("batching", true));
+        Document contextSensitive = new Document("options", new Document("batching", false));
+
+        assertTrue(DUUIDocumentBatcher.isBatchable(
+            new Document("components", List.of(batchable, batchable))));
+        assertFalse(DUUIDocumentBatcher.isBatchable(
+            new Document("components", List.of(batchable, contextSensitive))));
+        assertFalse(DUUIDocumentBatcher.isBatchable(
+            new Document("components", List.of(batchable, new Document()))));
+        assertFalse(DUUIDocumentBatcher.isBatchable(new Document("components", List.of())));
+    }
+
+    private static Token addToken(JCas cas, int begin, int end, String value) {
+        Lemma lemma = new Lemma(cas, begin, end);
+        lemma.setValue(value);
+        lemma.addToIndexes();
+
+        Token token = new Token(cas, begin, end);
+        token.setLemma(lemma);
+        token.addToIndexes();
+        return token;
+    }
+
+    private static JCas unpack(JCas batch, int[] slice) throws Exception {
+        JCas document = JCasFactory.createJCas();
+        document.setDocumentText(batch.getDocumentText().substring(slice[0], slice[1]));
+        DUUIDocumentBatcher.copySlice(batch, document, slice[0], slice[1]);
+        return document;
+    }
+}
@@ -0,0 +1,113 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hands documents to the workers of a process in the order of the scheduling policy.
+ */
+public class DUUIDocumentSchedulerTest {
+
+    private static final List<Long> SIZES = List.of(4L, 1L, 8L, 2L, 8L, 1L, 4L, 2L);
+
+    @Test
+    public void fifoKeepsTheOrder() {
+        assertEquals(SIZES, drain(scheduler(DUUIDocumentScheduler.Policy.FIFO, 2), 0));
+    }
+
+    @Test
+    public void shortestFirstAndLargestFirstSortBySize() {
+        List<Long> ascending = new ArrayList<>(SIZES);
+        Collections.sort(ascending);
+        List<Long> descending = new ArrayList<>(ascending);
+        Collections.reverse(descending);
+
+        assertEquals(ascending, drain(scheduler(DUUIDocumentScheduler.Policy.SHORTEST_FIRST, 2), 1));
+        assertEquals(descending, drain(scheduler(DUUIDocumentScheduler.Policy.LARGEST_FIRST, 2), 1));
+    }
+
+    @Test
+    public void workStealingDealsTheSameNumberOfBytesToEveryWorker() {
+        DUUIDocumentScheduler<Long> scheduler = scheduler(DUUIDocumentScheduler.Policy.WORK_STEALING, 2);
+
+        // Every worker gets one document of every size and takes the largest first.
+        assertEquals(8L, scheduler.next(0));
+        assertEquals(8L, scheduler.next(1));
+        assertEquals(4L, scheduler.next(0));
+        assertEquals(4L, scheduler.next(1));
+        assertEquals(0, scheduler.getStolen());
+    }
+
+    @Test
+    public void idleWorkersStealTheSmallestDocumentsOfOthers() {
+        DUUIDocumentScheduler<Long> scheduler = scheduler(DUUIDocumentScheduler.Policy.WORK_STEALING, 2);
+
+        // Worker 0 empties its own queue (8, 4, 2, 1) and then steals the queue of worker 1 from the back.
+        assertEquals(List.of(8L, 4L, 2L, 1L, 1L, 2L, 4L, 8L), drain(scheduler, 0));
+        assertEquals(4, scheduler.getStolen());
+        assertNull(scheduler.next(1));
+    }
+
+    @Test
+    public void concurrentWorkersTakeEveryDocumentOnce() throws InterruptedException {
+        List<Long> sizes = new ArrayList<>();
+        for (long i = 1; i <= 1000; i++) sizes.add(i * 37 % 4096 + 1);
+
+        DUUIDocumentScheduler<Long> scheduler = new DUUIDocumentScheduler<>(
+            DUUIDocumentScheduler.Policy.WORK_STEALING, sizes, Long::longValue, 4);
+
+        ConcurrentLinkedQueue<Long> taken = new ConcurrentLinkedQueue<>();
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        for (int worker = 0; worker < 4; worker++) {
+            int index = worker;
+            workers.submit(() -> taken.addAll(drain(scheduler, index)));
+        }
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+
+        List<Long> expected = new ArrayList<>(sizes);
+        List<Long> actual = new ArrayList<>(taken);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void policyIsReadFromTheSettings() {
+        assertEquals(
+            DUUIDocumentScheduler.Policy.WORK_STEALING,
+            DUUIDocumentScheduler.Policy.fromSettings(new Document("scheduling", "work_stealing")));
+        assertEquals(
+            DUUIDocumentScheduler.Policy.SHORTEST_FIRST,
+            DUUIDocumentScheduler.Policy.fromSettings(new Document("sort_by_size", true)));
+        assertEquals(
+            DUUIDocumentScheduler.Policy.FIFO,
+            DUUIDocumentScheduler.Policy.fromSettings(new Document("scheduling", "unknown")));
+
+        assertTrue(DUUIDocumentScheduler.Policy.LARGEST_FIRST.isDispatched());
+        assertFalse(DUUIDocumentScheduler.Policy.SHORTEST_FIRST.isDispatched());
+    }
+
+    private static DUUIDocumentScheduler<Long> scheduler(DUUIDocumentScheduler.Policy policy, int workers) {
+        return new DUUIDocumentScheduler<>(policy, SIZES, Long::longValue, workers);
+    }
+
+    private static List<Long> drain(DUUIDocumentScheduler<Long> scheduler, int worker) {
+        List<Long> taken = new ArrayList<>();
+        for (Long item = scheduler.next(worker); item != null; item = scheduler.next(worker)) taken.add(item);
+        return taken;
+    }
+}
@@ -0,0 +1,79 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Computes percentiles from the log-scale histograms of a process profile.
+ */
+public class DUUIProcessProfileTest {
+
+    @Test
+    public void emptyHistogramHasNoPercentiles() {
+        DUUIProcessProfile.Histogram histogram = new DUUIProcessProfile.Histogram();
+        histogram.add(-5);
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void percentilesAreUpperBoundsOfTheirBucket() {
+        DUUIProcessProfile.Histogram histogram = histogram(1, 100);
+
+        // A bucket spans a factor of 2^(1/4), so a percentile overestimates by less than 19%.
+        long p50 = histogram.getPercentile(0.50);
+        assertTrue(p50 >= 50 && p50 < 50 * 1.19, "p50 was " + p50);
+
+        long p95 = histogram.getPercentile(0.95);
+        assertTrue(p95 >= 95 && p95 <= 100, "p95 was " + p95);
+    }
+
+    @Test
+    public void percentilesNeverExceedTheMaximum() {
+        DUUIProcessProfile.Histogram histogram = histogram(1, 100);
+        assertEquals(100, histogram.getPercentile(0.99));
+        assertEquals(100, histogram.getPercentile(1.0));
+
+        DUUIProcessProfile.Histogram constant = new DUUIProcessProfile.Histogram();
+        for (int i = 0; i < 10; i++) constant.add(1000);
+        assertEquals(1000, constant.getPercentile(0.5));
+    }
+
+    @Test
+    public void smallValuesShareTheFirstBucket() {
+        DUUIProcessProfile.Histogram histogram = new DUUIProcessProfile.Histogram();
+        histogram.add(0);
+        histogram.add(1);
+
+        assertEquals(1, histogram.getPercentile(0.5));
+        assertEquals(1, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void mergedHistogramsSummarizeLikeASingleHistogram() {
+        DUUIProcessProfile.Histogram all = histogram(1, 100);
+
+        Document merged = DUUIProcessProfile.Histogram.merge(
+            histogram(1, 50).toDocument(),
+            histogram(51, 100).toDocument());
+        Document summary = DUUIProcessProfile.Histogram.summarize(merged);
+
+        assertEquals(100L, summary.getLong("count"));
+        assertEquals(100L, summary.getLong("max"));
+        assertEquals(50.5, summary.getDouble("mean"), 1e-9);
+        assertEquals(all.getPercentile(0.50), summary.getLong("p50"));
+        assertEquals(all.getPercentile(0.95), summary.getLong("p95"));
+        assertEquals(all.getPercentile(0.99), summary.getLong("p99"));
+    }
+
+    private static DUUIProcessProfile.Histogram histogram(int from, int to) {
+        DUUIProcessProfile.Histogram histogram = new DUUIProcessProfile.Histogram();
+        for (int value = from; value <= to; value++) histogram.add(value);
+        return histogram;
+    }
+}
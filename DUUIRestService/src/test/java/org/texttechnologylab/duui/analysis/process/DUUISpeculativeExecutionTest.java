@@ -0,0 +1,144 @@
+package org.texttechnologylab.duui.analysis.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+
+/**
+ * Starts straggling executions again and uses the first result.
+ */
+public class DUUISpeculativeExecutionTest {
+
+    private static final long MIN_THRESHOLD = 100;
+
+    private static final List<Document> SINGLE = List.of(
+        component(1),
+        new Document("name", "tokenizer"));
+
+    /**
+     * The second component has two instances, so the composer of the process can overtake a straggler.
+     */
+    private static final List<Document> SCALED = List.of(
+        component(1),
+        component(2));
+
+    @Test
+    public void detectsStragglersOnlyAfterEnoughExecutions() throws Exception {
+        DUUISpeculativeExecution<String> speculation = new DUUISpeculativeExecution<>(
+            new DUUIComposer(), null, SINGLE, 1, 1, MIN_THRESHOLD);
+
+        try {
+            assertEquals(-1, speculation.getThreshold(1024));
+
+            for (int i = 0; i < 10; i++) {
+                speculation.execute("document-" + i, 1024, composer -> {
+                    Thread.sleep(5);
+                    return "done";
+                });
+            }
+
+            long small = speculation.getThreshold(1024);
+            long large = speculation.getThreshold(100L * 1024 * 1024);
+            assertTrue(small >= MIN_THRESHOLD, "threshold was " + small);
+            assertTrue(large > small, "threshold does not grow with the size: " + large);
+        } finally {
+            speculation.shutdown();
+        }
+    }
+
+    @Test
+    public void usesTheFirstResultOfAStraggler() throws Exception {
+        DUUISpeculativeExecution<String> speculation = new DUUISpeculativeExecution<>(
+            new DUUIComposer(), null, SCALED, 1, 1, MIN_THRESHOLD);
+
+        try {
+            for (int i = 0; i < 10; i++) speculation.execute("document-" + i, 1024, composer -> "done");
+
+            AtomicInteger executions = new AtomicInteger();
+            CountDownLatch stuck = new CountDownLatch(1);
+            String result = speculation.execute("straggler", 1024, composer -> {
+                if (executions.incrementAndGet() > 1) return "speculative";
+
+                // Interrupted once the speculative execution has finished.
+                stuck.await();
+                return "original";
+            });
+
+            assertEquals("speculative", result);
+            assertEquals(2, executions.get());
+
+            Document statistics = speculation.toDocument();
+            assertEquals(1, statistics.getInteger("started"));
+            assertEquals(1, statistics.getInteger("won"));
+            assertEquals(0, statistics.getInteger("replicas"));
+        } finally {
+            speculation.shutdown();
+        }
+    }
+
+    @Test
+    public void doesNotStartAStragglerAgainWithoutAnotherInstance() throws Exception {
+        DUUISpeculativeExecution<String> speculation = new DUUISpeculativeExecution<>(
+            new DUUIComposer(), null, SINGLE, 1, 1, MIN_THRESHOLD);
+
+        try {
+            for (int i = 0; i < 10; i++) speculation.execute("document-" + i, 1024, composer -> "done");
+
+            // The second execution would queue behind the straggler on the only instance of every component.
+            AtomicInteger executions = new AtomicInteger();
+            String result = speculation.execute("straggler", 1024, composer -> {
+                executions.incrementAndGet();
+                Thread.sleep(10 * MIN_THRESHOLD);
+                return "original";
+            });
+
+            assertEquals("original", result);
+            assertEquals(1, executions.get());
+            assertEquals(0, speculation.toDocument().getInteger("started"));
+        } finally {
+            speculation.shutdown();
+        }
+    }
+
+    @Test
+    public void componentsAreScaledIfOneHasMoreThanOneInstance() {
+        assertFalse(DUUISpeculativeExecution.isScaled(null));
+        assertFalse(DUUISpeculativeExecution.isScaled(SINGLE));
+        assertTrue(DUUISpeculativeExecution.isScaled(SCALED));
+        assertTrue(DUUISpeculativeExecution.isScaled(List.of(
+            new Document("options", new Document("scale", "3")))));
+    }
+
+    @Test
+    public void failsOnlyIfAllExecutionsFail() throws Exception {
+        DUUISpeculativeExecution<String> speculation = new DUUISpeculativeExecution<>(
+            new DUUIComposer(), null, SCALED, 1, 1, MIN_THRESHOLD);
+
+        try {
+            IllegalStateException exception = assertThrows(
+                IllegalStateException.class,
+                () -> speculation.execute("failing", 1024, composer -> {
+                    throw new IllegalStateException("component failed");
+                }));
+
+            assertEquals("component failed", exception.getMessage());
+            assertEquals(0, speculation.toDocument().getInteger("started"));
+        } finally {
+            speculation.shutdown();
+        }
+    }
+
+    private static Document component(int scale) {
+        return new Document("name", "component-" + scale)
+            .append("options", new Document("scale", scale));
+    }
+}
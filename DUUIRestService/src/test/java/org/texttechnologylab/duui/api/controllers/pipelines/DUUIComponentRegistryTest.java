@@ -0,0 +1,189 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Counts the pipelines that use a shared component instance.
+ */
+public class DUUIComponentRegistryTest {
+
+    private final AtomicInteger instantiations = new AtomicInteger();
+
+    private final Callable<DUUIPipelineInstantiation.Instance> instantiate = () -> {
+        instantiations.incrementAndGet();
+        return new DUUIPipelineInstantiation.Instance(null, null);
+    };
+
+    @BeforeEach
+    public void setUp() {
+        DUUIComponentRegistry.init(true, 2);
+    }
+
+    @Test
+    public void sharesAnInstanceUpToTheLimit() throws Exception {
+        Document component = component("DUUIDockerDriver");
+
+        DUUIComponentRegistry.Shared first = DUUIComponentRegistry.acquire("pipeline-1", component, instantiate);
+        DUUIComponentRegistry.Shared second = DUUIComponentRegistry.acquire("pipeline-2", component, instantiate);
+        DUUIComponentRegistry.Shared third = DUUIComponentRegistry.acquire("pipeline-3", component, instantiate);
+
+        assertSame(first, second);
+        assertNotSame(first, third);
+        assertEquals(2, instantiations.get());
+
+        assertFalse(DUUIComponentRegistry.release(first, "pipeline-1"));
+        assertTrue(DUUIComponentRegistry.release(second, "pipeline-2"));
+        assertTrue(DUUIComponentRegistry.release(third, "pipeline-3"));
+    }
+
+    @Test
+    public void releasedInstanceIsNotSharedAnymore() throws Exception {
+        Document component = component("DUUIDockerDriver");
+
+        DUUIComponentRegistry.Shared first = DUUIComponentRegistry.acquire("pipeline-1", component, instantiate);
+        assertTrue(DUUIComponentRegistry.release(first, "pipeline-1"));
+
+        DUUIComponentRegistry.Shared second = DUUIComponentRegistry.acquire("pipeline-2", component, instantiate);
+        assertNotSame(first, second);
+        assertEquals(2, instantiations.get());
+        assertTrue(DUUIComponentRegistry.release(second, "pipeline-2"));
+    }
+
+    @Test
+    public void replicasOfAPipelineDoNotShareInstances() throws Exception {
+        Document component = component("DUUIDockerDriver");
+
+        DUUIComponentRegistry.Shared first = DUUIComponentRegistry.acquire("pipeline-1", component, instantiate);
+        DUUIComponentRegistry.Shared second = DUUIComponentRegistry.acquire("pipeline-1", component, instantiate);
+
+        assertNotSame(first, second);
+        assertTrue(DUUIComponentRegistry.release(first, "pipeline-1"));
+        assertTrue(DUUIComponentRegistry.release(second, "pipeline-1"));
+    }
+
+    @Test
+    public void onlyIdenticalComponentsOfPooledDriversAreShared() throws Exception {
+        Document component = component("DUUIDockerDriver");
+        Document parameterized = new Document(component).append("parameters", new Document("language", "de"));
+        Document remote = component("DUUIRemoteDriver");
+
+        DUUIComponentRegistry.Shared first = DUUIComponentRegistry.acquire("pipeline-1", component, instantiate);
+        DUUIComponentRegistry.Shared second = DUUIComponentRegistry.acquire("pipeline-2", parameterized, instantiate);
+        DUUIComponentRegistry.Shared third = DUUIComponentRegistry.acquire("pipeline-1", remote, instantiate);
+        DUUIComponentRegistry.Shared fourth = DUUIComponentRegistry.acquire("pipeline-2", remote, instantiate);
+        DUUIComponentRegistry.Shared unshared = DUUIComponentRegistry.acquire(null, component, instantiate);
+
+        assertNotSame(first, second);
+        assertNotSame(third, fourth);
+        assertNotSame(first, unshared);
+        assertEquals(5, instantiations.get());
+    }
+
+    @Test
+    public void sharingCanBeDisabled() throws Exception {
+        DUUIComponentRegistry.init(false, 2);
+        Document component = component("DUUIDockerDriver");
+
+        DUUIComponentRegistry.Shared first = DUUIComponentRegistry.acquire("pipeline-1", component, instantiate);
+        DUUIComponentRegistry.Shared second = DUUIComponentRegistry.acquire("pipeline-2", component, instantiate);
+
+        assertNotSame(first, second);
+        assertTrue(DUUIComponentRegistry.release(first, "pipeline-1"));
+    }
+
+    @Test
+    public void failedInstanceIsNotShared() throws Exception {
+        Document component = component("DUUIDockerDriver");
+
+        assertThrows(IllegalStateException.class, () -> DUUIComponentRegistry.acquire("pipeline-1", component, () -> {
+            throw new IllegalStateException("image not found");
+        }));
+
+        DUUIComponentRegistry.Shared shared = DUUIComponentRegistry.acquire("pipeline-2", component, instantiate);
+        assertEquals(1, instantiations.get());
+        assertTrue(DUUIComponentRegistry.release(shared, "pipeline-2"));
+    }
+
+    @Test
+    public void restartWithOneChangedScaleInstantiatesOnlyThatComponent() throws Exception {
+        List<Document> components = List.of(
+            component("DUUIDockerDriver"),
+            component("DUUIDockerDriver"),
+            component("DUUIRemoteDriver"));
+
+        List<DUUIComponentRegistry.Shared> previous = new ArrayList<>();
+        for (Document component : components) {
+            previous.add(DUUIComponentRegistry.acquire("pipeline-1", component, instantiate));
+        }
+        assertEquals(3, instantiations.get());
+
+        // The autoscaler increased the scale of the first component.
+        List<Document> scaled = List.of(
+            new Document(components.get(0)).append("options", new Document("scale", 2)),
+            components.get(1),
+            components.get(2));
+
+        List<DUUIComponentRegistry.Shared> reusable = new ArrayList<>(previous);
+        List<DUUIComponentRegistry.Shared> restarted = new ArrayList<>();
+        for (Document component : scaled) {
+            restarted.add(DUUIComponentRegistry.acquire("pipeline-1", component, instantiate, reusable));
+        }
+
+        assertEquals(4, instantiations.get());
+        assertNotSame(previous.get(0), restarted.get(0));
+        assertSame(previous.get(1), restarted.get(1));
+        assertSame(previous.get(2), restarted.get(2));
+        assertEquals(List.of(previous.get(0)), reusable);
+
+        // Shutting down the old replica only shuts down the instance that has been replaced.
+        assertTrue(DUUIComponentRegistry.release(previous.get(0), "pipeline-1"));
+        assertFalse(DUUIComponentRegistry.release(previous.get(1), "pipeline-1"));
+        assertFalse(DUUIComponentRegistry.release(previous.get(2), "pipeline-1"));
+
+        for (DUUIComponentRegistry.Shared shared : restarted) {
+            assertTrue(DUUIComponentRegistry.release(shared, "pipeline-1"));
+        }
+    }
+
+    @Test
+    public void releasedInstanceIsNotTakenOver() throws Exception {
+        Document component = component("DUUIDockerDriver");
+
+        DUUIComponentRegistry.Shared previous = DUUIComponentRegistry.acquire("pipeline-1", component, instantiate);
+        assertTrue(DUUIComponentRegistry.release(previous, "pipeline-1"));
+
+        DUUIComponentRegistry.Shared restarted = DUUIComponentRegistry.acquire(
+            "pipeline-1", component, instantiate, new ArrayList<>(List.of(previous)));
+
+        assertNotSame(previous, restarted);
+        assertEquals(2, instantiations.get());
+        assertTrue(DUUIComponentRegistry.release(restarted, "pipeline-1"));
+    }
+
+    /**
+     * @param driver The driver of the component.
+     * @return a component with a unique name so that tests do not share instances.
+     */
+    private static Document component(String driver) {
+        return new Document("name", "component-" + UUID.randomUUID())
+            .append("driver", driver)
+            .append("target", "docker.texttechnologylab.org/duui-spacy:latest")
+            .append("options", new Document("scale", 1))
+            .append("parameters", new Document());
+    }
+}
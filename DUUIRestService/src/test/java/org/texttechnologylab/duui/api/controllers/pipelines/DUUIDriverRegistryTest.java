@@ -0,0 +1,103 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIDriverInterface;
+
+/**
+ * Leases drivers to one component at a time and keeps released drivers for reuse.
+ */
+public class DUUIDriverRegistryTest {
+
+    private final List<Object> created = new ArrayList<>();
+
+    private final List<Object> shutDown = new ArrayList<>();
+
+    private final Callable<IDUUIDriverInterface> create = this::createDriver;
+
+    @Test
+    public void releasedDriverIsReused() throws Exception {
+        DUUIDriverRegistry.PooledDriver first = DUUIDriverRegistry.acquire("DUUIDockerDriver", create);
+        DUUIDriverRegistry.release(first);
+
+        DUUIDriverRegistry.PooledDriver second = DUUIDriverRegistry.acquire("DUUIDockerDriver", create);
+        assertSame(first, second);
+        assertEquals(1, created.size());
+        assertTrue(shutDown.isEmpty());
+        DUUIDriverRegistry.release(second);
+    }
+
+    @Test
+    public void driverIsUsedByOneComponentAtATime() throws Exception {
+        DUUIDriverRegistry.PooledDriver first = DUUIDriverRegistry.acquire("DUUISwarmDriver", create);
+        DUUIDriverRegistry.PooledDriver second = DUUIDriverRegistry.acquire("DUUISwarmDriver", create);
+
+        assertNotSame(first.getDriver(), second.getDriver());
+        assertEquals(2, created.size());
+
+        Document status = DUUIDriverRegistry.getStatus().get("DUUISwarmDriver", Document.class);
+        assertEquals(2, status.getInteger("used"));
+        assertEquals(0, status.getInteger("idle"));
+
+        DUUIDriverRegistry.release(first);
+        DUUIDriverRegistry.release(second);
+    }
+
+    @Test
+    public void keepsAtMostThePoolSizeOfIdleDrivers() throws Exception {
+        List<DUUIDriverRegistry.PooledDriver> drivers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) drivers.add(DUUIDriverRegistry.acquire("DUUIKubernetesDriver", create));
+        drivers.forEach(DUUIDriverRegistry::release);
+
+        Document status = DUUIDriverRegistry.getStatus().get("DUUIKubernetesDriver", Document.class);
+        assertEquals(4, status.getInteger("idle"));
+        assertEquals(0, status.getInteger("used"));
+        assertEquals(List.of(drivers.get(4).getDriver()), shutDown);
+    }
+
+    @Test
+    public void driversThatAreNotPooledAreShutDown() throws Exception {
+        DUUIDriverRegistry.PooledDriver first = DUUIDriverRegistry.acquire("DUUIRemoteDriver", create);
+        DUUIDriverRegistry.release(first);
+
+        DUUIDriverRegistry.PooledDriver second = DUUIDriverRegistry.acquire("DUUIRemoteDriver", create);
+        assertNotSame(first, second);
+        assertEquals(List.of(first.getDriver()), shutDown);
+        DUUIDriverRegistry.release(second);
+    }
+
+    /**
+     * @return a driver that only records when it is shut down.
+     */
+    private IDUUIDriverInterface createDriver() {
+        IDUUIDriverInterface driver = (IDUUIDriverInterface) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[]{IDUUIDriverInterface.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "toString" -> "driver";
+                case "shutdown" -> {
+                    shutDown.add(proxy);
+                    yield null;
+                }
+                default -> method.getReturnType().isPrimitive() && method.getReturnType() != void.class
+                    ? Array.get(Array.newInstance(method.getReturnType(), 1), 0)
+                    : null;
+            });
+
+        created.add(driver);
+        return driver;
+    }
+}
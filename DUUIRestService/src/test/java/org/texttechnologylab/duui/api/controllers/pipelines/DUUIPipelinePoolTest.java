@@ -0,0 +1,142 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Leases, returns and scales the replicas of started pipelines.
+ */
+public class DUUIPipelinePoolTest {
+
+    private final AtomicInteger instantiations = new AtomicInteger();
+
+    private final String pipelineId = new ObjectId().toString();
+
+    @AfterEach
+    public void shutdown() {
+        DUUIPipelinePool.shutdown(pipelineId);
+    }
+
+    @Test
+    public void startInstantiatesTheMinimumNumberOfReplicas() {
+        assertTrue(start(2, 3));
+
+        assertTrue(DUUIPipelinePool.isStarted(pipelineId));
+        assertEquals(2, instantiations.get());
+        assertEquals(2, DUUIPipelinePool.getStatus(pipelineId).getInteger("replicas"));
+    }
+
+    @Test
+    public void releasedReplicaIsLeasedAgain() {
+        start(1, 1);
+
+        DUUIPipelinePool.Lease first = DUUIPipelinePool.lease(pipelineId);
+        first.release();
+        first.release();
+        assertEquals(0, DUUIPipelinePool.getStatus(pipelineId).getInteger("leases"));
+
+        DUUIPipelinePool.Lease second = DUUIPipelinePool.lease(pipelineId);
+        assertTrue(second.sharesInstancesWith(first));
+        assertEquals(1, instantiations.get());
+        second.release();
+    }
+
+    @Test
+    public void unusedReplicasAreLeasedBeforeReplicasAreShared() {
+        start(2, 2);
+
+        DUUIPipelinePool.Lease first = DUUIPipelinePool.lease(pipelineId);
+        DUUIPipelinePool.Lease second = DUUIPipelinePool.lease(pipelineId);
+        assertFalse(first.sharesInstancesWith(second));
+
+        DUUIPipelinePool.Lease third = DUUIPipelinePool.lease(pipelineId);
+        assertTrue(third.sharesInstancesWith(first) || third.sharesInstancesWith(second));
+
+        Document status = DUUIPipelinePool.getStatus(pipelineId);
+        assertEquals(2, status.getInteger("replicas"));
+        assertEquals(3, status.getInteger("leases"));
+        assertEquals(2, instantiations.get());
+
+        List.of(first, second, third).forEach(DUUIPipelinePool.Lease::release);
+    }
+
+    @Test
+    public void growsInTheBackgroundWhenAllReplicasAreLeased() throws InterruptedException {
+        start(1, 2);
+
+        DUUIPipelinePool.Lease first = DUUIPipelinePool.lease(pipelineId);
+        DUUIPipelinePool.Lease shared = DUUIPipelinePool.lease(pipelineId);
+        assertTrue(shared.sharesInstancesWith(first));
+
+        awaitReplicas(2);
+        DUUIPipelinePool.Lease other = DUUIPipelinePool.leaseOther(first);
+        assertNotNull(other);
+        assertFalse(other.sharesInstancesWith(first));
+        assertEquals(2, instantiations.get());
+
+        List.of(first, shared, other).forEach(DUUIPipelinePool.Lease::release);
+    }
+
+    @Test
+    public void scalesDownIdleReplicasAboveTheMinimum() throws InterruptedException {
+        start(1, 2);
+
+        DUUIPipelinePool.Lease first = DUUIPipelinePool.lease(pipelineId);
+        DUUIPipelinePool.Lease shared = DUUIPipelinePool.lease(pipelineId);
+        awaitReplicas(2);
+        shared.release();
+
+        // The replica of the first lease is in use, so only the other one is shut down.
+        DUUIPipelinePool.scaleDown(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        Document status = DUUIPipelinePool.getStatus(pipelineId);
+        assertEquals(1, status.getInteger("replicas"));
+        assertEquals(1, status.getInteger("leases"));
+
+        // The minimum is kept even if it is idle.
+        first.release();
+        DUUIPipelinePool.scaleDown(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        assertEquals(1, DUUIPipelinePool.getStatus(pipelineId).getInteger("replicas"));
+    }
+
+    @Test
+    public void stoppedPipelineCanNotBeLeased() {
+        start(1, 1);
+        DUUIPipelinePool.Lease lease = DUUIPipelinePool.lease(pipelineId);
+
+        assertTrue(DUUIPipelinePool.shutdown(pipelineId));
+        assertFalse(DUUIPipelinePool.isStarted(pipelineId));
+        assertNull(DUUIPipelinePool.lease(pipelineId));
+        assertNull(DUUIPipelinePool.leaseOther(lease));
+        lease.release();
+    }
+
+    private boolean start(int minReplicas, int maxReplicas) {
+        Document pipeline = new Document("oid", pipelineId)
+            .append("settings", new Document("min_replicas", minReplicas).append("max_replicas", maxReplicas));
+
+        return DUUIPipelinePool.start(pipeline, () -> {
+            instantiations.incrementAndGet();
+            return new DUUIPipelineInstantiation(pipelineId, List.of(), List.of(), List.of(), 0, 0);
+        });
+    }
+
+    private void awaitReplicas(int replicas) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (DUUIPipelinePool.getStatus(pipelineId).getInteger("replicas") < replicas) {
+            assertTrue(System.currentTimeMillis() < deadline, "no replica has been added");
+            Thread.sleep(10);
+        }
+    }
+}
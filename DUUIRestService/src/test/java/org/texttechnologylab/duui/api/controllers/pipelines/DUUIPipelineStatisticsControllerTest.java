@@ -0,0 +1,40 @@
+package org.texttechnologylab.duui.api.controllers.pipelines;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Escapes values that are used as field names of the materialized statistics.
+ */
+public class DUUIPipelineStatisticsControllerTest {
+
+    @Test
+    public void escapedKeysAreValidFieldNames() {
+        String escaped = DUUIPipelineStatisticsController.escape("$error.name");
+
+        assertFalse(escaped.contains("."));
+        assertFalse(escaped.startsWith("$"));
+    }
+
+    @Test
+    public void unescapeReversesEscape() {
+        for (String key : List.of("Completed", "java.io.IOException", "$size", "100%", "%2E", "%24", "a.$b%c")) {
+            assertEquals(key, DUUIPipelineStatisticsController.unescape(DUUIPipelineStatisticsController.escape(key)));
+        }
+    }
+
+    @Test
+    public void nullIsEscapedToADistinctKey() {
+        String escaped = DUUIPipelineStatisticsController.escape(null);
+
+        assertNull(DUUIPipelineStatisticsController.unescape(escaped));
+        assertNotEquals(escaped, DUUIPipelineStatisticsController.escape(escaped));
+        assertEquals(escaped, DUUIPipelineStatisticsController.unescape(DUUIPipelineStatisticsController.escape(escaped)));
+    }
+}
@@ -0,0 +1,72 @@
+package org.texttechnologylab.duui.api.controllers.processes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.io.BasicOutputBuffer;
+import org.junit.jupiter.api.Test;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Writes archives and restores them with and without an event retention period.
+ */
+public class DUUIProcessArchiveControllerTest {
+
+    private static final long NOW = System.currentTimeMillis();
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void restoresAllDocumentsAndEventsWithoutRetention() throws IOException {
+        List<Document> documents = new ArrayList<>();
+        List<Document> events = new ArrayList<>();
+
+        DUUIProcessArchiveController.read(archive(), 0, documents::add, events::add);
+
+        assertEquals(List.of("a.txt", "b.txt"), documents.stream().map(d -> d.getString("name")).toList());
+        assertEquals(List.of("old", "recent", "undated"), events.stream().map(e -> e.getString("message")).toList());
+    }
+
+    @Test
+    public void restoresOnlyEventsWithinTheRetentionPeriod() throws IOException {
+        List<Document> documents = new ArrayList<>();
+        List<Document> events = new ArrayList<>();
+
+        // A retention period of 30 days, the old event would be removed by the TTL index right away.
+        DUUIProcessArchiveController.read(archive(), NOW - 30 * DAY, documents::add, events::add);
+
+        assertEquals(2, documents.size());
+        assertEquals(List.of("recent", "undated"), events.stream().map(e -> e.getString("message")).toList());
+        assertEquals(new Date(NOW - DAY), events.get(0).getDate("timestamp"));
+    }
+
+    /**
+     * Write an archive with two documents, an event older than 30 days, a recent event and an event
+     * without a timestamp.
+     */
+    private static ByteArrayInputStream archive() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+
+        try (ZstdOutputStream output = new ZstdOutputStream(bytes)) {
+            DUUIProcessArchiveController.write(output, buffer, "documents", new Document("name", "a.txt"));
+            DUUIProcessArchiveController.write(output, buffer, "documents", new Document("name", "b.txt"));
+            DUUIProcessArchiveController.write(output, buffer, "events", new Document("message", "old")
+                .append("timestamp", new Date(NOW - 60 * DAY)));
+            DUUIProcessArchiveController.write(output, buffer, "events", new Document("message", "recent")
+                .append("timestamp", new Date(NOW - DAY)));
+            DUUIProcessArchiveController.write(output, buffer, "events", new Document("message", "undated"));
+        }
+
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+}
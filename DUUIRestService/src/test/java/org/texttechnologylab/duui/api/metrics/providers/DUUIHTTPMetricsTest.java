@@ -0,0 +1,98 @@
+package org.texttechnologylab.duui.api.metrics.providers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.prometheus.client.CollectorRegistry;
+
+import spark.route.HttpMethod;
+import spark.routematch.RouteMatch;
+
+/**
+ * Labels requests with the template of the route they match.
+ */
+public class DUUIHTTPMetricsTest {
+
+    private static final String PROCESS_ID = "65f1c0ffee00000000000001";
+
+    @BeforeEach
+    public void registerRoutes() {
+        DUUIHTTPMetrics.registerRoutes(List.of(
+            route(HttpMethod.before, "*"),
+            route(HttpMethod.get, "/processes/count"),
+            route(HttpMethod.get, "/processes/:id"),
+            route(HttpMethod.get, "/processes/:id/documents"),
+            route(HttpMethod.delete, "/processes/:id"),
+            route(HttpMethod.get, "/files/*")));
+    }
+
+    @Test
+    public void parametersAreReplacedByTheTemplate() {
+        assertEquals("/processes/:id", DUUIHTTPMetrics.normalizeRoute("GET", "/processes/" + PROCESS_ID));
+        assertEquals(
+            "/processes/:id/documents",
+            DUUIHTTPMetrics.normalizeRoute("GET", "/processes/" + PROCESS_ID + "/documents"));
+    }
+
+    @Test
+    public void routesAreMatchedInTheOrderTheyAreDefined() {
+        assertEquals("/processes/count", DUUIHTTPMetrics.normalizeRoute("GET", "/processes/count"));
+    }
+
+    @Test
+    public void methodMustMatch() {
+        assertEquals("/processes/:id", DUUIHTTPMetrics.normalizeRoute("delete", "/processes/" + PROCESS_ID));
+        assertEquals(
+            DUUIHTTPMetrics.UNMATCHED,
+            DUUIHTTPMetrics.normalizeRoute("POST", "/processes/" + PROCESS_ID + "/documents"));
+    }
+
+    @Test
+    public void headRequestsMatchGetRoutes() {
+        assertEquals("/processes/:id", DUUIHTTPMetrics.normalizeRoute("HEAD", "/processes/" + PROCESS_ID));
+    }
+
+    @Test
+    public void trailingSplatMatchesTheRestOfThePath() {
+        assertEquals("/files/*", DUUIHTTPMetrics.normalizeRoute("GET", "/files/a/b/c.txt"));
+        assertEquals("/files/*", DUUIHTTPMetrics.normalizeRoute("GET", "/files/c.txt"));
+        assertEquals(DUUIHTTPMetrics.UNMATCHED, DUUIHTTPMetrics.normalizeRoute("GET", "/files"));
+    }
+
+    @Test
+    public void unknownPathsAreUnmatched() {
+        assertEquals(DUUIHTTPMetrics.UNMATCHED, DUUIHTTPMetrics.normalizeRoute("GET", "/wp-login.php"));
+        assertEquals(
+            DUUIHTTPMetrics.UNMATCHED,
+            DUUIHTTPMetrics.normalizeRoute("GET", "/processes/" + PROCESS_ID + "/documents/extra"));
+        assertEquals(DUUIHTTPMetrics.UNMATCHED, DUUIHTTPMetrics.normalizeRoute(null, "/processes/count"));
+    }
+
+    @Test
+    public void notFoundResponsesKeepTheirRoute() {
+        double route = notFound("/processes/:id");
+        double unmatched = notFound(DUUIHTTPMetrics.UNMATCHED);
+
+        DUUIHTTPMetrics.observeRequest("GET", "/processes/" + PROCESS_ID, 404, 0.01, -1, 0, null);
+        DUUIHTTPMetrics.observeRequest("GET", "/wp-login.php", 404, 0.01, -1, 0, null);
+
+        assertEquals(route + 1, notFound("/processes/:id"));
+        assertEquals(unmatched + 1, notFound(DUUIHTTPMetrics.UNMATCHED));
+    }
+
+    private static double notFound(String route) {
+        Double value = CollectorRegistry.defaultRegistry.getSampleValue(
+            "duui_responses_total",
+            new String[]{"method", "route", "status"},
+            new String[]{"GET", route, "404"});
+        return value == null ? 0 : value;
+    }
+
+    private static RouteMatch route(HttpMethod method, String path) {
+        return new RouteMatch(null, path, path, "*/*", method);
+    }
+}
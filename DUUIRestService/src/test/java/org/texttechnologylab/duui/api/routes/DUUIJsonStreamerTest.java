@@ -0,0 +1,65 @@
+package org.texttechnologylab.duui.api.routes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Writes documents as a JSON object or as newline delimited JSON.
+ */
+public class DUUIJsonStreamerTest {
+
+    private static final List<Document> DOCUMENTS = List.of(
+        new Document("_id", new ObjectId("65f1c0ffee00000000000001")).append("name", "a.txt").append("size", 12),
+        new Document("_id", new ObjectId("65f1c0ffee00000000000002")).append("name", "b \"quoted\".txt").append("size", 7));
+
+    @Test
+    public void writesTheDocumentsAndTheCount() throws IOException {
+        Document result = Document.parse(write(false, 42, UnaryOperator.identity()));
+
+        assertEquals(DOCUMENTS, result.getList("documents", Document.class));
+        assertEquals(42, result.getInteger("count"));
+    }
+
+    @Test
+    public void omitsANegativeCount() throws IOException {
+        Document result = Document.parse(write(false, -1, UnaryOperator.identity()));
+
+        assertEquals(DOCUMENTS, result.getList("documents", Document.class));
+        assertFalse(result.containsKey("count"));
+    }
+
+    @Test
+    public void writesAnEmptyList() throws IOException {
+        StringWriter writer = new StringWriter();
+        DUUIJsonStreamer.write(writer, false, "documents", 0, List.<Document>of().iterator(), UnaryOperator.identity());
+
+        assertEquals("{\"documents\": [], \"count\": 0}", writer.toString());
+    }
+
+    @Test
+    public void writesOneDocumentPerLineAsNdjson() throws IOException {
+        String output = write(true, 42, document -> new Document(document).append("mapped", true));
+        String[] lines = output.split("\n");
+
+        assertEquals(DOCUMENTS.size(), lines.length);
+        assertFalse(output.contains("count"));
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(new Document(DOCUMENTS.get(i)).append("mapped", true), Document.parse(lines[i]));
+        }
+    }
+
+    private static String write(boolean ndjson, long count, UnaryOperator<Document> mapper) throws IOException {
+        StringWriter writer = new StringWriter();
+        DUUIJsonStreamer.write(writer, ndjson, "documents", count, DOCUMENTS.iterator(), mapper);
+        return writer.toString();
+    }
+}
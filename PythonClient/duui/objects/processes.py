@@ -1,4 +1,6 @@
 import json
+from typing import Iterator
+
 import requests
 
 from duui.config import API_URL
@@ -143,6 +145,44 @@ class _Processes:
 
         return response.json()
 
+    def iter_documents(
+        self,
+        process_id: str,
+        *,
+        sort: str = "name",
+        order: int = 1,
+        search: str = "",
+        status_filter: list[str] = None,
+    ) -> Iterator[dict]:
+        """Iterate over all documents of a process. The documents are streamed as
+        newline delimited JSON and parsed one at a time.
+
+        Args:
+            process_id (str): The id of the process the document belongs to. Should be 24 character hex-string (MongoDB object id).
+            sort (str, optional): The criteria to sort by. Defaults to "name".
+            order (int, optional): The order to sort by. Defaults to 1 (ascending).
+            search (str, optional): A search query applied to documents.
+            status_filter (list[str], optional): A list of status names. Defaults to None.
+
+        Yields:
+            dict: The next document.
+        """
+        if status_filter is None:
+            status_filter = ["Any"]
+
+        data = {
+            "limit": 0,
+            "sort": sort,
+            "order": order,
+            "search": search,
+            "status": ";".join(status_filter),
+            "format": "ndjson",
+        }
+
+        yield from self._iter_ndjson(
+            f"{API_URL}/processes/{process_id}/documents{self._client.to_query(data)}"
+        )
+
     def events(self, process_id: str) -> dict | str:
         """Retrieve one or multiple events by applying filters.
 
@@ -162,6 +202,30 @@ class _Processes:
 
         return response.json()["timeline"]
 
+    def iter_events(self, process_id: str) -> Iterator[dict]:
+        """Iterate over all events of a process. The events are streamed as
+        newline delimited JSON and parsed one at a time.
+
+        Args:
+            process_id (str): The id of the process the events belong to. Should be 24 character hex-string (MongoDB object id).
+
+        Yields:
+            dict: The next event.
+        """
+        yield from self._iter_ndjson(
+            f"{API_URL}/processes/{process_id}/events?format=ndjson"
+        )
+
+    def _iter_ndjson(self, url: str) -> Iterator[dict]:
+        with requests.get(url, headers=self._client._auth, stream=True) as response:
+            if not response.ok:
+                self._client.request_failed(response)
+                return
+
+            for line in response.iter_lines():
+                if line:
+                    yield json.loads(line)
+
     def delete(self, id: str) -> dict | str:
         """Attempts to delete a process given its id.
 